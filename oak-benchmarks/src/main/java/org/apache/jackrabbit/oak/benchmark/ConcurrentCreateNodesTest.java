@@ -59,6 +59,7 @@ public class ConcurrentCreateNodesTest extends AbstractTest {
     private static final boolean VERBOSE = Boolean.getBoolean("verbose");
     private Writer writer;
     private final AtomicInteger NODE_COUNT = new AtomicInteger();
+    private long startTime;
 
     @Override
     protected void beforeSuite() throws Exception {
@@ -99,6 +100,17 @@ public class ConcurrentCreateNodesTest extends AbstractTest {
                     new Listener(), EVENT_TYPES, LISTENER_PATH, true, null, null, false);
         }
         writer = new Writer(rootNode.getPath() + "/node" + 0);
+        startTime = System.currentTimeMillis();
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        // aggregate throughput of all writers. Compare runs with and without
+        // -Doak.documentMK.groupCommit=true on a DocumentNodeStore fixture
+        long time = Math.max(1, System.currentTimeMillis() - startTime);
+        int numNodes = NODE_COUNT.get();
+        System.out.println("All " + WORKER_COUNT + " writers created " + numNodes +
+                " nodes in " + time + " ms. (" + (numNodes * 1000L / time) + " nodes/sec)");
     }
 
     private void createACLsForEveryone(Session session, int numACLs)
@@ -0,0 +1,545 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.commons.sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * External sort of binary records. Unlike {@link ExternalSort}, which sorts
+ * lines of text, this sort works on records of arbitrary bytes, which are
+ * compared with a pluggable comparator and written to files in a length
+ * prefixed format.
+ * <p>
+ * The input is read into chunks of up to a fraction of the configured
+ * memory. Chunks are sorted and written to temporary files concurrently.
+ * The temporary files are then merged in passes of up to
+ * {@link #withMergeFanIn(int) fan-in} files each, where the merges of a
+ * pass run concurrently, until a single final merge writes the output.
+ * Temporary files are optionally compressed.
+ * <p>
+ * Use {@link RecordWriter} and {@link RecordReader} to write the input to
+ * and read the output from files in the record format.
+ */
+public class BinaryExternalSort {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryExternalSort.class);
+
+    /**
+     * Compares records as unsigned bytes, lexicographically.
+     */
+    public static final Comparator<byte[]> UNSIGNED_BYTES_COMPARATOR = (a, b) -> {
+        int len = Math.min(a.length, b.length);
+        for (int i = 0; i < len; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    };
+
+    /**
+     * Estimated memory overhead of a record in a chunk, in addition to the
+     * record bytes: array header and reference.
+     */
+    private static final int RECORD_OVERHEAD = 24;
+
+    private final Comparator<byte[]> comparator;
+    private final File tmpDirectory;
+    private long maxMemory = 64L * 1024 * 1024;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int mergeFanIn = 64;
+    private int bufferSize = 256 * 1024;
+    private boolean compressTempFiles;
+    private boolean distinct;
+
+    /**
+     * @param comparator the comparator for the records.
+     * @param tmpDirectory the directory for temporary files, or
+     *                     {@code null} for the default.
+     */
+    public BinaryExternalSort(@NotNull Comparator<byte[]> comparator, @Nullable File tmpDirectory) {
+        this.comparator = checkNotNull(comparator);
+        this.tmpDirectory = tmpDirectory;
+    }
+
+    /**
+     * @param maxMemory the memory used for records in chunks, which are
+     *                  sorted in memory. Defaults to 64 MB.
+     */
+    public BinaryExternalSort withMaxMemory(long maxMemory) {
+        checkArgument(maxMemory > 0, "maxMemory must be > 0: %s", maxMemory);
+        this.maxMemory = maxMemory;
+        return this;
+    }
+
+    /**
+     * @param threads the number of threads sorting chunks and merging
+     *                files. Defaults to the number of processors.
+     */
+    public BinaryExternalSort withThreads(int threads) {
+        checkArgument(threads > 0, "threads must be > 0: %s", threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param mergeFanIn the maximum number of files merged into one.
+     *                   Defaults to 64.
+     */
+    public BinaryExternalSort withMergeFanIn(int mergeFanIn) {
+        checkArgument(mergeFanIn > 1, "mergeFanIn must be > 1: %s", mergeFanIn);
+        this.mergeFanIn = mergeFanIn;
+        return this;
+    }
+
+    /**
+     * @param bufferSize the size of the buffer of each file read or
+     *                   written. Defaults to 256 KB.
+     */
+    public BinaryExternalSort withBufferSize(int bufferSize) {
+        checkArgument(bufferSize > 0, "bufferSize must be > 0: %s", bufferSize);
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * @param compressTempFiles whether to compress the temporary files.
+     *                          Defaults to {@code false}.
+     */
+    public BinaryExternalSort withCompressTempFiles(boolean compressTempFiles) {
+        this.compressTempFiles = compressTempFiles;
+        return this;
+    }
+
+    /**
+     * @param distinct whether to write only one of the records, which are
+     *                 equal according to the comparator. Defaults to
+     *                 {@code false}.
+     */
+    public BinaryExternalSort withDistinct(boolean distinct) {
+        this.distinct = distinct;
+        return this;
+    }
+
+    /**
+     * Sorts the records in the given file and writes them to the output
+     * file. Both files are in the format of {@link RecordWriter}.
+     *
+     * @return the number of records written.
+     */
+    public long sort(@NotNull File input, boolean inputCompressed,
+                     @NotNull File output, boolean outputCompressed) throws IOException {
+        try (RecordReader reader = new RecordReader(input, inputCompressed, bufferSize)) {
+            return sort(reader.iterator(), output, outputCompressed);
+        }
+    }
+
+    /**
+     * Sorts the given records and writes them to the output file.
+     *
+     * @return the number of records written.
+     */
+    public long sort(@NotNull Iterator<byte[]> input, @NotNull File output,
+                     boolean outputCompressed) throws IOException {
+        Stopwatch w = Stopwatch.createStarted();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("binary-sort-%d").build());
+        List<File> files = new ArrayList<>();
+        try {
+            sortChunks(input, executor, files);
+            LOG.debug("Sorted {} chunks in {}", files.size(), w);
+            int pass = 0;
+            while (files.size() > mergeFanIn) {
+                files = mergePass(files, executor);
+                LOG.debug("Merge pass {} done with {} files in {}", ++pass, files.size(), w);
+            }
+            long count;
+            try (RecordWriter writer = new RecordWriter(output, outputCompressed, bufferSize)) {
+                count = mergeFiles(files, writer::write);
+            }
+            LOG.debug("Sorted {} records in {}", count, w);
+            return count;
+        } finally {
+            executor.shutdownNow();
+            files.forEach(File::delete);
+        }
+    }
+
+    /**
+     * Merges files of sorted records, for example written by a
+     * {@link RecordWriter} from records sorted in memory. The files are
+     * merged in concurrent passes of up to {@link #withMergeFanIn(int)
+     * fan-in} files like the chunks of {@link #sort(Iterator, File, boolean)},
+     * and the final merge passes the records in sorted order to the given
+     * consumer. The files are read with the
+     * {@link #withCompressTempFiles(boolean) temporary file compression} and
+     * deleted once merged.
+     *
+     * @param sortedFiles the files to merge.
+     * @param consumer receives the merged records.
+     * @return the number of records passed to the consumer.
+     */
+    public long merge(@NotNull List<File> sortedFiles, @NotNull RecordConsumer consumer)
+            throws IOException {
+        Stopwatch w = Stopwatch.createStarted();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("binary-merge-%d").build());
+        List<File> files = new ArrayList<>(sortedFiles);
+        try {
+            int pass = 0;
+            while (files.size() > mergeFanIn) {
+                files = mergePass(files, executor);
+                LOG.debug("Merge pass {} done with {} files in {}", ++pass, files.size(), w);
+            }
+            long count = mergeFiles(files, consumer);
+            LOG.debug("Merged {} records in {}", count, w);
+            return count;
+        } finally {
+            executor.shutdownNow();
+            files.forEach(File::delete);
+        }
+    }
+
+    private void sortChunks(Iterator<byte[]> input, ExecutorService executor, List<File> files)
+            throws IOException {
+        // a chunk is filled while others are sorted, hence the memory is
+        // divided among all threads plus the one reading
+        long chunkMemory = Math.max(1, maxMemory / (threads + 1));
+        List<Future<File>> pending = new ArrayList<>();
+        try {
+            List<byte[]> chunk = new ArrayList<>();
+            long chunkSize = 0;
+            while (input.hasNext()) {
+                byte[] record = input.next();
+                chunk.add(record);
+                chunkSize += record.length + RECORD_OVERHEAD;
+                if (chunkSize >= chunkMemory) {
+                    if (pending.size() >= threads) {
+                        // limit the number of chunks in memory
+                        files.add(pending.remove(0).get());
+                    }
+                    byte[][] records = chunk.toArray(new byte[0][]);
+                    pending.add(executor.submit(() -> sortAndSave(records)));
+                    chunk = new ArrayList<>();
+                    chunkSize = 0;
+                }
+            }
+            if (!chunk.isEmpty() || (pending.isEmpty() && files.isEmpty())) {
+                files.add(sortAndSave(chunk.toArray(new byte[0][])));
+            }
+            for (Future<File> f : pending) {
+                files.add(f.get());
+            }
+            pending.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sorting", e);
+        } catch (ExecutionException e) {
+            throw asIOException(e);
+        } finally {
+            // on failure, wait for the remaining chunks so their files
+            // are deleted along with the others
+            for (Future<File> f : pending) {
+                try {
+                    files.add(f.get());
+                } catch (InterruptedException | ExecutionException ignore) {
+                    // already failing
+                }
+            }
+        }
+    }
+
+    private File sortAndSave(byte[][] records) throws IOException {
+        Arrays.sort(records, comparator);
+        File file = File.createTempFile("sort", ".bin", tmpDirectory);
+        try (RecordWriter writer = new RecordWriter(file, compressTempFiles, bufferSize)) {
+            byte[] last = null;
+            for (byte[] r : records) {
+                if (!distinct || last == null || comparator.compare(r, last) != 0) {
+                    writer.write(r);
+                }
+                last = r;
+            }
+        }
+        return file;
+    }
+
+    private List<File> mergePass(List<File> files, ExecutorService executor) throws IOException {
+        List<Future<File>> merged = new ArrayList<>();
+        for (int i = 0; i < files.size(); i += mergeFanIn) {
+            List<File> group = files.subList(i, Math.min(files.size(), i + mergeFanIn));
+            merged.add(executor.submit(() -> {
+                File file = File.createTempFile("merge", ".bin", tmpDirectory);
+                try (RecordWriter writer = new RecordWriter(file, compressTempFiles, bufferSize)) {
+                    mergeFiles(group, writer::write);
+                }
+                group.forEach(File::delete);
+                return file;
+            }));
+        }
+        List<File> result = new ArrayList<>();
+        try {
+            for (Future<File> f : merged) {
+                result.add(f.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while merging", e);
+        } catch (ExecutionException e) {
+            result.forEach(File::delete);
+            throw asIOException(e);
+        }
+    }
+
+    private long mergeFiles(List<File> files, RecordConsumer consumer) throws IOException {
+        PriorityQueue<MergeSource> queue = new PriorityQueue<>(files.size() + 1,
+                (a, b) -> comparator.compare(a.current, b.current));
+        List<RecordReader> readers = new ArrayList<>();
+        try {
+            for (File f : files) {
+                RecordReader reader = new RecordReader(f, compressTempFiles, bufferSize);
+                readers.add(reader);
+                MergeSource s = new MergeSource(reader);
+                if (s.next()) {
+                    queue.add(s);
+                }
+            }
+            long count = 0;
+            byte[] last = null;
+            while (!queue.isEmpty()) {
+                MergeSource s = queue.poll();
+                byte[] r = s.current;
+                if (!distinct || last == null || comparator.compare(r, last) != 0) {
+                    consumer.accept(r);
+                    count++;
+                }
+                last = r;
+                if (s.next()) {
+                    queue.add(s);
+                }
+            }
+            return count;
+        } finally {
+            for (RecordReader r : readers) {
+                r.close();
+            }
+        }
+    }
+
+    private static IOException asIOException(ExecutionException e) {
+        Throwable t = e.getCause();
+        if (t instanceof IOException) {
+            return (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IOException(t);
+    }
+
+    private static final class MergeSource {
+        private final RecordReader reader;
+        private byte[] current;
+
+        MergeSource(RecordReader reader) {
+            this.reader = reader;
+        }
+
+        boolean next() throws IOException {
+            current = reader.read();
+            return current != null;
+        }
+    }
+
+    /**
+     * Receives the records of a merge in sorted order.
+     */
+    public interface RecordConsumer {
+
+        void accept(@NotNull byte[] record) throws IOException;
+    }
+
+    /**
+     * Writes records to a file. Each record is written as its length in
+     * variable length encoding followed by its bytes.
+     */
+    public static class RecordWriter implements Closeable {
+        private final OutputStream out;
+
+        public RecordWriter(@NotNull File file, boolean compressed) throws IOException {
+            this(file, compressed, 64 * 1024);
+        }
+
+        public RecordWriter(@NotNull File file, boolean compressed, int bufferSize) throws IOException {
+            OutputStream os = new FileOutputStream(file);
+            if (compressed) {
+                os = new GZIPOutputStream(os, bufferSize) {
+                    {
+                        def.setLevel(Deflater.BEST_SPEED);
+                    }
+                };
+            }
+            this.out = new BufferedOutputStream(os, bufferSize);
+        }
+
+        public void write(@NotNull byte[] record) throws IOException {
+            int len = record.length;
+            while ((len & ~0x7F) != 0) {
+                out.write((len & 0x7F) | 0x80);
+                len >>>= 7;
+            }
+            out.write(len);
+            out.write(record);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads records written by a {@link RecordWriter}.
+     */
+    public static class RecordReader implements Iterable<byte[]>, Closeable {
+        private final InputStream in;
+
+        public RecordReader(@NotNull File file, boolean compressed) throws IOException {
+            this(file, compressed, 64 * 1024);
+        }
+
+        public RecordReader(@NotNull File file, boolean compressed, int bufferSize) throws IOException {
+            InputStream is = new FileInputStream(file);
+            if (compressed) {
+                is = new GZIPInputStream(is, bufferSize);
+            }
+            this.in = new BufferedInputStream(is, bufferSize);
+        }
+
+        /**
+         * @return the next record or {@code null} at the end of the file.
+         */
+        @Nullable
+        public byte[] read() throws IOException {
+            int len = 0;
+            int shift = 0;
+            while (true) {
+                int b = in.read();
+                if (b < 0) {
+                    if (shift == 0) {
+                        return null;
+                    }
+                    throw new EOFException("Truncated record length");
+                }
+                len |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+                shift += 7;
+            }
+            byte[] record = new byte[len];
+            int off = 0;
+            while (off < len) {
+                int n = in.read(record, off, len - off);
+                if (n < 0) {
+                    throw new EOFException("Truncated record");
+                }
+                off += n;
+            }
+            return record;
+        }
+
+        /**
+         * Returns an iterator over the remaining records. Read errors
+         * are thrown as {@link IllegalStateException}.
+         */
+        @NotNull
+        @Override
+        public Iterator<byte[]> iterator() {
+            return new Iterator<byte[]>() {
+                private byte[] next = fetch();
+
+                private byte[] fetch() {
+                    try {
+                        return read();
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public byte[] next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    byte[] r = next;
+                    next = fetch();
+                    return r;
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.commons.sort;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.io.BaseEncoding;
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.commons.sort.BinaryExternalSort.RecordWriter;
+
+/**
+ * Compares the text based {@link ExternalSort} with the
+ * {@link BinaryExternalSort} using one and multiple threads. The records
+ * are random bytes, which are hex encoded for the text based sort.
+ * <p>
+ * Run with {@code -Dcount=<records>} to change the number of records.
+ */
+public class BinaryExternalSortBenchmark {
+
+    private static final long MAX_MEMORY = 32L * 1024 * 1024;
+
+    public static void main(String... args) throws IOException {
+        int count = Integer.getInteger("count", 2_000_000);
+        File dir = Files.createTempDirectory("sort-benchmark").toFile();
+        try {
+            File text = new File(dir, "input.txt");
+            File binary = new File(dir, "input.bin");
+            createInput(count, text, binary);
+            for (int i = 0; i < 3; i++) {
+                textSort(text, dir);
+                binarySort(binary, dir, 1);
+                binarySort(binary, dir, Runtime.getRuntime().availableProcessors());
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private static void createInput(int count, File text, File binary) throws IOException {
+        Random r = new Random(1);
+        BaseEncoding hex = BaseEncoding.base16();
+        try (BufferedWriter w = Files.newBufferedWriter(text.toPath(), StandardCharsets.UTF_8);
+             RecordWriter bw = new RecordWriter(binary, false)) {
+            for (int i = 0; i < count; i++) {
+                byte[] b = new byte[10 + r.nextInt(40)];
+                r.nextBytes(b);
+                w.write(hex.encode(b));
+                w.newLine();
+                bw.write(b);
+            }
+        }
+    }
+
+    private static void textSort(File input, File dir) throws IOException {
+        File output = new File(dir, "output.txt");
+        long time = System.currentTimeMillis();
+        List<File> files = ExternalSort.sortInBatch(input, ExternalSort.defaultcomparator,
+                ExternalSort.DEFAULTMAXTEMPFILES, MAX_MEMORY, StandardCharsets.UTF_8, dir, false, 0, false);
+        ExternalSort.mergeSortedFiles(files, output, ExternalSort.defaultcomparator,
+                StandardCharsets.UTF_8, false, false, false);
+        time = System.currentTimeMillis() - time;
+        System.out.println("ExternalSort: " + time + " ms");
+        output.delete();
+    }
+
+    private static void binarySort(File input, File dir, int threads) throws IOException {
+        File output = new File(dir, "output.bin");
+        long time = System.currentTimeMillis();
+        new BinaryExternalSort(BinaryExternalSort.UNSIGNED_BYTES_COMPARATOR, dir)
+                .withMaxMemory(MAX_MEMORY)
+                .withThreads(threads)
+                .sort(input, false, output, false);
+        time = System.currentTimeMillis() - time;
+        System.out.println("BinaryExternalSort (" + threads + " threads): " + time + " ms");
+        output.delete();
+    }
+}
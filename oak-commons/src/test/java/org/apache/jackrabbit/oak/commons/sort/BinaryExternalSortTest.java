@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.commons.sort;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.jackrabbit.oak.commons.sort.BinaryExternalSort.RecordReader;
+import org.apache.jackrabbit.oak.commons.sort.BinaryExternalSort.RecordWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.apache.jackrabbit.oak.commons.sort.BinaryExternalSort.UNSIGNED_BYTES_COMPARATOR;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class BinaryExternalSortTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    @Test
+    public void inMemory() throws Exception {
+        List<byte[]> records = createRecords(1000, 42);
+        assertSorted(records, new BinaryExternalSort(UNSIGNED_BYTES_COMPARATOR, folder.getRoot()), false);
+    }
+
+    @Test
+    public void multipleMergePasses() throws Exception {
+        List<byte[]> records = createRecords(20000, 1);
+        // about 200 chunks merged in three passes
+        BinaryExternalSort sort = new BinaryExternalSort(UNSIGNED_BYTES_COMPARATOR, folder.getRoot())
+                .withMaxMemory(20000)
+                .withThreads(3)
+                .withMergeFanIn(8)
+                .withBufferSize(512);
+        assertSorted(records, sort, false);
+        assertEquals(0, tempFileCount());
+    }
+
+    @Test
+    public void compressed() throws Exception {
+        List<byte[]> records = createRecords(5000, 2);
+        BinaryExternalSort sort = new BinaryExternalSort(UNSIGNED_BYTES_COMPARATOR, folder.getRoot())
+                .withMaxMemory(10000)
+                .withMergeFanIn(4)
+                .withCompressTempFiles(true);
+        assertSorted(records, sort, true);
+    }
+
+    @Test
+    public void distinct() throws Exception {
+        List<byte[]> records = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            records.addAll(createRecords(2000, 3));
+        }
+        BinaryExternalSort sort = new BinaryExternalSort(UNSIGNED_BYTES_COMPARATOR, folder.getRoot())
+                .withMaxMemory(10000)
+                .withMergeFanIn(4)
+                .withDistinct(true);
+        File out = folder.newFile();
+        long count = sort.sort(records.iterator(), out, false);
+
+        List<byte[]> expected = new ArrayList<>();
+        records.sort(UNSIGNED_BYTES_COMPARATOR);
+        for (byte[] r : records) {
+            if (expected.isEmpty() || UNSIGNED_BYTES_COMPARATOR.compare(expected.get(expected.size() - 1), r) != 0) {
+                expected.add(r);
+            }
+        }
+        assertEquals(expected.size(), count);
+        assertRecords(expected, out, false);
+    }
+
+    @Test
+    public void customComparator() throws Exception {
+        List<byte[]> records = createRecords(3000, 4);
+        Comparator<byte[]> reversed = UNSIGNED_BYTES_COMPARATOR.reversed();
+        BinaryExternalSort sort = new BinaryExternalSort(reversed, folder.getRoot())
+                .withMaxMemory(5000);
+        File out = folder.newFile();
+        sort.sort(records.iterator(), out, false);
+        records.sort(reversed);
+        assertRecords(records, out, false);
+    }
+
+    @Test
+    public void fileInput() throws Exception {
+        List<byte[]> records = createRecords(3000, 5);
+        File in = folder.newFile();
+        try (RecordWriter writer = new RecordWriter(in, true)) {
+            for (byte[] r : records) {
+                writer.write(r);
+            }
+        }
+        File out = folder.newFile();
+        long count = new BinaryExternalSort(UNSIGNED_BYTES_COMPARATOR, folder.getRoot())
+                .withMaxMemory(5000)
+                .sort(in, true, out, false);
+        assertEquals(records.size(), count);
+        records.sort(UNSIGNED_BYTES_COMPARATOR);
+        assertRecords(records, out, false);
+    }
+
+    @Test
+    public void empty() throws Exception {
+        File out = folder.newFile();
+        long count = new BinaryExternalSort(UNSIGNED_BYTES_COMPARATOR, folder.getRoot())
+                .sort(Collections.<byte[]>emptyIterator(), out, false);
+        assertEquals(0, count);
+        assertEquals(0, out.length());
+    }
+
+    @Test
+    public void mergeSortedFiles() throws Exception {
+        List<byte[]> expected = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            List<byte[]> records = createRecords(500, i);
+            records.sort(UNSIGNED_BYTES_COMPARATOR);
+            File file = folder.newFile();
+            try (RecordWriter writer = new RecordWriter(file, true)) {
+                for (byte[] r : records) {
+                    writer.write(r);
+                }
+            }
+            files.add(file);
+            expected.addAll(records);
+        }
+        expected.sort(UNSIGNED_BYTES_COMPARATOR);
+
+        // merged in two passes
+        BinaryExternalSort sort = new BinaryExternalSort(UNSIGNED_BYTES_COMPARATOR, folder.getRoot())
+                .withThreads(3)
+                .withMergeFanIn(4)
+                .withCompressTempFiles(true);
+        List<byte[]> actual = new ArrayList<>();
+        assertEquals(expected.size(), sort.merge(files, actual::add));
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+        for (File f : files) {
+            assertFalse(f.exists());
+        }
+        assertEquals(0, tempFileCount());
+    }
+
+    private void assertSorted(List<byte[]> records, BinaryExternalSort sort, boolean compressed)
+            throws Exception {
+        File out = folder.newFile();
+        long count = sort.sort(records.iterator(), out, compressed);
+        assertEquals(records.size(), count);
+        List<byte[]> expected = new ArrayList<>(records);
+        expected.sort(UNSIGNED_BYTES_COMPARATOR);
+        assertRecords(expected, out, compressed);
+    }
+
+    private static void assertRecords(List<byte[]> expected, File file, boolean compressed) throws Exception {
+        List<byte[]> actual = new ArrayList<>();
+        try (RecordReader reader = new RecordReader(file, compressed)) {
+            reader.forEach(actual::add);
+        }
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    private int tempFileCount() {
+        String[] names = folder.getRoot().list((dir, name) -> name.endsWith(".bin"));
+        return names.length;
+    }
+
+    static List<byte[]> createRecords(int count, long seed) {
+        Random r = new Random(seed);
+        List<byte[]> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // include empty records and lengths above 127 for the varint
+            byte[] b = new byte[r.nextInt(200)];
+            r.nextBytes(b);
+            records.add(b);
+        }
+        return records;
+    }
+}
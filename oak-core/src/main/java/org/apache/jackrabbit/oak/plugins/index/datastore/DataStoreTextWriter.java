@@ -20,17 +20,25 @@
 package org.apache.jackrabbit.oak.plugins.index.datastore;
 
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.ref.SoftReference;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.oak.api.Blob;
 import org.apache.jackrabbit.oak.plugins.blob.datastore.DataStoreBlobStore;
 import org.apache.jackrabbit.oak.plugins.blob.datastore.InMemoryDataRecord;
@@ -48,9 +56,11 @@ import static com.google.common.base.Preconditions.checkState;
 
 /**
  * TextWriter implementation which just stores the extracted text
- * as files using the same layout as used by FileDataStore
+ * as files using the same layout as used by FileDataStore. The text
+ * files are optionally gzip compressed, and compressed files are read
+ * transparently.
  */
-public class DataStoreTextWriter implements TextWriter, Closeable, PreExtractedTextProvider {
+public class DataStoreTextWriter implements TextWriter, Closeable, Flushable, PreExtractedTextProvider {
     private static final String ERROR_BLOB_FILE = "blobs_error.txt";
     private static final String EMPTY_BLOB_FILE = "blobs_empty.txt";
 
@@ -69,6 +79,8 @@ public class DataStoreTextWriter implements TextWriter, Closeable, PreExtractedT
 
     private final boolean readOnlyMode;
 
+    private boolean compressText;
+
     public DataStoreTextWriter(File directory, boolean readOnlyMode) throws IOException {
         if (!directory.exists()) {
             checkArgument(directory.mkdirs(), "Cannot create directory %s", directory.getAbsolutePath());
@@ -109,7 +121,7 @@ public class DataStoreTextWriter implements TextWriter, Closeable, PreExtractedT
         } else {
             File textFile = getFile(blobId);
             if (textFile.exists()) {
-                String text = Files.toString(textFile, Charsets.UTF_8);
+                String text = readText(textFile);
                 result = new ExtractedText(ExtractionResult.SUCCESS, text);
             }
         }
@@ -129,8 +141,26 @@ public class DataStoreTextWriter implements TextWriter, Closeable, PreExtractedT
 
         File textFile = getFile(stripLength(blobId));
         ensureParentExists(textFile);
-        //TODO should we compress
-        Files.write(text, textFile, Charsets.UTF_8);
+        //Write to a temporary file first so that an interrupted run does
+        //not leave a partial file, which would be considered processed
+        File tmpFile = new File(textFile.getParentFile(), textFile.getName() + ".tmp");
+        byte[] bytes = text.getBytes(Charsets.UTF_8);
+        if (compressText) {
+            try (OutputStream out = new GZIPOutputStream(new FileOutputStream(tmpFile))) {
+                out.write(bytes);
+            }
+        } else {
+            Files.write(bytes, tmpFile);
+        }
+        Files.move(tmpFile, textFile);
+    }
+
+    /**
+     * Enables gzip compression of the text files written. Stores may
+     * contain both compressed and uncompressed files.
+     */
+    public void setCompressText(boolean compressText) {
+        this.compressText = compressText;
     }
 
     @Override
@@ -155,6 +185,19 @@ public class DataStoreTextWriter implements TextWriter, Closeable, PreExtractedT
         return textFile.exists();
     }
 
+    /**
+     * Persists the ids of the empty and erroneous blobs marked so far, such
+     * that an extraction can be resumed after an interruption.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (closed || readOnlyMode) {
+            return;
+        }
+        writeToFile(EMPTY_BLOB_FILE, getEmptyBlobs());
+        writeToFile(ERROR_BLOB_FILE, getErrorBlobs());
+    }
+
     @Override
     public synchronized void close() throws IOException {
         if (closed || readOnlyMode) {
@@ -242,12 +285,25 @@ public class DataStoreTextWriter implements TextWriter, Closeable, PreExtractedT
             return;
         }
         File file = new File(directory, fileName);
-        BufferedWriter bw = Files.newWriter(file, Charsets.UTF_8);
+        File tmpFile = new File(directory, fileName + ".tmp");
+        BufferedWriter bw = Files.newWriter(tmpFile, Charsets.UTF_8);
         for (String id : blobIds) {
             bw.write(id);
             bw.newLine();
         }
         bw.close();
+        Files.move(tmpFile, file);
+    }
+
+    private static String readText(File file) throws IOException {
+        byte[] bytes = Files.toByteArray(file);
+        //The gzip magic bytes are not a valid start of UTF-8 encoded text
+        if (bytes.length > 1 && bytes[0] == (byte) 0x1f && bytes[1] == (byte) 0x8b) {
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+                bytes = IOUtils.toByteArray(in);
+            }
+        }
+        return new String(bytes, Charsets.UTF_8);
     }
 
     private static void ensureParentExists(File file) throws IOException {
@@ -22,6 +22,7 @@ package org.apache.jackrabbit.oak.plugins.index.datastore;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 
+import com.google.common.base.Strings;
 import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.core.data.DataRecord;
 import org.apache.jackrabbit.core.data.FileDataStore;
@@ -112,6 +113,39 @@ public class DataStoreTextWriterTest {
 
     }
     
+    @Test
+    public void compressedText() throws Exception{
+        File writerDir = temporaryFolder.newFolder();
+        DataStoreTextWriter w = new DataStoreTextWriter(writerDir, false);
+        String text = Strings.repeat("hello world ", 1000);
+        w.write("abcdef01", text);
+        w.setCompressText(true);
+        w.write("abcdef02", text);
+        w.close();
+
+        File plain = new File(writerDir, "ab/cd/ef/abcdef01");
+        File compressed = new File(writerDir, "ab/cd/ef/abcdef02");
+        assertTrue(compressed.length() < plain.length() / 10);
+
+        DataStoreTextWriter w2 = new DataStoreTextWriter(writerDir, true);
+        assertEquals(text, w2.getText("/a", new IdBlob("foo", "abcdef01")).getExtractedText());
+        assertEquals(text, w2.getText("/a", new IdBlob("foo", "abcdef02")).getExtractedText());
+    }
+
+    @Test
+    public void flushEmptyAndErrorBlobs() throws Exception{
+        DataStoreTextWriter w = new DataStoreTextWriter(temporaryFolder.getRoot(), false);
+        w.markEmpty("a");
+        w.markError("b");
+        w.flush();
+
+        //Not closed, as after an interrupted extraction
+        DataStoreTextWriter w2 = new DataStoreTextWriter(temporaryFolder.getRoot(), false);
+        assertTrue(w2.isProcessed("a"));
+        assertTrue(w2.isProcessed("b"));
+        assertFalse(w2.isProcessed("abcdef03"));
+    }
+
     @Test
     public void inMemoryRecord() throws Exception{
         File fdsDir = temporaryFolder.newFolder();
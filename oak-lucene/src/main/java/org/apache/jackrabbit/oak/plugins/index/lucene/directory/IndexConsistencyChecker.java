@@ -26,8 +26,18 @@ import java.io.InputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 
 import javax.jcr.PropertyType;
 
@@ -35,6 +45,7 @@ import com.google.common.base.Stopwatch;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Closer;
 import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.oak.api.Blob;
@@ -42,7 +53,8 @@ import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Root;
 import org.apache.jackrabbit.oak.api.Tree;
 import org.apache.jackrabbit.oak.api.Type;
-import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.commons.StringUtils;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
 import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexDefinition;
 import org.apache.jackrabbit.oak.plugins.index.lucene.writer.MultiplexersLucene;
@@ -58,10 +70,22 @@ import org.apache.lucene.store.IOContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.jackrabbit.oak.commons.IOUtils.humanReadableByteCount;
 
 public class IndexConsistencyChecker {
+    /**
+     * Number of threads used to read the blobs of an index concurrently
+     */
+    static final int DEFAULT_THREAD_COUNT = Integer.getInteger("oak.lucene.consistencyCheckThreads", 1);
+
+    /**
+     * Content identity of DataStore records, which is the SHA-1 or SHA-256 digest
+     * of the content followed by the length
+     */
+    private static final Pattern DIGEST_ID = Pattern.compile("([0-9a-f]{40}|[0-9a-f]{64})#\\d+");
+
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final NodeState rootState;
     private final String indexPath;
@@ -69,6 +93,9 @@ public class IndexConsistencyChecker {
     private File workDir;
     private PrintStream printStream;
     private boolean verbose;
+    private int threadCount = DEFAULT_THREAD_COUNT;
+    private ExecutorService executor;
+    private boolean verifyDigest;
 
     public enum Level {
         /**
@@ -103,8 +130,22 @@ public class IndexConsistencyChecker {
 
         public List<DirectoryStatus> dirStatus = new ArrayList<>();
 
+        public int blobCount;
+
+        public boolean blobDigestMismatch;
+
+        public List<String> digestMismatchBlobIds = new ArrayList<>();
+
+        public long blobCheckTimeMillis;
+
+        public long indexCheckTimeMillis;
+
         private Stopwatch watch;
 
+        public long getTimeTakenMillis() {
+            return watch.elapsed(TimeUnit.MILLISECONDS);
+        }
+
         public void dump(PrintWriter pw){
             if (clean) {
                 pw.printf("%s => VALID%n", indexPath);
@@ -112,6 +153,7 @@ public class IndexConsistencyChecker {
                 pw.printf("%s => INVALID%n", indexPath);
             }
             pw.printf("\tSize : %s%n", humanReadableByteCount(binaryPropSize));
+            pw.printf("\tBlobs : %d%n", blobCount);
 
             if (!missingBlobIds.isEmpty()){
                 pw.println("Missing blobs");
@@ -127,6 +169,13 @@ public class IndexConsistencyChecker {
                 }
             }
 
+            if (!digestMismatchBlobIds.isEmpty()){
+                pw.println("Blobs with digest mismatch");
+                for (String id : digestMismatchBlobIds) {
+                    pw.println("\t - " + id);
+                }
+            }
+
             for (DirectoryStatus dirStatus : dirStatus) {
                 dirStatus.dump(pw);
             }
@@ -134,6 +183,48 @@ public class IndexConsistencyChecker {
             pw.printf("Time taken : %s%n", watch);
         }
 
+        /**
+         * Writes the result as a JSON object, which is meant to be consumed by tools
+         */
+        public void toJson(JsopBuilder json) {
+            json.object();
+            json.key("indexPath").value(indexPath);
+            json.key("clean").value(clean);
+            json.key("typeMismatch").value(typeMismatch);
+            json.key("binaryPropSize").value(binaryPropSize);
+            json.key("blobCount").value(blobCount);
+            json.key("missingBlobIds").array();
+            for (String id : missingBlobIds) {
+                json.value(id);
+            }
+            json.endArray();
+            json.key("digestMismatchBlobIds").array();
+            for (String id : digestMismatchBlobIds) {
+                json.value(id);
+            }
+            json.endArray();
+            json.key("invalidBlobs").array();
+            for (FileSizeStatus status : invalidBlobIds) {
+                status.toJson(json);
+            }
+            json.endArray();
+            json.key("directories").array();
+            for (DirectoryStatus status : dirStatus) {
+                status.toJson(json);
+            }
+            json.endArray();
+            json.key("blobCheckTimeMillis").value(blobCheckTimeMillis);
+            json.key("indexCheckTimeMillis").value(indexCheckTimeMillis);
+            json.key("timeTakenMillis").value(getTimeTakenMillis());
+            json.endObject();
+        }
+
+        public String toJson() {
+            JsopBuilder json = new JsopBuilder();
+            toJson(json);
+            return JsopBuilder.prettyPrint(json.toString());
+        }
+
         @Override
         public String toString(){
             StringWriter sw = new StringWriter();
@@ -158,6 +249,10 @@ public class IndexConsistencyChecker {
 
         public long numDocs;
 
+        public long copyTimeMillis;
+
+        public long checkTimeMillis;
+
         public DirectoryStatus(String dirName) {
             this.dirName = dirName;
         }
@@ -184,6 +279,32 @@ public class IndexConsistencyChecker {
             if (status != null){
                 pw.printf("\tCheckIndex status : %s%n", status.clean);
             }
+            pw.printf("\tCopy time  : %d ms%n", copyTimeMillis);
+            pw.printf("\tCheck time : %d ms%n", checkTimeMillis);
+        }
+
+        public void toJson(JsopBuilder json) {
+            json.object();
+            json.key("dirName").value(dirName);
+            json.key("clean").value(clean);
+            json.key("size").value(size);
+            json.key("numDocs").value(numDocs);
+            json.key("missingFiles").array();
+            for (String file : missingFiles) {
+                json.value(file);
+            }
+            json.endArray();
+            json.key("filesWithSizeMismatch").array();
+            for (FileSizeStatus status : filesWithSizeMismatch) {
+                status.toJson(json);
+            }
+            json.endArray();
+            if (status != null) {
+                json.key("checkIndexClean").value(status.clean);
+            }
+            json.key("copyTimeMillis").value(copyTimeMillis);
+            json.key("checkTimeMillis").value(checkTimeMillis);
+            json.endObject();
         }
     }
 
@@ -204,6 +325,14 @@ public class IndexConsistencyChecker {
         public String toString() {
             return String.format("%s => expected %d, actual %d", name, expectedSize, actualSize);
         }
+
+        public void toJson(JsopBuilder json) {
+            json.object();
+            json.key("name").value(name);
+            json.key("expectedSize").value(expectedSize);
+            json.key("actualSize").value(actualSize);
+            json.endObject();
+        }
     }
 
     /**
@@ -230,6 +359,37 @@ public class IndexConsistencyChecker {
         this.verbose = verbose;
     }
 
+    /**
+     * Sets the number of threads used to read the blobs of the index. With more
+     * than one thread the blobs are read concurrently, which helps with remote
+     * BlobStores where reading is mostly waiting for the network. The blobs are
+     * checked while the index is traversed, with at most twice the number of
+     * threads blobs pending at a time
+     */
+    public void setThreadCount(int threadCount) {
+        checkArgument(threadCount > 0, "Thread count must be positive [%s]", threadCount);
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Sets the executor used to read the blobs instead of a pool of
+     * {@link #setThreadCount(int) thread count} threads per check. This allows
+     * checkers running concurrently to share one bounded pool. The executor is
+     * not shut down by the checker
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * If enabled the content of blobs stored in a DataStore is hashed while
+     * reading and compared with the digest which is part of the blob id. Other
+     * blobs are only checked for their length
+     */
+    public void setVerifyDigest(boolean verifyDigest) {
+        this.verifyDigest = verifyDigest;
+    }
+
     public Result check(Level level) throws IOException {
         return check(level, true);
     }
@@ -249,9 +409,13 @@ public class IndexConsistencyChecker {
 
         log.info("[{}] Starting check", indexPath);
 
+        Stopwatch blobWatch = Stopwatch.createStarted();
         checkBlobs(result);
+        result.blobCheckTimeMillis = blobWatch.elapsed(TimeUnit.MILLISECONDS);
         if (level == Level.FULL && result.clean){
+            Stopwatch indexWatch = Stopwatch.createStarted();
             checkIndex(result, closer);
+            result.indexCheckTimeMillis = indexWatch.elapsed(TimeUnit.MILLISECONDS);
         }
 
         if (result.clean){
@@ -274,7 +438,7 @@ public class IndexConsistencyChecker {
     private void checkIndex(Result result, Closer closer) throws IOException {
         NodeState idx = NodeStateUtils.getNode(rootState, indexPath);
         LuceneIndexDefinition defn = LuceneIndexDefinition.newBuilder(rootState, idx, indexPath).build();
-        workDir = createWorkDir(workDirRoot, PathUtils.getName(indexPath));
+        workDir = createWorkDir(workDirRoot, getWorkDirName(indexPath));
 
         for (String dirName : idx.getChildNodeNames()){
             //TODO Check for SuggestionDirectory Pending
@@ -306,6 +470,7 @@ public class IndexConsistencyChecker {
         closer.register(targetDir);
 
         boolean clean = true;
+        Stopwatch watch = Stopwatch.createStarted();
         for (String file : sourceDir.listAll()) {
             log.debug("[{}][{}] Checking {}", indexPath, dirName, file);
             try {
@@ -327,6 +492,9 @@ public class IndexConsistencyChecker {
             }
         }
 
+        dirStatus.copyTimeMillis = watch.elapsed(TimeUnit.MILLISECONDS);
+        watch.reset().start();
+
         if (clean){
             log.debug("[{}][{}] Directory content found to be consistent. Proceeding to IndexCheck", indexPath, dirName);
             CheckIndex ci = new CheckIndex(targetDir);
@@ -348,69 +516,189 @@ public class IndexConsistencyChecker {
             log.debug("[{}][{}] DirectoryReader can be opened", indexPath, dirName);
             closer.register(dirReader);
         }
+        dirStatus.checkTimeMillis = watch.elapsed(TimeUnit.MILLISECONDS);
     }
 
     //~---------------------------------------< Blob Validation >
 
-    private void checkBlobs(Result result) {
+    private void checkBlobs(Result result) throws IOException {
         Root root = RootFactory.createReadOnlyRoot(rootState);
         Tree idx = root.getTree(indexPath);
         PropertyState type = idx.getProperty("type");
         if (type != null && LuceneIndexConstants.TYPE_LUCENE.equals(type.getValue(Type.STRING))){
-            checkBlobs(result, idx);
+            if (executor != null) {
+                checkBlobsConcurrently(idx, result, executor);
+            } else if (threadCount > 1) {
+                ExecutorService pool = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                        .setDaemon(true)
+                        .setNameFormat("index-consistency-check-%d")
+                        .build());
+                try {
+                    checkBlobsConcurrently(idx, result, pool);
+                } finally {
+                    pool.shutdownNow();
+                }
+            } else {
+                try {
+                    visitBlobs(idx, ref -> {
+                        result.blobCount++;
+                        checkBlob(ref, result);
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
         } else {
             result.clean = false;
             result.typeMismatch = true;
         }
     }
 
-    private void checkBlobs(Result result, Tree tree) {
+    private void visitBlobs(Tree tree, BlobVisitor visitor) throws InterruptedException {
         for (PropertyState ps : tree.getProperties()){
             if (ps.getType().tag() == PropertyType.BINARY){
                 if (ps.isArray()){
                     for (int i = 0; i < ps.count(); i++) {
                         Blob b = ps.getValue(Type.BINARY, i);
-                        checkBlob(ps.getName(), b, tree, result);
+                        visitor.visit(new BlobRef(tree.getPath(), ps.getName(), b));
                     }
                 } else {
                     Blob b = ps.getValue(Type.BINARY);
-                    checkBlob(ps.getName(), b, tree, result);
+                    visitor.visit(new BlobRef(tree.getPath(), ps.getName(), b));
                 }
             }
         }
 
         for (Tree child : tree.getChildren()){
-            checkBlobs(result, child);
+            visitBlobs(child, visitor);
         }
     }
 
-    private void checkBlob(String propName, Blob blob, Tree tree, Result result) {
+    /**
+     * Checks the blobs with the executor while the index is traversed. The
+     * number of pending blobs is bounded, so the traversal waits for the
+     * executor instead of collecting all blob references upfront
+     */
+    private void checkBlobsConcurrently(Tree idx, Result result, ExecutorService executor) throws IOException {
+        int maxPending = 2 * threadCount;
+        Semaphore pending = new Semaphore(maxPending);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        log.info("[{}] Checking blobs with {} threads", indexPath, threadCount);
+        try {
+            visitBlobs(idx, ref -> {
+                pending.acquire();
+                result.blobCount++;
+                try {
+                    executor.execute(() -> {
+                        try {
+                            checkBlob(ref, result);
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            pending.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    pending.release();
+                    throw e;
+                }
+            });
+            // wait for the pending blobs
+            pending.acquire(maxPending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        if (failure.get() != null) {
+            throw new IOException(failure.get());
+        }
+    }
+
+    private void checkBlob(BlobRef ref, Result result) {
+        Blob blob = ref.blob;
         String id = blob.getContentIdentity();
-        String blobPath = String.format("%s/%s/%s", tree.getPath(), propName, id);
+        String blobPath = String.format("%s/%s/%s", ref.treePath, ref.propName, id);
         try{
+            MessageDigest digest = verifyDigest ? getDigest(id) : null;
             InputStream is = blob.getNewStream();
+            if (digest != null) {
+                is = new DigestInputStream(is, digest);
+            }
             CountingInputStream cis = new CountingInputStream(is);
-            IOUtils.copyLarge(cis, ByteStreams.nullOutputStream());
+            try {
+                IOUtils.copyLarge(cis, ByteStreams.nullOutputStream());
+            } finally {
+                cis.close();
+            }
 
-            if (cis.getCount() != blob.length()){
-                String msg = String.format("Invalid blob %s. Length mismatch - expected ${%d} -> found ${%d}",
-                        blobPath, blob.length(), cis.getCount());
-                result.invalidBlobIds.add(new FileSizeStatus(blobPath, cis.getCount(), blob.length()));
-                log.warn("[{}] {}", indexPath, msg);
-                result.clean = false;
-                result.blobSizeMismatch = true;
+            boolean digestMismatch = digest != null
+                    && !id.startsWith(StringUtils.convertBytesToHex(digest.digest()) + "#");
+            synchronized (result) {
+                if (cis.getCount() != blob.length()){
+                    String msg = String.format("Invalid blob %s. Length mismatch - expected ${%d} -> found ${%d}",
+                            blobPath, blob.length(), cis.getCount());
+                    result.invalidBlobIds.add(new FileSizeStatus(blobPath, cis.getCount(), blob.length()));
+                    log.warn("[{}] {}", indexPath, msg);
+                    result.clean = false;
+                    result.blobSizeMismatch = true;
+                } else if (digestMismatch) {
+                    log.warn("[{}] Invalid blob {}. Content does not match the digest of the blob id", indexPath, blobPath);
+                    result.digestMismatchBlobIds.add(blobPath);
+                    result.clean = false;
+                    result.blobDigestMismatch = true;
+                }
+                result.binaryPropSize += cis.getCount();
             }
-            result.binaryPropSize += cis.getCount();
         } catch (Exception e) {
             log.warn("[{}] Error occurred reading blob at {}", indexPath, blobPath, e);
-            result.missingBlobIds.add(id);
-            result.clean = false;
-            result.missingBlobs = true;
+            synchronized (result) {
+                result.missingBlobIds.add(id);
+                result.clean = false;
+                result.missingBlobs = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the digest to verify the blob with given id, or null if the id
+     * is not a content hash
+     */
+    private static MessageDigest getDigest(String id) throws NoSuchAlgorithmException {
+        if (id == null || !DIGEST_ID.matcher(id).matches()) {
+            return null;
+        }
+        return MessageDigest.getInstance(id.indexOf('#') == 40 ? "SHA-1" : "SHA-256");
+    }
+
+    private interface BlobVisitor {
+        void visit(BlobRef ref) throws InterruptedException;
+    }
+
+    private static final class BlobRef {
+        final String treePath;
+        final String propName;
+        final Blob blob;
+
+        BlobRef(String treePath, String propName, Blob blob) {
+            this.treePath = treePath;
+            this.propName = propName;
+            this.blob = blob;
         }
     }
 
     //~-----------------------------------------------< utility >
 
+    /**
+     * Returns the name of the work directory of the index, which is derived
+     * from the whole path, so that indexes with the same name at different
+     * paths can be checked concurrently
+     */
+    static String getWorkDirName(String indexPath) {
+        return IndexRootDirectory.getIndexFolderBaseName(indexPath) + "_"
+                + IndexRootDirectory.getPathHash(indexPath).substring(0, 16);
+    }
+
     private static File createWorkDir(File parent, String name) throws IOException {
         String fsSafeName = IndexRootDirectory.getFSSafeName(name);
         File dir = new File(parent, fsSafeName);
@@ -21,8 +21,19 @@ package org.apache.jackrabbit.oak.plugins.index.lucene.directory;
 
 import java.io.File;
 import java.io.IOException;
-
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Stopwatch;
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.jackrabbit.oak.plugins.index.importer.IndexImporterProvider;
 import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexDefinition;
 import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition;
@@ -33,11 +44,19 @@ import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.IOContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.oak.commons.IOUtils.humanReadableByteCount;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.TYPE_LUCENE;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
 
 public class LuceneIndexImporter implements IndexImporterProvider {
+    private static final Logger log = LoggerFactory.getLogger(LuceneIndexImporter.class);
+
     private GarbageCollectableBlobStore blobStore;
+    private int threadCount = Integer.getInteger("oak.lucene.importThreadCount", 1);
 
     public LuceneIndexImporter(){
 
@@ -77,6 +96,20 @@ public class LuceneIndexImporter implements IndexImporterProvider {
         this.blobStore = blobStore;
     }
 
+    /**
+     * Sets the number of index files uploaded concurrently. The files are
+     * uploaded into separate builders and then added to the index
+     * definition by reference, so that the definition builder is only
+     * modified by the calling thread. Files are only uploaded concurrently
+     * with a blob store, otherwise the blobs are created by the definition
+     * builder, which is not thread safe. Defaults to 1, or the value of the
+     * {@code oak.lucene.importThreadCount} system property.
+     */
+    public void setThreadCount(int threadCount) {
+        checkArgument(threadCount > 0, "threadCount must be > 0: %s", threadCount);
+        this.threadCount = threadCount;
+    }
+
     private void copyDirectory(LuceneIndexDefinition definition, NodeBuilder definitionBuilder, String jcrName, File dir)
             throws IOException {
         try (Closer closer = Closer.create()) {
@@ -89,12 +122,76 @@ public class LuceneIndexImporter implements IndexImporterProvider {
             // //others as is
             definitionBuilder.getChildNode(jcrName).remove();
 
-            Directory targetDir = new OakDirectory(definitionBuilder, jcrName, definition, false, blobStore);
+            BlobFactory blobFactory = blobStore != null ? BlobFactory.getBlobStoreBlobFactory(blobStore)
+                    : BlobFactory.getNodeBuilderBlobFactory(definitionBuilder);
+            OakDirectory targetDir = new OakDirectory(definitionBuilder, jcrName, definition, false, blobFactory);
             closer.register(targetDir);
 
-            for (String file : sourceDir.listAll()) {
-                sourceDir.copy(targetDir, file, file, IOContext.DEFAULT);
+            Stopwatch w = Stopwatch.createStarted();
+            String[] files = sourceDir.listAll();
+            long size = 0;
+            for (String file : files) {
+                size += sourceDir.fileLength(file);
             }
+            if (threadCount > 1 && files.length > 1 && blobStore != null) {
+                copyConcurrently(definition, jcrName, sourceDir, targetDir, blobFactory, files);
+            } else {
+                for (String file : files) {
+                    sourceDir.copy(targetDir, file, file, IOContext.DEFAULT);
+                }
+            }
+            long millis = Math.max(1, w.elapsed(TimeUnit.MILLISECONDS));
+            log.info("Imported {} files ({}) of [{}] in {} ({}/s)", files.length, humanReadableByteCount(size),
+                    jcrName, w, humanReadableByteCount(size * 1000 / millis));
+        }
+    }
+
+    /**
+     * Uploads the files concurrently, each into a directory of its own
+     * builder. The files are then copied by reference to the target
+     * directory, in the calling thread.
+     */
+    private void copyConcurrently(LuceneIndexDefinition definition, String jcrName, Directory sourceDir,
+                                  OakDirectory targetDir, BlobFactory blobFactory, String[] files)
+            throws IOException {
+        //Start with the largest files, which take longest
+        String[] sorted = files.clone();
+        Arrays.sort(sorted, Comparator.comparingLong((String f) -> fileLength(sourceDir, f)).reversed());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, files.length),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("lucene-index-import-%d").build());
+        try {
+            Map<String, Future<OakDirectory>> uploads = new HashMap<>();
+            for (String file : sorted) {
+                uploads.put(file, executor.submit(() -> {
+                    OakDirectory fileDir = new OakDirectory(EMPTY_NODE.builder(), jcrName, definition,
+                            false, blobFactory);
+                    sourceDir.copy(fileDir, file, file, IOContext.DEFAULT);
+                    return fileDir;
+                }));
+            }
+            //Add the files in the original order, like a sequential import
+            for (String file : files) {
+                uploads.get(file).get().copy(targetDir, file);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing " + jcrName, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Importing " + jcrName + " failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long fileLength(Directory dir, String file) {
+        try {
+            return dir.fileLength(file);
+        } catch (IOException e) {
+            return 0;
         }
     }
 }
@@ -23,13 +23,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.google.common.collect.Lists;
 import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.oak.InitialContentHelper;
 import org.apache.jackrabbit.oak.api.Blob;
 import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.StringUtils;
 import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexDefinition;
 import org.apache.jackrabbit.oak.plugins.index.lucene.OakAnalyzer;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.IndexConsistencyChecker.Level;
@@ -53,6 +57,7 @@ import static org.apache.jackrabbit.oak.plugins.index.lucene.FieldFactory.newPat
 import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -192,6 +197,135 @@ public class IndexConsistencyCheckerTest {
         assertFalse(result.dirStatus.get(0).status.clean);
     }
 
+    @Test
+    public void blobsCheckedConcurrently() throws Exception{
+        FailingBlob failingBlob = new FailingBlob("foo");
+
+        idx.setProperty("foo", failingBlob);
+        idx.child(":index").setProperty("foo", failingBlob);
+        idx.child("b").setProperty("foo", Lists.newArrayList(failingBlob, failingBlob), Type.BINARIES);
+        idx.child("c").setProperty("foo", new ArrayBasedBlob("bar".getBytes()));
+
+        NodeBuilder builder = EMPTY_NODE.builder();
+        builder.setChildNode("a", idx.getNodeState());
+
+        IndexConsistencyChecker checker = new IndexConsistencyChecker(builder.getNodeState(), "/a", temporaryFolder.getRoot());
+        checker.setThreadCount(3);
+        Result result = checker.check(Level.BLOBS_ONLY);
+
+        assertFalse(result.clean);
+        assertTrue(result.missingBlobs);
+        assertEquals(4, result.missingBlobIds.size());
+        assertEquals(5, result.blobCount);
+        assertEquals(3, result.binaryPropSize);
+
+        String json = result.toJson();
+        assertTrue(json.contains("\"/a\""));
+        assertTrue(json.contains("missingBlobIds"));
+        assertTrue(json.contains("timeTakenMillis"));
+
+        dumpResult(result);
+    }
+
+    @Test
+    public void validIndexCheckedConcurrently() throws Exception{
+        LuceneIndexDefinition defn = LuceneIndexDefinition.newBuilder(rootState, idx.getNodeState(), "/fooIndex").build();
+        Directory dir = new OakDirectory(idx, ":data", defn, false);
+        createIndex(dir, 100);
+
+        NodeBuilder builder = rootState.builder();
+        builder.setChildNode("fooIndex", idx.getNodeState());
+        NodeState indexState = builder.getNodeState();
+
+        IndexConsistencyChecker checker = new IndexConsistencyChecker(indexState, "/fooIndex", temporaryFolder.getRoot());
+        checker.setThreadCount(4);
+        checker.setVerifyDigest(true);
+        Result result = checker.check(Level.FULL);
+        assertTrue(result.clean);
+        assertTrue(result.blobCount > 1);
+        assertEquals(1, result.dirStatus.size());
+        assertEquals(100, result.dirStatus.get(0).numDocs);
+        assertTrue(result.toJson().contains("\":data\""));
+
+        dumpResult(result);
+    }
+
+    @Test
+    public void blobsWithDigestMismatch() throws Exception{
+        idx.child(":index").setProperty("valid", new DigestBlob("foo", "foo"));
+        idx.child(":index").setProperty("invalid", new DigestBlob("foo", "bar"));
+
+        NodeBuilder builder = EMPTY_NODE.builder();
+        builder.setChildNode("a", idx.getNodeState());
+
+        IndexConsistencyChecker checker = new IndexConsistencyChecker(builder.getNodeState(), "/a", temporaryFolder.getRoot());
+        Result result = checker.check(Level.BLOBS_ONLY);
+        assertTrue(result.clean);
+
+        checker.setVerifyDigest(true);
+        result = checker.check(Level.BLOBS_ONLY);
+        assertFalse(result.clean);
+        assertTrue(result.blobDigestMismatch);
+        assertFalse(result.blobSizeMismatch);
+        assertEquals(1, result.digestMismatchBlobIds.size());
+        assertTrue(result.digestMismatchBlobIds.get(0).startsWith("/a/:index/invalid/"));
+
+        dumpResult(result);
+    }
+
+    @Test
+    public void blobsCheckedWithSharedExecutor() throws Exception{
+        idx.child("b").setProperty("foo", new FailingBlob("foo"));
+        for (int i = 0; i < 20; i++) {
+            idx.child("c" + i).setProperty("foo", new ArrayBasedBlob("bar".getBytes()));
+        }
+
+        NodeBuilder builder = EMPTY_NODE.builder();
+        builder.setChildNode("a", idx.getNodeState());
+        builder.setChildNode("b", idx.getNodeState());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (String path : new String[] {"/a", "/b"}) {
+                IndexConsistencyChecker checker = new IndexConsistencyChecker(builder.getNodeState(), path, temporaryFolder.getRoot());
+                checker.setThreadCount(2);
+                checker.setExecutor(executor);
+                Result result = checker.check(Level.BLOBS_ONLY);
+
+                assertFalse(result.clean);
+                assertEquals(1, result.missingBlobIds.size());
+                assertEquals(21, result.blobCount);
+                assertEquals(60, result.binaryPropSize);
+            }
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void workDirOfSameNamedIndexes() throws Exception{
+        LuceneIndexDefinition defn = LuceneIndexDefinition.newBuilder(rootState, idx.getNodeState(), "/fooIndex").build();
+        Directory dir = new OakDirectory(idx, ":data", defn, false);
+        createIndex(dir, 10);
+
+        NodeBuilder builder = rootState.builder();
+        builder.child("a").child("oak:index").setChildNode("fooIndex", idx.getNodeState());
+        builder.child("b").child("oak:index").setChildNode("fooIndex", idx.getNodeState());
+        NodeState indexState = builder.getNodeState();
+
+        String pathA = "/a/oak:index/fooIndex";
+        String pathB = "/b/oak:index/fooIndex";
+        assertNotEquals(IndexConsistencyChecker.getWorkDirName(pathA), IndexConsistencyChecker.getWorkDirName(pathB));
+
+        for (String path : new String[] {pathA, pathB}) {
+            IndexConsistencyChecker checker = new IndexConsistencyChecker(indexState, path, temporaryFolder.getRoot());
+            assertTrue(checker.check(Level.FULL, false).clean);
+        }
+        assertTrue(new File(temporaryFolder.getRoot(), IndexConsistencyChecker.getWorkDirName(pathA)).isDirectory());
+        assertTrue(new File(temporaryFolder.getRoot(), IndexConsistencyChecker.getWorkDirName(pathB)).isDirectory());
+    }
+
     private void createIndex(Directory dir, int numOfDocs) throws IOException {
         IndexWriter w = new IndexWriter(dir, new IndexWriterConfig(Version.LUCENE_47, new OakAnalyzer(Version.LUCENE_47)));
         for (int i = 0; i < numOfDocs; i++) {
@@ -242,5 +376,24 @@ public class IndexConsistencyCheckerTest {
         }
     }
 
+    /**
+     * Blob with an id like the DataStore ones, derived from the SHA-256 digest
+     * of the given id content
+     */
+    private static class DigestBlob extends ArrayBasedBlob {
+        private final String id;
+
+        public DigestBlob(String content, String idContent) throws Exception {
+            super(content.getBytes());
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(idContent.getBytes());
+            this.id = StringUtils.convertBytesToHex(digest) + "#" + idContent.length();
+        }
+
+        @Override
+        public String getContentIdentity() {
+            return id;
+        }
+    }
+
 
 }
@@ -21,16 +21,17 @@ package org.apache.jackrabbit.oak.plugins.index.lucene.directory;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Set;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
 import org.apache.jackrabbit.oak.InitialContentHelper;
 import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexDefinition;
 import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexEditorContext;
 import org.apache.jackrabbit.oak.plugins.index.lucene.util.LuceneIndexDefinitionBuilder;
 import org.apache.jackrabbit.oak.plugins.index.lucene.writer.MultiplexersLucene;
+import org.apache.jackrabbit.oak.spi.blob.GarbageCollectableBlobStore;
+import org.apache.jackrabbit.oak.spi.blob.MemoryBlobStore;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.ReadOnlyBuilder;
@@ -101,6 +102,48 @@ public class LuceneIndexImporterTest {
         assertNotNull(importedUid);
     }
 
+    @Test
+    public void importConcurrently() throws Exception{
+        importWithThreads(new MemoryBlobStore());
+    }
+
+    @Test
+    public void importWithThreadsWithoutBlobStore() throws Exception{
+        //Blobs are then created by the definition builder, sequentially
+        importWithThreads(null);
+    }
+
+    private void importWithThreads(GarbageCollectableBlobStore blobStore) throws Exception{
+        NodeState baseIndexState = idx.getNodeState();
+        LuceneIndexDefinition defn = LuceneIndexDefinition.newBuilder(rootState, baseIndexState, "/oak:index/fooIndex").build();
+
+        LuceneIndexEditorContext.configureUniqueId(idx);
+
+        String dirName = ":data";
+        Directory dir = new OakDirectory(idx, dirName, defn, false);
+        for (int i = 0; i < 10; i++) {
+            createFile(dir, "foo" + i + ".txt", Strings.repeat("Test content " + i, i * 1000));
+        }
+        dir.close();
+
+        NodeBuilder builder = rootState.builder();
+        builder.child("oak:index").setChildNode("fooIndex", idx.getNodeState());
+        NodeState indexState = builder.getNodeState();
+
+        File out = temporaryFolder.newFolder();
+        LuceneIndexDumper dumper = new LuceneIndexDumper(indexState, "/oak:index/fooIndex", out);
+        dumper.dump();
+
+        LuceneIndexImporter importer = new LuceneIndexImporter(blobStore);
+        importer.setThreadCount(4);
+        NodeBuilder newIdxBuilder = indexState.builder().getChildNode("oak:index").getChildNode("fooIndex");
+        importer.importIndex(rootState, newIdxBuilder, dumper.getIndexDir());
+
+        NodeState exportedIndexState = indexState.getChildNode("oak:index").getChildNode("fooIndex");
+        NodeState importedIndexState = newIdxBuilder.getNodeState();
+        assertDirectoryEquals(defn, exportedIndexState, importedIndexState, dirName);
+    }
+
     private static void assertDirectoryEquals(LuceneIndexDefinition defn, NodeState expected, NodeState actual, String dirName) throws IOException {
         OakDirectory dir1 = new OakDirectory(new ReadOnlyBuilder(expected), dirName, defn, true);
         OakDirectory dir2 = new OakDirectory(new ReadOnlyBuilder(actual), dirName, defn, true);
@@ -119,8 +162,9 @@ public class LuceneIndexImporterTest {
         }
     }
 
-    private static Set<List<String>> fileNameSet(Directory expected) throws IOException {
-        return ImmutableSet.of(Arrays.asList(expected.listAll()));
+    private static Set<String> fileNameSet(Directory expected) throws IOException {
+        //The order of the files depends on the order in the dump directory
+        return ImmutableSet.copyOf(expected.listAll());
     }
 
     private static byte[] toBytes(IndexInput input) throws IOException {
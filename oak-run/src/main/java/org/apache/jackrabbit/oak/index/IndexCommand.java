@@ -32,6 +32,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
@@ -42,6 +43,7 @@ import org.apache.commons.io.FileUtils;
 import org.apache.felix.inventory.Format;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.index.indexer.document.DocumentStoreIndexer;
+import org.apache.jackrabbit.oak.index.indexer.segment.SegmentStoreIndexer;
 import org.apache.jackrabbit.oak.plugins.index.importer.IndexDefinitionUpdater;
 import org.apache.jackrabbit.oak.run.cli.CommonOptions;
 import org.apache.jackrabbit.oak.run.cli.DocumentBuilderCustomizer;
@@ -67,12 +69,14 @@ public class IndexCommand implements Command {
     public static final String INDEX_DEFINITIONS_JSON = "index-definitions.json";
     public static final String INDEX_INFO_TXT = "index-info.txt";
     public static final String INDEX_CONSISTENCY_CHECK_TXT = "index-consistency-check-report.txt";
+    public static final String INDEX_CONSISTENCY_CHECK_JSON = "index-consistency-check-report.json";
 
     private final String summary = "Provides index management related operations";
 
     private File info;
     private File definitions;
     private File consistencyCheckReport;
+    private File consistencyCheckJsonReport;
     private Options opts;
     private IndexOptions indexOpts;
     private static boolean disableExitOnError;
@@ -142,6 +146,10 @@ public class IndexCommand implements Command {
         if (consistencyCheckReport != null) {
             System.out.printf("Index consistency check report stored at %s%n", getPath(consistencyCheckReport));
         }
+
+        if (consistencyCheckJsonReport != null) {
+            System.out.printf("Index consistency check json report stored at %s%n", getPath(consistencyCheckJsonReport));
+        }
     }
 
     private void execute(NodeStoreFixture fixture,  IndexOptions indexOpts, Closer closer)
@@ -222,6 +230,12 @@ public class IndexCommand implements Command {
             try (DocumentStoreIndexer indexer = new DocumentStoreIndexer(indexHelper, indexerSupport)) {
                 indexer.reindex();
             }
+        } else if (!opts.getCommonOpts().isDocument() && idxOpts.getIndexThreads() > 1) {
+            log.info("Using {} threads to perform reindexing", idxOpts.getIndexThreads());
+            try (SegmentStoreIndexer indexer = new SegmentStoreIndexer(indexHelper, indexerSupport,
+                    idxOpts.getIndexThreads())) {
+                indexer.reindex();
+            }
         } else {
             try (OutOfBandIndexer indexer = new OutOfBandIndexer(indexHelper, indexerSupport)) {
                 indexer.reindex();
@@ -300,11 +314,16 @@ public class IndexCommand implements Command {
     private void performConsistencyCheck(IndexOptions indexOpts, IndexHelper indexHelper) throws IOException {
         if (indexOpts.checkConsistency()) {
             IndexConsistencyCheckPrinter printer =
-                    new IndexConsistencyCheckPrinter(indexHelper, indexOpts.consistencyCheckLevel());
+                    new IndexConsistencyCheckPrinter(indexHelper, indexOpts.consistencyCheckLevel(),
+                            indexOpts.consistencyCheckThreads());
             PrinterDumper dumper = new PrinterDumper(indexHelper.getOutputDir(), INDEX_CONSISTENCY_CHECK_TXT,
                     false, Format.TEXT, printer);
             dumper.dump();
             consistencyCheckReport = dumper.getOutFile();
+
+            File jsonReport = new File(indexHelper.getOutputDir(), INDEX_CONSISTENCY_CHECK_JSON);
+            FileUtils.writeStringToFile(jsonReport, printer.getJsonReport(), Charsets.UTF_8);
+            consistencyCheckJsonReport = jsonReport;
         }
     }
 
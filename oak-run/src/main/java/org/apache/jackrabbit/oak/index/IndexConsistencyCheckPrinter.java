@@ -19,17 +19,24 @@
 
 package org.apache.jackrabbit.oak.index;
 
-import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.output.WriterOutputStream;
 import org.apache.felix.inventory.Format;
 import org.apache.felix.inventory.InventoryPrinter;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.IndexConsistencyChecker;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.IndexConsistencyChecker.Level;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
@@ -38,13 +45,29 @@ import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.TYPE_LUCENE;
 
+/**
+ * Checks the Lucene indexes and prints the outcome. With more than one thread
+ * multiple indexes are checked concurrently, and the checkers read the blobs
+ * with one shared pool of the same number of threads, so no more than that
+ * many blobs are read at a time. The output of each index is buffered, so the
+ * report lists the indexes in the same order in either case.
+ * A machine readable summary is available via {@link #getJsonReport()} once
+ * the check is done.
+ */
 class IndexConsistencyCheckPrinter implements InventoryPrinter {
     private final IndexHelper indexHelper;
     private final Level level;
+    private final int threads;
+    private String jsonReport;
 
     public IndexConsistencyCheckPrinter(IndexHelper indexHelper, int level) {
+        this(indexHelper, level, 1);
+    }
+
+    public IndexConsistencyCheckPrinter(IndexHelper indexHelper, int level, int threads) {
         this.indexHelper = indexHelper;
         this.level = level == 1 ? Level.BLOBS_ONLY : Level.FULL;
+        this.threads = Math.max(1, threads);
     }
 
     @Override
@@ -55,43 +78,135 @@ class IndexConsistencyCheckPrinter implements InventoryPrinter {
         List<String> validIndexes = new ArrayList<>();
         List<String> invalidIndexes = new ArrayList<>();
         List<String> ignoredIndexes = new ArrayList<>();
+        List<String> checkedIndexes = new ArrayList<>();
 
         for (String indexPath : indexHelper.getIndexPathService().getIndexPaths()) {
             NodeState indexState = NodeStateUtils.getNode(root, indexPath);
             if (!TYPE_LUCENE.equals(indexState.getString(TYPE_PROPERTY_NAME))){
                 ignoredIndexes.add(indexPath);
-                continue;
+            } else {
+                checkedIndexes.add(indexPath);
             }
+        }
+
+        JsopBuilder json = new JsopBuilder();
+        json.object();
+        json.key("level").value(level.name());
+        json.key("threads").value(threads);
+        json.key("indexes").array();
 
-            IndexConsistencyChecker checker = new IndexConsistencyChecker(root, indexPath, indexHelper.getWorkDir());
-            checker.setPrintStream(new PrintStream(new WriterOutputStream(pw, Charsets.UTF_8)));
-            try {
-                IndexConsistencyChecker.Result result = checker.check(level);
-                result.dump(pw);
-                if (result.clean) {
-                    validIndexes.add(indexPath);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("index-consistency-check-printer-%d")
+                .build());
+        ExecutorService blobExecutor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("index-consistency-check-blobs-%d")
+                .build());
+        try {
+            List<Future<IndexCheck>> futures = new ArrayList<>();
+            for (String indexPath : checkedIndexes) {
+                futures.add(executor.submit(() -> check(root, indexPath, blobExecutor)));
+            }
+            for (Future<IndexCheck> f : futures) {
+                IndexCheck check = getCheck(f);
+                pw.print(check.output);
+                if (check.result != null) {
+                    check.result.toJson(json);
                 } else {
-                    invalidIndexes.add(indexPath);
+                    json.object();
+                    json.key("indexPath").value(check.indexPath);
+                    json.key("clean").value(false);
+                    json.key("error").value(check.error.toString());
+                    json.endObject();
                 }
-                System.out.printf("%s => %s%n", indexPath, result.clean ? "valid" : "invalid <==");
-            } catch (Exception e) {
-                invalidIndexes.add(indexPath);
-                pw.printf("Error occurred while performing consistency check for index [%s]%n", indexPath);
-                e.printStackTrace(pw);
+                if (check.result != null && check.result.clean) {
+                    validIndexes.add(check.indexPath);
+                } else {
+                    invalidIndexes.add(check.indexPath);
+                }
+                pw.println();
             }
-            pw.println();
+        } finally {
+            executor.shutdownNow();
+            blobExecutor.shutdownNow();
         }
 
+        json.endArray();
+        json.key("ignored").array();
+        for (String indexPath : ignoredIndexes) {
+            json.value(indexPath);
+        }
+        json.endArray();
+        json.key("timeTakenMillis").value(watch.elapsed(TimeUnit.MILLISECONDS));
+        json.endObject();
+        jsonReport = JsopBuilder.prettyPrint(json.toString());
+
         print(validIndexes, "Valid indexes :", pw);
         print(invalidIndexes, "Invalid indexes :", pw);
         print(ignoredIndexes, "Ignored indexes as these are not of type lucene:", pw);
         pw.printf("Time taken %s%n", watch);
     }
 
+    /**
+     * Returns the outcome of the last check as JSON, or null if no check was done
+     */
+    public String getJsonReport() {
+        return jsonReport;
+    }
+
+    private IndexCheck check(NodeState root, String indexPath, ExecutorService blobExecutor) {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        IndexCheck check = new IndexCheck(indexPath);
+        IndexConsistencyChecker checker = new IndexConsistencyChecker(root, indexPath, indexHelper.getWorkDir());
+        PrintStream ps = new PrintStream(new WriterOutputStream(pw, Charsets.UTF_8), true);
+        checker.setPrintStream(ps);
+        checker.setThreadCount(threads);
+        checker.setExecutor(blobExecutor);
+        checker.setVerifyDigest(level == Level.FULL);
+        try {
+            check.result = checker.check(level);
+            ps.flush();
+            check.result.dump(pw);
+            System.out.printf("%s => %s%n", indexPath, check.result.clean ? "valid" : "invalid <==");
+        } catch (Exception e) {
+            check.error = e;
+            ps.flush();
+            pw.printf("Error occurred while performing consistency check for index [%s]%n", indexPath);
+            e.printStackTrace(pw);
+        }
+        pw.flush();
+        check.output = sw.toString();
+        return check;
+    }
+
+    private static IndexCheck getCheck(Future<IndexCheck> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
     private static void print(List<String> indexPaths, String message, PrintWriter pw) {
         if (!indexPaths.isEmpty()) {
             pw.println(message);
             indexPaths.forEach((path) -> pw.printf("    - %s%n", path));
         }
     }
+
+    private static final class IndexCheck {
+        final String indexPath;
+        IndexConsistencyChecker.Result result;
+        Exception error;
+        String output;
+
+        IndexCheck(String indexPath) {
+            this.indexPath = indexPath;
+        }
+    }
 }
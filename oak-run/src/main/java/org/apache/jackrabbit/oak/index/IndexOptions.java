@@ -52,7 +52,9 @@ public class IndexOptions implements OptionsBean {
     private final OptionSpec<Void> reindex;
     private final OptionSpec<Void> importIndex;
     private final OptionSpec<Void> docTraversal;
+    private final OptionSpec<Integer> indexThreads;
     private final OptionSpec<Integer> consistencyCheck;
+    private final OptionSpec<Integer> consistencyCheckThreads;
     private OptionSet options;
     private final Set<OptionSpec> actionOpts;
     private final OptionSpec<String> indexPaths;
@@ -86,6 +88,10 @@ public class IndexOptions implements OptionsBean {
                 "for indexes as specified by --index-paths (if this not set, all indexes are checked). Currently " +
                 "only Lucene indexes are supported. Possible values 1 - Basic check, 2 - Full check (slower)")
                 .withOptionalArg().ofType(Integer.class).defaultsTo(1);
+        consistencyCheckThreads = parser.accepts("index-consistency-check-threads", "Number of threads used " +
+                "for consistency check. With more than one thread indexes are checked concurrently and the " +
+                "blobs of each index are read concurrently")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(1);
 
         dumpIndex = parser.accepts("index-dump", "Dumps index content");
         reindex = parser.accepts("reindex", "Reindex the indexes specified by --index-paths or --index-definitions-file");
@@ -93,6 +99,10 @@ public class IndexOptions implements OptionsBean {
         importIndex = parser.accepts("index-import", "Imports index");
         docTraversal = parser.accepts("doc-traversal-mode", "Use Document traversal mode for reindex in " +
                 "DocumentNodeStore setups. This may provide better performance in some cases (experimental)");
+        indexThreads = parser.accepts("index-threads", "Number of threads used to traverse the repository for " +
+                "reindex in SegmentNodeStore setups. With more than one thread subtrees are indexed concurrently. " +
+                "Only Lucene indexes are supported (experimental)")
+                .withRequiredArg().ofType(Integer.class).defaultsTo(1);
 
         indexImportDir = parser.accepts("index-import-dir", "Directory containing index files. This " +
                 "is required when --index-import operation is selected")
@@ -174,6 +184,10 @@ public class IndexOptions implements OptionsBean {
         return consistencyCheck.value(options);
     }
 
+    public int consistencyCheckThreads(){
+        return consistencyCheckThreads.value(options);
+    }
+
     public boolean isReindex() {
         return options.has(reindex);
     }
@@ -186,6 +200,10 @@ public class IndexOptions implements OptionsBean {
         return  options.has(docTraversal);
     }
 
+    public int getIndexThreads() {
+        return indexThreads.value(options);
+    }
+
     public String getCheckpoint(){
         return checkpoint.value(options);
     }
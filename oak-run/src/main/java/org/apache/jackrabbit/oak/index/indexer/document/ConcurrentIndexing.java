@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.index.indexer.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.index.IndexHelper;
+import org.apache.jackrabbit.oak.index.IndexerSupport;
+import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
+import org.apache.jackrabbit.oak.plugins.index.progress.IndexingProgressReporter;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
+
+/**
+ * Indexing steps shared by the indexers of the document and the segment
+ * node store: preparing the index definitions and creating the indexers,
+ * and indexing with multiple threads, each into its own Lucene
+ * directories, which are added to the indexes at the end.
+ */
+public final class ConcurrentIndexing {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrentIndexing.class);
+
+    private ConcurrentIndexing() {
+    }
+
+    /**
+     * A task, which indexes part of the content into the given directory.
+     */
+    public interface IndexTask {
+
+        /**
+         * @param task the number of the task.
+         * @param indexDir the directory to write the indexes to.
+         * @return the timings of the task, which are logged.
+         */
+        String index(int task, File indexDir) throws IOException, CommitFailedException;
+    }
+
+    /**
+     * Creates the indexers for the configured index paths. The index state
+     * below each definition is removed, and the reindex flag is reset.
+     *
+     * @param paths the paths of the indexes, for which an indexer was
+     *              created, are added to this set.
+     */
+    public static List<NodeStateIndexer> createIndexers(IndexHelper indexHelper, NodeState root, NodeBuilder builder,
+                                                        List<? extends NodeStateIndexerProvider> providers,
+                                                        IndexingProgressReporter reporter,
+                                                        Set<String> paths) {
+        List<NodeStateIndexer> indexers = new ArrayList<>();
+        for (String indexPath : indexHelper.getIndexPaths()) {
+            NodeState indexState = NodeStateUtils.getNode(root, indexPath);
+            NodeBuilder idxBuilder = IndexerSupport.childBuilder(builder, indexPath, false);
+            String type = indexState.getString(TYPE_PROPERTY_NAME);
+            if (type == null) {
+                log.warn("No 'type' property found on indexPath [{}]. Skipping it", indexPath);
+                continue;
+            }
+
+            removeIndexState(idxBuilder);
+
+            idxBuilder.setProperty(IndexConstants.REINDEX_PROPERTY_NAME, false);
+
+            for (NodeStateIndexerProvider indexerProvider : providers) {
+                NodeStateIndexer indexer = indexerProvider.getIndexer(type, indexPath, idxBuilder, root, reporter);
+                if (indexer != null) {
+                    indexers.add(indexer);
+                    reporter.registerIndex(indexPath, true, -1);
+                    paths.add(indexPath);
+                }
+            }
+        }
+
+        return indexers;
+    }
+
+    /**
+     * Runs the given number of tasks with a thread each, and adds the
+     * indexes written by the tasks to the indexes of the provider.
+     *
+     * @param name the name of the tasks, used for the threads and the work
+     *             directory below the given directory.
+     * @param taskCount the number of tasks.
+     * @param workDir the work directory.
+     * @param task the task.
+     * @param provider the provider of the indexes to add to.
+     * @param indexPaths the paths of the indexes.
+     * @param builder the root builder.
+     * @param root the root state.
+     */
+    public static void indexConcurrently(String name, int taskCount, File workDir, IndexTask task,
+                                         LuceneIndexerProvider provider, Set<String> indexPaths,
+                                         NodeBuilder builder, NodeState root)
+            throws IOException, CommitFailedException {
+        File tasksDir = new File(workDir, "indexing-" + name);
+        List<File> indexDirs = new ArrayList<>();
+        List<Future<String>> results = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(taskCount,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("indexing-" + name + "-%d").build());
+        try {
+            for (int i = 0; i < taskCount; i++) {
+                File indexDir = new File(tasksDir, "index-" + i);
+                FileUtils.forceMkdir(indexDir);
+                indexDirs.add(indexDir);
+                int n = i;
+                results.add(executor.submit(() -> task.index(n, indexDir)));
+            }
+            for (Future<String> result : results) {
+                log.info(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing", e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class, CommitFailedException.class);
+            throw new IOException("Indexing failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Stopwatch w = Stopwatch.createStarted();
+        for (String indexPath : indexPaths) {
+            NodeBuilder idxBuilder = IndexerSupport.childBuilder(builder, indexPath, false);
+            provider.addIndexes(indexPath, idxBuilder, root, indexDirs);
+        }
+        log.info("Merged indexes of {} {} in {}", taskCount, name, w);
+        FileUtils.deleteQuietly(tasksDir);
+    }
+
+    //TODO OAK-7098 - Taken from IndexUpdate. Refactor to abstract out common logic like this
+    private static void removeIndexState(NodeBuilder definition) {
+        // as we don't know the index content node name
+        // beforehand, we'll remove all child nodes
+        for (String rm : definition.getChildNodeNames()) {
+            if (NodeStateUtils.isHidden(rm)) {
+                NodeBuilder childNode = definition.getChildNode(rm);
+                if (!childNode.getBoolean(IndexConstants.REINDEX_RETAIN)) {
+                    definition.getChildNode(rm).remove();
+                }
+            }
+        }
+    }
+}
@@ -20,8 +20,8 @@
 package org.apache.jackrabbit.oak.index.indexer.document;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -34,12 +34,13 @@ import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.index.IndexHelper;
 import org.apache.jackrabbit.oak.index.IndexerSupport;
 import org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileNodeStoreBuilder;
+import org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileSplitter;
 import org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileStore;
+import org.apache.jackrabbit.oak.index.indexer.document.flatfile.IncrementalStoreBuilder;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeState;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.util.MongoConnection;
-import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
 import org.apache.jackrabbit.oak.plugins.index.NodeTraversalCallback;
 import org.apache.jackrabbit.oak.plugins.index.progress.IndexingProgressReporter;
@@ -50,16 +51,26 @@ import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
 import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
-import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
 
 public class DocumentStoreIndexer implements Closeable{
+    /**
+     * Number of partitions of the flat file store to index concurrently.
+     */
+    public static final String OAK_INDEXER_PARTITION_COUNT = "oak.indexer.partitionCount";
+    /**
+     * Sorted file of a flat file store built for the checkpoint configured
+     * with {@value #OAK_INDEXER_PREVIOUS_CHECKPOINT}. If both are set, the
+     * flat file store is built from this file and the changes since that
+     * checkpoint instead of traversing the repository.
+     */
+    public static final String OAK_INDEXER_PREVIOUS_SORTED_FILE = "oak.indexer.previousSortedFile";
+    public static final String OAK_INDEXER_PREVIOUS_CHECKPOINT = "oak.indexer.previousCheckpoint";
     private final Logger log = LoggerFactory.getLogger(getClass());
     private final Logger traversalLog = LoggerFactory.getLogger(DocumentStoreIndexer.class.getName()+".traversal");
     private final Closer closer = Closer.create();
@@ -69,6 +80,7 @@ public class DocumentStoreIndexer implements Closeable{
     private final IndexingProgressReporter progressReporter =
             new IndexingProgressReporter(IndexUpdateCallback.NOOP, NodeTraversalCallback.NOOP);
     private final Set<String> indexerPaths = new HashSet<>();
+    private final int partitionCount = Integer.getInteger(OAK_INDEXER_PARTITION_COUNT, 1);
 
     public DocumentStoreIndexer(IndexHelper indexHelper, IndexerSupport indexerSupport) throws IOException {
         this.indexHelper = indexHelper;
@@ -91,25 +103,13 @@ public class DocumentStoreIndexer implements Closeable{
 
         closer.register(indexer);
 
-        //TODO How to ensure we can safely read from secondary
-        DocumentNodeState rootDocumentState = (DocumentNodeState) checkpointedState;
         DocumentNodeStore nodeStore = (DocumentNodeStore) indexHelper.getNodeStore();
 
-        NodeStateEntryTraverser nsep =
-                new NodeStateEntryTraverser(rootDocumentState.getRootRevision(),
-                        nodeStore, getMongoDocumentStore())
-                        .withProgressCallback(this::reportDocumentRead)
-                        .withPathPredicate(indexer::shouldInclude);
-        closer.register(nsep);
-
         //As first traversal is for dumping change the message prefix
         progressReporter.setMessagePrefix("Dumping");
 
         //TODO Use flatFileStore only if we have relative nodes to be indexed
-        FlatFileStore flatFileStore = new FlatFileNodeStoreBuilder(nsep, indexHelper.getWorkDir())
-                .withBlobStore(indexHelper.getGCBlobStore())
-                .withPreferredPathElements(indexer.getRelativeIndexedNodeNames())
-                .build();
+        FlatFileStore flatFileStore = buildFlatFileStore(indexer, nodeStore, checkpointedState);
         closer.register(flatFileStore);
 
         progressReporter.reset();
@@ -117,16 +117,20 @@ public class DocumentStoreIndexer implements Closeable{
             progressReporter.setNodeCountEstimator((String basePath, Set<String> indexPaths) -> flatFileStore.getEntryCount());
         }
 
-        progressReporter.reindexingTraversalStart("/");
-
         Stopwatch indexerWatch = Stopwatch.createStarted();
-        for (NodeStateEntry entry : flatFileStore) {
-            reportDocumentRead(entry.getPath());
-            indexer.index(entry);
-        }
+        if (canIndexPartitions()) {
+            indexPartitions(flatFileStore, copyOnWriteStore.getRoot(), builder);
+        } else {
+            progressReporter.reindexingTraversalStart("/");
+
+            for (NodeStateEntry entry : flatFileStore) {
+                reportDocumentRead(entry.getPath());
+                indexer.index(entry);
+            }
 
-        progressReporter.reindexingTraversalEnd();
-        progressReporter.logReport();
+            progressReporter.reindexingTraversalEnd();
+            progressReporter.logReport();
+        }
         log.info("Completed the indexing in {}", indexerWatch);
 
         copyOnWriteStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
@@ -134,6 +138,40 @@ public class DocumentStoreIndexer implements Closeable{
         indexerSupport.postIndexWork(copyOnWriteStore);
     }
 
+    private FlatFileStore buildFlatFileStore(CompositeIndexer indexer, DocumentNodeStore nodeStore,
+                                             NodeState checkpointedState) throws IOException {
+        String previousSortedFile = System.getProperty(OAK_INDEXER_PREVIOUS_SORTED_FILE);
+        String previousCheckpoint = System.getProperty(OAK_INDEXER_PREVIOUS_CHECKPOINT);
+        if (previousSortedFile != null && previousCheckpoint != null) {
+            NodeState previousState = nodeStore.retrieve(previousCheckpoint);
+            if (previousState == null) {
+                throw new IllegalArgumentException("Previous checkpoint [" + previousCheckpoint + "] configured via " +
+                        "system property '" + OAK_INDEXER_PREVIOUS_CHECKPOINT + "' does not exist");
+            }
+            log.info("Building flat file store from [{}] and changes since checkpoint [{}]",
+                    previousSortedFile, previousCheckpoint);
+            return new IncrementalStoreBuilder(new File(previousSortedFile), previousState, checkpointedState,
+                    indexHelper.getWorkDir())
+                    .withBlobStore(indexHelper.getGCBlobStore())
+                    .withPreferredPathElements(indexer.getRelativeIndexedNodeNames())
+                    .withPathPredicate(indexer::shouldInclude)
+                    .build();
+        }
+        //TODO How to ensure we can safely read from secondary
+        DocumentNodeState rootDocumentState = (DocumentNodeState) checkpointedState;
+        NodeStateEntryTraverser nsep =
+                new NodeStateEntryTraverser(rootDocumentState.getRootRevision(),
+                        nodeStore, getMongoDocumentStore())
+                        .withProgressCallback(this::reportDocumentRead)
+                        .withPathPredicate(indexer::shouldInclude);
+        closer.register(nsep);
+        return new FlatFileNodeStoreBuilder(nsep, indexHelper.getWorkDir())
+                .withBlobStore(indexHelper.getGCBlobStore())
+                .withPreferredPathElements(indexer.getRelativeIndexedNodeNames())
+                .withNodeDocumentSource(getMongoDocumentStore(), nsep::getIncludedEntries)
+                .build();
+    }
+
     private MongoDocumentStore getMongoDocumentStore() {
         return checkNotNull(indexHelper.getService(MongoDocumentStore.class));
     }
@@ -174,33 +212,83 @@ public class DocumentStoreIndexer implements Closeable{
         traversalLog.trace(id);
     }
 
-    protected CompositeIndexer prepareIndexers(NodeStore copyOnWriteStore, NodeBuilder builder) {
-        NodeState root = copyOnWriteStore.getRoot();
-        List<NodeStateIndexer> indexers = new ArrayList<>();
-        for (String indexPath : indexHelper.getIndexPaths()) {
-            NodeState indexState = NodeStateUtils.getNode(root, indexPath);
-            NodeBuilder idxBuilder = IndexerSupport.childBuilder(builder, indexPath, false);
-            String type = indexState.getString(TYPE_PROPERTY_NAME);
-            if (type == null) {
-                log.warn("No 'type' property found on indexPath [{}]. Skipping it", indexPath);
-                continue;
-            }
+    /**
+     * Splits the flat file store into partitions at subtree boundaries and
+     * indexes the partitions concurrently. Each partition is indexed into
+     * separate Lucene directories, which are added to the indexes in the
+     * local index directory at the end.
+     */
+    private void indexPartitions(FlatFileStore flatFileStore, NodeState root, NodeBuilder builder)
+            throws IOException, CommitFailedException {
+        List<FlatFileStore> partitions = new FlatFileSplitter(flatFileStore, partitionCount).split();
+        log.info("Indexing {} partitions concurrently", partitions.size());
+        ConcurrentIndexing.indexConcurrently("partitions", partitions.size(), indexHelper.getWorkDir(),
+                (partition, indexDir) -> indexPartition(partition, partitions.get(partition), root, indexDir),
+                getLuceneIndexerProvider(), indexerPaths, builder, root);
+    }
 
-            removeIndexState(idxBuilder);
+    /**
+     * Indexes the entries of a partition with separate indexers. Each
+     * partition reports its own progress, with the number of entries in the
+     * partition as estimate.
+     *
+     * @return the timings of the partition.
+     */
+    private String indexPartition(int partition, FlatFileStore store, NodeState root, File indexDir)
+            throws IOException, CommitFailedException {
+        Stopwatch w = Stopwatch.createStarted();
+        IndexingProgressReporter reporter =
+                new IndexingProgressReporter(IndexUpdateCallback.NOOP, NodeTraversalCallback.NOOP);
+        reporter.setMessagePrefix("Indexing partition " + partition);
+        if (store.getEntryCount() > 0) {
+            reporter.setNodeCountEstimator((String basePath, Set<String> indexPaths) -> store.getEntryCount());
+        }
+        long count = 0;
+        try (Closer partitionCloser = Closer.create()) {
+            partitionCloser.register(store);
+            LuceneIndexerProvider provider = partitionCloser.register(new LuceneIndexerProvider(indexHelper, indexDir));
+            List<NodeStateIndexer> indexers = ConcurrentIndexing.createIndexers(indexHelper, root, root.builder(),
+                    ImmutableList.of(provider), reporter, new HashSet<>());
+            indexers.forEach(partitionCloser::register);
+            CompositeIndexer indexer = new CompositeIndexer(indexers);
+            reporter.reindexingTraversalStart("/");
+            for (NodeStateEntry entry : store) {
+                reporter.traversedNode(entry::getPath);
+                indexer.index(entry);
+                count++;
+            }
+            reporter.reindexingTraversalEnd();
+            reporter.logReport();
+            log.info("Partition {}: traversed {} entries in {}, closing indexers", partition, count, w);
+        }
+        return String.format("Partition %d: indexed %d entries in %s", partition, count, w);
+    }
 
-            idxBuilder.setProperty(IndexConstants.REINDEX_PROPERTY_NAME, false);
+    private boolean canIndexPartitions() {
+        if (partitionCount <= 1) {
+            return false;
+        }
+        if (indexHelper.getMountInfoProvider().hasNonDefaultMounts()) {
+            log.warn("Partitioned indexing ({}) is not supported with non default mounts", OAK_INDEXER_PARTITION_COUNT);
+            return false;
+        }
+        return true;
+    }
 
-            for (NodeStateIndexerProvider indexerProvider : indexerProviders) {
-                NodeStateIndexer indexer = indexerProvider.getIndexer(type, indexPath, idxBuilder, root, progressReporter);
-                if (indexer != null) {
-                    indexers.add(indexer);
-                    closer.register(indexer);
-                    progressReporter.registerIndex(indexPath, true, -1);
-                    indexerPaths.add(indexPath);
-                }
+    private LuceneIndexerProvider getLuceneIndexerProvider() {
+        for (NodeStateIndexerProvider provider : indexerProviders) {
+            if (provider instanceof LuceneIndexerProvider) {
+                return (LuceneIndexerProvider) provider;
             }
         }
+        throw new IllegalStateException("No LuceneIndexerProvider configured");
+    }
 
+    protected CompositeIndexer prepareIndexers(NodeStore copyOnWriteStore, NodeBuilder builder) {
+        NodeState root = copyOnWriteStore.getRoot();
+        List<NodeStateIndexer> indexers = ConcurrentIndexing.createIndexers(indexHelper, root, builder,
+                indexerProviders, progressReporter, indexerPaths);
+        indexers.forEach(closer::register);
         return new CompositeIndexer(indexers);
     }
 
@@ -216,18 +304,4 @@ public class DocumentStoreIndexer implements Closeable{
     private NodeStateIndexerProvider createLuceneIndexProvider() throws IOException {
         return new LuceneIndexerProvider(indexHelper, indexerSupport);
     }
-
-    //TODO OAK-7098 - Taken from IndexUpdate. Refactor to abstract out common logic like this
-    private void removeIndexState(NodeBuilder definition) {
-        // as we don't know the index content node name
-        // beforehand, we'll remove all child nodes
-        for (String rm : definition.getChildNodeNames()) {
-            if (NodeStateUtils.isHidden(rm)) {
-                NodeBuilder childNode = definition.getChildNode(rm);
-                if (!childNode.getBoolean(IndexConstants.REINDEX_RETAIN)) {
-                    definition.getChildNode(rm).remove();
-                }
-            }
-        }
-    }
 }
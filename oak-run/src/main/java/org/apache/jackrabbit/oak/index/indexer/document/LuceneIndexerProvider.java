@@ -19,9 +19,13 @@
 
 package org.apache.jackrabbit.oak.index.indexer.document;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.io.Closer;
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.oak.index.IndexHelper;
 import org.apache.jackrabbit.oak.index.IndexerSupport;
@@ -30,15 +34,21 @@ import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexWriterFactory;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.DirectoryFactory;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.FSDirectoryFactory;
 import org.apache.jackrabbit.oak.plugins.index.lucene.writer.DefaultIndexWriterFactory;
+import org.apache.jackrabbit.oak.plugins.index.lucene.writer.IndexWriterUtils;
 import org.apache.jackrabbit.oak.plugins.index.lucene.writer.LuceneIndexWriter;
+import org.apache.jackrabbit.oak.plugins.index.lucene.writer.LuceneIndexWriterConfig;
 import org.apache.jackrabbit.oak.plugins.index.progress.IndexingProgressReporter;
 import org.apache.jackrabbit.oak.plugins.index.search.ExtractedTextCache;
 import org.apache.jackrabbit.oak.plugins.index.search.spi.binary.FulltextBinaryTextExtractor;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
 import org.jetbrains.annotations.NotNull;
 
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.search.FulltextIndexConstants.INDEX_DATA_CHILD_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.TYPE_LUCENE;
 
 public class LuceneIndexerProvider implements NodeStateIndexerProvider {
@@ -47,12 +57,22 @@ public class LuceneIndexerProvider implements NodeStateIndexerProvider {
     private final IndexHelper indexHelper;
     private final DirectoryFactory dirFactory;
     private final LuceneIndexWriterFactory indexWriterFactory;
+    private final LuceneIndexWriterConfig writerConfig;
 
     public LuceneIndexerProvider(IndexHelper indexHelper, IndexerSupport indexerSupport) throws IOException {
+        this(indexHelper, indexerSupport.getLocalIndexDir());
+    }
+
+    /**
+     * @param indexHelper the index helper.
+     * @param indexDir the directory to write the indexes to.
+     */
+    public LuceneIndexerProvider(IndexHelper indexHelper, File indexDir) {
         this.indexHelper = indexHelper;
-        this.dirFactory = new FSDirectoryFactory(indexerSupport.getLocalIndexDir());
+        this.dirFactory = new FSDirectoryFactory(indexDir);
+        this.writerConfig = indexHelper.getLuceneIndexHelper().getWriterConfigForReindex();
         this.indexWriterFactory = new DefaultIndexWriterFactory(indexHelper.getMountInfoProvider(),
-                dirFactory, indexHelper.getLuceneIndexHelper().getWriterConfigForReindex());
+                dirFactory, writerConfig);
     }
 
     @Override
@@ -76,6 +96,37 @@ public class LuceneIndexerProvider implements NodeStateIndexerProvider {
         );
     }
 
+    /**
+     * Adds the indexes written to other directories, e.g. by the indexers
+     * of a provider per partition, to the index of this provider. The
+     * indexers writing to the directories must be closed.
+     *
+     * @param indexPath the path of the index.
+     * @param definition the builder of the index definition.
+     * @param root the root state.
+     * @param indexDirs the directories the indexes were written to.
+     */
+    public void addIndexes(@NotNull String indexPath, @NotNull NodeBuilder definition,
+                           @NotNull NodeState root, @NotNull List<File> indexDirs) throws IOException {
+        LuceneIndexDefinition idxDefinition = LuceneIndexDefinition.newBuilder(root, definition.getNodeState(), indexPath).reindex().build();
+        try (Closer closer = Closer.create()) {
+            List<Directory> sources = new ArrayList<>();
+            for (File dir : indexDirs) {
+                sources.add(closer.register(new FSDirectoryFactory(dir)
+                        .newInstance(idxDefinition, definition, INDEX_DATA_CHILD_NAME, false)));
+            }
+            Directory target = closer.register(dirFactory.newInstance(idxDefinition, definition, INDEX_DATA_CHILD_NAME, true));
+            IndexWriterConfig config = IndexWriterUtils.getIndexWriterConfig(idxDefinition, false, writerConfig);
+            config.setMergePolicy(idxDefinition.getMergePolicy());
+            IndexWriter writer = new IndexWriter(target, config);
+            try {
+                writer.addIndexes(sources.toArray(new Directory[0]));
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
     @Override
     public void close() throws IOException {
 
@@ -31,7 +31,6 @@ import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeState;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
 import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
-import org.apache.jackrabbit.oak.plugins.document.Path;
 import org.apache.jackrabbit.oak.plugins.document.RevisionVector;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.mongo.MongoDocumentTraverser;
@@ -87,6 +86,19 @@ public class NodeStateEntryTraverser implements Iterable<NodeStateEntry>, Closea
         closer.close();
     }
 
+    /**
+     * Returns the entries for the node state of the given document and the
+     * node states bundled with it, or none if the document is not included.
+     * This method can be used to transform documents read by other means
+     * than this traverser and may be called concurrently.
+     *
+     * @param doc the document.
+     * @return the entries for the document.
+     */
+    public Iterable<NodeStateEntry> getIncludedEntries(NodeDocument doc) {
+        return includeDoc(doc) ? getEntries(doc) : emptyList();
+    }
+
     @SuppressWarnings("Guava")
     private Iterable<NodeStateEntry> getIncludedDocs() {
         return FluentIterable.from(getDocsFilteredByPath())
@@ -103,9 +115,10 @@ public class NodeStateEntryTraverser implements Iterable<NodeStateEntry>, Closea
 
     @SuppressWarnings("StaticPseudoFunctionalStyleMethod")
     private Iterable<NodeStateEntry> getEntries(NodeDocument doc) {
-        Path path = doc.getPath();
-
-        DocumentNodeState nodeState = documentNodeStore.getNode(path, rootRevision);
+        //Build the node state from the document at hand. Reading it through
+        //the node store would read the document again unless it is still in
+        //the document cache
+        DocumentNodeState nodeState = doc.getNodeAtRevision(documentNodeStore, rootRevision, null);
 
         //At DocumentNodeState api level the nodeState can be null
         if (nodeState == null || !nodeState.exists()) {
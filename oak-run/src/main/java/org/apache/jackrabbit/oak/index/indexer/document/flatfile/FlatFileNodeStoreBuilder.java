@@ -23,10 +23,13 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Set;
+import java.util.function.Function;
 
 import com.google.common.collect.Iterables;
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntry;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +39,7 @@ import static java.util.Collections.unmodifiableSet;
 public class FlatFileNodeStoreBuilder {
     public static final String OAK_INDEXER_USE_ZIP = "oak.indexer.useZip";
     private static final String OAK_INDEXER_TRAVERSE_WITH_SORT = "oak.indexer.traverseWithSortStrategy";
+    public static final String OAK_INDEXER_PIPELINED = "oak.indexer.pipelinedStrategy";
     private static final String OAK_INDEXER_SORTED_FILE_PATH = "oak.indexer.sortedFilePath";
     static final String OAK_INDEXER_MAX_SORT_MEMORY_IN_GB = "oak.indexer.maxSortMemoryInGB";
     static final int OAK_INDEXER_MAX_SORT_MEMORY_IN_GB_DEFAULT = 2;
@@ -47,9 +51,12 @@ public class FlatFileNodeStoreBuilder {
     private PathElementComparator comparator;
     private NodeStateEntryWriter entryWriter;
     private long entryCount = 0;
+    private DocumentStore documentStore;
+    private Function<NodeDocument, Iterable<NodeStateEntry>> transformer;
 
     private boolean useZip = Boolean.valueOf(System.getProperty(OAK_INDEXER_USE_ZIP, "true"));
     private boolean useTraverseWithSort = Boolean.valueOf(System.getProperty(OAK_INDEXER_TRAVERSE_WITH_SORT, "true"));
+    private boolean usePipelined = Boolean.getBoolean(OAK_INDEXER_PIPELINED);
 
     public FlatFileNodeStoreBuilder(Iterable<NodeStateEntry> nodeStates, File workDir) {
         this.nodeStates = nodeStates;
@@ -66,6 +73,22 @@ public class FlatFileNodeStoreBuilder {
         return this;
     }
 
+    /**
+     * Configures the source of documents for the pipelined strategy, which
+     * is used instead of the node states passed to the constructor when
+     * enabled with system property {@value #OAK_INDEXER_PIPELINED}.
+     *
+     * @param documentStore the store to read the documents from.
+     * @param transformer returns the entries for a document. Called
+     *                    concurrently.
+     */
+    public FlatFileNodeStoreBuilder withNodeDocumentSource(DocumentStore documentStore,
+                                                           Function<NodeDocument, Iterable<NodeStateEntry>> transformer) {
+        this.documentStore = documentStore;
+        this.transformer = transformer;
+        return this;
+    }
+
     public FlatFileStore build() throws IOException {
         logFlags();
         comparator = new PathElementComparator(preferredPathElements);
@@ -101,7 +124,10 @@ public class FlatFileNodeStoreBuilder {
     }
 
     private SortStrategy createSortStrategy(File dir){
-        if (useTraverseWithSort) {
+        if (isPipelined()) {
+            log.info("Using PipelinedStrategy");
+            return new PipelinedStrategy(documentStore, transformer, comparator, blobStore, dir, useZip);
+        } else if (useTraverseWithSort) {
             log.info("Using TraverseWithSortStrategy");
             return new TraverseWithSortStrategy(nodeStates, comparator, entryWriter, dir, useZip);
         } else {
@@ -114,11 +140,22 @@ public class FlatFileNodeStoreBuilder {
         log.info("Preferred path elements are {}", Iterables.toString(preferredPathElements));
         log.info("Compression enabled while sorting : {} ({})", useZip, OAK_INDEXER_USE_ZIP);
 
+        if (usePipelined && !isPipelined()) {
+            log.warn("Pipelined strategy requested ({}) but no document source configured", OAK_INDEXER_PIPELINED);
+        }
+        if (isPipelined()) {
+            log.info("Sort strategy : {} ({})", PipelinedStrategy.class.getSimpleName(), OAK_INDEXER_PIPELINED);
+            return;
+        }
         String strategy = useTraverseWithSort ?
                 TraverseWithSortStrategy.class.getSimpleName() : StoreAndSortStrategy.class.getSimpleName();
         log.info("Sort strategy : {} ({})", strategy, OAK_INDEXER_TRAVERSE_WITH_SORT);
     }
 
+    private boolean isPipelined() {
+        return usePipelined && documentStore != null;
+    }
+
     private File createStoreDir() throws IOException {
         File dir = new File(workDir, "flat-file-store");
         FileUtils.forceMkdir(dir);
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.index.indexer.document.flatfile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Stopwatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.oak.commons.PathUtils.ROOT_PATH;
+import static org.apache.jackrabbit.oak.commons.PathUtils.elements;
+import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileNodeStoreBuilder.OAK_INDEXER_USE_ZIP;
+
+/**
+ * Splits the sorted file of a {@link FlatFileStore} into partitions of
+ * about the same number of entries, which can be traversed independently.
+ * The file is not copied. Each partition is a range of byte offsets in the
+ * existing file, which must be uncompressed. A compressed file cannot be read
+ * from an offset and is returned as a single partition.
+ * <p>
+ * A partition only starts at an entry none of whose path elements is a
+ * preferred path element. The preferred path elements are the names of the
+ * relative nodes read by the indexers, and they are sorted before their
+ * siblings. Hence the subtrees of preferred elements never span two partitions
+ * and a node and its relative nodes are always in the same partition.
+ */
+public class FlatFileSplitter {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final FlatFileStore store;
+    private final File file;
+    private final int partitionCount;
+    private final Set<String> preferredPathElements;
+
+    public FlatFileSplitter(FlatFileStore store, int partitionCount) {
+        checkArgument(partitionCount > 0, "partitionCount must be > 0: %s", partitionCount);
+        this.store = store;
+        this.file = store.getStoreFile();
+        this.partitionCount = partitionCount;
+        this.preferredPathElements = store.getPreferredPathElements();
+    }
+
+    /**
+     * Determines the ranges of the partitions in the store file.
+     *
+     * @return a store for each partition. The list contains less than the
+     *          requested number of partitions if there are not enough
+     *          entries or split points.
+     */
+    public List<FlatFileStore> split() throws IOException {
+        Stopwatch w = Stopwatch.createStarted();
+        if (store.isCompressionEnabled()) {
+            log.warn("Cannot split compressed file {} into partitions. Disable {} to index partitions concurrently",
+                    file, OAK_INDEXER_USE_ZIP);
+            return Collections.singletonList(newStore(0, -1, store.getEntryCount()));
+        }
+        Partitions partitions = new Partitions(store.getEntryCount());
+        splitText(partitions);
+        List<FlatFileStore> stores = partitions.toStores();
+        log.info("Split {} entries into {} partitions in {}", partitions.total, stores.size(), w);
+        return stores;
+    }
+
+    /**
+     * Reads the file byte by byte to know the offset of each line. Only the
+     * path of an entry is decoded.
+     */
+    private void splitText(Partitions partitions) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        byte[] path = new byte[256];
+        int pathLength = 0;
+        boolean inPath = true;
+        long lineStart = 0;
+        long position = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        partitions.add(lineStart, new String(path, 0, pathLength, UTF_8));
+                        lineStart = position + i + 1;
+                        pathLength = 0;
+                        inPath = true;
+                    } else if (inPath) {
+                        // the delimiter between path and json
+                        if (b == '|') {
+                            inPath = false;
+                        } else {
+                            if (pathLength == path.length) {
+                                path = Arrays.copyOf(path, path.length * 2);
+                            }
+                            path[pathLength++] = b;
+                        }
+                    }
+                }
+                position += n;
+            }
+        }
+        if (lineStart < position) {
+            // last line without line separator
+            partitions.add(lineStart, new String(path, 0, pathLength, UTF_8));
+        }
+    }
+
+    private boolean isSplitPoint(String path) {
+        if (ROOT_PATH.equals(path)) {
+            return false;
+        }
+        for (String e : elements(path)) {
+            if (preferredPathElements.contains(e)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private FlatFileStore newStore(long start, long end, long count) {
+        FlatFileStore partition = new FlatFileStore(store.getBlobStore(), file, store.getEntryReader(),
+                preferredPathElements, store.isCompressionEnabled(), start, end);
+        partition.setEntryCount(count);
+        return partition;
+    }
+
+    /**
+     * Collects the start offsets and entry counts of the partitions.
+     */
+    private final class Partitions {
+        private final long entriesPerPartition;
+        private final List<Long> starts = new ArrayList<>();
+        private final List<Long> counts = new ArrayList<>();
+        private long count;
+        private long total;
+
+        /**
+         * @param entryCount the number of entries in the file or a negative
+         *                   value if unknown.
+         */
+        Partitions(long entryCount) {
+            this.entriesPerPartition = entryCount < 0 ? -1 :
+                    Math.max(1, (entryCount + partitionCount - 1) / partitionCount);
+        }
+
+        void add(long offset, String path) {
+            if (starts.isEmpty()) {
+                log.info("Partition 0 starts at {}", path);
+                starts.add(offset);
+            } else if (isFull(offset) && starts.size() < partitionCount && isSplitPoint(path)) {
+                log.info("Partition {} starts at {}", starts.size(), path);
+                counts.add(count);
+                starts.add(offset);
+                count = 0;
+            }
+            count++;
+            total++;
+        }
+
+        private boolean isFull(long offset) {
+            if (entriesPerPartition > 0) {
+                return count >= entriesPerPartition;
+            }
+            // split by bytes when the number of entries is unknown
+            long bytesPerPartition = (file.length() + partitionCount - 1) / partitionCount;
+            return offset - starts.get(starts.size() - 1) >= bytesPerPartition;
+        }
+
+        List<FlatFileStore> toStores() {
+            List<FlatFileStore> stores = new ArrayList<>();
+            if (starts.isEmpty()) {
+                return stores;
+            }
+            counts.add(count);
+            for (int i = 0; i < starts.size(); i++) {
+                long end = i + 1 < starts.size() ? starts.get(i + 1) : -1;
+                stores.add(newStore(starts.get(i), end, counts.get(i)));
+            }
+            return stores;
+        }
+    }
+}
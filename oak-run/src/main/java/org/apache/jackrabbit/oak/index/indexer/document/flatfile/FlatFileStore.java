@@ -19,18 +19,28 @@
 
 package org.apache.jackrabbit.oak.index.indexer.document.flatfile;
 
+import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.util.Iterator;
 import java.util.Set;
 
 import com.google.common.collect.AbstractIterator;
 import com.google.common.io.Closer;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntry;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
 
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkState;
 import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileStoreUtils.createReader;
 
 public class FlatFileStore implements Iterable<NodeStateEntry>, Closeable{
@@ -40,14 +50,31 @@ public class FlatFileStore implements Iterable<NodeStateEntry>, Closeable{
     private final NodeStateEntryReader entryReader;
     private final Set<String> preferredPathElements;
     private final boolean compressionEnabled;
+    private final long startOffset;
+    private final long endOffset;
     private long entryCount = -1;
 
     public FlatFileStore(BlobStore blobStore, File storeFile, NodeStateEntryReader entryReader, Set<String> preferredPathElements, boolean compressionEnabled) {
+        this(blobStore, storeFile, entryReader, preferredPathElements, compressionEnabled, 0, -1);
+    }
+
+    /**
+     * Creates a store over the entries in a byte range of the store file.
+     * The range must start and end at line starts of an uncompressed file.
+     *
+     * @param startOffset the offset of the first entry.
+     * @param endOffset the offset after the last entry or -1 for the end of
+     *                  the file.
+     */
+    FlatFileStore(BlobStore blobStore, File storeFile, NodeStateEntryReader entryReader, Set<String> preferredPathElements,
+                  boolean compressionEnabled, long startOffset, long endOffset) {
         this.blobStore = blobStore;
         this.storeFile = storeFile;
         this.entryReader = entryReader;
         this.preferredPathElements = preferredPathElements;
         this.compressionEnabled = compressionEnabled;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
     }
 
     public long getEntryCount() {
@@ -58,16 +85,42 @@ public class FlatFileStore implements Iterable<NodeStateEntry>, Closeable{
         this.entryCount = entryCount;
     }
 
+    File getStoreFile() {
+        return storeFile;
+    }
+
+    BlobStore getBlobStore() {
+        return blobStore;
+    }
+
+    Set<String> getPreferredPathElements() {
+        return preferredPathElements;
+    }
+
+    boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    NodeStateEntryReader getEntryReader() {
+        return entryReader;
+    }
+
+    private boolean isRange() {
+        return startOffset > 0 || endOffset >= 0;
+    }
+
     @Override
     public Iterator<NodeStateEntry> iterator() {
-        String fileName = new File(storeFile.getParent(), "linkedList").getAbsolutePath();
+        // stores over ranges of the same file are iterated concurrently
+        String name = isRange() ? "linkedList-" + startOffset : "linkedList";
+        String fileName = new File(storeFile.getParent(), name).getAbsolutePath();
         FlatFileStoreIterator it = new FlatFileStoreIterator(blobStore, fileName, createBaseIterator(), preferredPathElements);
         closer.register(it::close);
         return it;
     }
 
     private Iterator<NodeStateEntry> createBaseIterator() {
-        LineIterator itr = new LineIterator(createReader(storeFile, compressionEnabled));
+        LineIterator itr = new LineIterator(isRange() ? createRangeReader() : createReader(storeFile, compressionEnabled));
         closer.register(itr::close);
         return new AbstractIterator<NodeStateEntry>() {
             @Override
@@ -83,6 +136,25 @@ public class FlatFileStore implements Iterable<NodeStateEntry>, Closeable{
         };
     }
 
+    private Reader createRangeReader() {
+        checkState(!compressionEnabled, "Cannot read a range of compressed file %s", storeFile);
+        try {
+            InputStream in = new FileInputStream(storeFile);
+            try {
+                IOUtils.skipFully(in, startOffset);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            if (endOffset >= 0) {
+                in = new BoundedInputStream(in, endOffset - startOffset);
+            }
+            return new BufferedReader(new InputStreamReader(in, UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error opening file " + storeFile, e);
+        }
+    }
+
     private NodeStateEntry convert(String line) {
         return entryReader.read(line);
     }
@@ -29,6 +29,7 @@ import java.util.Set;
 import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntry;
 import org.apache.jackrabbit.oak.index.indexer.document.flatfile.linkedList.FlatFileBufferLinkedList;
 import org.apache.jackrabbit.oak.index.indexer.document.flatfile.linkedList.NodeStateEntryList;
+import org.apache.jackrabbit.oak.index.indexer.document.flatfile.linkedList.OffHeapLinkedList;
 import org.apache.jackrabbit.oak.index.indexer.document.flatfile.linkedList.PersistedLinkedList;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
@@ -45,20 +46,37 @@ class FlatFileStoreIterator extends AbstractIterator<NodeStateEntry> implements
     private final Set<String> preferredPathElements;
     private int maxBufferSize;
     static final String BUFFER_MEM_LIMIT_CONFIG_NAME = "oak.indexer.memLimitInMB";
+    static final String BUFFER_OFF_HEAP_CONFIG_NAME = "oak.indexer.offHeapBuffer";
+    static final String BUFFER_OFF_HEAP_MEM_LIMIT_CONFIG_NAME = "oak.indexer.offHeapBuffer.memLimitInMB";
 
     // by default, use the PersistedLinkedList
     private static final int DEFAULT_BUFFER_MEM_LIMIT_IN_MB = 0;
 
+    // direct memory of the off-heap buffer, before it spills to a file
+    private static final int DEFAULT_BUFFER_OFF_HEAP_MEM_LIMIT_IN_MB = 1024;
+
     public FlatFileStoreIterator(BlobStore blobStore, String fileName, Iterator<NodeStateEntry> baseItr, Set<String> preferredPathElements) {
         this(blobStore, fileName, baseItr, preferredPathElements,
-                Integer.getInteger(BUFFER_MEM_LIMIT_CONFIG_NAME, DEFAULT_BUFFER_MEM_LIMIT_IN_MB));
+                Integer.getInteger(BUFFER_MEM_LIMIT_CONFIG_NAME, DEFAULT_BUFFER_MEM_LIMIT_IN_MB),
+                Boolean.getBoolean(BUFFER_OFF_HEAP_CONFIG_NAME));
     }
 
     public FlatFileStoreIterator(BlobStore blobStore, String fileName, Iterator<NodeStateEntry> baseItr, Set<String> preferredPathElements, int memLimitConfig) {
+        this(blobStore, fileName, baseItr, preferredPathElements, memLimitConfig, false);
+    }
+
+    public FlatFileStoreIterator(BlobStore blobStore, String fileName, Iterator<NodeStateEntry> baseItr, Set<String> preferredPathElements,
+                                 int memLimitConfig, boolean offHeap) {
         this.baseItr = baseItr;
         this.preferredPathElements = preferredPathElements;
 
-        if (memLimitConfig == 0) {
+        if (offHeap) {
+            log.info("Using an off-heap buffer, spilling to {}", fileName);
+            NodeStateEntryReader reader = new NodeStateEntryReader(blobStore);
+            NodeStateEntryWriter writer = new NodeStateEntryWriter(blobStore);
+            this.buffer = new OffHeapLinkedList(writer, reader, 1000, fileName,
+                    Integer.getInteger(BUFFER_OFF_HEAP_MEM_LIMIT_CONFIG_NAME, DEFAULT_BUFFER_OFF_HEAP_MEM_LIMIT_IN_MB) * 1024L * 1024L);
+        } else if (memLimitConfig == 0) {
             log.info("Using a key-value store buffer: {}", fileName);
             NodeStateEntryReader reader = new NodeStateEntryReader(blobStore);
             NodeStateEntryWriter writer = new NodeStateEntryWriter(blobStore);
@@ -136,8 +154,8 @@ class FlatFileStoreIterator extends AbstractIterator<NodeStateEntry> implements
     }
 
     private NodeStateEntry wrapIfNeeded(NodeStateEntry e) {
-        if (buffer instanceof PersistedLinkedList) {
-            // for the PersistedLinkedList, the entries from the iterators are
+        if (buffer instanceof PersistedLinkedList || buffer instanceof OffHeapLinkedList) {
+            // for the PersistedLinkedList and OffHeapLinkedList, the entries from the iterators are
             // de-serialized and don't contain the LazyChildrenNodeState -
             // so we need to wrap them
             return wrap(e);
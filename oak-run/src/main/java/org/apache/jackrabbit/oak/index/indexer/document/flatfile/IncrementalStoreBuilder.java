@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.index.indexer.document.flatfile;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.google.common.base.Stopwatch;
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.spi.blob.BlobStore;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateDiff;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Collections.unmodifiableSet;
+import static org.apache.jackrabbit.oak.commons.PathUtils.ROOT_PATH;
+import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
+import static org.apache.jackrabbit.oak.commons.PathUtils.getParentPath;
+import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileNodeStoreBuilder.OAK_INDEXER_USE_ZIP;
+import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileStoreUtils.createReader;
+import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileStoreUtils.createWriter;
+import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileStoreUtils.getSortedStoreFileName;
+import static org.apache.jackrabbit.oak.spi.state.NodeStateUtils.isHidden;
+
+/**
+ * Builds a {@link FlatFileStore} for a new root state from the sorted file
+ * built for a previous root state. The changes between the two states are
+ * computed with a {@link NodeState#compareAgainstBaseState(NodeState, NodeStateDiff)
+ * diff}, which for checkpoints of a DocumentNodeStore is served from the
+ * journal and diff cache. The entries of added and changed nodes are sorted
+ * and merged with the previous file, while the entries of removed subtrees
+ * are dropped. The time taken hence depends on the number of changes and
+ * the size of the previous file, but not on the cost of traversing the
+ * repository.
+ * <p>
+ * The previous file must have been built with the same preferred path
+ * elements and path predicate.
+ */
+public class IncrementalStoreBuilder {
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final File previousStoreFile;
+    private final NodeState before;
+    private final NodeState after;
+    private final File workDir;
+    private Set<String> preferredPathElements = Collections.emptySet();
+    private BlobStore blobStore;
+    private Predicate<String> pathPredicate = path -> true;
+    private boolean useZip = Boolean.valueOf(System.getProperty(OAK_INDEXER_USE_ZIP, "true"));
+
+    /**
+     * @param previousStoreFile the sorted file built for the before state.
+     * @param before the root state the previous file was built for.
+     * @param after the root state to build the store for.
+     * @param workDir the directory to create the new store in.
+     */
+    public IncrementalStoreBuilder(File previousStoreFile, NodeState before, NodeState after, File workDir) {
+        checkArgument(previousStoreFile.isFile(), "Previous store file [%s] does not exist",
+                previousStoreFile.getAbsolutePath());
+        this.previousStoreFile = previousStoreFile;
+        this.before = before;
+        this.after = after;
+        this.workDir = workDir;
+    }
+
+    public IncrementalStoreBuilder withBlobStore(BlobStore blobStore) {
+        this.blobStore = blobStore;
+        return this;
+    }
+
+    public IncrementalStoreBuilder withPreferredPathElements(Set<String> preferredPathElements) {
+        this.preferredPathElements = preferredPathElements;
+        return this;
+    }
+
+    /**
+     * @param pathPredicate the paths of the nodes to include in the store.
+     *                      Hidden nodes are never included.
+     */
+    public IncrementalStoreBuilder withPathPredicate(Predicate<String> pathPredicate) {
+        this.pathPredicate = pathPredicate;
+        return this;
+    }
+
+    public FlatFileStore build() throws IOException {
+        Stopwatch w = Stopwatch.createStarted();
+        File storeDir = new File(workDir, "flat-file-store");
+        FileUtils.forceMkdir(storeDir);
+        File sortedFile = new File(storeDir, getSortedStoreFileName(useZip));
+        checkArgument(!sortedFile.getCanonicalFile().equals(previousStoreFile.getCanonicalFile()),
+                "Previous store file [%s] cannot be replaced in place", previousStoreFile.getAbsolutePath());
+        PathElementComparator comparator = new PathElementComparator(preferredPathElements);
+
+        File deltaFile = new File(storeDir, "store-delta.json");
+        DeltaCollector delta = new DeltaCollector(new NodeStateEntryWriter(blobStore));
+        try (BufferedWriter writer = createWriter(deltaFile, false)) {
+            delta.writer = writer;
+            try {
+                delta.changed(ROOT_PATH, before, after);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        log.info("Collected {} changed entries and {} removed subtrees in {}",
+                delta.changedCount, delta.removedPaths.size(), w);
+
+        File sortedDeltaFile = new File(storeDir, "store-delta-sorted.json");
+        NodeStateEntrySorter sorter = new NodeStateEntrySorter(comparator, deltaFile, storeDir, sortedDeltaFile);
+        sorter.setDeleteOriginal(true);
+        sorter.sort();
+
+        long entryCount = merge(comparator, sortedDeltaFile, delta.removedPaths, sortedFile);
+        FileUtils.forceDelete(sortedDeltaFile);
+        log.info("Built store with {} entries from previous store [{}] in {}", entryCount,
+                previousStoreFile.getAbsolutePath(), w);
+
+        FlatFileStore store = new FlatFileStore(blobStore, sortedFile, new NodeStateEntryReader(blobStore),
+                unmodifiableSet(preferredPathElements), useZip);
+        store.setEntryCount(entryCount);
+        return store;
+    }
+
+    private long merge(PathElementComparator comparator, File sortedDeltaFile,
+                       Set<String> removedPaths, File sortedFile) throws IOException {
+        boolean previousZipped = previousStoreFile.getName().endsWith(".gz");
+        long count = 0;
+        try (BufferedReader previous = createReader(previousStoreFile, previousZipped);
+             BufferedReader delta = createReader(sortedDeltaFile, false);
+             BufferedWriter writer = createWriter(sortedFile, useZip)) {
+            NodeStateHolder p = next(previous);
+            NodeStateHolder d = next(delta);
+            while (p != null || d != null) {
+                int c;
+                if (p == null) {
+                    c = 1;
+                } else if (d == null) {
+                    c = -1;
+                } else {
+                    c = comparator.compare(p.getPathElements(), d.getPathElements());
+                }
+                String line;
+                if (c < 0) {
+                    line = p.getLine();
+                    p = next(previous);
+                    if (isRemoved(NodeStateEntryWriter.getPath(line), removedPaths)) {
+                        continue;
+                    }
+                } else {
+                    // a changed entry replaces the previous one
+                    line = d.getLine();
+                    d = next(delta);
+                    if (c == 0) {
+                        p = next(previous);
+                    }
+                }
+                writer.write(line);
+                writer.newLine();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isRemoved(String path, Set<String> removedPaths) {
+        while (!removedPaths.isEmpty()) {
+            if (removedPaths.contains(path)) {
+                return true;
+            }
+            if (ROOT_PATH.equals(path)) {
+                return false;
+            }
+            path = getParentPath(path);
+        }
+        return false;
+    }
+
+    private static NodeStateHolder next(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        return line == null ? null : new SimpleNodeStateHolder(line);
+    }
+
+    private class DeltaCollector {
+        private final NodeStateEntryWriter entryWriter;
+        private final Set<String> removedPaths = new HashSet<>();
+        private BufferedWriter writer;
+        private long changedCount;
+
+        DeltaCollector(NodeStateEntryWriter entryWriter) {
+            this.entryWriter = entryWriter;
+        }
+
+        void changed(String path, NodeState before, NodeState after) {
+            Diff diff = new Diff(path);
+            after.compareAgainstBaseState(before, diff);
+            if (diff.propertiesChanged) {
+                changed(path, after);
+            }
+        }
+
+        void changed(String path, NodeState state) {
+            if (!pathPredicate.test(path)) {
+                return;
+            }
+            try {
+                writer.write(entryWriter.toString(path, entryWriter.asJson(state)));
+                writer.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            changedCount++;
+        }
+
+        void added(String path, NodeState state) {
+            changed(path, state);
+            for (ChildNodeEntry e : state.getChildNodeEntries()) {
+                if (!isHidden(e.getName())) {
+                    added(concat(path, e.getName()), e.getNodeState());
+                }
+            }
+        }
+
+        private class Diff implements NodeStateDiff {
+            private final String path;
+            private boolean propertiesChanged;
+
+            Diff(String path) {
+                this.path = path;
+            }
+
+            @Override
+            public boolean propertyAdded(PropertyState after) {
+                propertiesChanged = true;
+                return true;
+            }
+
+            @Override
+            public boolean propertyChanged(PropertyState before, PropertyState after) {
+                propertiesChanged = true;
+                return true;
+            }
+
+            @Override
+            public boolean propertyDeleted(PropertyState before) {
+                propertiesChanged = true;
+                return true;
+            }
+
+            @Override
+            public boolean childNodeAdded(String name, NodeState after) {
+                if (!isHidden(name)) {
+                    added(concat(path, name), after);
+                }
+                return true;
+            }
+
+            @Override
+            public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+                if (!isHidden(name)) {
+                    changed(concat(path, name), before, after);
+                }
+                return true;
+            }
+
+            @Override
+            public boolean childNodeDeleted(String name, NodeState before) {
+                if (!isHidden(name)) {
+                    removedPaths.add(concat(path, name));
+                }
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.index.indexer.document.flatfile;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.json.BlobDeserializer;
+import org.apache.jackrabbit.oak.json.JsonDeserializer;
+import org.apache.jackrabbit.oak.spi.state.AbstractNodeState;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateDiff;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A node state, which only parses its JSON serialization when its
+ * properties are first accessed. Entries which are skipped by all
+ * indexers, or which are only used to look up the child node names of
+ * another entry, are never parsed.
+ * <p>
+ * Instances are not thread safe.
+ */
+class LazyJsonNodeState implements NodeState {
+    private final BlobDeserializer blobDeserializer;
+    private String json;
+    private NodeState delegate;
+
+    LazyJsonNodeState(String json, BlobDeserializer blobDeserializer) {
+        this.json = json;
+        this.blobDeserializer = blobDeserializer;
+    }
+
+    private NodeState getDelegate() {
+        if (delegate == null) {
+            delegate = new JsonDeserializer(blobDeserializer).deserialize(json);
+            json = null;
+        }
+        return delegate;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public boolean hasProperty(@NotNull String name) {
+        return getDelegate().hasProperty(name);
+    }
+
+    @Nullable
+    @Override
+    public PropertyState getProperty(@NotNull String name) {
+        return getDelegate().getProperty(name);
+    }
+
+    @Override
+    public boolean getBoolean(@NotNull String name) {
+        return getDelegate().getBoolean(name);
+    }
+
+    @Override
+    public long getLong(String name) {
+        return getDelegate().getLong(name);
+    }
+
+    @Nullable
+    @Override
+    public String getString(String name) {
+        return getDelegate().getString(name);
+    }
+
+    @NotNull
+    @Override
+    public Iterable<String> getStrings(@NotNull String name) {
+        return getDelegate().getStrings(name);
+    }
+
+    @Nullable
+    @Override
+    public String getName(@NotNull String name) {
+        return getDelegate().getName(name);
+    }
+
+    @NotNull
+    @Override
+    public Iterable<String> getNames(@NotNull String name) {
+        return getDelegate().getNames(name);
+    }
+
+    @Override
+    public long getPropertyCount() {
+        return getDelegate().getPropertyCount();
+    }
+
+    @NotNull
+    @Override
+    public Iterable<? extends PropertyState> getProperties() {
+        return getDelegate().getProperties();
+    }
+
+    @NotNull
+    @Override
+    public NodeBuilder builder() {
+        return getDelegate().builder();
+    }
+
+    @Override
+    public boolean compareAgainstBaseState(NodeState base, NodeStateDiff diff) {
+        return AbstractNodeState.compareAgainstBaseState(this, base, diff);
+    }
+
+    //~-------------------------------< child node access >
+
+    @Override
+    public boolean hasChildNode(@NotNull String name) {
+        return getDelegate().hasChildNode(name);
+    }
+
+    @NotNull
+    @Override
+    public NodeState getChildNode(@NotNull String name) throws IllegalArgumentException {
+        return getDelegate().getChildNode(name);
+    }
+
+    @Override
+    public long getChildNodeCount(long max) {
+        return getDelegate().getChildNodeCount(max);
+    }
+
+    @Override
+    public Iterable<String> getChildNodeNames() {
+        return getDelegate().getChildNodeNames();
+    }
+
+    @NotNull
+    @Override
+    public Iterable<? extends ChildNodeEntry> getChildNodeEntries() {
+        return getDelegate().getChildNodeEntries();
+    }
+}
@@ -41,6 +41,15 @@ public class NodeStateEntryReader {
         return new NodeStateEntry(parseState(parts[1]), parts[0], memUsage);
     }
 
+    /**
+     * Creates an entry with a node state, which parses the given JSON only
+     * when its properties are accessed.
+     */
+    public NodeStateEntry readLazily(String path, String json) {
+        long memUsage = estimateMemoryUsage(path) + estimateMemoryUsage(json);
+        return new NodeStateEntry(new LazyJsonNodeState(json, blobDeserializer), path, memUsage);
+    }
+
     private NodeState parseState(String part) {
         JsonDeserializer des = new JsonDeserializer(blobDeserializer);
         return des.deserialize(part);
@@ -52,25 +52,29 @@ public class PathElementComparator implements Comparator<Iterable<String>> {
                 return 1;
             }
 
-            String pe1 = i1.next();
-            String pe2 = i2.next();
-
-            boolean pe1Preferred = preferred.contains(pe1);
-            boolean pe2Preferred = preferred.contains(pe2);
-
-            if (pe1Preferred && !pe2Preferred) {
-                return -1;
-            }
-
-            if (pe2Preferred && !pe1Preferred) {
-                return 1;
-            }
-
-            int compare = pe1.compareTo(pe2);
+            int compare = compareElements(i1.next(), i2.next());
             if (compare != 0) {
                 return compare;
             }
         }
         return 0;
     }
+
+    /**
+     * Compares two path elements at the same depth.
+     */
+    int compareElements(String pe1, String pe2) {
+        boolean pe1Preferred = preferred.contains(pe1);
+        boolean pe2Preferred = preferred.contains(pe2);
+
+        if (pe1Preferred && !pe2Preferred) {
+            return -1;
+        }
+
+        if (pe2Preferred && !pe1Preferred) {
+            return 1;
+        }
+
+        return pe1.compareTo(pe2);
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.index.indexer.document.flatfile;
+
+import java.util.Comparator;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+/**
+ * Compares entry lines {@code path|json} encoded in UTF-8 by the elements of
+ * their paths, in the same order as the {@link PathElementComparator}. Path
+ * elements are compared as bytes while they are equal. Only the first pair
+ * of differing elements is decoded, which is then compared by the
+ * {@link PathElementComparator}.
+ */
+class PathElementLineComparator implements Comparator<byte[]> {
+    private static final byte DELIMITER = '|';
+    private static final byte SEPARATOR = '/';
+
+    private final PathElementComparator pathComparator;
+
+    PathElementLineComparator(PathElementComparator pathComparator) {
+        this.pathComparator = pathComparator;
+    }
+
+    @Override
+    public int compare(byte[] l1, byte[] l2) {
+        int end1 = pathEnd(l1);
+        int end2 = pathEnd(l2);
+        // skip the leading slash
+        int s1 = 1;
+        int s2 = 1;
+        //Shorter paths come first i.e. first parent then children
+        while (s1 < end1 || s2 < end2) {
+            if (s1 >= end1) {
+                return -1;
+            }
+            if (s2 >= end2) {
+                return 1;
+            }
+            int e1 = elementEnd(l1, s1, end1);
+            int e2 = elementEnd(l2, s2, end2);
+            if (!equalElements(l1, s1, e1, l2, s2, e2)) {
+                return pathComparator.compareElements(
+                        new String(l1, s1, e1 - s1, UTF_8),
+                        new String(l2, s2, e2 - s2, UTF_8));
+            }
+            s1 = e1 + 1;
+            s2 = e2 + 1;
+        }
+        return 0;
+    }
+
+    private static int pathEnd(byte[] line) {
+        // the path never contains the delimiter, which is not a valid
+        // character in a name
+        for (int i = 0; i < line.length; i++) {
+            if (line[i] == DELIMITER) {
+                return i;
+            }
+        }
+        return line.length;
+    }
+
+    private static int elementEnd(byte[] line, int start, int end) {
+        int i = start;
+        while (i < end && line[i] != SEPARATOR) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean equalElements(byte[] l1, int s1, int e1, byte[] l2, int s2, int e2) {
+        if (e1 - s1 != e2 - s2) {
+            return false;
+        }
+        for (int i = 0; i < e1 - s1; i++) {
+            if (l1[s1 + i] != l2[s2 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
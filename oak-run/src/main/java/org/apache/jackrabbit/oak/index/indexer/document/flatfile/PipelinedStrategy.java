@@ -0,0 +1,392 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.index.indexer.document.flatfile;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.commons.sort.BinaryExternalSort;
+import org.apache.jackrabbit.oak.commons.sort.BinaryExternalSort.RecordWriter;
+import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntry;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocumentExporter;
+import org.apache.jackrabbit.oak.spi.blob.BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.apache.commons.io.FileUtils.ONE_MB;
+import static org.apache.jackrabbit.oak.commons.IOUtils.humanReadableByteCount;
+import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileStoreUtils.createWriter;
+import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileStoreUtils.getSortedStoreFileName;
+import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileStoreUtils.sizeOf;
+
+/**
+ * Sort strategy which builds the flat file with a pipeline of concurrent
+ * stages:
+ * <ol>
+ *     <li>download: reads the documents with a {@link NodeDocumentExporter}
+ *     and passes them in batches to the transform stage through a bounded
+ *     queue,</li>
+ *     <li>transform: a pool of workers turns documents into entries and
+ *     collects the entries in buffers of a fixed size,</li>
+ *     <li>sort: each worker sorts its full buffer and writes it to a sorted
+ *     file of binary records,</li>
+ *     <li>merge: the sorted files are merged with a {@link BinaryExternalSort},
+ *     which merges groups of files concurrently and writes the final merge
+ *     to the sorted file.</li>
+ * </ol>
+ * Each stage keeps its own counters and the download queue depth is sampled,
+ * which shows the stage that limits the throughput. The statistics are
+ * logged periodically and at the end.
+ */
+class PipelinedStrategy implements SortStrategy {
+    static final String OAK_INDEXER_PIPELINED_DOWNLOAD_THREADS = "oak.indexer.pipelined.downloadThreads";
+    static final String OAK_INDEXER_PIPELINED_TRANSFORM_THREADS = "oak.indexer.pipelined.transformThreads";
+    static final String OAK_INDEXER_PIPELINED_SORT_BUFFER_MB = "oak.indexer.pipelined.sortBufferMB";
+    static final String OAK_INDEXER_PIPELINED_QUEUE_SIZE = "oak.indexer.pipelined.queueSize";
+    static final String OAK_INDEXER_PIPELINED_BATCH_SIZE = "oak.indexer.pipelined.batchSize";
+    private static final int PROGRESS_INTERVAL = 100_000;
+
+    /**
+     * Marker put into the download queue for each transform worker when all
+     * documents are downloaded.
+     */
+    private static final List<NodeDocument> END = Collections.emptyList();
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final DocumentStore documentStore;
+    private final Function<NodeDocument, Iterable<NodeStateEntry>> transformer;
+    private final BlobStore blobStore;
+    private final File storeDir;
+    private final boolean compressionEnabled;
+    private final Comparator<NodeStateHolder> comparator;
+    private final Comparator<byte[]> lineComparator;
+    private final int downloadThreads = Integer.getInteger(OAK_INDEXER_PIPELINED_DOWNLOAD_THREADS, 4);
+    private final int transformThreads = Integer.getInteger(OAK_INDEXER_PIPELINED_TRANSFORM_THREADS,
+            Runtime.getRuntime().availableProcessors());
+    private final long sortBufferBytes = Integer.getInteger(OAK_INDEXER_PIPELINED_SORT_BUFFER_MB, 64) * ONE_MB;
+    private final int queueSize = Integer.getInteger(OAK_INDEXER_PIPELINED_QUEUE_SIZE, 64);
+    private final int batchSize = Integer.getInteger(OAK_INDEXER_PIPELINED_BATCH_SIZE, 1000);
+    private final StageStats downloadStats = new StageStats("download");
+    private final StageStats transformStats = new StageStats("transform");
+    private final StageStats sortStats = new StageStats("sort");
+    private final StageStats mergeStats = new StageStats("merge");
+    private final List<File> sortedFiles = Collections.synchronizedList(new ArrayList<>());
+    private File sortWorkDir;
+
+    PipelinedStrategy(DocumentStore documentStore,
+                      Function<NodeDocument, Iterable<NodeStateEntry>> transformer,
+                      PathElementComparator pathComparator, BlobStore blobStore,
+                      File storeDir, boolean compressionEnabled) {
+        this.documentStore = documentStore;
+        this.transformer = transformer;
+        this.blobStore = blobStore;
+        this.storeDir = storeDir;
+        this.compressionEnabled = compressionEnabled;
+        this.comparator = (e1, e2) -> pathComparator.compare(e1.getPathElements(), e2.getPathElements());
+        this.lineComparator = new PathElementLineComparator(pathComparator);
+    }
+
+    @Override
+    public File createSortedStoreFile() throws IOException {
+        logFlags();
+        sortWorkDir = new File(storeDir, "sort-work-dir");
+        FileUtils.forceMkdir(sortWorkDir);
+        writeToSortedFiles();
+        return mergeSortedFiles();
+    }
+
+    @Override
+    public long getEntryCount() {
+        return transformStats.items.get();
+    }
+
+    private void writeToSortedFiles() throws IOException {
+        Stopwatch w = Stopwatch.createStarted();
+        BlockingQueue<List<NodeDocument>> queue = new ArrayBlockingQueue<>(queueSize);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            download(queue);
+            return null;
+        });
+        for (int i = 0; i < transformThreads; i++) {
+            tasks.add(() -> {
+                transform(queue);
+                return null;
+            });
+        }
+        runAll("flatfile-pipeline-%d", tasks);
+        log.info("Dumped {} nodestates in json format in {}", transformStats.items.get(), w);
+        log.info("Created {} sorted files of size {} to merge",
+                sortedFiles.size(), humanReadableByteCount(sizeOf(sortedFiles)));
+        logStats();
+    }
+
+    private void download(BlockingQueue<List<NodeDocument>> queue) throws InterruptedException {
+        List<NodeDocument> batch = new ArrayList<>(batchSize);
+        AtomicLong lastProgress = new AtomicLong(System.nanoTime());
+        long start = System.nanoTime();
+        try {
+            NodeDocumentExporter exporter = new NodeDocumentExporter(documentStore, downloadThreads)
+                    .withBatchSize(batchSize);
+            exporter.export(doc -> {
+                batch.add(doc);
+                if (batch.size() >= batchSize) {
+                    put(queue, new ArrayList<>(batch));
+                    downloadStats.items.addAndGet(batch.size());
+                    batch.clear();
+                    if (downloadStats.items.get() % PROGRESS_INTERVAL < batchSize) {
+                        long now = System.nanoTime();
+                        log.info("Downloaded {} documents ({} since last progress), queue depth {}/{}",
+                                downloadStats.items.get(), humanReadableNanos(now - lastProgress.get()),
+                                queue.size(), queueSize);
+                        lastProgress.set(now);
+                    }
+                }
+            });
+            if (!batch.isEmpty()) {
+                put(queue, batch);
+                downloadStats.items.addAndGet(batch.size());
+            }
+        } catch (StageInterruptedException e) {
+            throw (InterruptedException) e.getCause();
+        } finally {
+            downloadStats.busy(start);
+        }
+        for (int i = 0; i < transformThreads; i++) {
+            queue.put(END);
+        }
+    }
+
+    private void put(BlockingQueue<List<NodeDocument>> queue, List<NodeDocument> batch) {
+        downloadStats.queueDepth(queue.size());
+        long start = System.nanoTime();
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            throw new StageInterruptedException(e);
+        } finally {
+            downloadStats.waiting(start);
+        }
+    }
+
+    private void transform(BlockingQueue<List<NodeDocument>> queue) throws IOException, InterruptedException {
+        //NodeStateEntryWriter is not thread safe
+        NodeStateEntryWriter entryWriter = new NodeStateEntryWriter(blobStore);
+        List<NodeStateHolder> buffer = new ArrayList<>();
+        long bufferBytes = 0;
+        while (true) {
+            List<NodeDocument> docs = queue.take();
+            if (docs == END) {
+                break;
+            }
+            long start = System.nanoTime();
+            for (NodeDocument doc : docs) {
+                for (NodeStateEntry e : transformer.apply(doc)) {
+                    String jsonText = entryWriter.asJson(e.getNodeState());
+                    //Holder line consist only of json and not 'path|json'
+                    NodeStateHolder h = new StateInBytesHolder(e.getPath(), jsonText);
+                    buffer.add(h);
+                    bufferBytes += h.getMemorySize();
+                    transformStats.items.incrementAndGet();
+                }
+            }
+            transformStats.busy(start);
+            if (bufferBytes >= sortBufferBytes) {
+                sortAndSave(buffer, entryWriter);
+                buffer.clear();
+                bufferBytes = 0;
+            }
+        }
+        sortAndSave(buffer, entryWriter);
+    }
+
+    private void sortAndSave(List<NodeStateHolder> buffer, NodeStateEntryWriter entryWriter) throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        buffer.sort(comparator);
+        File newtmpfile = File.createTempFile("sortInBatch", "flatfile", sortWorkDir);
+        try (RecordWriter writer = new RecordWriter(newtmpfile, compressionEnabled)) {
+            for (NodeStateHolder h : buffer) {
+                writer.write(entryWriter.toString(h.getPathElements(), h.getLine()).getBytes(UTF_8));
+            }
+        }
+        sortedFiles.add(newtmpfile);
+        sortStats.items.incrementAndGet();
+        sortStats.busy(start);
+        log.info("Sorted and stored batch of size {} with {} entries in {}",
+                humanReadableByteCount(newtmpfile.length()), buffer.size(),
+                humanReadableNanos(System.nanoTime() - start));
+    }
+
+    private File mergeSortedFiles() throws IOException {
+        Stopwatch w = Stopwatch.createStarted();
+        List<File> files = new ArrayList<>(sortedFiles);
+        log.info("Proceeding to perform merge of {} sorted files", files.size());
+        File sortedFile = new File(storeDir, getSortedStoreFileName(compressionEnabled));
+        long start = System.nanoTime();
+        BinaryExternalSort sort = new BinaryExternalSort(lineComparator, sortWorkDir)
+                .withThreads(transformThreads)
+                .withCompressTempFiles(compressionEnabled)
+                .withDistinct(true);
+        try (BufferedWriter writer = createWriter(sortedFile, compressionEnabled)) {
+            sort.merge(files, line -> {
+                writer.write(new String(line, UTF_8));
+                writer.newLine();
+            });
+        }
+        mergeStats.items.addAndGet(files.size());
+        mergeStats.busy(start);
+        log.info("Merging of sorted files completed in {}", w);
+        logStats();
+        return sortedFile;
+    }
+
+    /**
+     * Runs the tasks concurrently and waits until all of them are done.
+     * When a task fails, the remaining tasks are interrupted and the
+     * failure is rethrown.
+     */
+    private void runAll(String nameFormat, List<Callable<Void>> tasks) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build());
+        try {
+            CompletionService<Void> cs = new ExecutorCompletionService<>(executor);
+            tasks.forEach(cs::submit);
+            for (int i = 0; i < tasks.size(); i++) {
+                cs.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building flat file store", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to build flat file store", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void logFlags() {
+        log.info("Download threads : {} ({})", downloadThreads, OAK_INDEXER_PIPELINED_DOWNLOAD_THREADS);
+        log.info("Transform threads : {} ({})", transformThreads, OAK_INDEXER_PIPELINED_TRANSFORM_THREADS);
+        log.info("Sort buffer size per thread : {} ({})",
+                humanReadableByteCount(sortBufferBytes), OAK_INDEXER_PIPELINED_SORT_BUFFER_MB);
+        log.info("Download queue size (batches) : {} ({})", queueSize, OAK_INDEXER_PIPELINED_QUEUE_SIZE);
+        log.info("Download batch size : {} ({})", batchSize, OAK_INDEXER_PIPELINED_BATCH_SIZE);
+    }
+
+    private void logStats() {
+        for (StageStats s : new StageStats[]{downloadStats, transformStats, sortStats, mergeStats}) {
+            log.info("Stage {}", s);
+        }
+    }
+
+    private static String humanReadableNanos(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos) + " ms";
+    }
+
+    /**
+     * Counters of a pipeline stage.
+     */
+    static final class StageStats {
+        private final String name;
+        final AtomicLong items = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong queueDepthSum = new AtomicLong();
+        private final AtomicLong queueDepthSamples = new AtomicLong();
+        private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+        StageStats(String name) {
+            this.name = name;
+        }
+
+        void busy(long startNanos) {
+            busyNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * Records time spent blocked on a full queue. The time is also
+         * contained in the busy time.
+         */
+        void waiting(long startNanos) {
+            waitNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+
+        void queueDepth(int depth) {
+            queueDepthSum.addAndGet(depth);
+            queueDepthSamples.incrementAndGet();
+            maxQueueDepth.accumulateAndGet(depth, Math::max);
+        }
+
+        @Override
+        public String toString() {
+            long millis = TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+            long rate = millis > 0 ? items.get() * 1000 / millis : 0;
+            String s = name + ": " + items.get() + " items, busy " + millis + " ms (" + rate + " items/s)";
+            long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+            if (waitMillis > 0) {
+                s += ", blocked on full queue " + waitMillis + " ms";
+            }
+            long samples = queueDepthSamples.get();
+            if (samples > 0) {
+                s += ", queue depth avg " + queueDepthSum.get() / samples + " max " + maxQueueDepth.get();
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Thrown by the consumer of the exporter when the download thread is
+     * interrupted.
+     */
+    private static final class StageInterruptedException extends RuntimeException {
+        StageInterruptedException(InterruptedException cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,403 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.index.indexer.document.flatfile.linkedList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntry;
+import org.apache.jackrabbit.oak.index.indexer.document.flatfile.NodeStateEntryReader;
+import org.apache.jackrabbit.oak.index.indexer.document.flatfile.NodeStateEntryWriter;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.apache.jackrabbit.oak.commons.IOUtils.humanReadableByteCount;
+
+/**
+ * A linked list, which keeps the serialized entries in direct (off-heap)
+ * memory. Entries are appended at the tail and removed at the head, so the
+ * memory is written and read sequentially and never compacted. The entries
+ * are stored in a sequence of fixed size chunks, and an entry may span
+ * chunks. A chunk is released as soon as the head has moved past it, so
+ * the list never needs to copy entries and is not limited in size. The
+ * start positions of the entries are kept in a ring of longs, which allows
+ * to access an entry by its index.
+ * <p>
+ * Once the direct chunks reach the configured memory limit, or direct
+ * memory is exhausted, further chunks are mapped from a spill file. Mapped
+ * chunks do not count against the direct memory limit of the JVM, and the
+ * operating system writes them to disk under memory pressure. Released
+ * chunks of the spill file are reused, and the file is deleted on close.
+ * <p>
+ * Compared to the {@link FlatFileBufferLinkedList} the entries do not add
+ * to the heap and the garbage collection work, and compared to the
+ * {@link PersistedLinkedList} there is no key-value store involved. Entries
+ * read from the list are decoded with a lazily parsed node state, so
+ * scanning over many siblings only decodes their paths. A small cache
+ * keeps recently decoded entries.
+ */
+public class OffHeapLinkedList implements NodeStateEntryList {
+
+    private final static Logger LOG = LoggerFactory.getLogger(OffHeapLinkedList.class);
+
+    static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int INITIAL_INDEX_SIZE = 1024;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final NodeStateEntryWriter writer;
+    private final NodeStateEntryReader reader;
+    private final LinkedHashMap<Long, NodeStateEntry> cache;
+    private final File spillFile;
+    private final int chunkSize;
+
+    /**
+     * The chunks from the one at {@link #firstChunk} up to the tail.
+     */
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    /**
+     * Released chunks of the spill file, for reuse.
+     */
+    private final ArrayDeque<Chunk> freeSpilled = new ArrayDeque<>();
+
+    /**
+     * A released direct chunk, kept for reuse.
+     */
+    private Chunk spare;
+
+    private FileChannel spillChannel;
+    private long maxDirectMemory;
+    private long directMemory;
+    private int spilledChunks;
+
+    /**
+     * The number of chunks in the spill file, used or free.
+     */
+    private int spillFileChunks;
+    private long firstChunk;
+    private long[] positions;
+
+    /**
+     * Position after the last byte of the tail entry.
+     */
+    private long writePosition;
+
+    private long headIndex;
+    private long tailIndex;
+    private long cacheHits, cacheMisses;
+    private long maxDirectMemoryUsed;
+    private int maxSpilledChunks;
+
+    /**
+     * @param writer the writer for the entries
+     * @param reader the reader for the entries
+     * @param cacheSize the number of decoded entries to cache
+     * @param spillFileName the file to map chunks from once the direct
+     *                      memory limit is reached
+     * @param maxDirectMemory the direct memory limit, in bytes
+     */
+    public OffHeapLinkedList(NodeStateEntryWriter writer, NodeStateEntryReader reader, int cacheSize,
+                             String spillFileName, long maxDirectMemory) {
+        this(writer, reader, cacheSize, spillFileName, maxDirectMemory, DEFAULT_CHUNK_SIZE);
+    }
+
+    OffHeapLinkedList(NodeStateEntryWriter writer, NodeStateEntryReader reader, int cacheSize,
+                      String spillFileName, long maxDirectMemory, int chunkSize) {
+        Preconditions.checkArgument(chunkSize > RECORD_HEADER_SIZE, "Chunk size too small: %s", chunkSize);
+        this.writer = writer;
+        this.reader = reader;
+        this.cache = new LinkedHashMap<Long, NodeStateEntry>(cacheSize + 1, .75F, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public boolean removeEldestEntry(Map.Entry<Long, NodeStateEntry> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        this.spillFile = new File(spillFileName);
+        this.maxDirectMemory = maxDirectMemory;
+        this.chunkSize = chunkSize;
+        this.positions = new long[INITIAL_INDEX_SIZE];
+    }
+
+    @Override
+    public void add(@NotNull NodeStateEntry item) {
+        Preconditions.checkArgument(item != null, "Can't add null to the list");
+        byte[] path = item.getPath().getBytes(UTF_8);
+        byte[] json = writer.asJson(item.getNodeState()).getBytes(UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + path.length + json.length);
+        record.putInt(path.length).putInt(json.length).put(path).put(json);
+        if (size() == positions.length) {
+            long[] newPositions = new long[positions.length * 2];
+            for (long i = headIndex; i < tailIndex; i++) {
+                newPositions[(int) (i % newPositions.length)] = positions[(int) (i % positions.length)];
+            }
+            positions = newPositions;
+        }
+        positions[(int) (tailIndex % positions.length)] = writePosition;
+        writePosition = write(writePosition, record.array());
+        cache.put(tailIndex, item);
+        tailIndex++;
+    }
+
+    @Override
+    public NodeStateEntry remove() {
+        Preconditions.checkState(!isEmpty(), "Cannot remove item from empty list");
+        NodeStateEntry ret = get(headIndex);
+        cache.remove(headIndex);
+        headIndex++;
+        releaseChunks(isEmpty() ? writePosition : positions[(int) (headIndex % positions.length)]);
+        return ret;
+    }
+
+    /**
+     * The estimated memory usage, which is the allocated direct memory plus
+     * the ring of positions. Chunks mapped from the spill file are not
+     * included.
+     */
+    @Override
+    public long estimatedMemoryUsage() {
+        return directMemory + 8L * positions.length;
+    }
+
+    @Override
+    public int size() {
+        return (int) (tailIndex - headIndex);
+    }
+
+    @Override
+    public Iterator<NodeStateEntry> iterator() {
+        return new NodeIterator(headIndex);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return headIndex == tailIndex;
+    }
+
+    @Override
+    public void close() {
+        LOG.info("Max direct memory used {}, max spilled {}, cache hits {} misses {}",
+                humanReadableByteCount(maxDirectMemoryUsed),
+                humanReadableByteCount((long) maxSpilledChunks * chunkSize), cacheHits, cacheMisses);
+        cache.clear();
+        // direct and mapped buffers are released when garbage collected
+        chunks.clear();
+        freeSpilled.clear();
+        spare = null;
+        directMemory = 0;
+        spilledChunks = 0;
+        spillFileChunks = 0;
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close the spill file {}", spillFile, e);
+            }
+            spillChannel = null;
+            FileUtils.deleteQuietly(spillFile);
+        }
+    }
+
+    /**
+     * The number of chunks currently mapped from the spill file.
+     */
+    int getSpilledChunkCount() {
+        return spilledChunks;
+    }
+
+    private NodeStateEntry get(long index) {
+        NodeStateEntry result = cache.get(index);
+        if (result == null) {
+            cacheMisses++;
+            long pos = positions[(int) (index % positions.length)];
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            pos = read(pos, header.array());
+            byte[] path = new byte[header.getInt()];
+            byte[] json = new byte[header.getInt()];
+            pos = read(pos, path);
+            read(pos, json);
+            result = reader.readLazily(new String(path, UTF_8), new String(json, UTF_8));
+            cache.put(index, result);
+        } else {
+            cacheHits++;
+        }
+        return result;
+    }
+
+    //~-----------------------------------< chunk access >
+
+    private long write(long pos, byte[] src) {
+        for (int done = 0; done < src.length; ) {
+            long chunkIndex = pos / chunkSize;
+            while (chunkIndex >= firstChunk + chunks.size()) {
+                chunks.add(newChunk());
+            }
+            int offset = (int) (pos % chunkSize);
+            int n = Math.min(src.length - done, chunkSize - offset);
+            ByteBuffer b = chunks.get((int) (chunkIndex - firstChunk)).buffer.duplicate();
+            b.position(offset);
+            b.put(src, done, n);
+            done += n;
+            pos += n;
+        }
+        return pos;
+    }
+
+    private long read(long pos, byte[] dst) {
+        for (int done = 0; done < dst.length; ) {
+            long chunkIndex = pos / chunkSize;
+            int offset = (int) (pos % chunkSize);
+            int n = Math.min(dst.length - done, chunkSize - offset);
+            ByteBuffer b = chunks.get((int) (chunkIndex - firstChunk)).buffer.duplicate();
+            b.position(offset);
+            b.get(dst, done, n);
+            done += n;
+            pos += n;
+        }
+        return pos;
+    }
+
+    /**
+     * Releases the chunks before the one that contains the given position.
+     */
+    private void releaseChunks(long headPosition) {
+        long headChunk = headPosition / chunkSize;
+        while (firstChunk < headChunk && !chunks.isEmpty()) {
+            Chunk c = chunks.remove(0);
+            firstChunk++;
+            if (c.spilled) {
+                spilledChunks--;
+                freeSpilled.add(c);
+            } else if (spare == null) {
+                spare = c;
+            } else {
+                directMemory -= chunkSize;
+            }
+        }
+    }
+
+    private Chunk newChunk() {
+        Chunk c;
+        if (spare != null) {
+            c = spare;
+            spare = null;
+        } else if (directMemory + chunkSize <= maxDirectMemory) {
+            c = allocateDirect();
+            if (c == null) {
+                c = allocateSpilled();
+            }
+        } else {
+            c = allocateSpilled();
+        }
+        maxDirectMemoryUsed = Math.max(maxDirectMemoryUsed, directMemory);
+        maxSpilledChunks = Math.max(maxSpilledChunks, spilledChunks);
+        return c;
+    }
+
+    private Chunk allocateDirect() {
+        try {
+            Chunk c = new Chunk(ByteBuffer.allocateDirect(chunkSize), false);
+            directMemory += chunkSize;
+            return c;
+        } catch (OutOfMemoryError e) {
+            LOG.warn("Direct memory exhausted at {}, spilling to {}",
+                    humanReadableByteCount(directMemory), spillFile);
+            // don't try again
+            maxDirectMemory = directMemory;
+            return null;
+        }
+    }
+
+    private Chunk allocateSpilled() {
+        spilledChunks++;
+        Chunk c = freeSpilled.poll();
+        if (c != null) {
+            return c;
+        }
+        try {
+            if (spillChannel == null) {
+                LOG.info("Direct memory limit of {} reached, spilling to {}",
+                        humanReadableByteCount(maxDirectMemory), spillFile);
+                FileUtils.deleteQuietly(spillFile);
+                spillChannel = FileChannel.open(spillFile.toPath(), StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            long offset = (long) spillFileChunks * chunkSize;
+            c = new Chunk(spillChannel.map(FileChannel.MapMode.READ_WRITE, offset, chunkSize), true);
+            spillFileChunks++;
+            return c;
+        } catch (IOException e) {
+            spilledChunks--;
+            throw new UncheckedIOException("Failed to map a chunk of the spill file " + spillFile, e);
+        }
+    }
+
+    private static final class Chunk {
+
+        final ByteBuffer buffer;
+        final boolean spilled;
+
+        Chunk(ByteBuffer buffer, boolean spilled) {
+            this.buffer = buffer;
+            this.spilled = spilled;
+        }
+    }
+
+    /**
+     * A node iterator over this list.
+     */
+    class NodeIterator implements Iterator<NodeStateEntry> {
+
+        private long index;
+
+        NodeIterator(long index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < tailIndex;
+        }
+
+        @Override
+        public NodeStateEntry next() {
+            if (index < headIndex || index >= tailIndex) {
+                throw new IllegalStateException();
+            }
+            return get(index++);
+        }
+
+    }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.index.indexer.segment;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Closer;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.index.IndexHelper;
+import org.apache.jackrabbit.oak.index.IndexerSupport;
+import org.apache.jackrabbit.oak.index.indexer.document.CompositeIndexer;
+import org.apache.jackrabbit.oak.index.indexer.document.ConcurrentIndexing;
+import org.apache.jackrabbit.oak.index.indexer.document.LuceneIndexerProvider;
+import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntry;
+import org.apache.jackrabbit.oak.index.indexer.document.NodeStateIndexer;
+import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
+import org.apache.jackrabbit.oak.plugins.index.NodeTraversalCallback;
+import org.apache.jackrabbit.oak.plugins.index.progress.IndexingProgressReporter;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.apache.jackrabbit.oak.spi.state.NodeStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.TYPE_LUCENE;
+
+/**
+ * Reindexes Lucene indexes by traversing the checkpoint of a segment node
+ * store with multiple threads.
+ * <p>
+ * The tree is split into subtrees, starting at the root and descending
+ * level by level until there are enough subtrees to keep all threads busy.
+ * The nodes above the subtrees are indexed on their own. The children of a
+ * node with many children are not listed upfront. Instead, the threads take
+ * them in batches from a shared iterator. Each thread takes subtrees from a
+ * shared queue and indexes them into its own Lucene directories, so no
+ * index writer is shared. At the end the directories of all threads are
+ * added to the indexes in the local index directory.
+ * <p>
+ * Only Lucene indexes are supported. The reindex fails before any index
+ * definition is changed if another index type is configured.
+ * <p>
+ * Segment node states are immutable and the segment reader of the file
+ * store is safe for concurrent use, so the threads traverse the checkpoint
+ * without further coordination.
+ */
+public class SegmentStoreIndexer implements Closeable {
+    /**
+     * Number of subtrees per thread the tree is split into, so that threads
+     * finishing small subtrees early can pick up further work.
+     */
+    private static final int SUBTREES_PER_THREAD = 16;
+    /**
+     * The children of nodes with more children are taken in batches from a
+     * shared iterator, which limits the number of subtrees kept in memory.
+     */
+    private static final int MAX_CHILDREN_TO_SPLIT = 10000;
+    private static final int CHILDREN_BATCH_SIZE = 1000;
+    private static final int MAX_SPLIT_DEPTH = 8;
+    private static final int PROGRESS_INTERVAL = 100000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Closer closer = Closer.create();
+    private final IndexHelper indexHelper;
+    private final IndexerSupport indexerSupport;
+    private final int threadCount;
+    private final Set<String> indexerPaths = new HashSet<>();
+    private final AtomicLong traversedCount = new AtomicLong();
+
+    public SegmentStoreIndexer(IndexHelper indexHelper, IndexerSupport indexerSupport, int threadCount) {
+        checkArgument(threadCount > 0, "threadCount must be > 0: %s", threadCount);
+        this.indexHelper = indexHelper;
+        this.indexerSupport = indexerSupport;
+        this.threadCount = threadCount;
+    }
+
+    public void reindex() throws CommitFailedException, IOException {
+        if (indexHelper.getMountInfoProvider().hasNonDefaultMounts()) {
+            throw new IllegalStateException("Parallel reindexing is not supported with non default mounts");
+        }
+        NodeState checkpointedState = indexerSupport.retrieveNodeStateForCheckpoint();
+        checkIndexTypes(checkpointedState);
+        NodeStore copyOnWriteStore = new MemoryNodeStore(checkpointedState);
+        indexerSupport.switchIndexLanesAndReindexFlag(copyOnWriteStore);
+
+        NodeState root = copyOnWriteStore.getRoot();
+        NodeBuilder builder = root.builder();
+        LuceneIndexerProvider provider = closer.register(new LuceneIndexerProvider(indexHelper, indexerSupport));
+        //Only used to prepare the index definitions and to select the
+        //subtrees. The content is written by the indexers of the threads
+        List<NodeStateIndexer> indexers = ConcurrentIndexing.createIndexers(indexHelper, root, builder,
+                ImmutableList.of(provider),
+                new IndexingProgressReporter(IndexUpdateCallback.NOOP, NodeTraversalCallback.NOOP), indexerPaths);
+        indexers.forEach(closer::register);
+        CompositeIndexer indexer = new CompositeIndexer(indexers);
+        if (indexer.isEmpty()) {
+            return;
+        }
+
+        Stopwatch w = Stopwatch.createStarted();
+        Queue<Subtree> subtrees = split(checkpointedState, indexer);
+        log.info("Split the repository into {} subtrees in {}, indexing with {} threads",
+                subtrees.size(), w, threadCount);
+        ConcurrentIndexing.indexConcurrently("threads", threadCount, indexHelper.getWorkDir(),
+                (thread, indexDir) -> indexSubtrees(thread, subtrees, root, indexDir),
+                provider, indexerPaths, builder, root);
+        log.info("Traversed {} nodes and merged the indexes in {}", traversedCount.get(), w);
+
+        copyOnWriteStore.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        indexerSupport.postIndexWork(copyOnWriteStore);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closer.close();
+    }
+
+    /**
+     * Splits the tree into subtrees. Nodes, which are split, are added as
+     * single node entries. Hidden nodes and excluded paths are skipped.
+     */
+    private Queue<Subtree> split(NodeState root, CompositeIndexer indexer) {
+        Queue<Subtree> result = new ConcurrentLinkedQueue<>();
+        int target = threadCount * SUBTREES_PER_THREAD;
+        List<Subtree> level = ImmutableList.of(new Subtree("/", root, true));
+        for (int depth = 0; depth < MAX_SPLIT_DEPTH && level.size() < target; depth++) {
+            List<Subtree> next = new ArrayList<>();
+            boolean split = false;
+            for (Subtree s : level) {
+                if (!s.recursive || s.children != null || !s.state.getChildNodeNames().iterator().hasNext()) {
+                    next.add(s);
+                    continue;
+                }
+                split = true;
+                next.add(new Subtree(s.path, s.state, false));
+                if (s.state.getChildNodeCount(MAX_CHILDREN_TO_SPLIT + 1) > MAX_CHILDREN_TO_SPLIT) {
+                    next.add(Subtree.ofChildren(s.path, s.state));
+                    continue;
+                }
+                for (ChildNodeEntry child : s.state.getChildNodeEntries()) {
+                    String path = concat(s.path, child.getName());
+                    if (!NodeStateUtils.isHidden(child.getName()) && indexer.shouldInclude(path)) {
+                        next.add(new Subtree(path, child.getNodeState(), true));
+                    }
+                }
+            }
+            level = next;
+            if (!split) {
+                break;
+            }
+        }
+        result.addAll(level);
+        return result;
+    }
+
+    /**
+     * Indexes subtrees taken from the queue until it is empty. The children
+     * of a node with many children stay in the queue until all of them are
+     * taken, so that all threads can work on them.
+     *
+     * @return the timings of the thread.
+     */
+    private String indexSubtrees(int thread, Queue<Subtree> subtrees, NodeState root, File indexDir)
+            throws IOException, CommitFailedException {
+        Stopwatch w = Stopwatch.createStarted();
+        IndexingProgressReporter reporter =
+                new IndexingProgressReporter(IndexUpdateCallback.NOOP, NodeTraversalCallback.NOOP);
+        long count = 0;
+        int subtreeCount = 0;
+        try (Closer threadCloser = Closer.create()) {
+            LuceneIndexerProvider provider = threadCloser.register(new LuceneIndexerProvider(indexHelper, indexDir));
+            List<NodeStateIndexer> indexers = ConcurrentIndexing.createIndexers(indexHelper, root, root.builder(),
+                    ImmutableList.of(provider), reporter, new HashSet<>());
+            indexers.forEach(threadCloser::register);
+            CompositeIndexer indexer = new CompositeIndexer(indexers);
+            Subtree s;
+            while ((s = subtrees.peek()) != null) {
+                if (s.children != null) {
+                    List<ChildNodeEntry> batch = s.nextChildren();
+                    if (batch.isEmpty() && subtrees.remove(s)) {
+                        subtreeCount++;
+                    }
+                    for (ChildNodeEntry child : batch) {
+                        if (!NodeStateUtils.isHidden(child.getName())) {
+                            count += index(concat(s.path, child.getName()), child.getNodeState(), true, indexer);
+                        }
+                    }
+                } else if (subtrees.remove(s)) {
+                    count += index(s.path, s.state, s.recursive, indexer);
+                    subtreeCount++;
+                }
+            }
+            log.info("Thread {}: traversed {} nodes of {} subtrees in {}, closing indexers",
+                    thread, count, subtreeCount, w);
+        }
+        return String.format("Thread %d: indexed %d nodes of %d subtrees in %s", thread, count, subtreeCount, w);
+    }
+
+    private long index(String path, NodeState state, boolean recursive, CompositeIndexer indexer)
+            throws IOException, CommitFailedException {
+        if (!indexer.shouldInclude(path)) {
+            return 0;
+        }
+        indexer.index(new NodeStateEntry(state, path));
+        long total = traversedCount.incrementAndGet();
+        if (total % PROGRESS_INTERVAL == 0) {
+            log.info("Traversed {} nodes ({})", total, path);
+        }
+        long count = 1;
+        if (recursive) {
+            for (ChildNodeEntry child : state.getChildNodeEntries()) {
+                if (!NodeStateUtils.isHidden(child.getName())) {
+                    count += index(concat(path, child.getName()), child.getNodeState(), true, indexer);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Fails if an index is not a Lucene index, as only those are
+     * supported by the {@link LuceneIndexerProvider}.
+     */
+    private void checkIndexTypes(NodeState root) {
+        List<String> unsupported = new ArrayList<>();
+        for (String indexPath : indexHelper.getIndexPaths()) {
+            String type = NodeStateUtils.getNode(root, indexPath).getString(TYPE_PROPERTY_NAME);
+            if (type != null && !TYPE_LUCENE.equals(type)) {
+                unsupported.add(indexPath + " (" + type + ")");
+            }
+        }
+        if (!unsupported.isEmpty()) {
+            throw new IllegalStateException("Parallel reindexing only supports lucene indexes, " +
+                    "reindex these indexes with a single thread: " + unsupported);
+        }
+    }
+
+    private static final class Subtree {
+        final String path;
+        final NodeState state;
+        /**
+         * Whether to index the descendants, or only the node itself.
+         */
+        final boolean recursive;
+        /**
+         * The children of the node, if they are taken in batches, or null.
+         */
+        final Iterator<? extends ChildNodeEntry> children;
+
+        Subtree(String path, NodeState state, boolean recursive) {
+            this(path, state, recursive, null);
+        }
+
+        private Subtree(String path, NodeState state, boolean recursive,
+                        Iterator<? extends ChildNodeEntry> children) {
+            this.path = path;
+            this.state = state;
+            this.recursive = recursive;
+            this.children = children;
+        }
+
+        /**
+         * A subtree for the children of the given node, which are indexed
+         * with their descendants, but without the node itself.
+         */
+        static Subtree ofChildren(String path, NodeState state) {
+            return new Subtree(path, state, true, state.getChildNodeEntries().iterator());
+        }
+
+        /**
+         * @return the next batch of children, or an empty list if all
+         *         children were taken.
+         */
+        synchronized List<ChildNodeEntry> nextChildren() {
+            List<ChildNodeEntry> batch = new ArrayList<>(CHILDREN_BATCH_SIZE);
+            while (batch.size() < CHILDREN_BATCH_SIZE && children.hasNext()) {
+                batch.add(children.next());
+            }
+            return batch;
+        }
+    }
+}
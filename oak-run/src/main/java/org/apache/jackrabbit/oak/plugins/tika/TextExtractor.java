@@ -21,23 +21,34 @@ package org.apache.jackrabbit.oak.plugins.tika;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 import com.google.common.io.ByteSource;
 import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.jackrabbit.oak.commons.IOUtils;
 import org.apache.jackrabbit.oak.commons.io.LazyInputStream;
+import org.apache.jackrabbit.oak.plugins.blob.datastore.DataStoreBlobStore;
 import org.apache.jackrabbit.oak.plugins.blob.datastore.TextWriter;
 import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.ParseContext;
@@ -51,6 +62,8 @@ class TextExtractor implements Closeable {
     private static final int PROGRESS_BATCH_SIZE = 1000;
     private static final int MAX_EXTRACT_LENGTH = 100000;
     private static final String ERROR_TEXT = "TextExtractionError";
+    private static final long FLUSH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    private static final int DEFAULT_MAX_STUCK_PARSERS = 10;
 
     private final TextWriter textWriter;
 
@@ -59,6 +72,17 @@ class TextExtractor implements Closeable {
     private ExecutorService executorService;
     private int threadPoolSize = Runtime.getRuntime().availableProcessors();
     private int queueSize = 100;
+    private long extractionTimeoutSecs;
+    private ExecutorService parserExecutorService;
+    private int maxStuckParsers = DEFAULT_MAX_STUCK_PARSERS;
+    private volatile boolean aborted;
+    private volatile long lastFlushTime = System.currentTimeMillis();
+
+    /**
+     * Content ids of the binaries currently being extracted. Binaries with
+     * the same content referred via different blob ids are extracted once.
+     */
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
 
     private final AtomicInteger errorCount = new AtomicInteger();
     private final AtomicLong timeTaken = new AtomicLong();
@@ -69,6 +93,9 @@ class TextExtractor implements Closeable {
     private final AtomicInteger emptyCount = new AtomicInteger();
     private final AtomicInteger notSupportedCount = new AtomicInteger();
     private final AtomicInteger alreadyExtractedCount = new AtomicInteger();
+    private final AtomicInteger inProgressCount = new AtomicInteger();
+    private final AtomicInteger timeoutCount = new AtomicInteger();
+    private final AtomicInteger stuckParserCount = new AtomicInteger();
     private final AtomicLong extractedTextSize = new AtomicLong();
     private final AtomicLong nonEmptyExtractedTextSize = new AtomicLong();
     private final AtomicLong totalSizeRead = new AtomicLong();
@@ -87,8 +114,12 @@ class TextExtractor implements Closeable {
     public void extract(Iterable<BinaryResource> binaries) throws InterruptedException, IOException {
         initialize();
         for (BinaryResource binary : binaries) {
-            inputQueue.put(new WorkItem(binary));
+            WorkItem workItem = new WorkItem(binary);
+            do {
+                checkNotAborted();
+            } while (!inputQueue.offer(workItem, 1, TimeUnit.SECONDS));
         }
+        checkNotAborted();
     }
 
     @Override
@@ -102,6 +133,10 @@ class TextExtractor implements Closeable {
 
         if (executorService != null) {
             try {
+                if (aborted) {
+                    //The extractor threads have stopped already
+                    inputQueue.clear();
+                }
                 inputQueue.put(SHUTDOWN_SIGNAL);
                 executorService.shutdown();
                 //Wait long enough
@@ -110,6 +145,10 @@ class TextExtractor implements Closeable {
                 Thread.currentThread().interrupt();
             }
         }
+        if (parserExecutorService != null) {
+            //Threads still parsing have timed out already
+            parserExecutorService.shutdownNow();
+        }
         dumpStats();
         closed = true;
     }
@@ -126,6 +165,27 @@ class TextExtractor implements Closeable {
         this.stats = stats;
     }
 
+    /**
+     * Sets the time after which the extraction of a binary is abandoned
+     * and the binary is marked as erroneous. A parser not reacting to the
+     * interrupt keeps running in the background. Defaults to 0, meaning
+     * no timeout.
+     */
+    public void setExtractionTimeoutSecs(long extractionTimeoutSecs) {
+        this.extractionTimeoutSecs = extractionTimeoutSecs;
+    }
+
+    /**
+     * Sets the number of timed out parsers, which may keep running in the
+     * background. Once that many parsers are stuck, the extraction stops
+     * taking new binaries and {@link #extract(Iterable)} fails, so that
+     * the number of threads stays bounded. Only used with an extraction
+     * timeout. Defaults to 10.
+     */
+    public void setMaxStuckParsers(int maxStuckParsers) {
+        this.maxStuckParsers = maxStuckParsers;
+    }
+
     private void dumpStats() {
         StringWriter sw = new StringWriter();
         PrintWriter pw = new PrintWriter(sw);
@@ -135,9 +195,12 @@ class TextExtractor implements Closeable {
         pw.printf("\t     Empty Count           : %d%n", emptyCount.get());
         pw.printf("\t     Text Written Count    : %d%n", textWrittenCount.get());
         pw.printf("\t   Parser Error Count      : %d%n", parserErrorCount.get());
+        pw.printf("\t     Timeout Count         : %d%n", timeoutCount.get());
         pw.printf("\t   Error Count             : %d%n", errorCount.get());
         pw.printf("\t   Not Supported Count     : %d%n", notSupportedCount.get());
         pw.printf("\t   Already processed Count : %d%n", alreadyExtractedCount.get());
+        pw.printf("\t   In progress Count       : %d%n", inProgressCount.get());
+        pw.printf("\t Stuck Parser Count        : %d%n", stuckParserCount.get());
         pw.printf("\t Total bytes read          : %s%n", IOUtils.humanReadableByteCount(totalSizeRead.get()));
         pw.printf("\t Total text extracted      : %s%n", IOUtils.humanReadableByteCount(extractedTextSize.get()));
         pw.printf("\t   Non empty text          : %s%n", IOUtils.humanReadableByteCount(nonEmptyExtractedTextSize.get()));
@@ -166,6 +229,14 @@ class TextExtractor implements Closeable {
         }
         inputQueue = new ArrayBlockingQueue<WorkItem>(queueSize);
         tika = new TikaHelper(tikaConfig);
+        if (extractionTimeoutSecs > 0) {
+            //Each extractor thread waits for one parser at a time. Once
+            //maxStuckParsers parsers timed out and keep running, the
+            //extractor threads stop, so the pool never needs more threads
+            parserExecutorService = new ThreadPoolExecutor(0, threadPoolSize + maxStuckParsers,
+                    60, TimeUnit.SECONDS, new SynchronousQueue<>(), new ThreadFactoryBuilder()
+                    .setDaemon(true).setNameFormat("tika-parser-%d").build());
+        }
         initializeExecutorService();
         initialized = true;
     }
@@ -185,7 +256,25 @@ class TextExtractor implements Closeable {
             return;
         }
 
-        //TODO Handle case where same blob is being concurrently processed
+        String contentId = getContentId(blobId);
+        if (!inProgress.add(contentId)) {
+            //Same content is being extracted by another thread
+            inProgressCount.incrementAndGet();
+            return;
+        }
+        try {
+            //Check again as the other thread may have completed in between
+            if (textWriter.isProcessed(blobId)) {
+                alreadyExtractedCount.incrementAndGet();
+                return;
+            }
+            extractText(source, type, blobId);
+        } finally {
+            inProgress.remove(contentId);
+        }
+    }
+
+    private void extractText(BinaryResource source, String type, String blobId) throws IOException {
         Metadata metadata = new Metadata();
         metadata.set(Metadata.CONTENT_TYPE, type);
         if (source.getEncoding() != null) { // not mandatory
@@ -219,7 +308,7 @@ class TextExtractor implements Closeable {
     private class Extractor implements Runnable {
         @Override
         public void run() {
-            while (true) {
+            while (!aborted) {
                 WorkItem workItem = null;
                 try {
                     workItem = inputQueue.take();
@@ -229,6 +318,7 @@ class TextExtractor implements Closeable {
                     }
                     extractText(workItem.source);
                     dumpProgress(processedCount.incrementAndGet());
+                    flushIfNeeded();
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     return;
@@ -240,6 +330,33 @@ class TextExtractor implements Closeable {
         }
     }
 
+    /**
+     * Periodically persists the state of the text writer, so that an
+     * interrupted extraction can be resumed.
+     */
+    private void flushIfNeeded() throws IOException {
+        if (!(textWriter instanceof Flushable)
+                || System.currentTimeMillis() - lastFlushTime < FLUSH_INTERVAL) {
+            return;
+        }
+        synchronized (this) {
+            if (System.currentTimeMillis() - lastFlushTime >= FLUSH_INTERVAL) {
+                ((Flushable) textWriter).flush();
+                lastFlushTime = System.currentTimeMillis();
+                log.debug("Flushed the state of {}", textWriter);
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the content of the blob. The ids of the
+     * DataStoreBlobStore may have the length of the content appended,
+     * which is stripped.
+     */
+    private static String getContentId(String blobId) {
+        return DataStoreBlobStore.BlobId.of(blobId).getBlobId();
+    }
+
     //~--------------------------------------< Tika >
 
     private String parseStringValue(ByteSource byteSource, Metadata metadata, String path) {
@@ -260,11 +377,17 @@ class TextExtractor implements Closeable {
             };
             CountingInputStream stream = new CountingInputStream(new LazyInputStream(inputStreamSupplier));
             try {
-                tika.getParser().parse(stream, handler, metadata, new ParseContext());
+                parse(stream, handler, metadata);
             } finally {
                 size = stream.getCount();
                 stream.close();
             }
+        } catch (TimeoutException e) {
+            timeoutCount.incrementAndGet();
+            parserErrorCount.incrementAndGet();
+            log.warn("Text extraction from binary property {} timed out after {} seconds", path,
+                    extractionTimeoutSecs);
+            return ERROR_TEXT;
         } catch (LinkageError e) {
             // Capture errors caused by extraction libraries
             // not being present. This is equivalent to disabling
@@ -303,6 +426,88 @@ class TextExtractor implements Closeable {
         return null;
     }
 
+    /**
+     * Parses the stream, in a separate thread if a timeout is configured.
+     */
+    private void parse(InputStream stream, WriteOutContentHandler handler, Metadata metadata)
+            throws Throwable {
+        if (parserExecutorService == null) {
+            tika.getParser().parse(stream, handler, metadata, new ParseContext());
+            return;
+        }
+        ParseTask task = new ParseTask(stream, handler, metadata);
+        Future<?> f = parserExecutorService.submit(task);
+        try {
+            f.get(extractionTimeoutSecs, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            f.cancel(true);
+            if (task.abandon() && stuckParserCount.incrementAndGet() >= maxStuckParsers && !aborted) {
+                aborted = true;
+                log.error("{} parsers did not finish after timing out, stopping the text extraction",
+                        maxStuckParsers);
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void checkNotAborted() throws IOException {
+        if (aborted) {
+            throw new IOException("Text extraction stopped as " + maxStuckParsers +
+                    " parsers did not finish after timing out");
+        }
+    }
+
+    /**
+     * Parses a binary in the parser thread pool. A parse, which is
+     * abandoned after it timed out, is counted as stuck until it finishes.
+     */
+    private class ParseTask implements Callable<Void> {
+        private static final int SUBMITTED = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int ABANDONED = 3;
+
+        private final AtomicInteger state = new AtomicInteger(SUBMITTED);
+        private final InputStream stream;
+        private final WriteOutContentHandler handler;
+        private final Metadata metadata;
+
+        ParseTask(InputStream stream, WriteOutContentHandler handler, Metadata metadata) {
+            this.stream = stream;
+            this.handler = handler;
+            this.metadata = metadata;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            if (!state.compareAndSet(SUBMITTED, RUNNING)) {
+                //Abandoned before it started
+                return null;
+            }
+            try {
+                tika.getParser().parse(stream, handler, metadata, new ParseContext());
+            } finally {
+                if (!state.compareAndSet(RUNNING, DONE)) {
+                    stuckParserCount.decrementAndGet();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return whether the parse is still running, and therefore stuck.
+         */
+        boolean abandon() {
+            if (state.compareAndSet(RUNNING, ABANDONED)) {
+                return true;
+            }
+            state.compareAndSet(SUBMITTED, ABANDONED);
+            return false;
+        }
+    }
+
     //~--------------------------------------< WorkItem >
 
     private static class WorkItem {
@@ -154,11 +154,14 @@ public class TextExtractorMain {
                 checkNotNull(blobStore, "BlobStore found to be null.");
 
                 DataStoreTextWriter writer = new DataStoreTextWriter(storeDir, false);
+                writer.setCompressText(tikaOpts.isCompressText());
                 TextExtractor extractor = new TextExtractor(writer);
 
                 if (tikaOpts.isPoolSizeDefined()) {
                     extractor.setThreadPoolSize(tikaOpts.getPoolSize());
                 }
+                extractor.setExtractionTimeoutSecs(tikaOpts.getExtractionTimeout());
+                extractor.setMaxStuckParsers(tikaOpts.getMaxStuckParsers());
 
                 if (tikaConfigFile != null) {
                     extractor.setTikaConfig(tikaConfigFile);
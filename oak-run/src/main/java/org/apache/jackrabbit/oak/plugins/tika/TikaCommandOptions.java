@@ -40,6 +40,9 @@ public class TikaCommandOptions implements OptionsBean {
     private final OptionSpec<File> storeDirSpecOpt;
     private final OptionSpec<File> indexDirSpecOpt;
     private final OptionSpec<Integer> poolSizeOpt;
+    private final OptionSpec<Integer> extractionTimeoutOpt;
+    private final OptionSpec<Integer> maxStuckParsersOpt;
+    private final OptionSpec<Void> compressTextOpt;
 
     private final OptionSpec<Void> reportAction;
     private final OptionSpec<Void> generateAction;
@@ -84,6 +87,23 @@ public class TikaCommandOptions implements OptionsBean {
                 .withRequiredArg()
                 .ofType(Integer.class);
 
+        extractionTimeoutOpt = parser
+                .accepts("extraction-timeout", "Time in seconds after which the text extraction of a binary is " +
+                        "abandoned and the binary is marked as erroneous. Defaults to 0, meaning no timeout")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(0);
+
+        maxStuckParsersOpt = parser
+                .accepts("max-stuck-parsers", "Number of parsers, which may keep running after their extraction " +
+                        "timed out. Once reached, the extraction stops. Only used with --extraction-timeout")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(10);
+
+        compressTextOpt = parser.accepts("compress-text", "Compresses the extracted text stored in the " +
+                "directory set via --store-path");
+
         reportAction = parser.accepts("report", "Generates a summary report based on the csv file");
         generateAction = parser.accepts("generate", "Generates the CSV file required for 'extract' and 'report' actions");
         populateAction = parser.accepts("populate", "Populates extraction store based on supplied indexed data and csv file");
@@ -146,6 +166,18 @@ public class TikaCommandOptions implements OptionsBean {
         return poolSizeOpt.value(options);
     }
 
+    public int getExtractionTimeout() {
+        return extractionTimeoutOpt.value(options);
+    }
+
+    public int getMaxStuckParsers() {
+        return maxStuckParsersOpt.value(options);
+    }
+
+    public boolean isCompressText() {
+        return options.has(compressTextOpt);
+    }
+
     public boolean report() {
         //The non option mode is for comparability support with previous versions
         return options.has(reportAction) || hasNonOption("report");
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.oak.index.indexer.document.DocumentStoreIndexer;
+import org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileNodeStoreBuilder;
+import org.apache.jackrabbit.oak.plugins.document.DocumentMKBuilderProvider;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexDefinition;
+import org.apache.jackrabbit.oak.plugins.index.lucene.directory.FSDirectoryFactory;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.INDEX_DATA_CHILD_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.search.FieldNames.PATH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reindexes a DocumentNodeStore with the flat file store split into
+ * partitions and compares the results of a query on the index with the
+ * results of a reindex without partitions. The flat file store is built
+ * incrementally from an empty checkpoint, which doesn't require MongoDB.
+ */
+public class DocumentStoreIndexerPartitionIT extends AbstractIndexCommandTest {
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    @After
+    public void resetSysProps() {
+        System.clearProperty(DocumentStoreIndexer.OAK_INDEXER_PARTITION_COUNT);
+        System.clearProperty(DocumentStoreIndexer.OAK_INDEXER_PREVIOUS_SORTED_FILE);
+        System.clearProperty(DocumentStoreIndexer.OAK_INDEXER_PREVIOUS_CHECKPOINT);
+        System.clearProperty(FlatFileNodeStoreBuilder.OAK_INDEXER_USE_ZIP);
+    }
+
+    @Test
+    public void sameResultsWithPartitions() throws Exception {
+        DocumentNodeStore dns = builderProvider.newBuilder().setAsyncDelay(0)
+                .setDocumentStore(new MemoryDocumentStore()).getNodeStore();
+        // the flat file store is built from an empty file and the changes
+        // since the checkpoint of the empty repository
+        String emptyCheckpoint = dns.checkpoint(TimeUnit.HOURS.toMillis(24));
+        File emptyFile = temporaryFolder.newFile();
+
+        fixture = new RepositoryFixture(temporaryFolder.newFolder(), dns);
+        createTestData(true);
+        // more content than the initial content, which means the partitions
+        // start at different content nodes
+        addTestContent(fixture, "/content/b", "foo", 1000);
+        addTestContent(fixture, "/content/c", "bar", 1000);
+        addTestContent(fixture, "/libs/d", "foo", 1000);
+        String checkpoint = dns.checkpoint(TimeUnit.HOURS.toMillis(24));
+        fixture.close();
+
+        System.setProperty(DocumentStoreIndexer.OAK_INDEXER_PREVIOUS_SORTED_FILE, emptyFile.getAbsolutePath());
+        System.setProperty(DocumentStoreIndexer.OAK_INDEXER_PREVIOUS_CHECKPOINT, emptyCheckpoint);
+        System.setProperty(FlatFileNodeStoreBuilder.OAK_INDEXER_USE_ZIP, "false");
+
+        Set<String> expected = reindexAndQuery(dns, checkpoint, 1);
+        assertEquals(2100, expected.size());
+        assertTrue(expected.contains("/testNode/a0"));
+        assertTrue(expected.contains("/content/b0"));
+        assertTrue(expected.contains("/libs/d0"));
+
+        assertEquals(expected, reindexAndQuery(dns, checkpoint, 2));
+        assertEquals(expected, reindexAndQuery(dns, checkpoint, 4));
+        dns.dispose();
+    }
+
+    /**
+     * Reindexes the test index and returns the paths of the nodes with a
+     * value for the property {@code foo} in the index.
+     */
+    private Set<String> reindexAndQuery(DocumentNodeStore dns, String checkpoint, int partitionCount)
+            throws Exception {
+        System.setProperty(DocumentStoreIndexer.OAK_INDEXER_PARTITION_COUNT, String.valueOf(partitionCount));
+        Whiteboard wb = new DefaultWhiteboard();
+        wb.register(StatisticsProvider.class, StatisticsProvider.NOOP, emptyMap());
+        File indexDir;
+        try (IndexHelper helper = new IndexHelper(dns, dns.getBlobStore(), wb, temporaryFolder.newFolder(),
+                temporaryFolder.newFolder(), asList(TEST_INDEX_PATH))) {
+            IndexerSupport support = new IndexerSupport(helper, checkpoint);
+            try (DocumentStoreIndexer indexer = new DocumentStoreIndexer(helper, support)) {
+                indexer.reindex();
+            }
+            indexDir = support.getLocalIndexDir();
+        }
+        return queryFoo(dns.retrieve(checkpoint), indexDir);
+    }
+
+    private static Set<String> queryFoo(NodeState root, File indexDir) throws IOException {
+        NodeState definition = NodeStateUtils.getNode(root, TEST_INDEX_PATH);
+        LuceneIndexDefinition idxDefinition = LuceneIndexDefinition.newBuilder(
+                root, definition, TEST_INDEX_PATH).build();
+        Set<String> paths = new HashSet<>();
+        try (Directory dir = new FSDirectoryFactory(indexDir).newInstance(
+                idxDefinition, definition.builder(), INDEX_DATA_CHILD_NAME, false);
+             DirectoryReader reader = DirectoryReader.open(dir)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            TopDocs docs = searcher.search(new TermQuery(new Term("foo", "bar")), Integer.MAX_VALUE);
+            for (ScoreDoc sd : docs.scoreDocs) {
+                assertTrue(paths.add(searcher.doc(sd.doc).get(PATH)));
+            }
+        }
+        return paths;
+    }
+}
@@ -132,6 +132,38 @@ public class IndexCommandIT extends AbstractIndexCommandTest {
         assertTrue(report.exists());
 
         assertThat(Files.toString(report, defaultCharset()), containsString("/oak:index/fooIndex"));
+        assertTrue(new File(outDir, IndexCommand.INDEX_CONSISTENCY_CHECK_JSON).exists());
+    }
+
+    @Test
+    public void consistencyCheckConcurrently() throws Exception{
+        createTestData(false);
+        //Close the repository so as all changes are flushed
+        fixture.close();
+
+        IndexCommand command = new IndexCommand();
+
+        File outDir = temporaryFolder.newFolder();
+        String[] args = {
+                "--index-temp-dir=" + temporaryFolder.newFolder().getAbsolutePath(),
+                "--index-out-dir="  + outDir.getAbsolutePath(),
+                "--index-consistency-check=2",
+                "--index-consistency-check-threads=4",
+                "--", // -- indicates that options have ended and rest needs to be treated as non option
+                fixture.getDir().getAbsolutePath()
+        };
+
+        command.execute(args);
+
+        File report = new File(outDir, IndexCommand.INDEX_CONSISTENCY_CHECK_TXT);
+        File jsonReport = new File(outDir, IndexCommand.INDEX_CONSISTENCY_CHECK_JSON);
+        assertTrue(report.exists());
+        assertTrue(jsonReport.exists());
+
+        assertThat(Files.toString(report, defaultCharset()), containsString("/oak:index/fooIndex"));
+        String json = Files.toString(jsonReport, defaultCharset());
+        assertThat(json, containsString("\"/oak:index/fooIndex\""));
+        assertThat(json, containsString("timeTakenMillis"));
     }
 
     @Test
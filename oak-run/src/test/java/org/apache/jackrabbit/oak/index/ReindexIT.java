@@ -198,6 +198,56 @@ public class ReindexIT extends AbstractIndexCommandTest {
         fixture4.close();
     }
 
+    @Test
+    public void reindexWithThreadsAndThenImport() throws Exception {
+        createTestData(true);
+        fixture.getAsyncIndexUpdate("async").run();
+
+        int fooCount = getFooCount(fixture, "foo");
+        String checkpoint = fixture.getNodeStore().checkpoint(TimeUnit.HOURS.toMillis(24));
+
+        //Close the repository so as all changes are flushed
+        fixture.close();
+
+        IndexCommand command = new IndexCommand();
+
+        File outDir = temporaryFolder.newFolder();
+        File storeDir = fixture.getDir();
+        String[] args = {
+                "--index-temp-dir=" + temporaryFolder.newFolder().getAbsolutePath(),
+                "--index-out-dir="  + outDir.getAbsolutePath(),
+                "--index-paths=/oak:index/fooIndex",
+                "--checkpoint="+checkpoint,
+                "--reindex",
+                "--index-threads=4",
+                "--", // -- indicates that options have ended and rest needs to be treated as non option
+                storeDir.getAbsolutePath()
+        };
+
+        command.execute(args);
+
+        File indexDir = new File(outDir, OutOfBandIndexer.LOCAL_INDEX_ROOT_DIR);
+        assertEquals(1, new IndexRootDirectory(indexDir).getAllLocalIndexes().size());
+
+        IndexCommand command2 = new IndexCommand();
+        String[] args2 = {
+                "--index-temp-dir=" + temporaryFolder.newFolder().getAbsolutePath(),
+                "--index-out-dir="  + temporaryFolder.newFolder().getAbsolutePath(),
+                "--index-import-dir="  + indexDir.getAbsolutePath(),
+                "--index-import",
+                "--read-write",
+                "--", // -- indicates that options have ended and rest needs to be treated as non option
+                storeDir.getAbsolutePath()
+        };
+
+        command2.execute(args2);
+
+        //All nodes indexed by the threads are found after the import
+        RepositoryFixture fixture2 = new RepositoryFixture(storeDir);
+        assertEquals(fooCount, getFooCount(fixture2, "foo"));
+        fixture2.close();
+    }
+
     @Test
     public void reindexInReadWriteMode() throws Exception{
         createTestData(true);
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.index.indexer.document.flatfile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntry;
+import org.apache.jackrabbit.oak.spi.blob.MemoryBlobStore;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static java.util.Collections.singleton;
+import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileNodeStoreBuilder.OAK_INDEXER_USE_ZIP;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlatFileSplitterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private Set<String> preferred = singleton("jcr:content");
+
+    @After
+    public void resetProperty() {
+        System.clearProperty(OAK_INDEXER_USE_ZIP);
+    }
+
+    @Test
+    public void splitAtSubtreeBoundaries() throws Exception {
+        System.setProperty(OAK_INDEXER_USE_ZIP, "false");
+        List<String> paths = createPaths();
+        FlatFileStore store = createStore(paths);
+        File dir = store.getStoreFile().getParentFile();
+        String[] files = dir.list();
+
+        List<FlatFileStore> partitions = new FlatFileSplitter(store, 4).split();
+        assertEquals(4, partitions.size());
+        // partitions are ranges of the same file
+        assertArrayEquals(files, dir.list());
+        assertPartitions(paths, partitions);
+    }
+
+    @Test
+    public void compressedIsNotSplit() throws Exception {
+        System.setProperty(OAK_INDEXER_USE_ZIP, "true");
+        List<String> paths = createPaths();
+        FlatFileStore store = createStore(paths);
+
+        List<FlatFileStore> partitions = new FlatFileSplitter(store, 4).split();
+        assertEquals(1, partitions.size());
+        assertEquals(TestUtils.sortPaths(paths, preferred), concat(partitions));
+    }
+
+    @Test
+    public void lessEntriesThanPartitions() throws Exception {
+        System.setProperty(OAK_INDEXER_USE_ZIP, "false");
+        List<String> paths = new ArrayList<>();
+        paths.add("/");
+        paths.add("/a");
+        FlatFileStore store = createStore(paths);
+
+        List<FlatFileStore> partitions = new FlatFileSplitter(store, 4).split();
+        // the root is never a split point
+        assertEquals(2, partitions.size());
+        assertEquals(paths, concat(partitions));
+    }
+
+    private void assertPartitions(List<String> paths, List<FlatFileStore> partitions) {
+        List<String> all = new ArrayList<>();
+        for (FlatFileStore p : partitions) {
+            List<String> partitionPaths = paths(p);
+            assertEquals(partitionPaths.size(), p.getEntryCount());
+            String first = partitionPaths.get(0);
+            if (!all.isEmpty()) {
+                // a partition never starts within a preferred subtree
+                assertFalse(first, first.contains("jcr:content"));
+            }
+            for (String path : partitionPaths) {
+                if (path.contains("/jcr:content")) {
+                    // the node owning the relative node is in the same partition
+                    String owner = path.substring(0, path.indexOf("/jcr:content"));
+                    assertTrue(path, partitionPaths.contains(owner));
+                }
+            }
+            all.addAll(partitionPaths);
+        }
+        assertEquals(TestUtils.sortPaths(paths, preferred), all);
+    }
+
+    private FlatFileStore createStore(List<String> paths) throws Exception {
+        return new FlatFileNodeStoreBuilder(TestUtils.createEntries(paths), folder.newFolder())
+                .withBlobStore(new MemoryBlobStore())
+                .withPreferredPathElements(preferred)
+                .build();
+    }
+
+    private static List<String> createPaths() {
+        List<String> paths = new ArrayList<>();
+        paths.add("/");
+        for (int i = 0; i < 10; i++) {
+            paths.add("/n" + i);
+            paths.add("/n" + i + "/jcr:content");
+            for (int j = 0; j < 5; j++) {
+                paths.add("/n" + i + "/jcr:content/c" + j);
+            }
+            paths.add("/n" + i + "/child");
+        }
+        return paths;
+    }
+
+    private static List<String> concat(List<FlatFileStore> partitions) {
+        List<String> all = new ArrayList<>();
+        partitions.forEach(p -> all.addAll(paths(p)));
+        return all;
+    }
+
+    private static List<String> paths(FlatFileStore store) {
+        return StreamSupport.stream(store.spliterator(), false)
+                .map(NodeStateEntry::getPath)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.index.indexer.document.flatfile;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Set;
+
+import com.google.common.base.Stopwatch;
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntry;
+import org.apache.jackrabbit.oak.spi.blob.MemoryBlobStore;
+
+import static java.util.Collections.singleton;
+import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileStoreIterator.BUFFER_MEM_LIMIT_CONFIG_NAME;
+import static org.apache.jackrabbit.oak.index.indexer.document.flatfile.FlatFileStoreIterator.BUFFER_OFF_HEAP_CONFIG_NAME;
+
+/**
+ * Traverses a flat file store with a single node with many children, and
+ * reads the child node count of that node first, which moves all children
+ * into the look-ahead buffer of the iterator. Compares the buffer
+ * implementations by time, used heap and used direct and mapped memory.
+ * <p>
+ * Usage: FlatFileStoreIteratorBenchmark [childCount] [mode...] with modes
+ * {@code offHeap}, {@code persisted} and {@code heap}. Defaults to one
+ * million children and all modes. The heap mode needs a large heap. The
+ * direct memory limit of the off-heap buffer is set with
+ * {@code -Doak.indexer.offHeapBuffer.memLimitInMB}.
+ */
+public class FlatFileStoreIteratorBenchmark {
+
+    public static void main(String... args) throws IOException {
+        int childCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String[] modes = args.length > 1 ?
+                Arrays.copyOfRange(args, 1, args.length) :
+                new String[] {"offHeap", "persisted", "heap"};
+
+        File dir = new File("target", "flat-file-benchmark");
+        FileUtils.deleteQuietly(dir);
+        FileUtils.forceMkdir(dir);
+        try {
+            File storeFile = createStoreFile(dir, childCount);
+            for (String mode : modes) {
+                run(mode, storeFile, childCount);
+            }
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    private static File createStoreFile(File dir, int childCount) throws IOException {
+        Stopwatch w = Stopwatch.createStarted();
+        File file = new File(dir, "store-sorted.json");
+        try (BufferedWriter writer = FlatFileStoreUtils.createWriter(file, false)) {
+            writer.write("/|{}");
+            writer.newLine();
+            writer.write("/parent|{\"jcr:primaryType\":\"nam:nt:unstructured\"}");
+            writer.newLine();
+            for (int i = 0; i < childCount; i++) {
+                String path = String.format("/parent/n%010d", i);
+                writer.write(path + "|{\"jcr:primaryType\":\"nam:nt:unstructured\",\"title\":\"Child " + i + "\"}");
+                writer.newLine();
+            }
+        }
+        System.out.printf("Created store with %d children of size %d MB in %s%n",
+                childCount, file.length() / 1024 / 1024, w);
+        return file;
+    }
+
+    private static void run(String mode, File storeFile, int childCount) throws IOException {
+        switch (mode) {
+            case "offHeap":
+                System.setProperty(BUFFER_OFF_HEAP_CONFIG_NAME, "true");
+                break;
+            case "persisted":
+                System.clearProperty(BUFFER_OFF_HEAP_CONFIG_NAME);
+                System.setProperty(BUFFER_MEM_LIMIT_CONFIG_NAME, "0");
+                break;
+            case "heap":
+                System.clearProperty(BUFFER_OFF_HEAP_CONFIG_NAME);
+                System.setProperty(BUFFER_MEM_LIMIT_CONFIG_NAME, "-1");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+        System.gc();
+        Set<String> preferred = singleton("jcr:content");
+        MemoryBlobStore blobStore = new MemoryBlobStore();
+        Stopwatch w = Stopwatch.createStarted();
+        long count = 0;
+        long maxHeap = 0;
+        long maxDirect = 0;
+        long maxMapped = 0;
+        long titles = 0;
+        try (FlatFileStore store = new FlatFileStore(blobStore, storeFile,
+                new NodeStateEntryReader(blobStore), preferred, false)) {
+            for (NodeStateEntry e : store) {
+                if (e.getPath().equals("/parent")) {
+                    long children = e.getNodeState().getChildNodeCount(Long.MAX_VALUE);
+                    if (children != childCount) {
+                        throw new IllegalStateException("Expected " + childCount + " children, got " + children);
+                    }
+                    maxHeap = Math.max(maxHeap, usedHeap());
+                    maxDirect = Math.max(maxDirect, usedBufferPool("direct"));
+                    maxMapped = Math.max(maxMapped, usedBufferPool("mapped"));
+                    System.out.printf("%s: buffered %d children in %s, heap used %d MB, direct %d MB, mapped %d MB%n",
+                            mode, children, w, usedHeap() / 1024 / 1024,
+                            usedBufferPool("direct") / 1024 / 1024, usedBufferPool("mapped") / 1024 / 1024);
+                }
+                if (e.getNodeState().hasProperty("title")) {
+                    titles++;
+                }
+                if (++count % 100_000 == 0) {
+                    maxHeap = Math.max(maxHeap, usedHeap());
+                    maxDirect = Math.max(maxDirect, usedBufferPool("direct"));
+                    maxMapped = Math.max(maxMapped, usedBufferPool("mapped"));
+                }
+            }
+        }
+        System.out.printf("%s: traversed %d entries (%d titles) in %s, max used heap %d MB, direct %d MB, mapped %d MB%n",
+                mode, count, titles, w, maxHeap / 1024 / 1024, maxDirect / 1024 / 1024, maxMapped / 1024 / 1024);
+    }
+
+    private static long usedHeap() {
+        Runtime r = Runtime.getRuntime();
+        return r.totalMemory() - r.freeMemory();
+    }
+
+    private static long usedBufferPool(String name) {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals(name)) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
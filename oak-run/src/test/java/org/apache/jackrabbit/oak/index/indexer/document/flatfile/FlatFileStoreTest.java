@@ -19,20 +19,42 @@
 
 package org.apache.jackrabbit.oak.index.indexer.document.flatfile;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntry;
+import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntryTraverser;
+import org.apache.jackrabbit.oak.plugins.document.Collection;
+import org.apache.jackrabbit.oak.plugins.document.DocumentMKBuilderProvider;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeState;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
+import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.spi.blob.MemoryBlobStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
 
 @SuppressWarnings("StaticPseudoFunctionalStyleMethod")
@@ -40,6 +62,9 @@ public class FlatFileStoreTest {
     @Rule
     public TemporaryFolder folder = new TemporaryFolder(new File("target"));
 
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
     private Set<String> preferred = singleton("jcr:content");
 
     @Test
@@ -59,8 +84,125 @@ public class FlatFileStoreTest {
         assertEquals(sortedPaths, entryPaths);
     }
 
+    @Test
+    public void pipelinedStrategy() throws Exception {
+        List<String> paths = new ArrayList<>(createTestPaths());
+        for (int i = 0; i < 100; i++) {
+            paths.add("/c/n" + i);
+            paths.add("/c/n" + i + "/jcr:content");
+        }
+        MemoryDocumentStore store = new MemoryDocumentStore();
+        List<UpdateOp> ops = new ArrayList<>();
+        for (String p : paths) {
+            ops.add(new UpdateOp(Utils.getIdFromPath(p), true));
+        }
+        store.create(Collection.NODES, ops);
+
+        System.setProperty(FlatFileNodeStoreBuilder.OAK_INDEXER_PIPELINED, "true");
+        System.setProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_TRANSFORM_THREADS, "3");
+        System.setProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_BATCH_SIZE, "7");
+        // write a sorted file per batch to exercise the parallel merge
+        System.setProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_SORT_BUFFER_MB, "0");
+        try {
+            FlatFileStore flatStore = new FlatFileNodeStoreBuilder(Collections.emptyList(), folder.getRoot())
+                    .withBlobStore(new MemoryBlobStore())
+                    .withPreferredPathElements(preferred)
+                    .withNodeDocumentSource(store,
+                            doc -> TestUtils.createEntries(singletonList(doc.getPath().toString())))
+                    .build();
+
+            List<String> entryPaths = StreamSupport.stream(flatStore.spliterator(), false)
+                    .map(NodeStateEntry::getPath)
+                    .collect(Collectors.toList());
+
+            assertEquals(TestUtils.sortPaths(paths, preferred), entryPaths);
+            assertEquals(paths.size(), flatStore.getEntryCount());
+        } finally {
+            System.clearProperty(FlatFileNodeStoreBuilder.OAK_INDEXER_PIPELINED);
+            System.clearProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_TRANSFORM_THREADS);
+            System.clearProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_BATCH_SIZE);
+            System.clearProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_SORT_BUFFER_MB);
+        }
+    }
+
+    @Test
+    public void pipelinedSameAsTraverseWithSort() throws Exception {
+        MemoryDocumentStore store = new MemoryDocumentStore();
+        DocumentNodeStore ns = builderProvider.newBuilder().setAsyncDelay(0)
+                .setDocumentStore(store).getNodeStore();
+        NodeBuilder builder = ns.getRoot().builder();
+        for (int i = 0; i < 50; i++) {
+            NodeBuilder n = builder.child("n" + i);
+            n.setProperty("p", "v" + i);
+            n.setProperty("multi", asList(1L, 2L, (long) i), Type.LONGS);
+            n.child("jcr:content").setProperty("title", "t" + i);
+            n.child("b w").child("c");
+        }
+        // sorted differently by UTF-16 chars and by UTF-8 bytes
+        builder.child("x").child("\uD83D\uDE00");
+        builder.child("x").child("\uFF01");
+        merge(ns, builder);
+        DocumentNodeState root = ns.getRoot();
+
+        // changes after the revision of the flat file
+        builder = ns.getRoot().builder();
+        builder.child("n0").setProperty("p", "changed");
+        builder.child("n1").remove();
+        builder.child("new");
+        merge(ns, builder);
+
+        List<NodeStateEntry> entries = new ArrayList<>();
+        collectEntries(root, "/", entries);
+        FlatFileStore traverseWithSort = new FlatFileNodeStoreBuilder(entries, folder.newFolder())
+                .withBlobStore(new MemoryBlobStore())
+                .withPreferredPathElements(preferred)
+                .build();
+
+        NodeStateEntryTraverser traverser = new NodeStateEntryTraverser(root.getRootRevision(), ns, null);
+        System.setProperty(FlatFileNodeStoreBuilder.OAK_INDEXER_PIPELINED, "true");
+        System.setProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_TRANSFORM_THREADS, "3");
+        System.setProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_BATCH_SIZE, "7");
+        System.setProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_SORT_BUFFER_MB, "0");
+        FlatFileStore pipelined;
+        try {
+            pipelined = new FlatFileNodeStoreBuilder(Collections.emptyList(), folder.newFolder())
+                    .withBlobStore(new MemoryBlobStore())
+                    .withPreferredPathElements(preferred)
+                    .withNodeDocumentSource(store, traverser::getIncludedEntries)
+                    .build();
+        } finally {
+            System.clearProperty(FlatFileNodeStoreBuilder.OAK_INDEXER_PIPELINED);
+            System.clearProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_TRANSFORM_THREADS);
+            System.clearProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_BATCH_SIZE);
+            System.clearProperty(PipelinedStrategy.OAK_INDEXER_PIPELINED_SORT_BUFFER_MB);
+        }
+
+        List<String> expected = readLines(traverseWithSort);
+        assertEquals(entries.size(), expected.size());
+        assertEquals(expected, readLines(pipelined));
+    }
+
     private List<String> createTestPaths() {
         return asList("/a", "/b", "/c", "/a/b w", "/a/jcr:content", "/a/b", "/", "/b/l");
     }
 
-}
\ No newline at end of file
+    private static void collectEntries(NodeState state, String path, List<NodeStateEntry> entries) {
+        entries.add(new NodeStateEntry(state, path));
+        for (ChildNodeEntry child : state.getChildNodeEntries()) {
+            if (!NodeStateUtils.isHidden(child.getName())) {
+                collectEntries(child.getNodeState(), PathUtils.concat(path, child.getName()), entries);
+            }
+        }
+    }
+
+    private static List<String> readLines(FlatFileStore store) throws IOException {
+        try (BufferedReader reader = FlatFileStoreUtils.createReader(store.getStoreFile(),
+                store.isCompressionEnabled())) {
+            return IOUtils.readLines(reader);
+        }
+    }
+
+    private static void merge(DocumentNodeStore ns, NodeBuilder builder) throws Exception {
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.index.indexer.document.flatfile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntry;
+import org.apache.jackrabbit.oak.spi.blob.MemoryBlobStore;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static java.util.Collections.singleton;
+import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+
+public class IncrementalStoreBuilderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private Set<String> preferred = singleton("jcr:content");
+
+    private MemoryBlobStore blobStore = new MemoryBlobStore();
+
+    @Test
+    public void mergeChanges() throws Exception {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        for (int i = 0; i < 10; i++) {
+            NodeBuilder n = builder.child("n" + i);
+            n.setProperty("p", i);
+            n.child("jcr:content").setProperty("title", "t" + i);
+            n.child("child").child("grandchild");
+        }
+        builder.child(":hidden").setProperty("p", 1);
+        NodeState before = builder.getNodeState();
+        FlatFileStore previous = buildStore(before);
+
+        builder = before.builder();
+        builder.setProperty("rootProp", "x");
+        builder.child("n1").setProperty("p", 100);
+        builder.child("n2").getChildNode("jcr:content").setProperty("title", "changed");
+        builder.child("n3").remove();
+        builder.child("n4").getChildNode("child").remove();
+        builder.child("n5").child("added").child("addedChild").setProperty("p", "a");
+        builder.child("n55").child("jcr:content");
+        builder.child(":hidden").child("x");
+        // changes children only
+        builder.child("n6").child("child").child("other");
+        NodeState after = builder.getNodeState();
+
+        FlatFileStore incremental = new IncrementalStoreBuilder(previous.getStoreFile(), before, after,
+                folder.newFolder())
+                .withBlobStore(blobStore)
+                .withPreferredPathElements(preferred)
+                .build();
+
+        assertEquals(lines(buildStore(after)), lines(incremental));
+        assertEquals(lines(incremental).size(), incremental.getEntryCount());
+    }
+
+    @Test
+    public void noChanges() throws Exception {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        builder.child("a").child("jcr:content");
+        builder.child("b");
+        NodeState state = builder.getNodeState();
+        FlatFileStore previous = buildStore(state);
+
+        FlatFileStore incremental = new IncrementalStoreBuilder(previous.getStoreFile(), state, state,
+                folder.newFolder())
+                .withBlobStore(blobStore)
+                .withPreferredPathElements(preferred)
+                .build();
+
+        assertEquals(lines(previous), lines(incremental));
+    }
+
+    @Test
+    public void pathPredicate() throws Exception {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        builder.child("content").child("a");
+        builder.child("libs").child("b");
+        NodeState before = builder.getNodeState();
+        FlatFileStore previous = buildStore(before);
+
+        builder = before.builder();
+        builder.child("content").child("c");
+        builder.child("libs").child("d");
+        NodeState after = builder.getNodeState();
+
+        FlatFileStore incremental = new IncrementalStoreBuilder(previous.getStoreFile(), before, after,
+                folder.newFolder())
+                .withBlobStore(blobStore)
+                .withPreferredPathElements(preferred)
+                .withPathPredicate(path -> !path.startsWith("/libs/"))
+                .build();
+
+        List<String> paths = StreamSupport.stream(incremental.spliterator(), false)
+                .map(NodeStateEntry::getPath)
+                .collect(Collectors.toList());
+        assertEquals(TestUtils.sortPaths(paths, preferred), paths);
+        assertEquals(true, paths.contains("/content/c"));
+        assertEquals(false, paths.contains("/libs/d"));
+        // entries of the previous store are kept
+        assertEquals(true, paths.contains("/libs/b"));
+    }
+
+    private FlatFileStore buildStore(NodeState root) throws Exception {
+        List<NodeStateEntry> entries = new ArrayList<>();
+        collect("/", root, entries);
+        return new FlatFileNodeStoreBuilder(entries, folder.newFolder())
+                .withBlobStore(blobStore)
+                .withPreferredPathElements(preferred)
+                .build();
+    }
+
+    private static void collect(String path, NodeState state, List<NodeStateEntry> entries) {
+        entries.add(new NodeStateEntry(state, path));
+        for (ChildNodeEntry e : state.getChildNodeEntries()) {
+            if (!e.getName().startsWith(":")) {
+                collect(concat(path, e.getName()), e.getNodeState(), entries);
+            }
+        }
+    }
+
+    private List<String> lines(FlatFileStore store) {
+        NodeStateEntryWriter writer = new NodeStateEntryWriter(blobStore);
+        return StreamSupport.stream(store.spliterator(), false)
+                .map(writer::toString)
+                .collect(Collectors.toList());
+    }
+}
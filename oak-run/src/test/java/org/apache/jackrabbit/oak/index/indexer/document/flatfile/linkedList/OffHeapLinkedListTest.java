@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.index.indexer.document.flatfile.linkedList;
+
+import java.io.File;
+import java.util.Iterator;
+
+import org.apache.jackrabbit.oak.index.indexer.document.NodeStateEntry;
+import org.apache.jackrabbit.oak.index.indexer.document.flatfile.NodeStateEntryReader;
+import org.apache.jackrabbit.oak.index.indexer.document.flatfile.NodeStateEntryWriter;
+import org.apache.jackrabbit.oak.spi.blob.BlobStore;
+import org.apache.jackrabbit.oak.spi.blob.MemoryBlobStore;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapLinkedListTest extends FlatFileBufferLinkedListTest {
+
+    private static final int CHUNK_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    @Before
+    public void setup() {
+        list = newList(1, Long.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        list.close();
+    }
+
+    @Test
+    @Override
+    public void memUsage() {
+        long empty = list.estimatedMemoryUsage();
+        list.add(entry(0));
+        assertEquals(empty + CHUNK_SIZE, list.estimatedMemoryUsage());
+        for (int i = 1; i < 1000; i++) {
+            list.add(entry(i));
+        }
+        assertTrue(list.estimatedMemoryUsage() > 10 * CHUNK_SIZE);
+        while (!list.isEmpty()) {
+            list.remove();
+        }
+        // the chunk of the tail and a spare chunk are kept
+        assertTrue(list.estimatedMemoryUsage() <= 2 * CHUNK_SIZE + 8 * 1024);
+    }
+
+    @Test
+    public void spill() {
+        OffHeapLinkedList offHeap = newList(0, 3 * CHUNK_SIZE);
+        list = offHeap;
+        File spillFile = new File(folder.getRoot(), "spill");
+        long added = 0;
+        long removed = 0;
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                list.add(entry(added++));
+            }
+            assertTrue(offHeap.getSpilledChunkCount() > 0);
+            assertTrue(spillFile.exists());
+            assertTrue(list.estimatedMemoryUsage() <= 3 * CHUNK_SIZE + 8 * 2048);
+            Iterator<NodeStateEntry> it = list.iterator();
+            for (long i = removed; i < added; i++) {
+                assertEquals(value(i), it.next().getNodeState().getString("p"));
+            }
+            for (int i = 0; i < 900; i++) {
+                assertEquals(path(removed++), list.remove().getPath());
+            }
+        }
+        while (!list.isEmpty()) {
+            assertEquals(path(removed++), list.remove().getPath());
+        }
+        // only the chunk of the tail is kept
+        assertTrue(offHeap.getSpilledChunkCount() <= 1);
+        list.close();
+        assertFalse(spillFile.exists());
+    }
+
+    @Test
+    public void growAndWrap() {
+        list = newList(0, Long.MAX_VALUE);
+        long added = 0;
+        long removed = 0;
+        // move the head forward so that chunks are released while
+        // entries span chunks
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 3000 * (round + 1); i++) {
+                list.add(entry(added++));
+            }
+            Iterator<NodeStateEntry> it = list.iterator();
+            for (long i = removed; i < added; i++) {
+                assertEquals(path(i), it.next().getPath());
+            }
+            for (int i = 0; i < 2000 * (round + 1); i++) {
+                NodeStateEntry e = list.remove();
+                assertEquals(path(removed), e.getPath());
+                assertEquals(value(removed), e.getNodeState().getString("p"));
+                removed++;
+            }
+            assertEquals(added - removed, list.size());
+        }
+        while (!list.isEmpty()) {
+            assertEquals(path(removed++), list.remove().getPath());
+        }
+        assertTrue(list.isEmpty());
+    }
+
+    private OffHeapLinkedList newList(int cacheSize, long maxDirectMemory) {
+        BlobStore blobStore = new MemoryBlobStore();
+        String spillFile = new File(folder.getRoot(), "spill").getPath();
+        return new OffHeapLinkedList(new NodeStateEntryWriter(blobStore),
+                new NodeStateEntryReader(blobStore), cacheSize, spillFile, maxDirectMemory, CHUNK_SIZE);
+    }
+
+    private static NodeStateEntry entry(long i) {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        builder.setProperty("p", value(i));
+        return new NodeStateEntry(builder.getNodeState(), path(i));
+    }
+
+    private static String path(long i) {
+        return "/parent/child-" + i;
+    }
+
+    private static String value(long i) {
+        StringBuilder sb = new StringBuilder();
+        for (long j = 0; j <= i % 50; j++) {
+            sb.append("value-").append(i);
+        }
+        return sb.toString();
+    }
+}
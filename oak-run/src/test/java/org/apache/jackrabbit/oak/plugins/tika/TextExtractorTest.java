@@ -19,17 +19,26 @@
 
 package org.apache.jackrabbit.oak.plugins.tika;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.apache.jackrabbit.oak.plugins.blob.datastore.TextWriter;
 import org.junit.Test;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TextExtractorTest {
 
@@ -50,12 +59,53 @@ public class TextExtractorTest {
         assertEquals("foo", writer.data.get("b").trim());
     }
 
+    @Test
+    public void stopOnStuckParsers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        MapTextWriter writer = new MapTextWriter();
+        TextExtractor extractor = new TextExtractor(writer);
+        extractor.setThreadPoolSize(1);
+        extractor.setExtractionTimeoutSecs(1);
+        extractor.setMaxStuckParsers(1);
+
+        List<BinaryResource> binaries = new ArrayList<>();
+        binaries.add(stuck("a", release));
+        // more than fit into the queue of the extractor
+        for (int i = 0; i < 500; i++) {
+            binaries.add(bin("foo", "text/plain", "b" + i));
+        }
+        try {
+            extractor.extract(binaries);
+            fail("Extraction must stop once the parser is stuck");
+        } catch (IOException expected) {
+            // expected
+        } finally {
+            extractor.close();
+            release.countDown();
+        }
+        assertTrue(writer.errors.contains("a"));
+        assertTrue(writer.data.isEmpty());
+    }
+
+    private static BinaryResource stuck(String id, CountDownLatch release) {
+        ByteSource source = new ByteSource() {
+            @Override
+            public InputStream openStream() {
+                // a parser, which does not react to the interrupt
+                Uninterruptibles.awaitUninterruptibly(release);
+                return new ByteArrayInputStream("stuck".getBytes());
+            }
+        };
+        return new BinaryResource(source, "text/plain", null, id, id);
+    }
+
     private static BinaryResource bin(String text, String mime, String id) {
         return new BinaryResource(ByteSource.wrap(text.getBytes()), mime, null, id, id);
     }
 
     private static class MapTextWriter implements TextWriter {
         final Map<String, String> data = Maps.newConcurrentMap();
+        final Set<String> errors = ConcurrentHashMap.newKeySet();
 
         @Override
         public void write(String blobId, String text) throws IOException {
@@ -69,7 +119,7 @@ public class TextExtractorTest {
 
         @Override
         public void markError(String blobId) {
-
+            errors.add(blobId);
         }
 
         @Override
@@ -16,16 +16,22 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
 
@@ -35,7 +41,10 @@ import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
 
 /**
  * Combines multiple {@link UpdateOp} into a single call to the
- * {@link DocumentStore}.
+ * {@link DocumentStore}. A batch commit either combines updates on a single
+ * document or, as a group commit, updates on possibly different documents.
+ * The latter are written with a single call to
+ * {@link DocumentStore#findAndUpdate(Collection, List)}.
  */
 final class BatchCommit {
 
@@ -50,21 +59,31 @@ final class BatchCommit {
 
     private boolean executing;
 
-    BatchCommit(String id, BatchCommitQueue queue, boolean onHold) {
+    /**
+     * @param id the id of the document or {@code null} for a group commit
+     *           with updates on possibly different documents.
+     * @param queue the queue this batch commit belongs to.
+     * @param onHold whether the batch commit waits to be released by the
+     *               queue.
+     */
+    BatchCommit(@Nullable String id, BatchCommitQueue queue, boolean onHold) {
         this.id = id;
         this.queue = queue;
         if (onHold) {
             ops = Lists.newArrayList();
-            results = Lists.newArrayList();
         }
     }
 
+    /**
+     * @return the id of the document or {@code null} for a group commit.
+     */
+    @Nullable
     String getId() {
         return id;
     }
 
     Callable<NodeDocument> enqueue(final UpdateOp op) {
-        checkArgument(op.getId().equals(id),
+        checkArgument(id == null || op.getId().equals(id),
                 "Cannot add UpdateOp with id %s to BatchCommit with id %s",
                 op.getId(), id);
         Callable<NodeDocument> result;
@@ -116,22 +135,13 @@ final class BatchCommit {
 
     Future<NodeDocument> execute(int idx) {
         if (idx == 0) {
-            NodeDocument before = null;
+            results = new ArrayList<Future<NodeDocument>>(
+                    Collections.<Future<NodeDocument>>nCopies(ops.size(), null));
             try {
-                UpdateOp combined = UpdateOp.combine(id, ops);
-                LOG.debug("Batch committing {} updates", ops.size());
-                before = queue.getStore().findAndUpdate(NODES, combined);
-            } catch (Throwable t) {
-                LOG.warn("BatchCommit failed, will retry individually. " + t.getMessage());
-            } finally {
-                queue.finished(this);
-            }
-            try {
-                if (before == null) {
-                    // batch commit unsuccessful, execute individually
-                    executeIndividually();
+                if (id != null) {
+                    executeBatch();
                 } else {
-                    populateResults(before);
+                    executeGroup();
                 }
             } finally {
                 finished.countDown();
@@ -144,29 +154,124 @@ final class BatchCommit {
                 return Futures.immediateFailedFuture(new DocumentStoreException(msg));
             }
         }
-        return results.get(idx);
+        Future<NodeDocument> result = results.get(idx);
+        if (result == null) {
+            String msg = "Batch commit failed";
+            return Futures.immediateFailedFuture(new DocumentStoreException(msg));
+        }
+        return result;
+    }
+
+    private void executeBatch() {
+        NodeDocument before = null;
+        try {
+            UpdateOp combined = UpdateOp.combine(id, ops);
+            LOG.debug("Batch committing {} updates", ops.size());
+            before = queue.getStore().findAndUpdate(NODES, combined);
+        } catch (Throwable t) {
+            LOG.warn("BatchCommit failed, will retry individually. " + t.getMessage());
+        } finally {
+            queue.finished(this);
+        }
+        List<Integer> indexes = Lists.newArrayList();
+        for (int i = 0; i < ops.size(); i++) {
+            indexes.add(i);
+        }
+        if (before == null) {
+            // batch commit unsuccessful, execute individually
+            executeIndividually(indexes);
+        } else {
+            populateResults(before, indexes);
+        }
+    }
+
+    private void executeGroup() {
+        // group updates by document, retaining the order of the updates
+        Map<String, List<Integer>> updatesById = Maps.newLinkedHashMap();
+        for (int i = 0; i < ops.size(); i++) {
+            String docId = ops.get(i).getId();
+            List<Integer> indexes = updatesById.get(docId);
+            if (indexes == null) {
+                indexes = Lists.newArrayList();
+                updatesById.put(docId, indexes);
+            }
+            indexes.add(i);
+        }
+        Map<String, Document> before = Maps.newHashMap();
+        Set<String> notApplied = Collections.emptySet();
+        DocumentStoreException failure = null;
+        try {
+            List<UpdateOp> combined = new ArrayList<UpdateOp>(updatesById.size());
+            for (Map.Entry<String, List<Integer>> entry : updatesById.entrySet()) {
+                combined.add(UpdateOp.combine(entry.getKey(), getOps(entry.getValue())));
+            }
+            LOG.debug("Group committing {} updates on {} documents",
+                    ops.size(), combined.size());
+            List<NodeDocument> docs = queue.getStore().findAndUpdate(NODES, combined);
+            for (int i = 0; i < combined.size(); i++) {
+                before.put(combined.get(i).getId(), docs.get(i));
+            }
+        } catch (PartialUpdateException e) {
+            LOG.warn("Group commit failed, will retry updates not applied individually. " + e.getMessage());
+            before.putAll(e.getResults());
+            notApplied = e.getNotApplied();
+            failure = e;
+        } catch (Throwable t) {
+            LOG.warn("Group commit failed. " + t.getMessage());
+            failure = DocumentStoreException.convert(t);
+        } finally {
+            queue.finished(this);
+        }
+        for (Map.Entry<String, List<Integer>> entry : updatesById.entrySet()) {
+            String docId = entry.getKey();
+            List<Integer> indexes = entry.getValue();
+            if (before.containsKey(docId)) {
+                NodeDocument doc = (NodeDocument) before.get(docId);
+                if (doc == null) {
+                    // combined update not applied, execute individually
+                    executeIndividually(indexes);
+                } else {
+                    populateResults(doc, indexes);
+                }
+            } else if (notApplied.contains(docId)) {
+                executeIndividually(indexes);
+            } else {
+                // the update may or may not have been applied
+                for (int idx : indexes) {
+                    results.set(idx, Futures.<NodeDocument>immediateFailedFuture(failure));
+                }
+            }
+        }
+    }
+
+    private List<UpdateOp> getOps(List<Integer> indexes) {
+        List<UpdateOp> list = new ArrayList<UpdateOp>(indexes.size());
+        for (int idx : indexes) {
+            list.add(ops.get(idx));
+        }
+        return list;
     }
 
-    void executeIndividually() {
+    private void executeIndividually(List<Integer> indexes) {
         DocumentStore store = queue.getStore();
-        for (UpdateOp op : ops) {
+        for (int idx : indexes) {
             SettableFuture<NodeDocument> result = SettableFuture.create();
             try {
-                result.set(store.findAndUpdate(NODES, op));
+                result.set(store.findAndUpdate(NODES, ops.get(idx)));
             } catch (Throwable t) {
                 result.setException(t);
             }
-            results.add(result);
+            results.set(idx, result);
         }
     }
 
-    void populateResults(NodeDocument before) {
+    private void populateResults(NodeDocument before, List<Integer> indexes) {
         DocumentStore store = queue.getStore();
-        for (UpdateOp op : ops) {
-            results.add(Futures.immediateFuture(before));
+        for (int idx : indexes) {
+            results.set(idx, Futures.immediateFuture(before));
             NodeDocument after = new NodeDocument(store);
             before.deepCopy(after);
-            UpdateUtils.applyChanges(after, op);
+            UpdateUtils.applyChanges(after, ops.get(idx));
             before = after;
         }
     }
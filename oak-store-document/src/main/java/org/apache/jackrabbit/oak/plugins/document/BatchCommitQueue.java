@@ -25,11 +25,17 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Maps;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Queues updates on a commit root document and batches them into a single
- * call to the {@link DocumentStore}.
+ * call to the {@link DocumentStore}. With group commit enabled, updates on
+ * different commit root documents are written concurrently up to a given
+ * number of group commits in progress. Further updates are queued and
+ * written with a single call to
+ * {@link DocumentStore#findAndUpdate(Collection, java.util.List)} when one
+ * of the group commits in progress finished.
  */
 final class BatchCommitQueue {
 
@@ -45,13 +51,39 @@ final class BatchCommitQueue {
      */
     private final Map<String, BatchCommit> inProgress = Maps.newHashMap();
 
+    /**
+     * The number of group commits in progress.
+     */
+    private int groupsInProgress;
+
+    /**
+     * The pending group commit or {@code null} if there is none.
+     */
+    private BatchCommit groupPending;
+
     private final DocumentStore store;
 
+    private final int groupCommitConcurrency;
+
     BatchCommitQueue(@NotNull DocumentStore store) {
+        this(store, 0);
+    }
+
+    /**
+     * @param store the document store.
+     * @param groupCommitConcurrency the maximum number of group commits in
+     *          progress or zero to disable group commit.
+     */
+    BatchCommitQueue(@NotNull DocumentStore store, int groupCommitConcurrency) {
+        checkArgument(groupCommitConcurrency >= 0);
         this.store = checkNotNull(store);
+        this.groupCommitConcurrency = groupCommitConcurrency;
     }
 
     Callable<NodeDocument> updateDocument(UpdateOp op) {
+        if (groupCommitConcurrency > 0) {
+            return groupUpdateDocument(op);
+        }
         String id = op.getId();
         // check if there is already a batch commit in progress for
         // the document
@@ -76,8 +108,32 @@ final class BatchCommitQueue {
         }
     }
 
+    private Callable<NodeDocument> groupUpdateDocument(UpdateOp op) {
+        synchronized (this) {
+            BatchCommit commit;
+            if (groupsInProgress >= groupCommitConcurrency) {
+                // get or create a pending group commit
+                if (groupPending == null) {
+                    LOG.debug("Creating pending group commit");
+                    groupPending = new BatchCommit(null, this, true);
+                }
+                commit = groupPending;
+            } else {
+                LOG.debug("Adding inProgress group commit");
+                commit = new BatchCommit(null, this, false);
+                groupsInProgress++;
+            }
+            LOG.debug("Enqueueing operation with id {}", op.getId());
+            return commit.enqueue(op);
+        }
+    }
+
     void finished(BatchCommit commit) {
         String id = commit.getId();
+        if (id == null) {
+            groupFinished();
+            return;
+        }
         synchronized (this) {
             LOG.debug("BatchCommit finished with id {}", id);
             if (inProgress.remove(id) == null) {
@@ -94,6 +150,23 @@ final class BatchCommitQueue {
         }
     }
 
+    private void groupFinished() {
+        synchronized (this) {
+            LOG.debug("Group commit finished");
+            if (groupsInProgress == 0) {
+                throw new IllegalStateException("No group commit in progress");
+            }
+            if (groupPending != null) {
+                LOG.debug("Moving pending group commit to inProgress");
+                groupPending.release();
+                groupPending = null;
+                LOG.debug("Group commit released");
+            } else {
+                groupsInProgress--;
+            }
+        }
+    }
+
     DocumentStore getStore() {
         return store;
     }
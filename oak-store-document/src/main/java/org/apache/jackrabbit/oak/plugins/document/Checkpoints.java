@@ -24,12 +24,14 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
 import org.apache.jackrabbit.oak.commons.json.JsopReader;
 import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
 import org.apache.jackrabbit.oak.commons.json.JsopWriter;
+import org.apache.jackrabbit.oak.plugins.document.util.SystemPropertySupplier;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -44,6 +46,14 @@ import static com.google.common.base.Preconditions.checkNotNull;
 /**
  * Checkpoints provide details around which revision are to be kept. These
  * are stored in Settings collection.
+ * <p>
+ * With {@code oak.documentMK.checkpointView} enabled, reads of the
+ * checkpoints are served from a cached view of the settings document. The
+ * view is invalidated by changes done through this instance and on every
+ * background read, which means checkpoints created or released by other
+ * cluster nodes become visible with a delay of up to the background read
+ * interval. A checkpoint that is not found in the view is looked up in the
+ * settings document.
  */
 class Checkpoints {
 
@@ -73,6 +83,24 @@ class Checkpoints {
 
     private final Object cleanupLock = new Object();
 
+    /**
+     * Feature flag for the cached view of the checkpoints.
+     */
+    private final boolean cachedView = SystemPropertySupplier
+            .create("oak.documentMK.checkpointView", Boolean.FALSE).loggingTo(LOG).get();
+
+    /**
+     * The cached view of the checkpoints or {@code null} if it must be read
+     * from the settings document.
+     */
+    private SortedMap<Revision, Info> view;
+
+    /**
+     * Incremented whenever the view is invalidated. Prevents a concurrent
+     * read of the settings document from installing an outdated view.
+     */
+    private long viewGeneration;
+
     Checkpoints(DocumentNodeStore store) {
         this.nodeStore = store;
         this.store = store.getDocumentStore();
@@ -97,6 +125,7 @@ class Checkpoints {
                 .min(BigInteger.valueOf(Long.MAX_VALUE)).longValue();
         op.setMapEntry(PROP_CHECKPOINT, r, new Info(endTime, rv[0], info).toString());
         store.createOrUpdate(Collection.SETTINGS, op);
+        invalidate();
         return r;
     }
 
@@ -104,6 +133,7 @@ class Checkpoints {
         UpdateOp op = new UpdateOp(ID, false);
         op.removeMapEntry(PROP_CHECKPOINT, Revision.fromString(checkpoint));
         store.findAndUpdate(Collection.SETTINGS, op);
+        invalidate();
     }
 
     /**
@@ -117,8 +147,7 @@ class Checkpoints {
     @SuppressWarnings("unchecked")
     @Nullable
     public Revision getOldestRevisionToKeep() {
-        //Get uncached doc
-        SortedMap<Revision, Info> checkpoints = getCheckpoints();
+        SortedMap<Revision, Info> checkpoints = getCachedCheckpoints();
 
         if(checkpoints.isEmpty()){
             log.debug("No checkpoint registered so far");
@@ -145,15 +174,26 @@ class Checkpoints {
 
         if (op.hasChanges()) {
             store.findAndUpdate(Collection.SETTINGS, op);
+            invalidate();
             log.debug("Purged {} expired checkpoints", op.getChanges().size());
         }
 
         return lastAliveRevision;
     }
 
+    /**
+     * Reads the checkpoints from the settings document. This method also
+     * updates the cached view when enabled.
+     *
+     * @return the checkpoints, most recent first.
+     */
     @SuppressWarnings("unchecked")
     @NotNull
     SortedMap<Revision, Info> getCheckpoints() {
+        long generation;
+        synchronized (this) {
+            generation = viewGeneration;
+        }
         Document cdoc = store.find(Collection.SETTINGS, ID, 0);
         SortedMap<Revision, String> data = null;
         if (cdoc != null) {
@@ -165,9 +205,65 @@ class Checkpoints {
                 checkpoints.put(entry.getKey(), Info.fromString(entry.getValue()));
             }
         }
+        if (cachedView) {
+            synchronized (this) {
+                if (generation == viewGeneration) {
+                    view = Collections.unmodifiableSortedMap(new TreeMap<>(checkpoints));
+                }
+            }
+        }
         return checkpoints;
     }
 
+    /**
+     * Returns the checkpoints from the cached view if enabled and available,
+     * otherwise reads them from the settings document. The returned map
+     * must not be modified.
+     *
+     * @return the checkpoints, most recent first.
+     */
+    @NotNull
+    SortedMap<Revision, Info> getCachedCheckpoints() {
+        if (cachedView) {
+            SortedMap<Revision, Info> v;
+            synchronized (this) {
+                v = view;
+            }
+            if (v != null) {
+                return v;
+            }
+        }
+        return getCheckpoints();
+    }
+
+    /**
+     * Returns the info for the given checkpoint. The info is looked up in the
+     * cached view first, if enabled, and in the settings document when the
+     * checkpoint is not in the view.
+     *
+     * @param checkpoint the checkpoint revision.
+     * @return the info or {@code null} if there is no such checkpoint.
+     */
+    @Nullable
+    Info getInfo(@NotNull Revision checkpoint) {
+        Info info = getCachedCheckpoints().get(checkpoint);
+        if (info == null && cachedView) {
+            // checkpoint may have been created by another
+            // cluster node after the view was read
+            info = getCheckpoints().get(checkpoint);
+        }
+        return info;
+    }
+
+    /**
+     * Invalidates the cached view of the checkpoints. The next read of
+     * the checkpoints reads the settings document.
+     */
+    synchronized void invalidate() {
+        viewGeneration++;
+        view = null;
+    }
+
     /**
      * Retrieves the head revision for the given {@code checkpoint}.
      *
@@ -186,7 +282,7 @@ class Checkpoints {
             LOG.warn("Malformed checkpoint reference: {}", checkpoint);
             return null;
         }
-        Info info = getCheckpoints().get(r);
+        Info info = getInfo(r);
         if (info == null) {
             return null;
         }
@@ -214,6 +310,7 @@ class Checkpoints {
         UpdateOp op = new UpdateOp(Checkpoints.ID, false);
         op.setMapEntry(PROP_CHECKPOINT, r, newInfo.toString());
         store.findAndUpdate(Collection.SETTINGS, op);
+        invalidate();
     }
 
     int size() {
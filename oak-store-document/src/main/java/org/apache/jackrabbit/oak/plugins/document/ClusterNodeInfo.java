@@ -412,6 +412,11 @@ public class ClusterNodeInfo {
                 return false;
             }
 
+            @Override
+            boolean renewLease(boolean force) {
+                return false;
+            }
+
             @Override
             public void setInfo(Map<String, String> info) {}
 
@@ -883,13 +888,30 @@ public class ClusterNodeInfo {
      *          expired.
      */
     public boolean renewLease() throws DocumentStoreException {
+        return renewLease(false);
+    }
+
+    /**
+     * Renew the cluster id lease. Unlike {@link #renewLease()}, this method
+     * renews the lease even when the last update was less than
+     * 'leaseUpdateInterval' millis ago if {@code force} is {@code true}.
+     * This is used after a JVM pause was detected, to extend the lease as
+     * soon as possible.
+     *
+     * @param force whether to renew the lease independent of the time
+     *              since the last update.
+     * @return {@code true} if the lease was renewed; {@code false} otherwise.
+     * @throws DocumentStoreException if the operation failed or the lease
+     *          expired.
+     */
+    boolean renewLease(boolean force) throws DocumentStoreException {
         long now = getCurrentTime();
 
         if (LOG.isTraceEnabled()) {
             LOG.trace("renewLease - leaseEndTime: " + leaseEndTime + ", leaseTime: " + leaseTime + ", leaseUpdateInterval: " + leaseUpdateInterval);
         }
 
-        if (now < leaseEndTime - leaseTime + leaseUpdateInterval) {
+        if (!force && now < leaseEndTime - leaseTime + leaseUpdateInterval) {
             // no need to renew the lease - it is still within 'leaseUpdateInterval'
             return false;
         }
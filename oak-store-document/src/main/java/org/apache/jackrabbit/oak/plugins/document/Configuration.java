@@ -67,6 +67,16 @@ import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreBuilde
                     "overridden via framework property 'oak.mongo.socketKeepAlive'")
     boolean socketKeepAlive() default DocumentNodeStoreService.DEFAULT_SO_KEEP_ALIVE;
 
+    @AttributeDefinition(
+            name = "MongoDB change stream listener",
+            description = "Whether changes to the nodes collection are " +
+                    "consumed from a MongoDB change stream. When enabled, " +
+                    "cached documents are invalidated as soon as they change " +
+                    "and changes from other cluster nodes become visible " +
+                    "before the next regular background read. Requires " +
+                    "MongoDB to run as a replica set.")
+    boolean mongoChangeStreamEnabled() default DocumentNodeStoreService.DEFAULT_MONGO_CHANGE_STREAM_ENABLED;
+
     @AttributeDefinition(
             name = "Cache Size (in MB)",
             description = "Cache size in MB. This is distributed among various caches used in DocumentNodeStore")
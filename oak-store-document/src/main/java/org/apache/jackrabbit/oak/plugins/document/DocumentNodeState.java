@@ -78,6 +78,12 @@ public class DocumentNodeState extends AbstractDocumentNodeState implements Cach
      */
     static final int MAX_FETCH_SIZE = INITIAL_FETCH_SIZE << 4;
 
+    /**
+     * Estimated memory for a reference to a property state shared with a
+     * {@link PropertyStateSharing.Base}.
+     */
+    private static final int SHARED_PROPERTY_MEMORY = 32;
+
     private final Path path;
     private final RevisionVector lastRevision;
     private final RevisionVector rootRevision;
@@ -91,6 +97,12 @@ public class DocumentNodeState extends AbstractDocumentNodeState implements Cach
     private AbstractDocumentNodeState cachedSecondaryState;
     private int memory;
 
+    /**
+     * The base of the shared property states or {@code null} if this node
+     * state does not share property states. See {@link PropertyStateSharing}.
+     */
+    private PropertyStateSharing.Base sharedBase;
+
     DocumentNodeState(@NotNull DocumentNodeStore store,
                       @NotNull Path path,
                       @NotNull RevisionVector rootRevision) {
@@ -374,6 +386,10 @@ public class DocumentNodeState extends AbstractDocumentNodeState implements Cach
     }
 
     private String asString(PropertyState prop) {
+        return asString(prop, store);
+    }
+
+    private static String asString(PropertyState prop, DocumentNodeStore store) {
         if (prop == null) {
             return null;
         } else if (prop instanceof DocumentPropertyState) {
@@ -432,42 +448,88 @@ public class DocumentNodeState extends AbstractDocumentNodeState implements Cach
     public int getMemory() {
         long size = memory;
         if (size == 0) {
+            // properties shared with a base are accounted for by the base,
+            // as long as the base can invalidate this node state in the
+            // node cache when it is evicted
+            PropertyStateSharing.Base base = sharedBase;
+            boolean pinned = base != null && base.pin(new PathRev(path, rootRevision));
             size = 40 // shallow
                     + (lastRevision != null ? lastRevision.getMemory() : 0)
                     + rootRevision.getMemory()
                     + path.getMemory();
             // rough approximation for properties
             for (Map.Entry<String, PropertyState> entry : bundlingContext.getAllProperties().entrySet()) {
-                // name
-                size += estimateMemoryUsage(entry.getKey());
-                PropertyState propState = entry.getValue();
-                if (propState.getType() != Type.BINARY
-                        && propState.getType() != Type.BINARIES) {
-                    for (int i = 0; i < propState.count(); i++) {
-                        // size() returns length of string
-                        // shallow memory:
-                        // - 8 bytes per reference in values list
-                        // - 48 bytes per string
-                        // double usage per property because of parsed PropertyState
-                        size += (56 + propState.size(i) * 2) * 2;
-                    }
+                if (pinned && base.contains(entry.getKey(), entry.getValue())) {
+                    size += SHARED_PROPERTY_MEMORY;
                 } else {
-                    // calculate size based on blobId value
-                    // referencing the binary in the blob store
-                    // double the size because the parsed PropertyState
-                    // will have a similarly sized blobId as well
-                    size += (long)estimateMemoryUsage(asString(entry.getValue())) * 2;
+                    size += estimatePropertyMemory(entry.getKey(), entry.getValue(), store);
                 }
             }
             if (size > Integer.MAX_VALUE) {
                 log.debug("Estimated memory footprint larger than Integer.MAX_VALUE: {}.", size);
                 size = Integer.MAX_VALUE;
             }
-            memory = (int) size;
+            if (!pinned) {
+                // the weight of a pinned node state must be computed again
+                // when it is added to the cache again
+                memory = (int) size;
+            }
         }
         return (int) size;
     }
 
+    /**
+     * Estimates the memory of a property held by a node state.
+     *
+     * @param name the name of the property.
+     * @param propState the property state.
+     * @param store the node store.
+     * @return the estimated memory in bytes.
+     */
+    static long estimatePropertyMemory(@NotNull String name,
+                                       @NotNull PropertyState propState,
+                                       @NotNull DocumentNodeStore store) {
+        // name
+        long size = estimateMemoryUsage(name);
+        if (propState.getType() != Type.BINARY
+                && propState.getType() != Type.BINARIES) {
+            for (int i = 0; i < propState.count(); i++) {
+                // size() returns length of string
+                // shallow memory:
+                // - 8 bytes per reference in values list
+                // - 48 bytes per string
+                // double usage per property because of parsed PropertyState
+                size += (56 + propState.size(i) * 2) * 2;
+            }
+        } else {
+            // calculate size based on blobId value
+            // referencing the binary in the blob store
+            // double the size because the parsed PropertyState
+            // will have a similarly sized blobId as well
+            size += (long)estimateMemoryUsage(asString(propState, store)) * 2;
+        }
+        return size;
+    }
+
+    /**
+     * Sets the base of the property states shared by this node state.
+     *
+     * @param base the base or {@code null} if this node state does not share
+     *          property states.
+     */
+    void setSharedBase(@Nullable PropertyStateSharing.Base base) {
+        this.sharedBase = base;
+    }
+
+    /**
+     * @return {@code true} if this node state shares property states with a
+     *          base that was evicted in the meantime.
+     */
+    boolean hasEvictedSharedBase() {
+        PropertyStateSharing.Base base = sharedBase;
+        return base != null && base.isEvicted();
+    }
+
     public Iterable<DocumentNodeState> getAllBundledNodesStates() {
         return new TreeTraverser<DocumentNodeState>(){
             @Override
@@ -491,6 +553,13 @@ public class DocumentNodeState extends AbstractDocumentNodeState implements Cach
         return allProps;
     }
 
+    /**
+     * @return all properties, including bundled.
+     */
+    Map<String, PropertyState> getAllProperties() {
+        return bundlingContext.getAllProperties();
+    }
+
     //------------------------------< internal >--------------------------------
 
     @Nullable
@@ -89,6 +89,7 @@ import org.apache.jackrabbit.oak.plugins.blob.ReferencedBlob;
 import org.apache.jackrabbit.oak.plugins.document.Branch.BranchCommit;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.BundledDocumentDiffer;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingPatternAnalyzer;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.DocumentBundlor;
 import org.apache.jackrabbit.oak.plugins.document.persistentCache.PersistentCache;
 import org.apache.jackrabbit.oak.plugins.document.persistentCache.broadcast.DynamicBroadcastConfig;
@@ -204,6 +205,41 @@ public final class DocumentNodeStore
     private final int createOrUpdateBatchSize = SystemPropertySupplier.create("oak.documentMK.createOrUpdateBatchSize", 1000)
             .loggingTo(LOG).get();
 
+    /**
+     * Feature flag to enable group commit of updates on commit root documents.
+     * With group commit, updates on different commit root documents are
+     * written concurrently up to {@link #groupCommitConcurrency} updates in
+     * progress. Further updates are collected until one of them finished and
+     * then applied with a single call to
+     * {@link DocumentStore#findAndUpdate(Collection, List)}.
+     */
+    private final boolean groupCommit = SystemPropertySupplier.create("oak.documentMK.groupCommit", Boolean.FALSE)
+            .loggingTo(LOG).get();
+
+    /**
+     * The maximum number of group commits in progress when group commit is
+     * enabled.
+     */
+    private final int groupCommitConcurrency = SystemPropertySupplier.create("oak.documentMK.groupCommitConcurrency", 8)
+            .loggingTo(LOG).validateWith(value -> value > 0).get();
+
+    /**
+     * The number of threads used by the background sweep and sweep2. With
+     * more than one thread, the candidates are read and swept in partitions
+     * of the id space concurrently.
+     */
+    private final int sweepThreads = SystemPropertySupplier.create("oak.documentMK.sweepThreads", 1)
+            .loggingTo(LOG).validateWith(value -> value > 0).get();
+
+    /**
+     * Feature flag to renew the lease right after the {@link JvmPauseDetector}
+     * detected a pause of the JVM and on every run of the lease update thread
+     * for a while afterwards, instead of only every lease update interval.
+     * See {@link LeasePauseHandler}.
+     */
+    private final boolean leasePauseDetection = SystemPropertySupplier.create("oak.documentMK.leasePauseDetection", Boolean.FALSE)
+            .loggingTo(LOG).get();
+
     public static final String SYS_PROP_DISABLE_SWEEP2 = "oak.documentMK.disableSweep2";
     private boolean disableSweep2 = SystemPropertySupplier.create(SYS_PROP_DISABLE_SWEEP2, Boolean.FALSE).loggingTo(LOG)
             .get();
@@ -322,6 +358,13 @@ public final class DocumentNodeStore
      */
     private final Object backgroundReadMonitor = new Object();
 
+    /**
+     * Monitor object the background read thread waits on between runs. A
+     * notification on this monitor triggers a background read before the
+     * regular {@link #asyncDelay} expires.
+     */
+    private final Object backgroundReadSignal = new Object();
+
     /**
      * Background thread performing updates of _lastRev entries.
      */
@@ -338,6 +381,12 @@ public final class DocumentNodeStore
     @NotNull
     private Thread leaseUpdateThread;
 
+    /**
+     * The pause handler registered with the {@link JvmPauseDetector} or
+     * {@code null} if none is registered.
+     */
+    private LeasePauseHandler leasePauseHandler;
+
     /**
      * Background thread performing the cluster update
      */
@@ -510,6 +559,32 @@ public final class DocumentNodeStore
 
     private final BundlingConfigHandler bundlingConfigHandler = new BundlingConfigHandler();
 
+    /**
+     * Percentage of the nodes read from the DocumentStore, which are sampled
+     * by the {@link BundlingPatternAnalyzer}. The default of 0 disables the
+     * analyzer.
+     */
+    private final int bundlingAnalyzerSamplePercent = SystemPropertySupplier
+            .create("oak.documentMK.bundlingAnalyzer.samplePercent", 0).loggingTo(LOG)
+            .validateWith(value -> value >= 0 && value <= 100).get();
+
+    @Nullable
+    private final BundlingPatternAnalyzer bundlingPatternAnalyzer = bundlingAnalyzerSamplePercent > 0 ?
+            new BundlingPatternAnalyzer(bundlingAnalyzerSamplePercent / 100.0, 2, 10000) : null;
+
+    /**
+     * The size in MB of the cache with the property states shared between
+     * node states of the same path. The default of 0 disables sharing of
+     * property states.
+     */
+    private final int propertySharingCacheSize = SystemPropertySupplier
+            .create("oak.documentMK.propertySharingCacheSizeMB", 0).loggingTo(LOG)
+            .validateWith(value -> value >= 0).get();
+
+    @Nullable
+    private final PropertyStateSharing propertyStateSharing = propertySharingCacheSize > 0 ?
+            new PropertyStateSharing(this, propertySharingCacheSize * 1024L * 1024L) : null;
+
     private final BundledDocumentDiffer bundledDocDiffer = new BundledDocumentDiffer(this);
 
     private final JournalPropertyHandlerFactory journalPropertyHandlerFactory;
@@ -587,7 +662,15 @@ public final class DocumentNodeStore
             clusterNodeInfo.setLeaseFailureHandler(builder.getLeaseFailureHandler());
         }
         String threadNamePostfix = "(" + clusterId + ")";
-        leaseUpdateThread = new Thread(new BackgroundLeaseUpdate(this, stopLeaseUpdateThread),
+        if (leasePauseDetection && !readOnlyMode) {
+            leasePauseHandler = new LeasePauseHandler(clock, () -> {
+                // wake up the lease update thread
+                synchronized (stopLeaseUpdateThread) {
+                    stopLeaseUpdateThread.notifyAll();
+                }
+            });
+        }
+        leaseUpdateThread = new Thread(new BackgroundLeaseUpdate(this, stopLeaseUpdateThread, leasePauseHandler),
                 "DocumentNodeStore lease update thread " + threadNamePostfix);
         leaseUpdateThread.setDaemon(true);
         if (!readOnlyMode) {
@@ -596,6 +679,9 @@ public final class DocumentNodeStore
             // on a very busy machine - so as to prevent lease timeout.
             leaseUpdateThread.setPriority(Thread.MAX_PRIORITY);
             leaseUpdateThread.start();
+            if (leasePauseHandler != null) {
+                JvmPauseDetector.getInstance().addListener(leasePauseHandler);
+            }
         }
 
         this.journalPropertyHandlerFactory = builder.getJournalPropertyHandlerFactory();
@@ -632,7 +718,8 @@ public final class DocumentNodeStore
         nodeChildrenCacheStats = new CacheStats(nodeChildrenCache, "Document-NodeChildren",
                 builder.getWeigher(), builder.getChildrenCacheSize());
 
-        diffCache = builder.getDiffCache(this.clusterId);
+        diffCache = new JournalDiffCache(this,
+                builder.getDiffCache(this.clusterId), nodeStoreStatsCollector);
 
         // check if root node exists
         NodeDocument rootDoc = store.find(NODES, Utils.getIdFromPath(ROOT));
@@ -694,10 +781,10 @@ public final class DocumentNodeStore
                 new ChangeDispatcher(getRoot());
         commitQueue = new CommitQueue(this);
         commitQueue.setStatisticsCollector(nodeStoreStatsCollector);
-        batchCommitQueue = new BatchCommitQueue(store);
+        batchCommitQueue = new BatchCommitQueue(store, groupCommit ? groupCommitConcurrency : 0);
         // prepare background threads
         backgroundReadThread = new Thread(
-                new BackgroundReadOperation(this, isDisposed),
+                new BackgroundReadOperation(this, isDisposed, backgroundReadSignal),
                 "DocumentNodeStore background read thread " + threadNamePostfix);
         backgroundReadThread.setDaemon(true);
         backgroundUpdateThread = new Thread(
@@ -824,6 +911,9 @@ public final class DocumentNodeStore
         synchronized (isDisposed) {
             isDisposed.notifyAll();
         }
+        synchronized (backgroundReadSignal) {
+            backgroundReadSignal.notifyAll();
+        }
 
         Utils.joinQuietly(backgroundReadThread,
                 backgroundUpdateThread,
@@ -885,6 +975,9 @@ public final class DocumentNodeStore
 
         // Stop lease update thread once no further document store operations
         // are required
+        if (leasePauseHandler != null) {
+            JvmPauseDetector.getInstance().removeListener(leasePauseHandler);
+        }
         LOG.debug("Stopping LeaseUpdate thread...");
         stopLeaseUpdateThread.set(true);
         synchronized (stopLeaseUpdateThread) {
@@ -1156,6 +1249,16 @@ public final class DocumentNodeStore
         return nodeChildrenCacheStats;
     }
 
+    /**
+     * @return the statistics of the cache with the property states shared
+     *      between node states of the same path or {@code null} if sharing
+     *      is disabled.
+     */
+    @Nullable
+    public CacheStats getPropertySharingCacheStats() {
+        return propertyStateSharing != null ? propertyStateSharing.getCacheStats() : null;
+    }
+
     @NotNull
     public Iterable<CacheStats> getDiffCacheStats() {
         return diffCache.getStats();
@@ -1252,6 +1355,11 @@ public final class DocumentNodeStore
                     return n;
                 }
             });
+            if (node.hasEvictedSharedBase()) {
+                // the node state was weighed with shared property states
+                // that are no longer accounted for by the sharing cache
+                nodeCache.invalidate(key);
+            }
             final DocumentNodeState result = node == missing
                     || node.equals(missing) ? null : node;
             PERFLOG.end(start, 1, "getNode: path={}, rev={}", path, rev);
@@ -1472,13 +1580,34 @@ public final class DocumentNodeStore
         }
         final DocumentNodeState result = doc.getNodeAtRevision(this, readRevision, lastRevision);
         PERFLOG.end(start, 1, "readNode: path={}, readRevision={}", path, readRevision);
+        if (result != null && bundlingPatternAnalyzer != null) {
+            bundlingPatternAnalyzer.nodeRead(path, result);
+        }
         return result;
     }
 
+    /**
+     * @return the sharing of property states between node states of the
+     *      same path or {@code null} if disabled.
+     */
+    @Nullable
+    PropertyStateSharing getPropertyStateSharing() {
+        return propertyStateSharing;
+    }
+
     public BundlingConfigHandler getBundlingConfigHandler() {
         return bundlingConfigHandler;
     }
 
+    /**
+     * @return the analyzer deriving bundling patterns from node reads or
+     *      {@code null} if sampling is disabled.
+     */
+    @Nullable
+    public BundlingPatternAnalyzer getBundlingPatternAnalyzer() {
+        return bundlingPatternAnalyzer;
+    }
+
     /**
      * Apply the changes of a node to the cache.
      *
@@ -2032,7 +2161,7 @@ public final class DocumentNodeStore
     @Override
     public Map<String, String> checkpointInfo(@NotNull String checkpoint) {
         Revision r = Revision.fromString(checkpoint);
-        Checkpoints.Info info = checkpoints.getCheckpoints().get(r);
+        Checkpoints.Info info = checkpoints.getInfo(r);
         if (info == null) {
             // checkpoint does not exist
             return Collections.emptyMap();
@@ -2045,7 +2174,7 @@ public final class DocumentNodeStore
     @Override
     public Iterable<String> checkpoints() {
         final long now = clock.getTime();
-        return Iterables.transform(Iterables.filter(checkpoints.getCheckpoints().entrySet(),
+        return Iterables.transform(Iterables.filter(checkpoints.getCachedCheckpoints().entrySet(),
                 new Predicate<Map.Entry<Revision,Checkpoints.Info>>() {
             @Override
             public boolean apply(Map.Entry<Revision,Checkpoints.Info> cp) {
@@ -2211,6 +2340,8 @@ public final class DocumentNodeStore
             long start = clock.getTime();
             // pull in changes from other cluster nodes
             readStats = backgroundRead();
+            // checkpoints may have been changed by other cluster nodes
+            checkpoints.invalidate();
             readStats.totalReadTime = clock.getTime() - start;
             String msg = "Background read operations stats (read:{} {})";
             logBackgroundOperation(start, msg, readStats.totalReadTime, readStats);
@@ -2218,6 +2349,19 @@ public final class DocumentNodeStore
         nodeStoreStatsCollector.doneBackgroundRead(readStats);
     }
 
+    /**
+     * Signals that another cluster node published changes. The background
+     * read thread is woken up and will make the changes visible without
+     * waiting for the regular {@link #getAsyncDelay() asynchronous delay}.
+     * A signal received while a background read is in progress may be
+     * picked up only with the next regular background read.
+     */
+    public void signalExternalChange() {
+        synchronized (backgroundReadSignal) {
+            backgroundReadSignal.notifyAll();
+        }
+    }
+
     //----------------------< background sweep operation >----------------------
 
     void runBackgroundSweepOperation() {
@@ -2274,8 +2418,20 @@ public final class DocumentNodeStore
      * @return {@code true} if the lease was renewed; {@code false} otherwise.
      */
     boolean renewClusterIdLease() {
+        return renewClusterIdLease(false);
+    }
+
+    /**
+     * Renews the cluster lease if necessary or if {@code force} is
+     * {@code true}.
+     *
+     * @param force whether to renew the lease independent of the time since
+     *              the last update.
+     * @return {@code true} if the lease was renewed; {@code false} otherwise.
+     */
+    boolean renewClusterIdLease(boolean force) {
         Stopwatch sw = Stopwatch.createStarted();
-        boolean renewed = clusterNodeInfo.renewLease();
+        boolean renewed = clusterNodeInfo.renewLease(force);
         if (renewed) {
             nodeStoreStatsCollector.doneLeaseUpdate(sw.elapsed(MICROSECONDS));
         }
@@ -2723,7 +2879,7 @@ public final class DocumentNodeStore
                 () -> emptySweepRevision);
         MissingBcSweeper2 sweeper = new MissingBcSweeper2(this, cvr, includedClusterIds, isDisposed);
         LOG.info("Starting document sweep2. Head: {}, starting at 0", getHeadRevision());
-        Iterable<NodeDocument> docs = lastRevSeeker.getCandidates(0);
+        List<Iterable<NodeDocument>> docs = getSweepCandidates(0);
         try {
             final AtomicInteger numUpdates = new AtomicInteger();
 
@@ -2779,11 +2935,11 @@ public final class DocumentNodeStore
                     numUpdates.addAndGet(updates.size());
                     LOG.debug("Background sweep2 updated {}", updates.keySet());
                 }
-            });
+            }, sweepThreads);
 
             return numUpdates.get();
         } finally {
-            Utils.closeIfCloseable(docs);
+            docs.forEach(Utils::closeIfCloseable);
         }
     }
 
@@ -2840,7 +2996,7 @@ public final class DocumentNodeStore
         NodeDocumentSweeper sweeper = new NodeDocumentSweeper(this, false);
         LOG.info("Starting document sweep. Head: {}, starting at {} (reason: {})",
                 sweeper.getHeadRevision(), startRev, reason);
-        Iterable<NodeDocument> docs = lastRevSeeker.getCandidates(startRev.getTimestamp());
+        List<Iterable<NodeDocument>> docs = getSweepCandidates(startRev.getTimestamp());
         try {
             final AtomicInteger numUpdates = new AtomicInteger();
 
@@ -2896,17 +3052,36 @@ public final class DocumentNodeStore
                     numUpdates.addAndGet(updates.size());
                     LOG.debug("Background sweep updated {}", updates.keySet());
                 }
-            });
+            }, sweepThreads);
 
             if (newSweepRev != null) {
                 updateSweepRevision(newSweepRev);
             }
             return numUpdates.get();
         } finally {
-            Utils.closeIfCloseable(docs);
+            docs.forEach(Utils::closeIfCloseable);
         }
     }
 
+    /**
+     * Returns the sweep candidates modified at or after the given time. With
+     * more than one sweep thread, the candidates are returned as partitions
+     * of the id space, which can be read and swept concurrently.
+     *
+     * @param startTime the start time in milliseconds.
+     * @return the candidates, in one or more partitions.
+     */
+    private List<Iterable<NodeDocument>> getSweepCandidates(long startTime) {
+        if (sweepThreads <= 1) {
+            return singletonList(lastRevSeeker.getCandidates(startTime));
+        }
+        List<Iterable<NodeDocument>> partitions = new ArrayList<>();
+        for (SweepPartitions.IdRange range : SweepPartitions.ID_RANGES) {
+            partitions.add(lastRevSeeker.getCandidates(startTime, range.fromId, range.toId));
+        }
+        return partitions;
+    }
+
     /**
      * Updates the local sweep revision.
      *
@@ -3174,6 +3349,28 @@ public final class DocumentNodeStore
         return false;
     }
 
+    /**
+     * Returns {@code true} if the journal covers the changes between the two
+     * given revisions and can be used to compute a diff.
+     *
+     * @param from the from revision.
+     * @param to the to revision.
+     * @return whether a diff can be computed from the journal.
+     */
+    boolean isJournalDiffAvailable(@NotNull RevisionVector from,
+                                   @NotNull RevisionVector to) {
+        if (disableJournalDiff) {
+            return false;
+        }
+        long minTimestamp = Utils.getMinTimestampForDiff(
+                from, to, getMinExternalRevisions());
+        long minJournalTimestamp = newRevision().getTimestamp() -
+                journalGarbageCollector.getMaxRevisionAgeMillis() / 2;
+        Revision tailRev = journalGarbageCollector.getTailRevision();
+        return tailRev.getTimestamp() < minTimestamp
+                && minJournalTimestamp < minTimestamp;
+    }
+
     private String diffImpl(AbstractDocumentNodeState from, AbstractDocumentNodeState to)
             throws DocumentStoreException {
         int max = MANY_CHILDREN_THRESHOLD;
@@ -3182,70 +3379,42 @@ public final class DocumentNodeStore
         final long start = debug ? now() : 0;
         long getChildrenDoneIn = start;
 
-        String diff = null;
         String diffAlgo = null;
-        RevisionVector fromRev = null;
-        RevisionVector toRev = null;
-        long minTimestamp = Utils.getMinTimestampForDiff(
-                from.getRootRevision(), to.getRootRevision(),
-                getMinExternalRevisions());
-        long minJournalTimestamp = newRevision().getTimestamp() -
-                journalGarbageCollector.getMaxRevisionAgeMillis() / 2;
-
-        // use journal if possible
-        Revision tailRev = journalGarbageCollector.getTailRevision();
-        if (!disableJournalDiff
-                && tailRev.getTimestamp() < minTimestamp
-                && minJournalTimestamp < minTimestamp) {
-            try {
-                diff = new JournalDiffLoader(from, to, this).call();
-                diffAlgo = "diffJournalChildren";
-                fromRev = from.getRootRevision();
-                toRev = to.getRootRevision();
-            } catch (RuntimeException e) {
-                LOG.warn("diffJournalChildren failed with " +
-                        e.getClass().getSimpleName() +
-                        ", falling back to classic diff", e);
-            }
-        }
-        if (diff == null) {
-            // fall back to classic diff
-            fromRev = from.getLastRevision();
-            toRev = to.getLastRevision();
-
-            JsopWriter w = new JsopStream();
-            boolean continueDiff = bundledDocDiffer.diff(from, to, w);
-
-            if (continueDiff) {
-                DocumentNodeState.Children fromChildren, toChildren;
-                fromChildren = getChildren(from, "", max);
-                toChildren = getChildren(to, "", max);
-                getChildrenDoneIn = debug ? now() : 0;
-
-                if (!fromChildren.hasMore && !toChildren.hasMore) {
-                    diffAlgo = "diffFewChildren";
+        RevisionVector fromRev = from.getLastRevision();
+        RevisionVector toRev = to.getLastRevision();
+
+        JsopWriter w = new JsopStream();
+        boolean continueDiff = bundledDocDiffer.diff(from, to, w);
+
+        if (continueDiff) {
+            DocumentNodeState.Children fromChildren, toChildren;
+            fromChildren = getChildren(from, "", max);
+            toChildren = getChildren(to, "", max);
+            getChildrenDoneIn = debug ? now() : 0;
+
+            if (!fromChildren.hasMore && !toChildren.hasMore) {
+                diffAlgo = "diffFewChildren";
+                diffFewChildren(w, from.getPath(), fromChildren,
+                        fromRev, toChildren, toRev);
+            } else {
+                if (FAST_DIFF) {
+                    diffAlgo = "diffManyChildren";
+                    fromRev = from.getRootRevision();
+                    toRev = to.getRootRevision();
+                    diffManyChildren(w, from.getPath(), fromRev, toRev);
+                } else {
+                    diffAlgo = "diffAllChildren";
+                    max = Integer.MAX_VALUE;
+                    fromChildren = getChildren(from, "", max);
+                    toChildren = getChildren(to, "", max);
                     diffFewChildren(w, from.getPath(), fromChildren,
                             fromRev, toChildren, toRev);
-                } else {
-                    if (FAST_DIFF) {
-                        diffAlgo = "diffManyChildren";
-                        fromRev = from.getRootRevision();
-                        toRev = to.getRootRevision();
-                        diffManyChildren(w, from.getPath(), fromRev, toRev);
-                    } else {
-                        diffAlgo = "diffAllChildren";
-                        max = Integer.MAX_VALUE;
-                        fromChildren = getChildren(from, "", max);
-                        toChildren = getChildren(to, "", max);
-                        diffFewChildren(w, from.getPath(), fromChildren,
-                                fromRev, toChildren, toRev);
-                    }
                 }
-            } else {
-                diffAlgo = "allBundledChildren";
             }
-            diff = w.toString();
+        } else {
+            diffAlgo = "allBundledChildren";
         }
+        String diff = w.toString();
 
         if (debug) {
             long end = now();
@@ -3472,13 +3641,16 @@ public final class DocumentNodeStore
         final WeakReference<DocumentNodeStore> ref;
         private final AtomicBoolean isDisposed;
         private final Supplier<Integer> delaySupplier;
+        private final Object monitor;
         private boolean failing;
 
         NodeStoreTask(final DocumentNodeStore nodeStore,
                       final AtomicBoolean isDisposed,
-                      Supplier<Integer> delay) {
+                      Supplier<Integer> delay,
+                      Object monitor) {
             this.ref = new WeakReference<DocumentNodeStore>(nodeStore);
             this.isDisposed = isDisposed;
+            this.monitor = monitor;
             if (delay == null) {
                 delay = new Supplier<Integer>() {
                     @Override
@@ -3491,6 +3663,12 @@ public final class DocumentNodeStore
             this.delaySupplier = delay;
         }
 
+        NodeStoreTask(final DocumentNodeStore nodeStore,
+                      final AtomicBoolean isDisposed,
+                      Supplier<Integer> delay) {
+            this(nodeStore, isDisposed, delay, isDisposed);
+        }
+
         NodeStoreTask(final DocumentNodeStore nodeStore,
                       final AtomicBoolean isDisposed) {
             this(nodeStore, isDisposed, null);
@@ -3502,9 +3680,9 @@ public final class DocumentNodeStore
         public void run() {
             int delay = delaySupplier.get();
             while (delay != 0 && !isDisposed.get()) {
-                synchronized (isDisposed) {
+                synchronized (monitor) {
                     try {
-                        isDisposed.wait(delay);
+                        monitor.wait(delay);
                     } catch (InterruptedException e) {
                         // ignore
                     }
@@ -3553,8 +3731,9 @@ public final class DocumentNodeStore
     static class BackgroundReadOperation extends NodeStoreTask {
 
         BackgroundReadOperation(DocumentNodeStore nodeStore,
-                                AtomicBoolean isDisposed) {
-            super(nodeStore, isDisposed);
+                                AtomicBoolean isDisposed,
+                                Object signal) {
+            super(nodeStore, isDisposed, null, signal);
         }
 
         @Override
@@ -3639,12 +3818,17 @@ public final class DocumentNodeStore
         /** elapsed time for previous update operation **/
         private long elapsedForPreviousRenewal  = -1;
 
+        /** handler for detected JVM pauses or {@code null} if disabled **/
+        private final LeasePauseHandler pauseHandler;
+
         private static int INTERVAL_MS = 1000;
         private static int TOLERANCE_FOR_WARNING_MS = 2000;
 
         BackgroundLeaseUpdate(DocumentNodeStore nodeStore,
-                              AtomicBoolean isDisposed) {
+                              AtomicBoolean isDisposed,
+                              @Nullable LeasePauseHandler pauseHandler) {
             super(nodeStore, isDisposed, Suppliers.ofInstance(INTERVAL_MS));
+            this.pauseHandler = pauseHandler;
         }
 
         @Override
@@ -3666,7 +3850,7 @@ public final class DocumentNodeStore
             }
             lastRenewClusterIdLeaseCall = now;
 
-            nodeStore.renewClusterIdLease();
+            nodeStore.renewClusterIdLease(pauseHandler != null && pauseHandler.renewEagerly());
             elapsedForPreviousRenewal = clock.getTime() - now;
         }
     }
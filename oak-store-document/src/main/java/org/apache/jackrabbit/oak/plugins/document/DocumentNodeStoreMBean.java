@@ -77,6 +77,10 @@ public interface DocumentNodeStoreMBean {
             @Name("clusterId")
             int clusterId);
 
+    @Description("Progress of a last revision recovery currently performed by this cluster node,\n" +
+            "including the number of scanned candidates and an estimate of the remaining time.")
+    String getLastRevRecoveryStatus();
+
     @Description("Invalidates all the caches used by the DocumentNodeStore: DiffCache, NodeCache and NodeChildrenCache.")
     String cleanAllCaches();
 
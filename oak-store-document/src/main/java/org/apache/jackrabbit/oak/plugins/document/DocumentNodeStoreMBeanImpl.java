@@ -233,6 +233,11 @@ final class DocumentNodeStoreMBeanImpl extends AnnotatedStandardMBean implements
         return sum;
     }
 
+    @Override
+    public String getLastRevRecoveryStatus() {
+        return nodeStore.getLastRevRecoveryAgent().getRecoveryStatus();
+    }
+
     private List<NodeDocument> getChildDocs(String path) { 
         Path pathRef = Path.fromString(path);
         final String to = Utils.getKeyUpperLimit(pathRef);
@@ -133,6 +133,7 @@ public class DocumentNodeStoreService {
     static final int DEFAULT_BLOB_CACHE_SIZE = 16;
     static final String DEFAULT_DB = "oak";
     static final boolean DEFAULT_SO_KEEP_ALIVE = true;
+    static final boolean DEFAULT_MONGO_CHANGE_STREAM_ENABLED = false;
     static final String DEFAULT_PERSISTENT_CACHE = "cache";
     static final String DEFAULT_JOURNAL_CACHE = "diff-cache";
     static final boolean DEFAULT_CUSTOM_BLOB_STORE = false;
@@ -292,6 +293,7 @@ public class DocumentNodeStoreService {
             configureBuilder(builder);
             builder.setMaxReplicationLag(config.maxReplicationLagInSecs(), TimeUnit.SECONDS);
             builder.setSocketKeepAlive(soKeepAlive);
+            builder.setChangeStreamEnabled(config.mongoChangeStreamEnabled());
             builder.setMongoDB(uri, db, config.blobCacheSize());
             mkBuilder = builder;
 
@@ -693,6 +695,9 @@ public class DocumentNodeStoreService {
             IOException {
         registerCacheStatsMBean(store.getNodeCacheStats());
         registerCacheStatsMBean(store.getNodeChildrenCacheStats());
+        if (store.getPropertySharingCacheStats() != null) {
+            registerCacheStatsMBean(store.getPropertySharingCacheStats());
+        }
         for (CacheStats cs : store.getDiffCacheStats()) {
             registerCacheStatsMBean(cs);
         }
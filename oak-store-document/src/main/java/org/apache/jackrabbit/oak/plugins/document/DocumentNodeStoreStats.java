@@ -19,6 +19,8 @@
 
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.jackrabbit.oak.stats.HistogramStats;
@@ -65,6 +67,12 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     static final String BRANCH_COMMIT_COUNT = "DOCUMENT_NS_BRANCH_COMMIT_COUNT";
     static final String MERGE_BRANCH_COMMIT_COUNT = "DOCUMENT_NS_MERGE_BRANCH_COMMIT_COUNT";
 
+    static final String DIFF_CACHE_LOOKUP = "DOCUMENT_NS_DIFF_CACHE_LOOKUP";
+    static final String DIFF_CACHE_TIER_PREFIX = "DOCUMENT_NS_DIFF_CACHE_";
+
+    static final String JOURNAL_GC_DELETED = "DOCUMENT_NS_JOURNAL_GC_DELETED";
+    static final String JOURNAL_GC_BACKLOG = "DOCUMENT_NS_JOURNAL_GC_BACKLOG";
+
     // background read
     private final TimerStats readHead;
     private final TimerStats readCacheInvalidate;
@@ -108,6 +116,14 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     private final MeterStats mergeBranchCommitRate;
 
 
+    // diff cache
+    private final MeterStats diffCacheLookup;
+    private final Map<DiffCacheTier, MeterStats> diffCacheTiers = new EnumMap<>(DiffCacheTier.class);
+
+    // journal gc
+    private final MeterStats journalGCDeleted;
+    private final HistogramStats journalGCBacklog;
+
     public DocumentNodeStoreStats(StatisticsProvider sp) {
         readHead = sp.getTimer(BGR_READ_HEAD, StatsOptions.METRICS_ONLY);
         readCacheInvalidate = sp.getTimer(BGR_CACHE_INVALIDATE, StatsOptions.METRICS_ONLY);
@@ -145,6 +161,14 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
 
         branchCommitRate = sp.getMeter(BRANCH_COMMIT_COUNT, StatsOptions.DEFAULT);
         mergeBranchCommitRate = sp.getMeter(MERGE_BRANCH_COMMIT_COUNT, StatsOptions.DEFAULT);
+
+        journalGCDeleted = sp.getMeter(JOURNAL_GC_DELETED, StatsOptions.METRICS_ONLY);
+        journalGCBacklog = sp.getHistogram(JOURNAL_GC_BACKLOG, StatsOptions.METRICS_ONLY);
+
+        diffCacheLookup = sp.getMeter(DIFF_CACHE_LOOKUP, StatsOptions.METRICS_ONLY);
+        for (DiffCacheTier tier : DiffCacheTier.values()) {
+            diffCacheTiers.put(tier, sp.getMeter(DIFF_CACHE_TIER_PREFIX + tier.name(), StatsOptions.METRICS_ONLY));
+        }
     }
 
     @Override
@@ -245,4 +269,31 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     public void doneChangesApplied(long timeMicros) {
         mergeChangesApplied.update(timeMicros, TimeUnit.MICROSECONDS);
     }
+
+    @Override
+    public void doneDiffCacheLookup(DiffCacheTier tier) {
+        diffCacheLookup.mark();
+        diffCacheTiers.get(tier).mark();
+    }
+
+    @Override
+    public void doneJournalGC(int numDeleted, long backlogMillis) {
+        journalGCDeleted.mark(numDeleted);
+        journalGCBacklog.update(backlogMillis);
+    }
+
+    /**
+     * Returns the fraction of diff lookups that were served by the given tier.
+     *
+     * @param tier the diff cache tier.
+     * @return the hit rate of the tier between 0 and 1, or 0 if there were no
+     *          lookups yet.
+     */
+    public double getDiffCacheHitRate(DiffCacheTier tier) {
+        long lookups = diffCacheLookup.getCount();
+        if (lookups == 0) {
+            return 0;
+        }
+        return (double) diffCacheTiers.get(tier).getCount() / lookups;
+    }
 }
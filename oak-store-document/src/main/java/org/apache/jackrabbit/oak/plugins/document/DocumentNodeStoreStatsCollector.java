@@ -21,6 +21,32 @@ package org.apache.jackrabbit.oak.plugins.document;
 
 public interface DocumentNodeStoreStatsCollector {
 
+    /**
+     * The tiers that may provide the changes for a diff.
+     */
+    enum DiffCacheTier {
+
+        /**
+         * The in-memory cache of diffs for local changes.
+         */
+        LOCAL,
+
+        /**
+         * The memory diff cache, possibly backed by the persistent cache.
+         */
+        MEMORY,
+
+        /**
+         * Changes materialized from journal entries.
+         */
+        JOURNAL,
+
+        /**
+         * Changes computed by comparing documents.
+         */
+        DOCUMENT
+    }
+
     /**
      * Report to the collector that a background read was done.
      *
@@ -114,4 +140,22 @@ public interface DocumentNodeStoreStatsCollector {
      * @param timeMicros the time in microseconds.
      */
     void doneChangesApplied(long timeMicros);
+
+    /**
+     * Reports to the collector that the changes for a diff were provided by
+     * the given tier.
+     *
+     * @param tier the tier that provided the changes.
+     */
+    void doneDiffCacheLookup(DiffCacheTier tier);
+
+    /**
+     * Reports to the collector that a journal garbage collection run was done.
+     *
+     * @param numDeleted the number of journal entries deleted by the run.
+     * @param backlogMillis the age in milliseconds of the oldest garbage
+     *         journal entry that remains after the run, relative to the
+     *         garbage collection cutoff. Zero if the garbage collector caught up.
+     */
+    void doneJournalGC(int numDeleted, long backlogMillis);
 }
@@ -16,8 +16,13 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.jackrabbit.oak.cache.CacheStats;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Condition;
@@ -132,6 +137,64 @@ public interface DocumentStore {
                                        long startValue,
                                        int limit) throws DocumentStoreException;
 
+    /**
+     * Returns the keys of up to {@code n} documents of the given collection
+     * sampled from the entire key space. The sampled keys can be used to
+     * split the key space into ranges of roughly equal size, e.g. to read
+     * a collection with concurrent range queries. The returned keys are
+     * sorted, but may contain duplicates.
+     * <p>
+     * The default implementation does not support sampling and returns an
+     * empty list.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param n the maximum number of keys to sample
+     * @return the sampled keys (possibly empty)
+     * @throws DocumentStoreException if the operation failed. E.g. because of
+     *          an I/O error.
+     */
+    @NotNull
+    default <T extends Document> List<String> sampleKeys(Collection<T> collection,
+                                                         int n)
+            throws DocumentStoreException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get the keys of documents with a key within the given range (exclusive)
+     * - {@code (fromKey, toKey)}, sorted by key. Unlike
+     * {@link #query(Collection, String, String, int)} this method does not
+     * read the documents.
+     * <p>
+     * The default implementation queries the documents and returns their
+     * keys. An implementation may only read the keys from the backend
+     * storage instead.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param fromKey the start value (excluding)
+     * @param toKey the end value (excluding)
+     * @param limit the maximum number of entries to return (starting with
+     *          the lowest key)
+     * @return the list of keys (possibly empty)
+     * @throws DocumentStoreException if the operation failed. E.g. because of
+     *          an I/O error.
+     */
+    @NotNull
+    default <T extends Document> List<String> queryKeys(Collection<T> collection,
+                                                        String fromKey,
+                                                        String toKey,
+                                                        int limit)
+            throws DocumentStoreException {
+        List<T> docs = query(collection, fromKey, toKey, limit);
+        List<String> keys = new ArrayList<String>(docs.size());
+        for (T doc : docs) {
+            keys.add(doc.getId());
+        }
+        return keys;
+    }
+
     /**
      * Remove a document. This method does nothing if there is no document
      * with the given key.
@@ -231,6 +294,50 @@ public interface DocumentStore {
                                     String indexedProperty, long startValue, long endValue)
             throws DocumentStoreException;
 
+    /**
+     * Batch remove documents with a key within the given range (exclusive) -
+     * {@code (fromKey, toKey)}.
+     * <p>
+     * The default implementation queries the keys in the range in batches
+     * and removes them with {@link #remove(Collection, List)}. An
+     * implementation may remove the documents with a single range delete
+     * in the backend storage instead.
+     * <p>
+     * In case of a {@code DocumentStoreException}, the documents in the range
+     * may or may not have been removed from the store. It may also be
+     * possible that only some have been removed from the store. It is the
+     * responsibility of the caller to check which documents still exist. The
+     * implementation however ensures that the result of the operation is
+     * properly reflected in the document cache.
+     *
+     * @param <T> the document type
+     * @param collection the collection.
+     * @param fromKey the start value (excluding)
+     * @param toKey the end value (excluding)
+     * @return the number of removed documents.
+     * @throws DocumentStoreException if the operation failed. E.g. because of
+     *          an I/O error.
+     */
+    default <T extends Document> int remove(Collection<T> collection,
+                                            String fromKey, String toKey)
+            throws DocumentStoreException {
+        int num = 0;
+        if (fromKey.compareTo(toKey) >= 0) {
+            return num;
+        }
+        String from = fromKey;
+        List<String> keys;
+        do {
+            keys = queryKeys(collection, from, toKey, 100);
+            if (!keys.isEmpty()) {
+                remove(collection, keys);
+                num += keys.size();
+                from = keys.get(keys.size() - 1);
+            }
+        } while (!keys.isEmpty());
+        return num;
+    }
+
     /**
      * Try to create a list of documents. This method returns {@code true} iff
      * none of the documents existed before and the create was successful. This
@@ -342,6 +449,57 @@ public interface DocumentStore {
                                          UpdateOp update)
             throws DocumentStoreException;
 
+    /**
+     * Performs multiple conditional updates on distinct documents. The
+     * updates are applied as if {@link #findAndUpdate(Collection, UpdateOp)}
+     * is called for each of them. That is, the conditions of an
+     * {@linkplain UpdateOp} are evaluated separately and only affect the
+     * update of the document identified by the {@linkplain UpdateOp}. An
+     * implementation may apply the updates with fewer calls to the backend
+     * storage. The default implementation calls
+     * {@link #findAndUpdate(Collection, UpdateOp)} for each update.
+     * <p>
+     * In case of a {@code DocumentStoreException} (e.g. when a communication
+     * error occurs) only some updates may have been applied. An
+     * implementation throws a {@link PartialUpdateException} when it knows
+     * which updates completed and which were not applied. For all other
+     * updates it is the responsibility of the caller to check whether they
+     * were applied and take appropriate action. The implementation however
+     * ensures that the result of the operations are properly reflected in
+     * the document cache.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param updateOps the update operations on distinct documents
+     * @return the list containing the old documents or {@code null} values
+     *         if the condition was not met or the document wasn't found. The
+     *         order reflects the order in the "updateOps" parameter.
+     * @throws DocumentStoreException if the operation failed. E.g. because of
+     *          an I/O error.
+     */
+    @NotNull
+    default <T extends Document> List<T> findAndUpdate(Collection<T> collection,
+                                                       List<UpdateOp> updateOps)
+            throws DocumentStoreException {
+        List<T> result = new ArrayList<T>(updateOps.size());
+        for (UpdateOp op : updateOps) {
+            try {
+                result.add(findAndUpdate(collection, op));
+            } catch (DocumentStoreException e) {
+                Map<String, T> completed = new HashMap<String, T>();
+                for (int i = 0; i < result.size(); i++) {
+                    completed.put(updateOps.get(i).getId(), result.get(i));
+                }
+                Set<String> notApplied = new HashSet<String>();
+                for (UpdateOp remaining : updateOps.subList(result.size() + 1, updateOps.size())) {
+                    notApplied.add(remaining.getId());
+                }
+                throw new PartialUpdateException(e, completed, notApplied);
+            }
+        }
+        return result;
+    }
+
     /**
      * Invalidate the document cache. Calling this method instructs the
      * implementation to invalidate each document from the cache, which is not
@@ -326,6 +326,26 @@ public class DocumentStoreStats implements DocumentStoreStatsCollector, Document
         return findNodesMissing.getCount();
     }
 
+    @Override
+    public long getNodesFindFromPrimaryCount() {
+        return findNodesPrimary.getCount();
+    }
+
+    @Override
+    public long getNodesFindFromSecondaryCount() {
+        return findNodesSlave.getCount();
+    }
+
+    @Override
+    public long getNodesQueryFromPrimaryCount() {
+        return queryNodesPrimary.getCount();
+    }
+
+    @Override
+    public long getNodesQueryFromSecondaryCount() {
+        return queryNodesSlave.getCount();
+    }
+
     @Override
     public long getNodesReadByQueryCount() {
         return queryNodesResult.getCount();
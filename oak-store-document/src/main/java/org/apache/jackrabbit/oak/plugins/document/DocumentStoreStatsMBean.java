@@ -34,6 +34,14 @@ public interface DocumentStoreStatsMBean {
 
     long getNodesFindMissingCount();
 
+    long getNodesFindFromPrimaryCount();
+
+    long getNodesFindFromSecondaryCount();
+
+    long getNodesQueryFromPrimaryCount();
+
+    long getNodesQueryFromSecondaryCount();
+
     long getNodesReadByQueryCount();
 
     long getNodesCreateCount();
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreStatsCollector.DiffCacheTier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A diff cache tier on top of another {@link DiffCache}, which materializes
+ * diffs from {@link JournalEntry} change sets when the underlying cache does
+ * not have an entry. The {@link JournalDiffLoader} adds the diffs for all
+ * paths changed in the revision range to the underlying cache, which means
+ * the entries also end up in the persistent cache when one is configured for
+ * diffs. A freshly started cluster node can therefore serve diffs without
+ * comparing documents. The loader passed to
+ * {@link #getChanges(RevisionVector, RevisionVector, Path, Loader)} is only
+ * called when the journal does not cover the revision range.
+ */
+final class JournalDiffCache extends DiffCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JournalDiffCache.class);
+
+    private final DocumentNodeStore ns;
+
+    private final DiffCache cache;
+
+    private final DocumentNodeStoreStatsCollector statsCollector;
+
+    JournalDiffCache(@NotNull DocumentNodeStore ns,
+                     @NotNull DiffCache cache,
+                     @NotNull DocumentNodeStoreStatsCollector statsCollector) {
+        this.ns = checkNotNull(ns);
+        this.cache = checkNotNull(cache);
+        this.statsCollector = checkNotNull(statsCollector);
+    }
+
+    @Override
+    String getChanges(@NotNull final RevisionVector from,
+                      @NotNull final RevisionVector to,
+                      @NotNull final Path path,
+                      @Nullable final Loader loader) {
+        if (loader == null) {
+            return cache.getChanges(from, to, path, null);
+        }
+        return cache.getChanges(from, to, path, () -> {
+            if (ns.isJournalDiffAvailable(from, to)) {
+                try {
+                    String changes = new JournalDiffLoader(path, from, to, ns).call();
+                    statsCollector.doneDiffCacheLookup(DiffCacheTier.JOURNAL);
+                    return changes;
+                } catch (RuntimeException e) {
+                    LOG.warn("diffJournalChildren failed with " +
+                            e.getClass().getSimpleName() +
+                            ", falling back to classic diff", e);
+                }
+            }
+            String changes = loader.call();
+            statsCollector.doneDiffCacheLookup(DiffCacheTier.DOCUMENT);
+            return changes;
+        });
+    }
+
+    @NotNull
+    @Override
+    Entry newEntry(@NotNull RevisionVector from,
+                   @NotNull RevisionVector to,
+                   boolean local) {
+        return cache.newEntry(from, to, local);
+    }
+
+    @NotNull
+    @Override
+    Iterable<CacheStats> getStats() {
+        return cache.getStats();
+    }
+
+    @Override
+    void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
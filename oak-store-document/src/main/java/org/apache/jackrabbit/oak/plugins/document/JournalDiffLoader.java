@@ -44,9 +44,11 @@ class JournalDiffLoader implements DiffCache.Loader {
 
     private static final Logger LOG = LoggerFactory.getLogger(JournalDiffLoader.class);
 
-    private final AbstractDocumentNodeState base;
+    private final Path path;
 
-    private final AbstractDocumentNodeState node;
+    private final RevisionVector beforeRev;
+
+    private final RevisionVector afterRev;
 
     private final DocumentNodeStore ns;
 
@@ -55,23 +57,29 @@ class JournalDiffLoader implements DiffCache.Loader {
     JournalDiffLoader(@NotNull AbstractDocumentNodeState base,
                       @NotNull AbstractDocumentNodeState node,
                       @NotNull DocumentNodeStore ns) {
-        this.base = checkNotNull(base);
-        this.node = checkNotNull(node);
-        this.ns = checkNotNull(ns);
+        this(checkNotNull(node).getPath(), checkNotNull(base).getRootRevision(),
+                node.getRootRevision(), ns);
         checkArgument(base.getPath().equals(node.getPath()),
                 "nodes must have matching paths: {} != {}",
                 base.getPath(), node.getPath());
     }
 
+    JournalDiffLoader(@NotNull Path path,
+                      @NotNull RevisionVector beforeRev,
+                      @NotNull RevisionVector afterRev,
+                      @NotNull DocumentNodeStore ns) {
+        this.path = checkNotNull(path);
+        this.beforeRev = checkNotNull(beforeRev);
+        this.afterRev = checkNotNull(afterRev);
+        this.ns = checkNotNull(ns);
+    }
+
     @Override
     public String call() {
-        RevisionVector afterRev = node.getRootRevision();
-        RevisionVector beforeRev = base.getRootRevision();
-        stats = new Stats(node.getPath(), beforeRev, afterRev);
+        stats = new Stats(path, beforeRev, afterRev);
 
         StringSort changes = JournalEntry.newSorter();
         try {
-            Path path = node.getPath();
             readTrunkChanges(path, beforeRev, afterRev, changes);
 
             readBranchChanges(path, beforeRev, changes);
@@ -79,8 +87,8 @@ class JournalDiffLoader implements DiffCache.Loader {
 
             changes.sort();
             DiffCache df = ns.getDiffCache();
-            WrappedDiffCache wrappedCache = new WrappedDiffCache(node.getPath(), df, stats);
-            JournalEntry.applyTo(changes, wrappedCache, node.getPath(), beforeRev, afterRev);
+            WrappedDiffCache wrappedCache = new WrappedDiffCache(path, df, stats);
+            JournalEntry.applyTo(changes, wrappedCache, path, beforeRev, afterRev);
 
             return wrappedCache.changes;
         } catch (IOException e) {
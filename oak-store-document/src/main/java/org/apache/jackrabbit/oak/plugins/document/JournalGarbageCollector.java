@@ -20,14 +20,19 @@ package org.apache.jackrabbit.oak.plugins.document;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.jackrabbit.oak.plugins.document.util.SystemPropertySupplier;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.stats.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Stopwatch;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.apache.jackrabbit.oak.plugins.document.Collection.SETTINGS;
 
@@ -39,6 +44,14 @@ import static org.apache.jackrabbit.oak.plugins.document.Collection.SETTINGS;
  * but must not be confused with that one - 'journal' refers to the separate
  * collection that contains changed paths per background writes used for
  * observation.
+ * <p>
+ * By default all garbage journal entries are removed with a single delete
+ * operation. With the incremental mode enabled
+ * ({@code -Doak.journalGC.incremental=true}), the entries are removed in key
+ * ranges of at most {@code oak.journalGC.batchSize} entries, at a rate of at
+ * most {@code oak.journalGC.maxDeletesPerSecond} entries. The position of the
+ * last removed entry is persisted as a cursor per journal key prefix, which
+ * allows a subsequent run to resume where the previous one stopped.
  */
 public class JournalGarbageCollector {
 
@@ -54,6 +67,33 @@ public class JournalGarbageCollector {
      */
     private static final String TAIL_TIMESTAMP = "tailTimestamp";
 
+    /**
+     * Prefix of the key names of the entries that contain the key of the
+     * last journal entry removed by the incremental garbage collection.
+     */
+    private static final String CURSOR_PREFIX = "cursor-";
+
+    /**
+     * Lower and upper bound for all keys in the journal collection.
+     */
+    private static final String MIN_JOURNAL_KEY = "!";
+    private static final String MAX_JOURNAL_KEY = "~";
+
+    static final String SYS_PROP_INCREMENTAL = "oak.journalGC.incremental";
+
+    static final String SYS_PROP_BATCH_SIZE = "oak.journalGC.batchSize";
+
+    static final String SYS_PROP_MAX_DELETES_PER_SECOND = "oak.journalGC.maxDeletesPerSecond";
+
+    private final boolean incremental = SystemPropertySupplier.create(SYS_PROP_INCREMENTAL, Boolean.FALSE)
+            .loggingTo(log).get();
+
+    private final int batchSize = SystemPropertySupplier.create(SYS_PROP_BATCH_SIZE, 1000)
+            .loggingTo(log).validateWith(value -> value > 0).get();
+
+    private final int maxDeletesPerSecond = SystemPropertySupplier.create(SYS_PROP_MAX_DELETES_PER_SECOND, 10000)
+            .loggingTo(log).validateWith(value -> value >= 0).get();
+
     private final DocumentNodeStore ns;
 
     private final long maxRevisionAgeMillis;
@@ -62,6 +102,8 @@ public class JournalGarbageCollector {
 
     private Revision tailRevision;
 
+    private volatile long backlogMillis;
+
     public JournalGarbageCollector(DocumentNodeStore nodeStore,
                                    long maxRevisionAgeMillis) {
         this.ns = nodeStore;
@@ -71,26 +113,18 @@ public class JournalGarbageCollector {
 
     /**
      * Deletes entries in the journal that are older than
-     * {@link #getMaxRevisionAgeMillis()}.
+     * {@link #getMaxRevisionAgeMillis()}. Uses the incremental mode when
+     * enabled with {@code -Doak.journalGC.incremental=true}.
      *
      * @return the number of entries that have been removed
      */
     public int gc() {
-        DocumentStore ds = ns.getDocumentStore();
-        Revision checkpointRev = ns.getCheckpoints().getOldestRevisionToKeep();
-        Long keep = null;
-        if (checkpointRev != null) {
-            // keep more entries than just up to the checkpoint to account
-            // for branch commits that may be referenced by merge commits
-            keep = checkpointRev.getTimestamp() - maxRevisionAgeMillis / 2;
+        if (incremental) {
+            return gcIncrementally(batchSize, maxDeletesPerSecond);
         }
+        DocumentStore ds = ns.getDocumentStore();
         long now = ns.getClock().getTime();
-        long gcOlderThan = now - maxRevisionAgeMillis;
-        if (keep != null && keep < gcOlderThan) {
-            gcOlderThan = keep;
-            log.debug("gc: Checkpoint {} is older than maxRevisionAge: {} min",
-                    keep, MILLISECONDS.toMinutes(maxRevisionAgeMillis));
-        }
+        long gcOlderThan = getGCOlderThan(now);
         if (log.isDebugEnabled()) {
             log.debug("gc: Journal garbage collection starts with maxAge: {} min.",
                     MILLISECONDS.toMinutes(maxRevisionAgeMillis));
@@ -109,9 +143,192 @@ public class JournalGarbageCollector {
             log.info("gc: Journal garbage collection took {}, deleted {} entries that were older than {} min.",
                     sw, numDeleted, MILLISECONDS.toMinutes(now - gcOlderThan));
         }
+        backlogMillis = 0;
+        ns.getStatsCollector().doneJournalGC(numDeleted, 0);
         return numDeleted;
     }
 
+    /**
+     * Deletes entries in the journal that are older than
+     * {@link #getMaxRevisionAgeMillis()} in key ranges of at most
+     * {@code batchSize} entries. Each key prefix of the journal (one per
+     * cluster node and one per cluster node for branch and invalidate-only
+     * entries) is processed from the cursor persisted by a previous run.
+     * This method returns when all garbage entries were removed or when the
+     * current thread is interrupted.
+     *
+     * @param batchSize the maximum number of entries to remove with a single
+     *          delete operation.
+     * @param maxDeletesPerSecond the maximum rate at which entries are
+     *          removed or zero for no limit.
+     * @return the number of entries that have been removed
+     */
+    public int gcIncrementally(int batchSize, int maxDeletesPerSecond) {
+        checkArgument(batchSize > 0, "batchSize must be > 0");
+        checkArgument(maxDeletesPerSecond >= 0, "maxDeletesPerSecond must be >= 0");
+        DocumentStore ds = ns.getDocumentStore();
+        Clock clock = ns.getClock();
+        long start = clock.getTime();
+        long gcOlderThan = getGCOlderThan(start);
+        Stopwatch sw = Stopwatch.createStarted();
+
+        // update the tail timestamp before entries are removed
+        updateTailTimestamp(gcOlderThan);
+
+        Document settings = ds.find(SETTINGS, JOURNAL_GC_ID);
+        List<String> prefixes = getPrefixes(ds);
+        // backlog when this run started
+        long backlog = 0;
+        for (String prefix : prefixes) {
+            String cursor = getCursor(settings, prefix);
+            List<String> oldest = ds.queryKeys(Collection.JOURNAL, cursor, upperKey(prefix, gcOlderThan), 1);
+            if (!oldest.isEmpty()) {
+                backlog = Math.max(backlog, gcOlderThan - getTimestamp(oldest.get(0)));
+            }
+        }
+        backlogMillis = backlog;
+
+        int numDeleted = 0;
+        try {
+            for (String prefix : prefixes) {
+                String from = getCursor(settings, prefix);
+                String upper = upperKey(prefix, gcOlderThan);
+                for (;;) {
+                    // look up one more entry than will be removed, its key
+                    // is the (exclusive) upper bound of the range
+                    List<String> keys = ds.queryKeys(Collection.JOURNAL, from, upper, batchSize + 1);
+                    if (keys.isEmpty()) {
+                        break;
+                    }
+                    String to = upper;
+                    if (keys.size() > batchSize) {
+                        to = keys.get(batchSize);
+                    }
+                    String last = keys.get(Math.min(keys.size(), batchSize) - 1);
+                    numDeleted += ds.remove(Collection.JOURNAL, from, to);
+                    updateCursor(prefix, last);
+                    from = last;
+                    if (maxDeletesPerSecond > 0) {
+                        clock.waitUntil(start + numDeleted * 1000L / maxDeletesPerSecond);
+                    }
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    if (keys.size() <= batchSize) {
+                        break;
+                    }
+                }
+            }
+            backlogMillis = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("gc: Journal garbage collection interrupted after deleting {} entries.", numDeleted);
+        }
+        sw.stop();
+
+        if (numDeleted > 0) {
+            log.info("gc: Incremental journal garbage collection took {}, deleted {} entries that were older " +
+                    "than {} min. Backlog was {} min.", sw, numDeleted,
+                    MILLISECONDS.toMinutes(start - gcOlderThan), MILLISECONDS.toMinutes(backlog));
+        }
+        ns.getStatsCollector().doneJournalGC(numDeleted, backlogMillis);
+        return numDeleted;
+    }
+
+    /**
+     * @return the age in milliseconds of the oldest garbage journal entry,
+     *          relative to the garbage collection cutoff, as determined by
+     *          the most recent garbage collection run. Zero if the most recent
+     *          run removed all garbage entries.
+     */
+    public long getBacklogMillis() {
+        return backlogMillis;
+    }
+
+    private long getGCOlderThan(long now) {
+        Revision checkpointRev = ns.getCheckpoints().getOldestRevisionToKeep();
+        Long keep = null;
+        if (checkpointRev != null) {
+            // keep more entries than just up to the checkpoint to account
+            // for branch commits that may be referenced by merge commits
+            keep = checkpointRev.getTimestamp() - maxRevisionAgeMillis / 2;
+        }
+        long gcOlderThan = now - maxRevisionAgeMillis;
+        if (keep != null && keep < gcOlderThan) {
+            gcOlderThan = keep;
+            log.debug("gc: Checkpoint {} is older than maxRevisionAge: {} min",
+                    keep, MILLISECONDS.toMinutes(maxRevisionAgeMillis));
+        }
+        return gcOlderThan;
+    }
+
+    /**
+     * Looks up the key prefixes present in the journal. This includes the
+     * prefixes of cluster nodes that do not exist anymore in the clusterNodes
+     * collection, otherwise their entries would never be removed. The journal
+     * is walked with one key lookup per prefix: after a key was found, the
+     * lookup continues after the last possible key with the same prefix.
+     *
+     * @return the key prefixes of journal entries.
+     */
+    private static List<String> getPrefixes(DocumentStore ds) {
+        Set<String> prefixes = new TreeSet<String>();
+        for (ClusterNodeInfoDocument info : ClusterNodeInfoDocument.all(ds)) {
+            prefixes.add(info.getClusterId() + "-");
+            prefixes.add("b" + info.getClusterId() + "-");
+        }
+        String from = MIN_JOURNAL_KEY;
+        for (;;) {
+            List<String> keys = ds.queryKeys(Collection.JOURNAL, from, MAX_JOURNAL_KEY, 1);
+            if (keys.isEmpty()) {
+                break;
+            }
+            String key = keys.get(0);
+            int idx = key.indexOf('-');
+            if (idx < 0) {
+                // not a journal entry key
+                from = key;
+                continue;
+            }
+            String prefix = key.substring(0, idx + 1);
+            prefixes.add(prefix);
+            // timestamp and counter are hex digits separated by '-'
+            from = prefix + MAX_JOURNAL_KEY;
+        }
+        return new ArrayList<String>(prefixes);
+    }
+
+    /**
+     * @return the (exclusive) upper bound of the keys with the given prefix
+     *          for entries older than the given timestamp.
+     */
+    private static String upperKey(String prefix, long timestamp) {
+        Revision r = new Revision(timestamp, 0, 0);
+        String id = JournalEntry.asId(r);
+        // replace the clusterId and separator of the id with the prefix
+        return prefix + id.substring(id.indexOf('-') + 1);
+    }
+
+    private static long getTimestamp(String journalId) {
+        int idx = journalId.indexOf('-') + 1;
+        return Long.parseLong(journalId.substring(idx, journalId.indexOf('-', idx)), 16);
+    }
+
+    private static String getCursor(Document settings, String prefix) {
+        String cursor = null;
+        if (settings != null) {
+            cursor = (String) settings.get(CURSOR_PREFIX + prefix);
+        }
+        // all keys with the given prefix are greater than the prefix
+        return cursor != null ? cursor : prefix;
+    }
+
+    private void updateCursor(String prefix, String key) {
+        UpdateOp op = new UpdateOp(JOURNAL_GC_ID, true);
+        op.set(CURSOR_PREFIX + prefix, key);
+        ns.getDocumentStore().createOrUpdate(SETTINGS, op);
+    }
+
     private void updateTailTimestamp(long gcOlderThan) {
         UpdateOp op = new UpdateOp(JOURNAL_GC_ID, true);
         op.max(TAIL_TIMESTAMP, gcOlderThan);
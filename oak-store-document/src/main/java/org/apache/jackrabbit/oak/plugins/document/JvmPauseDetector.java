@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.oak.plugins.document.util.SystemPropertySupplier;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Detects pauses of the JVM (e.g. stop-the-world garbage collection) with a
+ * process-wide daemon thread, which wakes up every {@link #INTERVAL_MILLIS}
+ * and measures how much later than expected it woke up. Listeners are
+ * informed when the delay exceeds a threshold. The thread is started when
+ * the first listener is added and stops when the last listener is removed.
+ */
+final class JvmPauseDetector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JvmPauseDetector.class);
+
+    /**
+     * The interval in milliseconds between two checks.
+     */
+    static final long INTERVAL_MILLIS = 100;
+
+    /**
+     * Delays of the detector thread longer than this threshold in
+     * milliseconds are reported as pause.
+     */
+    private static final int THRESHOLD_MILLIS = SystemPropertySupplier
+            .create("oak.documentMK.pauseDetectionThresholdMillis", 1000).loggingTo(LOG)
+            .validateWith(value -> value > 0).get();
+
+    private static final JvmPauseDetector INSTANCE = new JvmPauseDetector(THRESHOLD_MILLIS, true);
+
+    /**
+     * Listener for detected pauses.
+     */
+    interface Listener {
+
+        /**
+         * Called on the detector thread after a pause was detected.
+         *
+         * @param pauseMillis the duration of the pause in milliseconds.
+         */
+        void pauseDetected(long pauseMillis);
+    }
+
+    private final long thresholdMillis;
+
+    private final boolean background;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private Thread thread;
+
+    private long lastCheckNanos = -1;
+
+    private long maxPauseMillis;
+
+    /**
+     * @param thresholdMillis delays longer than this are reported as pause.
+     * @param background whether checks are done by a background thread.
+     *                   Otherwise {@link #check(long)} must be called
+     *                   explicitly.
+     */
+    JvmPauseDetector(long thresholdMillis, boolean background) {
+        this.thresholdMillis = thresholdMillis;
+        this.background = background;
+    }
+
+    /**
+     * @return the process-wide detector.
+     */
+    static JvmPauseDetector getInstance() {
+        return INSTANCE;
+    }
+
+    synchronized void addListener(@NotNull Listener listener) {
+        listeners.add(checkNotNull(listener));
+        if (background && thread == null) {
+            Thread t = new Thread(this::run, "DocumentNodeStore pause detector");
+            t.setDaemon(true);
+            t.setPriority(Thread.MAX_PRIORITY);
+            lastCheckNanos = -1;
+            thread = t;
+            t.start();
+        }
+    }
+
+    synchronized void removeListener(@NotNull Listener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty() && thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * @return the longest pause detected so far in milliseconds.
+     */
+    synchronized long getMaxPauseMillis() {
+        return maxPauseMillis;
+    }
+
+    /**
+     * Checks for a pause since the previous check and informs listeners
+     * when one was detected.
+     *
+     * @param nowNanos the current time in nanoseconds.
+     * @return the pause in milliseconds or zero if none was detected.
+     */
+    long check(long nowNanos) {
+        long pauseMillis = 0;
+        synchronized (this) {
+            if (lastCheckNanos >= 0) {
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(nowNanos - lastCheckNanos);
+                if (elapsed - INTERVAL_MILLIS > thresholdMillis) {
+                    pauseMillis = elapsed - INTERVAL_MILLIS;
+                    maxPauseMillis = Math.max(maxPauseMillis, pauseMillis);
+                }
+            }
+            lastCheckNanos = nowNanos;
+        }
+        if (pauseMillis > 0) {
+            LOG.warn("Detected JVM pause of about {}ms", pauseMillis);
+            for (Listener l : listeners) {
+                try {
+                    l.pauseDetected(pauseMillis);
+                } catch (RuntimeException e) {
+                    LOG.warn("Listener failed to handle pause", e);
+                }
+            }
+        }
+        return pauseMillis;
+    }
+
+    private void run() {
+        Thread current = Thread.currentThread();
+        while (true) {
+            synchronized (this) {
+                if (thread != current) {
+                    return;
+                }
+            }
+            check(System.nanoTime());
+            try {
+                Thread.sleep(INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                // check whether detector was stopped
+            }
+        }
+    }
+}
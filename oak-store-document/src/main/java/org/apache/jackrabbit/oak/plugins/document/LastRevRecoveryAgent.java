@@ -18,6 +18,7 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.Iterables.filter;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.filterKeys;
@@ -28,11 +29,19 @@ import static org.apache.jackrabbit.oak.plugins.document.util.Utils.PROPERTY_OR_
 import static org.apache.jackrabbit.oak.plugins.document.util.Utils.isCommitted;
 import static org.apache.jackrabbit.oak.plugins.document.util.Utils.resolveCommitRevision;
 
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -41,10 +50,12 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.jackrabbit.oak.commons.TimeDurationFormatter;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.DocumentBundlor;
 import org.apache.jackrabbit.oak.plugins.document.util.MapFactory;
+import org.apache.jackrabbit.oak.plugins.document.util.SystemPropertySupplier;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.stats.Clock;
 import org.jetbrains.annotations.NotNull;
@@ -78,6 +89,24 @@ public class LastRevRecoveryAgent {
 
     private static final long LOGINTERVALMS = TimeUnit.MINUTES.toMillis(1);
 
+    /**
+     * The default number of workers that process recovery candidates. With
+     * a value of one, candidates are processed sequentially by the thread
+     * calling {@link #recover(Iterable, int, boolean)}.
+     */
+    static final int DEFAULT_NUM_WORKERS = SystemPropertySupplier.create(
+            "oak.documentMK.lastRevRecoveryWorkers", 1).get();
+
+    /**
+     * The number of tasks a worker collects before it is handed over to the
+     * worker thread.
+     */
+    private static final int WORKER_BATCH_SIZE = 100;
+
+    private int numWorkers = DEFAULT_NUM_WORKERS;
+
+    private volatile RecoveryProgress recoveryProgress;
+
     public LastRevRecoveryAgent(DocumentStore store,
                                 RevisionContext revisionContext,
                                 MissingLastRevSeeker seeker,
@@ -94,6 +123,19 @@ public class LastRevRecoveryAgent {
                 i -> {});
     }
 
+    /**
+     * Sets the number of workers used to process recovery candidates. The
+     * candidates are partitioned across the workers by their top-level
+     * ancestor and each partition is processed by a single worker. Workers
+     * are only started when the number is greater than one.
+     *
+     * @param numWorkers the number of workers.
+     */
+    public void setNumWorkers(int numWorkers) {
+        checkArgument(numWorkers > 0, "numWorkers must be greater than zero");
+        this.numWorkers = numWorkers;
+    }
+
     /**
      * Recover the correct _lastRev updates for potentially missing candidate
      * nodes. If another cluster node is already performing the recovery for the
@@ -295,11 +337,11 @@ public class LastRevRecoveryAgent {
         }
 
         // now deal with missing _lastRev updates
-        UnsavedModifications unsaved = new UnsavedModifications();
-        UnsavedModifications unsavedParents = new UnsavedModifications();
+        final UnsavedModifications unsaved = new UnsavedModifications();
+        final UnsavedModifications unsavedParents = new UnsavedModifications();
 
         //Map of known last rev of checked paths
-        Map<Path, Revision> knownLastRevOrModification = MapFactory.getInstance().create();
+        final Map<Path, Revision> knownLastRevOrModification = MapFactory.getInstance().create();
         final JournalEntry changes = JOURNAL.newDocument(store);
 
         Clock clock = revisionContext.getClock();
@@ -309,94 +351,51 @@ public class LastRevRecoveryAgent {
         long startOfScan = clock.getTime();
         long lastLog = startOfScan;
 
-        for (NodeDocument doc : suspects) {
-            totalCount++;
-            lastCount++;
-
-            long now = clock.getTime();
-            long lastElapsed = now - lastLog;
-            if (lastElapsed >= LOGINTERVALMS) {
-                TimeDurationFormatter df = TimeDurationFormatter.forLogging();
-
-                long totalElapsed = now - startOfScan;
-                long totalRateMin = (totalCount * TimeUnit.MINUTES.toMillis(1)) / totalElapsed;
-                long lastRateMin = (lastCount * TimeUnit.MINUTES.toMillis(1)) / lastElapsed;
-
-                String message = String.format(
-                        "Recovery for cluster node [%d]: %d nodes scanned in %s (~%d/m) - last interval %d nodes in %s (~%d/m)",
-                        clusterId, totalCount, df.format(totalElapsed, TimeUnit.MILLISECONDS), totalRateMin, lastCount,
-                        df.format(lastElapsed, TimeUnit.MILLISECONDS), lastRateMin);
-
-                log.info(message);
-                lastLog = now;
-                lastCount = 0;
-            }
-
-            Revision currentLastRev = doc.getLastRev().get(clusterId);
-
-            // 1. determine last committed modification on document
-            Revision lastModifiedRev = determineLastModification(doc, clusterId);
-
-            Revision lastRevForParents = Utils.max(lastModifiedRev, currentLastRev);
-            // remember the higher of the two revisions. this is the
-            // most recent revision currently obtained from either a
-            // _lastRev entry or an explicit modification on the document
-            if (lastRevForParents != null) {
-                knownLastRevOrModification.put(doc.getPath(), lastRevForParents);
-            }
-
-            //If both currentLastRev and lostLastRev are null it means
-            //that no change is done by suspect cluster on this document
-            //so nothing needs to be updated. Probably it was only changed by
-            //other cluster nodes. If this node is parent of any child node which
-            //has been modified by cluster then that node roll up would
-            //add this node path to unsaved
-
-            //2. Update lastRev for parent paths aka rollup
-            if (lastRevForParents != null) {
-                Path path = doc.getPath();
-                changes.modified(path); // track all changes
-                while (true) {
-                    path = path.getParent();
-                    if (path == null) {
-                        break;
-                    }
-                    unsavedParents.put(path, lastRevForParents);
+        RecoveryProgress progress = new RecoveryProgress(clusterId, startOfScan);
+        recoveryProgress = progress;
+        try (Workers workers = new Workers(numWorkers)) {
+            for (NodeDocument doc : suspects) {
+                totalCount++;
+                lastCount++;
+
+                long now = clock.getTime();
+                long lastElapsed = now - lastLog;
+                if (lastElapsed >= LOGINTERVALMS) {
+                    TimeDurationFormatter df = TimeDurationFormatter.forLogging();
+
+                    long totalElapsed = now - startOfScan;
+                    long totalRateMin = (totalCount * TimeUnit.MINUTES.toMillis(1)) / totalElapsed;
+                    long lastRateMin = (lastCount * TimeUnit.MINUTES.toMillis(1)) / lastElapsed;
+
+                    String message = String.format(
+                            "Recovery for cluster node [%d]: %d nodes scanned in %s (~%d/m) - last interval %d nodes in %s (~%d/m)",
+                            clusterId, totalCount, df.format(totalElapsed, TimeUnit.MILLISECONDS), totalRateMin, lastCount,
+                            df.format(lastElapsed, TimeUnit.MILLISECONDS), lastRateMin);
+
+                    log.info(message);
+                    lastLog = now;
+                    lastCount = 0;
                 }
-            }
-        }
 
-        for (Path parentPath : unsavedParents.getPaths()) {
-            Revision calcLastRev = unsavedParents.get(parentPath);
-            Revision knownLastRev = knownLastRevOrModification.get(parentPath);
-            if (knownLastRev == null) {
-                List<Path> missingDocuments = new ArrayList<>();
-                // we don't know when the document was last modified with
-                // the given clusterId. need to read from store
-                NodeDocument doc = findNearestAncestorOrSelf(parentPath, missingDocuments);
-                if (doc != null) {
-                    Revision lastRev = doc.getLastRev().get(clusterId);
-                    Revision lastMod = determineLastModification(doc, clusterId);
-                    knownLastRev = Utils.max(lastRev, lastMod);
-
-                    if (!missingDocuments.isEmpty()
-                            && doc.getLocalMap(DocumentBundlor.META_PROP_PATTERN).isEmpty()) {
-                        // there are missing document and the returned document
-                        // does not have bundled nodes
-                        for (Path p : missingDocuments) {
-                            log.warn("Unable to find document: {}", Utils.getIdFromPath(p));
-                        }
-                    }
-                }
+                workers.execute(getPartition(doc.getPath()), () -> {
+                    recoverCandidate(doc, clusterId,
+                            knownLastRevOrModification, unsavedParents, changes);
+                    progress.candidatesScanned.incrementAndGet();
+                });
             }
-
-            //Copy the calcLastRev of parent only if they have changed
-            //In many case it might happen that parent have consistent lastRev
-            //This check ensures that unnecessary updates are not made
-            if (knownLastRev == null
-                    || calcLastRev.compareRevisionTime(knownLastRev) > 0) {
-                unsaved.put(parentPath, calcLastRev);
+            workers.awaitCompletion();
+
+            progress.startParentsPhase(unsavedParents.getPaths().size(), clock.getTime());
+            for (Path parentPath : unsavedParents.getPaths()) {
+                workers.execute(getPartition(parentPath), () -> {
+                    recoverParent(parentPath, clusterId,
+                            knownLastRevOrModification, unsavedParents, unsaved);
+                    progress.parentsChecked.incrementAndGet();
+                });
             }
+            workers.awaitCompletion();
+        } finally {
+            recoveryProgress = null;
         }
 
         if (sweepRev.get() != null) {
@@ -480,8 +479,129 @@ public class LastRevRecoveryAgent {
         return size;
     }
 
+    /**
+     * Returns a human readable description of the progress of the recovery
+     * currently performed by this agent. The description includes an
+     * estimate of the remaining time once the number of documents to check
+     * is known.
+     *
+     * @return the progress of the ongoing recovery or a message that no
+     *          recovery is in progress.
+     */
+    @NotNull
+    public String getRecoveryStatus() {
+        RecoveryProgress progress = recoveryProgress;
+        if (progress == null) {
+            return "No recovery in progress";
+        }
+        return progress.format(revisionContext.getClock().getTime());
+    }
+
     //--------------------------< internal >------------------------------------
 
+    /**
+     * Determines the last modification of a candidate document by the given
+     * {@code clusterId} and records the revision for the ancestors of the
+     * document. This method may be called concurrently by multiple workers.
+     */
+    private void recoverCandidate(@NotNull NodeDocument doc,
+                                  int clusterId,
+                                  @NotNull Map<Path, Revision> knownLastRevOrModification,
+                                  @NotNull UnsavedModifications unsavedParents,
+                                  @NotNull JournalEntry changes) {
+        Revision currentLastRev = doc.getLastRev().get(clusterId);
+
+        // 1. determine last committed modification on document
+        Revision lastModifiedRev = determineLastModification(doc, clusterId);
+
+        Revision lastRevForParents = Utils.max(lastModifiedRev, currentLastRev);
+        // remember the higher of the two revisions. this is the
+        // most recent revision currently obtained from either a
+        // _lastRev entry or an explicit modification on the document
+        if (lastRevForParents != null) {
+            knownLastRevOrModification.put(doc.getPath(), lastRevForParents);
+        }
+
+        //If both currentLastRev and lostLastRev are null it means
+        //that no change is done by suspect cluster on this document
+        //so nothing needs to be updated. Probably it was only changed by
+        //other cluster nodes. If this node is parent of any child node which
+        //has been modified by cluster then that node roll up would
+        //add this node path to unsaved
+
+        //2. Update lastRev for parent paths aka rollup
+        if (lastRevForParents != null) {
+            Path path = doc.getPath();
+            synchronized (changes) {
+                changes.modified(path); // track all changes
+            }
+            while (true) {
+                path = path.getParent();
+                if (path == null) {
+                    break;
+                }
+                unsavedParents.put(path, lastRevForParents);
+            }
+        }
+    }
+
+    /**
+     * Compares the rolled up revision of a parent with the revision known for
+     * the parent document and records the parent in {@code unsaved} when its
+     * _lastRev must be updated. This method may be called concurrently by
+     * multiple workers.
+     */
+    private void recoverParent(@NotNull Path parentPath,
+                               int clusterId,
+                               @NotNull Map<Path, Revision> knownLastRevOrModification,
+                               @NotNull UnsavedModifications unsavedParents,
+                               @NotNull UnsavedModifications unsaved) {
+        Revision calcLastRev = unsavedParents.get(parentPath);
+        Revision knownLastRev = knownLastRevOrModification.get(parentPath);
+        if (knownLastRev == null) {
+            List<Path> missingDocuments = new ArrayList<>();
+            // we don't know when the document was last modified with
+            // the given clusterId. need to read from store
+            NodeDocument doc = findNearestAncestorOrSelf(parentPath, missingDocuments);
+            if (doc != null) {
+                Revision lastRev = doc.getLastRev().get(clusterId);
+                Revision lastMod = determineLastModification(doc, clusterId);
+                knownLastRev = Utils.max(lastRev, lastMod);
+
+                if (!missingDocuments.isEmpty()
+                        && doc.getLocalMap(DocumentBundlor.META_PROP_PATTERN).isEmpty()) {
+                    // there are missing document and the returned document
+                    // does not have bundled nodes
+                    for (Path p : missingDocuments) {
+                        log.warn("Unable to find document: {}", Utils.getIdFromPath(p));
+                    }
+                }
+            }
+        }
+
+        //Copy the calcLastRev of parent only if they have changed
+        //In many case it might happen that parent have consistent lastRev
+        //This check ensures that unnecessary updates are not made
+        if (knownLastRev == null
+                || calcLastRev.compareRevisionTime(knownLastRev) > 0) {
+            unsaved.put(parentPath, calcLastRev);
+        }
+    }
+
+    /**
+     * Returns the partition for the given path. All paths with the same
+     * top-level ancestor are in the same partition.
+     */
+    private int getPartition(@NotNull Path path) {
+        if (numWorkers <= 1 || path.isRoot()) {
+            return 0;
+        }
+        while (path.getDepth() > 1) {
+            path = path.getParent();
+        }
+        return (path.getName().hashCode() & Integer.MAX_VALUE) % numWorkers;
+    }
+
     /**
      * Get the earliest branch commit before {@code timeMillis} that has been
      * merged after {@code timeMillis}. This method only considers branch
@@ -710,5 +830,170 @@ public class LastRevRecoveryAgent {
             return clusterId == input.getClusterId();
         }
     }
-}
 
+    /**
+     * Tracks the progress of an ongoing recovery.
+     */
+    private static final class RecoveryProgress {
+
+        private final int clusterId;
+        private final long start;
+        private final AtomicLong candidatesScanned = new AtomicLong();
+        private final AtomicLong parentsChecked = new AtomicLong();
+        private volatile long parentsTotal = -1;
+        private volatile long parentsStart;
+
+        RecoveryProgress(int clusterId, long start) {
+            this.clusterId = clusterId;
+            this.start = start;
+        }
+
+        void startParentsPhase(long total, long now) {
+            parentsStart = now;
+            parentsTotal = total;
+        }
+
+        String format(long now) {
+            TimeDurationFormatter df = TimeDurationFormatter.forLogging();
+            StringBuilder sb = new StringBuilder();
+            sb.append("Recovery for cluster node [").append(clusterId).append("]: ");
+            sb.append(candidatesScanned.get()).append(" candidates scanned");
+            long total = parentsTotal;
+            if (total < 0) {
+                // total number of candidates is unknown
+                sb.append(", running for ").append(df.format(now - start, TimeUnit.MILLISECONDS));
+            } else {
+                long checked = parentsChecked.get();
+                long elapsed = now - parentsStart;
+                sb.append(", ").append(checked).append(" of ").append(total);
+                sb.append(" parent documents checked, running for ");
+                sb.append(df.format(now - start, TimeUnit.MILLISECONDS));
+                if (checked > 0) {
+                    long remaining = (total - checked) * elapsed / checked;
+                    sb.append(", estimated time remaining ");
+                    sb.append(df.format(remaining, TimeUnit.MILLISECONDS));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Executes tasks either in the calling thread or, with more than one
+     * worker, in worker threads. Each worker has its own thread and owns the
+     * partitions assigned to it, which means all tasks of a partition are
+     * executed by the same thread in the order they were passed to
+     * {@link #execute(int, Runnable)}. Tasks are handed over to a worker in
+     * batches. The number of batches in flight is bounded to limit memory
+     * usage.
+     */
+    private static final class Workers implements Closeable {
+
+        private final int numWorkers;
+        private final List<ExecutorService> executors;
+        private final Semaphore inFlight;
+        private final List<List<Runnable>> batches;
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        Workers(int numWorkers) {
+            this.numWorkers = numWorkers;
+            if (numWorkers > 1) {
+                this.executors = new ArrayList<>(numWorkers);
+                this.inFlight = new Semaphore(numWorkers * 2);
+                this.batches = new ArrayList<>(numWorkers);
+                for (int i = 0; i < numWorkers; i++) {
+                    executors.add(Executors.newSingleThreadExecutor(
+                            new ThreadFactoryBuilder().setDaemon(true)
+                                    .setNameFormat("LastRevRecoveryAgent-worker-" + i).build()));
+                    batches.add(new ArrayList<>(WORKER_BATCH_SIZE));
+                }
+            } else {
+                this.executors = Collections.emptyList();
+                this.inFlight = null;
+                this.batches = Collections.emptyList();
+            }
+        }
+
+        void execute(int partition, Runnable task) throws DocumentStoreException {
+            if (executors.isEmpty()) {
+                task.run();
+                return;
+            }
+            int worker = partition % numWorkers;
+            List<Runnable> batch = batches.get(worker);
+            batch.add(task);
+            if (batch.size() >= WORKER_BATCH_SIZE) {
+                submit(worker, new ArrayList<>(batch));
+                batch.clear();
+            }
+        }
+
+        void awaitCompletion() throws DocumentStoreException {
+            if (executors.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < numWorkers; i++) {
+                List<Runnable> batch = batches.get(i);
+                if (!batch.isEmpty()) {
+                    submit(i, new ArrayList<>(batch));
+                    batch.clear();
+                }
+            }
+            try {
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DocumentStoreException("Interrupted while waiting for recovery workers", e);
+            } catch (ExecutionException e) {
+                throw DocumentStoreException.convert(e.getCause());
+            } finally {
+                futures.clear();
+            }
+        }
+
+        private void submit(int worker, List<Runnable> batch) throws DocumentStoreException {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DocumentStoreException("Interrupted while submitting recovery tasks", e);
+            }
+            try {
+                futures.add(executors.get(worker).submit(() -> {
+                    try {
+                        batch.forEach(Runnable::run);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            } catch (RuntimeException e) {
+                inFlight.release();
+                throw e;
+            }
+            // fail fast when a batch failed
+            Iterator<Future<?>> it = futures.iterator();
+            while (it.hasNext()) {
+                Future<?> f = it.next();
+                if (!f.isDone()) {
+                    continue;
+                }
+                try {
+                    f.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DocumentStoreException("Interrupted while waiting for recovery workers", e);
+                } catch (ExecutionException e) {
+                    throw DocumentStoreException.convert(e.getCause());
+                }
+                it.remove();
+            }
+        }
+
+        @Override
+        public void close() {
+            executors.forEach(ExecutorService::shutdownNow);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.plugins.document.util.SystemPropertySupplier;
+import org.apache.jackrabbit.oak.stats.Clock;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decides when the lease update thread renews the lease independent of the
+ * lease update interval, based on pauses reported by the
+ * {@link JvmPauseDetector}.
+ * <p>
+ * A detected pause wakes up the lease update thread, which then renews the
+ * lease right away. JVM pauses usually come in bursts (e.g. when the heap is
+ * almost full), therefore the lease is then renewed on every run of the lease
+ * update thread for {@link #PRESSURE_MILLIS} after the pause. This keeps the
+ * lease margin close to the full lease time when the next pause starts,
+ * instead of losing up to the lease update interval.
+ */
+final class LeasePauseHandler implements JvmPauseDetector.Listener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LeasePauseHandler.class);
+
+    /**
+     * The time in milliseconds after a detected pause during which the lease
+     * is renewed on every run of the lease update thread.
+     */
+    static final long PRESSURE_MILLIS = TimeUnit.SECONDS.toMillis(SystemPropertySupplier
+            .create("oak.documentMK.leasePausePressureSeconds", 300).loggingTo(LOG)
+            .validateWith(value -> value >= 0).get());
+
+    private final Clock clock;
+
+    private final long pressureMillis;
+
+    private final Runnable wakeUp;
+
+    /** longest pause detected since the previous call to renewEagerly() */
+    private final AtomicLong pauseMillis = new AtomicLong();
+
+    private volatile long pressureEndTime = Long.MIN_VALUE;
+
+    /**
+     * @param clock the clock of the DocumentNodeStore.
+     * @param wakeUp wakes up the lease update thread.
+     */
+    LeasePauseHandler(@NotNull Clock clock, @NotNull Runnable wakeUp) {
+        this(clock, PRESSURE_MILLIS, wakeUp);
+    }
+
+    LeasePauseHandler(@NotNull Clock clock,
+                      long pressureMillis,
+                      @NotNull Runnable wakeUp) {
+        this.clock = checkNotNull(clock);
+        this.pressureMillis = pressureMillis;
+        this.wakeUp = checkNotNull(wakeUp);
+    }
+
+    @Override
+    public void pauseDetected(long pauseMillis) {
+        this.pauseMillis.accumulateAndGet(pauseMillis, Math::max);
+        pressureEndTime = clock.getTime() + pressureMillis;
+        wakeUp.run();
+    }
+
+    /**
+     * Called by the lease update thread before it renews the lease.
+     *
+     * @return {@code true} if the lease should be renewed even when the last
+     *      renewal is less than the lease update interval ago.
+     */
+    boolean renewEagerly() {
+        long pause = pauseMillis.getAndSet(0);
+        if (pause > 0) {
+            LOG.info("Renewing lease after JVM pause of {}ms", pause);
+            return true;
+        }
+        return clock.getTime() < pressureEndTime;
+    }
+}
@@ -50,7 +50,9 @@ import com.google.common.base.Predicate;
  * And due to these exceptions the class is forked rather than modified/subclasses
  * (also to enable later refactoring of the NodeDocumentSweeper itself).
  * <p>
- * This class is not thread-safe.
+ * This class is not thread-safe. A single sweep2 may however process
+ * partitions of the documents concurrently, see
+ * {@link #sweep2(List, NodeDocumentSweepListener, int)}.
  */
 final class MissingBcSweeper2 {
 
@@ -108,19 +110,48 @@ final class MissingBcSweeper2 {
     void sweep2(@NotNull Iterable<NodeDocument> documents,
                    @NotNull NodeDocumentSweepListener listener)
             throws DocumentStoreException {
-        performSweep2(documents, checkNotNull(listener));
+        performSweep2(Collections.singletonList(documents), checkNotNull(listener), 1);
+    }
+
+    /**
+     * Like {@link #sweep2(Iterable, NodeDocumentSweepListener)}, but sweeps
+     * the given partitions of documents concurrently with up to
+     * {@code numThreads} threads. The partitions must be disjoint. The
+     * listener is called concurrently from multiple threads when more than
+     * one thread is used.
+     *
+     * @param partitions the partitions of documents to sweep.
+     * @param listener the listener to receive required sweep update operations.
+     * @param numThreads the number of threads.
+     * @throws DocumentStoreException if reading from the store or writing to
+     *          the store failed.
+     */
+    void sweep2(@NotNull List<? extends Iterable<NodeDocument>> partitions,
+                @NotNull NodeDocumentSweepListener listener,
+                int numThreads)
+            throws DocumentStoreException {
+        performSweep2(partitions, checkNotNull(listener), numThreads);
     }
 
     //----------------------------< internal >----------------------------------
 
-    private void performSweep2(Iterable<NodeDocument> documents,
-                                  NodeDocumentSweepListener listener)
+    private void performSweep2(List<? extends Iterable<NodeDocument>> partitions,
+                               NodeDocumentSweepListener listener,
+                               int numThreads)
             throws DocumentStoreException {
         totalCount = 0;
         lastCount = 0;
         startOfScan = context.getClock().getTime();
         lastLog = startOfScan;
 
+        SweepPartitions.run("MissingBcSweeper2", partitions, numThreads,
+                documents -> sweepPartition(documents, listener));
+        LOG.debug("Document sweep2 finished");
+    }
+
+    private void sweepPartition(Iterable<NodeDocument> documents,
+                                NodeDocumentSweepListener listener)
+            throws DocumentStoreException {
         Iterable<Map.Entry<Path, UpdateOp>> ops = sweepOperations(documents);
         for (List<Map.Entry<Path, UpdateOp>> batch : partition(ops, INVALIDATE_BATCH_SIZE)) {
             Map<Path, UpdateOp> updates = newHashMap();
@@ -132,7 +163,6 @@ final class MissingBcSweeper2 {
                 throw new DocumentStoreException("sweep2 interrupted by shutdown");
             }
         }
-        LOG.debug("Document sweep2 finished");
     }
 
     private Iterable<Map.Entry<Path, UpdateOp>> sweepOperations(
@@ -210,6 +240,11 @@ final class MissingBcSweeper2 {
             }
         }
 
+        scanned();
+        return op == null ? null : op.hasChanges() ? op : null;
+    }
+
+    private synchronized void scanned() {
         totalCount++;
         lastCount++;
         long now = context.getClock().getTime();
@@ -237,8 +272,6 @@ final class MissingBcSweeper2 {
             lastLog = now;
             lastCount = 0;
         }
-
-        return op == null ? null : op.hasChanges() ? op : null;
     }
 
     /**
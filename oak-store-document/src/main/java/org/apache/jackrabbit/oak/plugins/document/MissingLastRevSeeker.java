@@ -83,14 +83,26 @@ public class MissingLastRevSeeker {
         // Fetch all documents where lastmod >= startTime
         Iterable<NodeDocument> nodes = getSelectedDocuments(store,
                 MODIFIED_IN_SECS, getModifiedInSecs(startTime));
-        return Iterables.filter(nodes, new Predicate<NodeDocument>() {
-            @Override
-            public boolean apply(NodeDocument input) {
-                Long modified = (Long) input.get(MODIFIED_IN_SECS);
-                Long sdType = (Long) input.get(SD_TYPE);
-                return (modified != null && (modified >= getModifiedInSecs(startTime)) && sdType == null);
-            }
-        });
+        return Iterables.filter(nodes, isCandidate(startTime));
+    }
+
+    /**
+     * Like {@link #getCandidates(long)}, but only returns candidates with an
+     * id greater than {@code fromId} and less than {@code toId}. Disjoint id
+     * ranges can be used to read the candidates concurrently.
+     *
+     * @param startTime the start time in milliseconds.
+     * @param fromId the lower bound of the id range (exclusive).
+     * @param toId the upper bound of the id range (exclusive).
+     * @return the candidates
+     */
+    @NotNull
+    public Iterable<NodeDocument> getCandidates(final long startTime,
+                                                @NotNull String fromId,
+                                                @NotNull String toId) {
+        Iterable<NodeDocument> nodes = getSelectedDocuments(store,
+                MODIFIED_IN_SECS, getModifiedInSecs(startTime), fromId, toId);
+        return Iterables.filter(nodes, isCandidate(startTime));
     }
 
     /**
@@ -151,4 +163,15 @@ public class MissingLastRevSeeker {
     public boolean isRecoveryNeeded(@NotNull ClusterNodeInfoDocument nodeInfo) {
         return nodeInfo.isRecoveryNeeded(clock.getTime());
     }
+
+    private static Predicate<NodeDocument> isCandidate(final long startTime) {
+        return new Predicate<NodeDocument>() {
+            @Override
+            public boolean apply(NodeDocument input) {
+                Long modified = (Long) input.get(MODIFIED_IN_SECS);
+                Long sdType = (Long) input.get(SD_TYPE);
+                return (modified != null && (modified >= getModifiedInSecs(startTime)) && sdType == null);
+            }
+        };
+    }
 }
@@ -928,6 +928,8 @@ public final class NodeDocument extends Document {
             return null;
         }
         Path path = getPath();
+        PropertyStateSharing sharing = nodeStore.getPropertyStateSharing();
+        PropertyStateSharing.Base base = sharing != null ? sharing.getBase(path) : null;
         List<PropertyState> props = Lists.newArrayList();
         for (String key : keySet()) {
             if (!Utils.isPropertyName(key)) {
@@ -966,7 +968,9 @@ public final class NodeDocument extends Document {
             String propertyName = Utils.unescapePropertyName(key);
             String v = value != null ? value.value : null;
             if (v != null){
-                props.add(nodeStore.createPropertyState(propertyName, v));
+                props.add(sharing != null ?
+                        sharing.createPropertyState(base, propertyName, v) :
+                        nodeStore.createPropertyState(propertyName, v));
             }
         }
 
@@ -1019,6 +1023,9 @@ public final class NodeDocument extends Document {
             }
         }
 
+        if (sharing != null) {
+            return sharing.newNodeState(path, readRevision, base, props, hasChildren(), lastRevision);
+        }
         return new DocumentNodeState(nodeStore, path, readRevision, props, hasChildren(), lastRevision);
     }
 
@@ -1266,39 +1273,71 @@ public final class NodeDocument extends Document {
         if (revision == null) {
             return new PropertyHistory(this, property);
         } else {
-            final Path mainPath = getMainPath();
-            // first try to lookup revision directly
-            Map.Entry<Revision, Range> entry = getPreviousRanges().floorEntry(revision);
-            if (entry != null) {
-                Revision r = entry.getKey();
-                int h = entry.getValue().height;
-                String prevId = Utils.getPreviousIdFor(mainPath, r, h);
-                NodeDocument prev = getPreviousDocument(prevId);
-                if (prev != null) {
-                    if (prev.getValueMap(property).containsKey(revision)) {
-                        return Collections.singleton(prev);
-                    }
-                } else {
-                    previousDocumentNotFound(prevId, revision);
+            return new Iterable<NodeDocument>() {
+                @Override
+                public Iterator<NodeDocument> iterator() {
+                    return getPreviousDocLeaves(property, revision);
                 }
-            }
+            };
+        }
+    }
 
-            // didn't find entry -> scan through remaining head ranges
-            return filter(transform(getPreviousRanges().headMap(revision).entrySet(),
-                    new Function<Map.Entry<Revision, Range>, NodeDocument>() {
-                @Override
-                public NodeDocument apply(Map.Entry<Revision, Range> input) {
-                    if (input.getValue().includes(revision)) {
-                       return getPreviousDoc(input.getKey(), input.getValue());
+    /**
+     * Returns the previous leaf documents with an entry for the given property
+     * in the given revision. Unlike {@link #getPreviousDocLeaves()}, this
+     * method uses the revision ranges of this document and intermediate
+     * documents as an index and only descends into ranges that include the
+     * given revision. A lookup therefore loads a number of documents
+     * proportional to the height of the tree of previous documents and not
+     * to the total number of previous documents. The documents are returned
+     * in descending revision order (newest first).
+     *
+     * @param property the name of a property.
+     * @param revision the revision to match.
+     * @return previous leaf documents with an entry for the revision.
+     */
+    @NotNull
+    private Iterator<NodeDocument> getPreviousDocLeaves(@NotNull final String property,
+                                                        @NotNull final Revision revision) {
+        final NavigableMap<Revision, Range> ranges = new TreeMap<Revision, Range>(REVERSE);
+        addRangesIncluding(getPreviousRanges(), revision, ranges);
+        return new AbstractIterator<NodeDocument>() {
+            @Override
+            protected NodeDocument computeNext() {
+                for (;;) {
+                    Map.Entry<Revision, Range> topEntry = ranges.pollFirstEntry();
+                    if (topEntry == null) {
+                        // no more ranges
+                        return endOfData();
+                    }
+                    NodeDocument prev = getPreviousDoc(topEntry.getKey(), topEntry.getValue());
+                    if (prev == null) {
+                        // move on to next range
+                        continue;
+                    }
+                    if (topEntry.getValue().getHeight() == 0) {
+                        // this is a leaf
+                        if (prev.getValueMap(property).containsKey(revision)) {
+                            return prev;
+                        }
+                    } else {
+                        // replace intermediate entry with its matching ranges
+                        addRangesIncluding(prev.getPreviousRanges(), revision, ranges);
                     }
-                    return null;
-                }
-            }), new Predicate<NodeDocument>() {
-                @Override
-                public boolean apply(@Nullable NodeDocument input) {
-                    return input != null && input.getValueMap(property).containsKey(revision);
                 }
-            });
+            }
+        };
+    }
+
+    private static void addRangesIncluding(@NotNull NavigableMap<Revision, Range> ranges,
+                                           @NotNull Revision revision,
+                                           @NotNull Map<Revision, Range> target) {
+        // ranges are sorted descending, only ranges with a high
+        // bound newer or equal to the revision can include it
+        for (Range r : ranges.headMap(revision, true).values()) {
+            if (r.includes(revision)) {
+                target.put(r.high, r);
+            }
         }
     }
 
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.jackrabbit.oak.plugins.document.SweepPartitions.IdRange;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Exports all documents of the {@link Collection#NODES} collection with
+ * concurrent range queries. The id space is split into ranges by the depth
+ * prefix of the ids and further at keys sampled with
+ * {@link DocumentStore#sampleKeys(Collection, int)}. Each range is read in
+ * batches by a worker thread and the batches are passed to a consumer in
+ * the calling thread through a bounded queue. Workers block when the queue
+ * is full, which limits the number of documents held in memory when the
+ * consumer is slower than the DocumentStore.
+ * <p>
+ * Documents of a range are passed to the consumer in ascending id order,
+ * but documents of different ranges are interleaved. Every document is
+ * passed to the consumer exactly once, unless it is created or removed
+ * while the export is running.
+ */
+public final class NodeDocumentExporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NodeDocumentExporter.class);
+
+    /**
+     * Marker put into the queue by a worker when it is done.
+     */
+    private static final List<NodeDocument> END = Collections.emptyList();
+
+    private final DocumentStore store;
+
+    private final int numThreads;
+
+    private int batchSize = 1000;
+
+    private int queueSize = 16;
+
+    private int sampleSize;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param store the store to export.
+     * @param numThreads the number of worker threads reading ranges.
+     */
+    public NodeDocumentExporter(@NotNull DocumentStore store, int numThreads) {
+        checkArgument(numThreads > 0, "numThreads must be > 0: %s", numThreads);
+        this.store = checkNotNull(store);
+        this.numThreads = numThreads;
+        this.sampleSize = numThreads * 16;
+    }
+
+    /**
+     * @param batchSize the maximum number of documents read with a single
+     *                  query. Defaults to 1000.
+     * @return this exporter.
+     */
+    public NodeDocumentExporter withBatchSize(int batchSize) {
+        checkArgument(batchSize > 0, "batchSize must be > 0: %s", batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * @param queueSize the maximum number of batches read ahead of the
+     *                  consumer. Defaults to 16.
+     * @return this exporter.
+     */
+    public NodeDocumentExporter withQueueSize(int queueSize) {
+        checkArgument(queueSize > 0, "queueSize must be > 0: %s", queueSize);
+        this.queueSize = queueSize;
+        return this;
+    }
+
+    /**
+     * @param sampleSize the number of keys to sample for splitting the id
+     *                   space. Zero disables sampling and only splits by
+     *                   depth. Defaults to 16 times the number of threads.
+     * @return this exporter.
+     */
+    public NodeDocumentExporter withSampleSize(int sampleSize) {
+        checkArgument(sampleSize >= 0, "sampleSize must be >= 0: %s", sampleSize);
+        this.sampleSize = sampleSize;
+        return this;
+    }
+
+    /**
+     * Passes all documents of the {@link Collection#NODES} collection to the
+     * consumer. The consumer is called in the calling thread. This method
+     * returns when all documents are exported or throws the exception of
+     * the first worker or consumer that failed. The remaining workers are
+     * stopped in this case.
+     *
+     * @param consumer the consumer of the documents.
+     * @return the number of exported documents.
+     * @throws DocumentStoreException if reading from the store failed or
+     *          the calling thread was interrupted.
+     */
+    public long export(@NotNull Consumer<NodeDocument> consumer)
+            throws DocumentStoreException {
+        checkNotNull(consumer);
+        Stopwatch sw = Stopwatch.createStarted();
+        List<IdRange> ranges = getRanges();
+        LOG.info("Exporting {} ranges with {} threads", ranges.size(), numThreads);
+        BlockingQueue<List<NodeDocument>> queue = new ArrayBlockingQueue<>(queueSize);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        stopped = false;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+                new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat("document-export-worker-%d").build());
+        long count = 0;
+        try {
+            for (IdRange r : ranges) {
+                executor.execute(() -> {
+                    try {
+                        readRange(r, queue);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        try {
+                            put(queue, END);
+                        } catch (InterruptedException e) {
+                            // exporter stopped
+                        }
+                    }
+                });
+            }
+            int done = 0;
+            while (done < ranges.size()) {
+                List<NodeDocument> batch = queue.take();
+                if (batch == END) {
+                    done++;
+                    Throwable t = failure.get();
+                    if (t != null) {
+                        throw DocumentStoreException.convert(t);
+                    }
+                    continue;
+                }
+                for (NodeDocument doc : batch) {
+                    consumer.accept(doc);
+                }
+                count += batch.size();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DocumentStoreException("Interrupted while exporting documents", e);
+        } finally {
+            stopped = true;
+            executor.shutdownNow();
+        }
+        LOG.info("Exported {} documents in {}", count, sw);
+        return count;
+    }
+
+    /**
+     * @return the disjoint id ranges, which together cover all ids.
+     */
+    @NotNull
+    List<IdRange> getRanges() {
+        TreeSet<String> keys = new TreeSet<>();
+        if (sampleSize > 0) {
+            keys.addAll(store.sampleKeys(Collection.NODES, sampleSize));
+        }
+        List<IdRange> ranges = new ArrayList<>();
+        for (IdRange r : SweepPartitions.ID_RANGES) {
+            String from = r.fromId;
+            for (String key : keys.subSet(r.fromId, false, r.toId, false)) {
+                // split right after the sampled key. the bound is not
+                // a valid id because names cannot contain U+0000
+                String bound = key + '\u0000';
+                ranges.add(new IdRange(from, bound));
+                from = bound;
+            }
+            ranges.add(new IdRange(from, r.toId));
+        }
+        return ranges;
+    }
+
+    private void readRange(IdRange range, BlockingQueue<List<NodeDocument>> queue)
+            throws InterruptedException {
+        long num = 0;
+        String from = range.fromId;
+        while (!stopped) {
+            List<NodeDocument> docs = store.query(Collection.NODES, from, range.toId, batchSize);
+            if (docs.isEmpty() || !put(queue, docs)) {
+                break;
+            }
+            num += docs.size();
+            if (docs.size() < batchSize) {
+                break;
+            }
+            from = docs.get(docs.size() - 1).getId();
+        }
+        LOG.debug("Range {} done with {} documents", range, num);
+    }
+
+    /**
+     * Puts the batch into the queue and waits while the queue is full.
+     *
+     * @return {@code false} if the exporter was stopped before the batch
+     *          could be put into the queue.
+     */
+    private boolean put(BlockingQueue<List<NodeDocument>> queue,
+                        List<NodeDocument> batch)
+            throws InterruptedException {
+        while (!stopped) {
+            if (queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
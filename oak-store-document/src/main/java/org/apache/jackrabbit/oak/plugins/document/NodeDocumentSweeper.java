@@ -16,6 +16,7 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -46,7 +47,9 @@ import static org.apache.jackrabbit.oak.plugins.document.util.Utils.PROPERTY_OR_
  * The {@code NodeDocumentSweeper} is responsible for removing uncommitted
  * changes from {@code NodeDocument}s for a given clusterId.
  * <p>
- * This class is not thread-safe.
+ * This class is not thread-safe. A single sweep may however process
+ * partitions of the documents concurrently, see
+ * {@link #sweep(List, NodeDocumentSweepListener, int)}.
  */
 final class NodeDocumentSweeper {
 
@@ -122,7 +125,29 @@ final class NodeDocumentSweeper {
     Revision sweep(@NotNull Iterable<NodeDocument> documents,
                    @NotNull NodeDocumentSweepListener listener)
             throws DocumentStoreException {
-        return performSweep(documents, checkNotNull(listener));
+        return performSweep(Collections.singletonList(documents), checkNotNull(listener), 1);
+    }
+
+    /**
+     * Like {@link #sweep(Iterable, NodeDocumentSweepListener)}, but sweeps
+     * the given partitions of documents concurrently with up to
+     * {@code numThreads} threads. The partitions must be disjoint. The
+     * listener is called concurrently from multiple threads when more than
+     * one thread is used.
+     *
+     * @param partitions the partitions of documents to sweep.
+     * @param listener the listener to receive required sweep update operations.
+     * @param numThreads the number of threads.
+     * @return the new sweep revision or {@code null} if no updates were done.
+     * @throws DocumentStoreException if reading from the store or writing to
+     *          the store failed.
+     */
+    @Nullable
+    Revision sweep(@NotNull List<? extends Iterable<NodeDocument>> partitions,
+                   @NotNull NodeDocumentSweepListener listener,
+                   int numThreads)
+            throws DocumentStoreException {
+        return performSweep(partitions, checkNotNull(listener), numThreads);
     }
 
     /**
@@ -135,8 +160,9 @@ final class NodeDocumentSweeper {
     //----------------------------< internal >----------------------------------
 
     @Nullable
-    private Revision performSweep(Iterable<NodeDocument> documents,
-                                  NodeDocumentSweepListener listener)
+    private Revision performSweep(List<? extends Iterable<NodeDocument>> partitions,
+                                  NodeDocumentSweepListener listener,
+                                  int numThreads)
             throws DocumentStoreException {
         head = headRevision.getRevision(clusterId);
         totalCount = 0;
@@ -151,6 +177,15 @@ final class NodeDocumentSweeper {
             return null;
         }
 
+        SweepPartitions.run("NodeDocumentSweeper", partitions, numThreads,
+                documents -> sweepPartition(documents, listener));
+        LOG.debug("Document sweep finished");
+        return head;
+    }
+
+    private void sweepPartition(Iterable<NodeDocument> documents,
+                                NodeDocumentSweepListener listener)
+            throws DocumentStoreException {
         Iterable<Map.Entry<Path, UpdateOp>> ops = sweepOperations(documents);
         for (List<Map.Entry<Path, UpdateOp>> batch : partition(ops, INVALIDATE_BATCH_SIZE)) {
             Map<Path, UpdateOp> updates = newHashMap();
@@ -159,8 +194,6 @@ final class NodeDocumentSweeper {
             }
             listener.sweepUpdate(updates);
         }
-        LOG.debug("Document sweep finished");
-        return head;
     }
 
     private Iterable<Map.Entry<Path, UpdateOp>> sweepOperations(
@@ -205,6 +238,11 @@ final class NodeDocumentSweeper {
             }
         }
 
+        scanned();
+        return op.hasChanges() ? op : null;
+    }
+
+    private synchronized void scanned() {
         totalCount++;
         lastCount++;
         long now = context.getClock().getTime();
@@ -226,8 +264,6 @@ final class NodeDocumentSweeper {
             lastLog = now;
             lastCount = 0;
         }
-
-        return op.hasChanges() ? op : null;
     }
 
     private void uncommitted(NodeDocument doc,
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * <code>PartialUpdateException</code> is thrown by
+ * {@link DocumentStore#findAndUpdate(Collection, java.util.List)} when the
+ * operation failed after some of the updates were already processed. It
+ * tells the caller which updates completed and which updates were not
+ * applied. The outcome of updates on all other documents is unknown.
+ */
+public class PartialUpdateException extends DocumentStoreException {
+
+    private static final long serialVersionUID = -3415185460276823434L;
+
+    private final Map<String, Document> results;
+
+    private final Set<String> notApplied;
+
+    /**
+     * Creates a new exception with the message and type of the given cause.
+     *
+     * @param cause the exception that stopped the operation.
+     * @param results the results of the completed updates keyed by document
+     *          id. A value is the document before the update or
+     *          {@code null} if the condition was not met or the document
+     *          wasn't found.
+     * @param notApplied the ids of the documents with updates that were not
+     *          applied.
+     */
+    public PartialUpdateException(@NotNull DocumentStoreException cause,
+                                  @NotNull Map<String, ? extends Document> results,
+                                  @NotNull Set<String> notApplied) {
+        super(cause.getMessage(), cause, cause.getType());
+        this.results = Collections.unmodifiableMap(new HashMap<String, Document>(results));
+        this.notApplied = ImmutableSet.copyOf(notApplied);
+    }
+
+    /**
+     * @return the results of the completed updates keyed by document id. A
+     *          value is the document before the update or {@code null} if
+     *          the condition was not met or the document wasn't found.
+     */
+    @NotNull
+    public Map<String, Document> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the ids of the documents with updates that were not applied
+     *          and can safely be retried.
+     */
+    @NotNull
+    public Set<String> getNotApplied() {
+        return notApplied;
+    }
+}
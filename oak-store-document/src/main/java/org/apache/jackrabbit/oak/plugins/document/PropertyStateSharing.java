@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Shares {@link PropertyState}s between {@link DocumentNodeState}s of the same
+ * path read at different revisions. Revisions of a node usually differ in a
+ * few properties only. The properties of the first node state read for a
+ * path become the {@link Base} for that path. Node states read later for the
+ * path reuse the property states of the base for all properties with an
+ * unchanged value, and the entire property map when no property changed.
+ * Names and short values of new property states are interned with the
+ * {@link StringCache}.
+ * <p>
+ * The bases are kept in a separate cache, which weighs each base once with
+ * the full memory of its properties. A node state in the node cache only
+ * counts a reference for each property it shares with its base (see
+ * {@link DocumentNodeState#getMemory()}). To keep this accounting correct,
+ * the base must stay in memory as long as the node states sharing its
+ * properties. The base therefore remembers the node cache keys of those
+ * node states and invalidates them in the node cache when the base is
+ * evicted. A node state weighed just before its base was evicted may only
+ * become visible in the node cache afterwards, in which case
+ * {@link DocumentNodeStore#getNode(Path, RevisionVector)} invalidates it.
+ */
+final class PropertyStateSharing {
+
+    /**
+     * Raw property values up to this length are interned.
+     */
+    private static final int MAX_INTERN_LENGTH = 128;
+
+    private final DocumentNodeStore store;
+
+    private final Cache<Path, Base> bases;
+
+    private final CacheStats cacheStats;
+
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    private final AtomicLong createdCount = new AtomicLong();
+
+    /**
+     * @param store the node store.
+     * @param maxWeight the maximum weight in bytes of the bases kept for
+     *          sharing.
+     */
+    PropertyStateSharing(@NotNull DocumentNodeStore store, long maxWeight) {
+        this.store = checkNotNull(store);
+        Weigher<Path, Base> weigher = new Weigher<Path, Base>() {
+            @Override
+            public int weigh(@NotNull Path path, @NotNull Base base) {
+                return path.getMemory() + base.getMemory();
+            }
+        };
+        this.bases = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeight).weigher(weigher)
+                .removalListener((RemovalListener<Path, Base>) notification -> {
+                    Base base = notification.getValue();
+                    if (base != null) {
+                        store.getNodeCache().invalidateAll(base.evict());
+                    }
+                }).recordStats().build();
+        this.cacheStats = new CacheStats(bases, "Document-PropertySharing",
+                weigher, maxWeight);
+    }
+
+    /**
+     * Returns the base for the given path, which can be shared with a new
+     * node state for the path.
+     *
+     * @param path the path of a node.
+     * @return the base or {@code null} if there is none.
+     */
+    @Nullable
+    Base getBase(@NotNull Path path) {
+        return bases.getIfPresent(path);
+    }
+
+    /**
+     * Returns the property state from {@code base} if it has the same
+     * value, otherwise creates a new property state.
+     *
+     * @param base the base for the path or {@code null} if there is none.
+     * @param name the name of the property.
+     * @param value the raw property value.
+     * @return the property state.
+     */
+    @NotNull
+    PropertyState createPropertyState(@Nullable Base base,
+                                      @NotNull String name,
+                                      @NotNull String value) {
+        PropertyState ps = base != null ? base.properties.get(name) : null;
+        if (ps instanceof DocumentPropertyState
+                && ((DocumentPropertyState) ps).getValue().equals(value)) {
+            sharedCount.incrementAndGet();
+            return ps;
+        }
+        createdCount.incrementAndGet();
+        if (value.length() <= MAX_INTERN_LENGTH) {
+            value = StringCache.get(value);
+        }
+        return store.createPropertyState(StringCache.get(name), value);
+    }
+
+    /**
+     * Creates a new node state sharing properties with the base for the
+     * path. If there is no base yet, the properties of the new node state
+     * become the base for the path.
+     *
+     * @param path the path of the node.
+     * @param readRevision the read revision.
+     * @param base the base for the path or {@code null} if there is none.
+     * @param properties the properties of the new node state created with
+     *          {@link #createPropertyState(Base, String, String)}.
+     * @param hasChildren whether the node has children.
+     * @param lastRevision the revision when the node was last modified.
+     * @return the new node state.
+     */
+    @NotNull
+    DocumentNodeState newNodeState(@NotNull Path path,
+                                   @NotNull RevisionVector readRevision,
+                                   @Nullable Base base,
+                                   @NotNull List<PropertyState> properties,
+                                   boolean hasChildren,
+                                   @Nullable RevisionVector lastRevision) {
+        Map<String, PropertyState> props;
+        if (base != null && sameProperties(base.properties, properties)) {
+            // an ImmutableMap is not copied again by the node state
+            props = base.properties;
+        } else {
+            ImmutableMap.Builder<String, PropertyState> builder = ImmutableMap.builder();
+            for (PropertyState ps : properties) {
+                builder.put(ps.getName(), ps);
+            }
+            props = builder.build();
+        }
+        if (base == null) {
+            Base b = new Base(store, props);
+            Base existing = bases.asMap().putIfAbsent(path, b);
+            // use the new base unless another thread was faster
+            base = existing == null ? b : null;
+        }
+        DocumentNodeState state = new DocumentNodeState(store, path,
+                readRevision, props, hasChildren, 0, lastRevision, false);
+        state.setSharedBase(base);
+        return state;
+    }
+
+    /**
+     * @return the statistics of the cache with the bases.
+     */
+    @NotNull
+    CacheStats getCacheStats() {
+        return cacheStats;
+    }
+
+    /**
+     * @return the number of property states reused for new node states.
+     */
+    long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    /**
+     * @return the number of property states created for new node states.
+     */
+    long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    private static boolean sameProperties(Map<String, PropertyState> previous,
+                                          List<PropertyState> properties) {
+        if (previous.size() != properties.size()) {
+            return false;
+        }
+        for (PropertyState ps : properties) {
+            if (previous.get(ps.getName()) != ps) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The property states shared by the node states of a path. A base keeps
+     * track of the node cache keys of node states that share its properties
+     * and counted them as references only.
+     */
+    static final class Base {
+
+        /**
+         * Minimum number of keys before stale keys are removed.
+         */
+        private static final int MIN_PRUNE_SIZE = 64;
+
+        private final DocumentNodeStore store;
+
+        private final Map<String, PropertyState> properties;
+
+        private final int memory;
+
+        /**
+         * Keys registered since the last prune.
+         */
+        private Set<PathRev> recentKeys = new HashSet<>();
+
+        /**
+         * Keys registered before the last prune.
+         */
+        private Set<PathRev> olderKeys = new HashSet<>();
+
+        private int pruneSize = MIN_PRUNE_SIZE;
+
+        private volatile boolean evicted;
+
+        Base(@NotNull DocumentNodeStore store,
+             @NotNull Map<String, PropertyState> properties) {
+            this.store = store;
+            this.properties = properties;
+            long size = 0;
+            for (Map.Entry<String, PropertyState> entry : properties.entrySet()) {
+                size += DocumentNodeState.estimatePropertyMemory(entry.getKey(), entry.getValue(), store);
+            }
+            this.memory = (int) Math.min(size, Integer.MAX_VALUE);
+        }
+
+        /**
+         * @return the estimated memory of the properties in this base.
+         */
+        int getMemory() {
+            return memory;
+        }
+
+        /**
+         * @param name a property name.
+         * @param ps a property state.
+         * @return whether the property state is from this base.
+         */
+        boolean contains(@NotNull String name, @NotNull PropertyState ps) {
+            return properties.get(name) == ps;
+        }
+
+        /**
+         * Registers the node cache key of a node state that counts the
+         * properties it shares with this base as references only. The node
+         * cache calls this while it weighs the node state, before the node
+         * state is visible in the cache.
+         *
+         * @param key the node cache key of the node state.
+         * @return {@code true} if the key was registered, {@code false} if
+         *          the base was already evicted and the node state must
+         *          count the properties in full.
+         */
+        synchronized boolean pin(@NotNull PathRev key) {
+            if (evicted) {
+                return false;
+            }
+            recentKeys.add(key);
+            if (recentKeys.size() + olderKeys.size() >= pruneSize) {
+                // keys registered before the last prune were inserted into
+                // the node cache long ago. only keep those still cached.
+                // recent keys may not be visible in the node cache yet
+                Set<PathRev> keys = new HashSet<>(recentKeys);
+                for (PathRev k : olderKeys) {
+                    if (store.getNodeCache().asMap().containsKey(k)) {
+                        keys.add(k);
+                    }
+                }
+                olderKeys = keys;
+                recentKeys = new HashSet<>();
+                pruneSize = Math.max(MIN_PRUNE_SIZE, olderKeys.size() * 2);
+            }
+            return true;
+        }
+
+        /**
+         * @return whether this base was evicted.
+         */
+        boolean isEvicted() {
+            return evicted;
+        }
+
+        /**
+         * Marks this base as evicted.
+         *
+         * @return the keys of the node states in the node cache that share
+         *          properties with this base.
+         */
+        synchronized Set<PathRev> evict() {
+            evicted = true;
+            Set<PathRev> keys = new HashSet<>(olderKeys);
+            keys.addAll(recentKeys);
+            olderKeys = Collections.emptySet();
+            recentKeys = Collections.emptySet();
+            return keys;
+        }
+    }
+}
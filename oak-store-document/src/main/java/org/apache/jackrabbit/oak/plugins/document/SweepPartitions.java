@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Partitions of the {@link Collection#NODES} id space for a concurrent sweep
+ * of documents. Document ids are prefixed with the depth of the path, which
+ * allows to split the id space into ranges that roughly correspond to the
+ * levels of the tree: one range per single digit depth and one range per
+ * leading digit of depths with two or more digits. The ranges are disjoint and
+ * together cover all ids.
+ */
+final class SweepPartitions {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SweepPartitions.class);
+
+    /**
+     * The id ranges for the partitions.
+     */
+    static final List<IdRange> ID_RANGES;
+
+    static {
+        List<IdRange> ranges = new ArrayList<>();
+        for (char c = '0'; c <= '9'; c++) {
+            // single digit depth: ids start with e.g. "3:"
+            ranges.add(new IdRange(c + ":", c + ";"));
+            if (c != '0') {
+                // depth with two or more digits: ids start with
+                // e.g. "30:" .. "39:" or "300:"
+                ranges.add(new IdRange(c + "0", c + ":"));
+            }
+        }
+        ID_RANGES = Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * A sweep task for one partition.
+     */
+    interface Task<T> {
+
+        void sweep(T partition) throws DocumentStoreException;
+    }
+
+    private SweepPartitions() {
+    }
+
+    /**
+     * Runs the task for each of the partitions. With more than one thread,
+     * the partitions are swept concurrently by a pool of worker threads,
+     * otherwise the partitions are swept one after another in the calling
+     * thread. This method returns when all partitions are swept or throws
+     * the exception of the first task that failed. The remaining tasks are
+     * cancelled in this case.
+     *
+     * @param name a name for the sweep used in log messages and for the
+     *             worker threads.
+     * @param partitions the partitions to sweep.
+     * @param numThreads the number of threads.
+     * @param task the task to run for each partition.
+     * @throws DocumentStoreException if a task failed.
+     */
+    static <T> void run(@NotNull String name,
+                        @NotNull List<T> partitions,
+                        int numThreads,
+                        @NotNull Task<T> task)
+            throws DocumentStoreException {
+        checkNotNull(task);
+        int n = Math.min(numThreads, partitions.size());
+        if (n <= 1) {
+            for (T p : partitions) {
+                task.sweep(p);
+            }
+            return;
+        }
+        LOG.info("{}: sweeping {} partitions with {} threads", name, partitions.size(), n);
+        ExecutorService executor = Executors.newFixedThreadPool(n,
+                new ThreadFactoryBuilder().setDaemon(true)
+                        .setNameFormat(name + "-worker-%d").build());
+        try {
+            AtomicInteger done = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+            for (T p : partitions) {
+                futures.add(executor.submit(() -> {
+                    task.sweep(p);
+                    LOG.info("{}: partition {} done ({} of {})", name, p,
+                            done.incrementAndGet(), partitions.size());
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DocumentStoreException("Interrupted while waiting for " + name + " workers", e);
+        } catch (ExecutionException e) {
+            throw DocumentStoreException.convert(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A range of document ids. Both bounds are exclusive.
+     */
+    static final class IdRange {
+
+        final String fromId;
+
+        final String toId;
+
+        IdRange(String fromId, String toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + fromId + ", " + toId + ")";
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 
 import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreStatsCollector.DiffCacheTier;
 import org.apache.jackrabbit.oak.plugins.document.util.RevisionsKey;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -43,9 +44,11 @@ class TieredDiffCache extends DiffCache {
     private final int clusterId;
     private final DiffCache localCache;
     private final DiffCache memoryCache;
+    private final DocumentNodeStoreStatsCollector statsCollector;
 
     TieredDiffCache(DocumentNodeStoreBuilder<?> builder, int clusterId) {
         this.clusterId = clusterId;
+        this.statsCollector = builder.getNodeStoreStatsCollector();
         this.localCache = new LocalDiffCache(builder);
         this.memoryCache = new MemoryDiffCache(builder);
     }
@@ -65,13 +68,24 @@ class TieredDiffCache extends DiffCache {
                 // memory cache when there is a cache miss
                 String changes = localCache.getChanges(from, to, path, null);
                 if (changes != null) {
+                    if (loader != null) {
+                        statsCollector.doneDiffCacheLookup(DiffCacheTier.LOCAL);
+                    }
                     return changes;
                 }
                 // remember cache miss
                 localDiffMisses.put(k, k);
             }
         }
-        return memoryCache.getChanges(from, to, path, loader);
+        if (loader == null) {
+            return memoryCache.getChanges(from, to, path, null);
+        }
+        TrackingLoader tracking = new TrackingLoader(loader);
+        String changes = memoryCache.getChanges(from, to, path, tracking);
+        if (!tracking.called) {
+            statsCollector.doneDiffCacheLookup(DiffCacheTier.MEMORY);
+        }
+        return changes;
     }
 
     /**
@@ -103,4 +117,25 @@ class TieredDiffCache extends DiffCache {
         localCache.invalidateAll();
         memoryCache.invalidateAll();
     }
+
+    /**
+     * A loader that remembers whether it was called. Loaders report the tier
+     * that eventually provided the changes themselves.
+     */
+    private static final class TrackingLoader implements Loader {
+
+        private final Loader loader;
+
+        private boolean called;
+
+        TrackingLoader(Loader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public String call() {
+            called = true;
+            return loader.call();
+        }
+    }
 }
@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.document.bundlor;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.jackrabbit.JcrConstants.JCR_SYSTEM;
+import static org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler.BUNDLOR;
+import static org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler.DOCUMENT_NODE_STORE;
+
+/**
+ * Derives bundling patterns from observed reads. For a sample of the nodes
+ * read from the DocumentStore, the analyzer remembers the primary type and
+ * then counts, per primary type, the descendants (up to a maximum depth)
+ * that are subsequently read from the DocumentStore as well. A relative
+ * path that is read for most of the nodes of a type is a good candidate for
+ * an {@link Include} pattern, because bundling it into the document of the
+ * parent saves a separate document read.
+ * <p>
+ * The recommended patterns can be applied to the bundling configuration
+ * with {@link #apply(NodeBuilder, Map)}. Like any other change of the
+ * configuration, the patterns only affect nodes created afterwards.
+ */
+public class BundlingPatternAnalyzer {
+
+    /**
+     * Maximum number of distinct relative paths tracked per type.
+     */
+    private static final int MAX_PATHS_PER_TYPE = 100;
+
+    private final double sampleRate;
+
+    private final int maxDepth;
+
+    /**
+     * Recently sampled nodes and their primary type.
+     */
+    private final Cache<Path, String> sampled;
+
+    private final ConcurrentMap<String, TypeStats> stats = Maps.newConcurrentMap();
+
+    /**
+     * @param sampleRate the fraction of node reads to sample (0..1].
+     * @param maxDepth the maximum depth of a descendant relative to a
+     *                 sampled node.
+     * @param maxSampled the maximum number of sampled nodes to remember.
+     */
+    public BundlingPatternAnalyzer(double sampleRate, int maxDepth, int maxSampled) {
+        checkArgument(sampleRate > 0 && sampleRate <= 1, "sampleRate must be in (0..1]: %s", sampleRate);
+        checkArgument(maxDepth > 0, "maxDepth must be > 0: %s", maxDepth);
+        this.sampleRate = sampleRate;
+        this.maxDepth = maxDepth;
+        this.sampled = CacheBuilder.newBuilder().maximumSize(maxSampled).build();
+    }
+
+    /**
+     * Called when a node is read from the DocumentStore.
+     *
+     * @param path the path of the node.
+     * @param state the node state.
+     */
+    public void nodeRead(@NotNull Path path, @NotNull NodeState state) {
+        String relPath = PathUtils.ROOT_NAME;
+        Path p = path;
+        for (int i = 0; i < maxDepth && !p.isRoot(); i++) {
+            relPath = PathUtils.concat(p.getName(), relPath);
+            p = p.getParent();
+            String type = sampled.getIfPresent(p);
+            if (type != null) {
+                TypeStats ts = stats.get(type);
+                if (ts != null) {
+                    ts.coRead(relPath);
+                }
+            }
+        }
+        if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            String type = getPrimaryType(state);
+            if (type != null) {
+                stats.computeIfAbsent(type, t -> new TypeStats()).reads.incrementAndGet();
+                sampled.put(path, type);
+            }
+        }
+    }
+
+    /**
+     * Returns the recommended include patterns per primary type. A relative
+     * path is recommended when it was read for at least {@code minRatio} of
+     * the sampled nodes of a type, which in turn must have been sampled at
+     * least {@code minSamples} times. Types already present in the given
+     * registry are skipped.
+     *
+     * @param registry the current bundling configuration.
+     * @param minSamples the minimum number of samples for a type.
+     * @param minRatio the minimum ratio of co-reads to samples.
+     * @return the include patterns per primary type.
+     */
+    @NotNull
+    public SortedMap<String, SortedSet<String>> getRecommendedPatterns(@NotNull BundledTypesRegistry registry,
+                                                                       long minSamples,
+                                                                       double minRatio) {
+        SortedMap<String, SortedSet<String>> patterns = Maps.newTreeMap();
+        for (Map.Entry<String, TypeStats> e : stats.entrySet()) {
+            String type = e.getKey();
+            long reads = e.getValue().reads.get();
+            if (reads < minSamples || reads == 0 || registry.getBundlors().containsKey(type)) {
+                continue;
+            }
+            SortedSet<String> paths = Sets.newTreeSet();
+            for (Map.Entry<String, AtomicLong> c : e.getValue().coReads.entrySet()) {
+                if ((double) c.getValue().get() / reads >= minRatio) {
+                    paths.add(c.getKey());
+                }
+            }
+            // a path can only be bundled together with its ancestors
+            paths.removeIf(path -> PathUtils.getDepth(path) > 1
+                    && !paths.contains(PathUtils.getParentPath(path)));
+            // a pattern also matches the ancestors of the path
+            paths.removeIf(path -> hasDescendant(paths, path));
+            if (!paths.isEmpty()) {
+                patterns.put(type, paths);
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Adds the patterns to the bundling configuration for types that are not
+     * yet configured.
+     *
+     * @param root the builder of the root node.
+     * @param patterns the include patterns per type.
+     * @return the number of types added to the configuration.
+     */
+    public static int apply(@NotNull NodeBuilder root,
+                            @NotNull Map<String, ? extends Set<String>> patterns) {
+        NodeBuilder config = root.getChildNode(JCR_SYSTEM)
+                .getChildNode(DOCUMENT_NODE_STORE).getChildNode(BUNDLOR);
+        if (!config.exists()) {
+            return 0;
+        }
+        BundledTypesRegistry.BundledTypesRegistryBuilder builder =
+                new BundledTypesRegistry.BundledTypesRegistryBuilder(config);
+        int count = 0;
+        for (Map.Entry<String, ? extends Set<String>> e : patterns.entrySet()) {
+            if (config.hasChildNode(e.getKey()) || e.getValue().isEmpty()) {
+                continue;
+            }
+            builder.forType(e.getKey(), e.getValue().toArray(new String[0])).registry();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Discards all statistics collected so far.
+     */
+    public void reset() {
+        sampled.invalidateAll();
+        stats.clear();
+    }
+
+    private static boolean hasDescendant(Set<String> paths, String path) {
+        for (String p : paths) {
+            if (PathUtils.isAncestor(path, p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static String getPrimaryType(NodeState state) {
+        PropertyState ps = state.getProperty(JcrConstants.JCR_PRIMARYTYPE);
+        return ps == null ? null : ps.getValue(Type.NAME);
+    }
+
+    private static final class TypeStats {
+
+        final AtomicLong reads = new AtomicLong();
+
+        final ConcurrentMap<String, AtomicLong> coReads = Maps.newConcurrentMap();
+
+        void coRead(String relPath) {
+            AtomicLong count = coReads.get(relPath);
+            if (count == null) {
+                if (coReads.size() >= MAX_PATHS_PER_TYPE) {
+                    return;
+                }
+                count = coReads.computeIfAbsent(relPath, p -> new AtomicLong());
+            }
+            count.incrementAndGet();
+        }
+    }
+}
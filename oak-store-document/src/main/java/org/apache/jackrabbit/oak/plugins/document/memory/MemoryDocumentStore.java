@@ -242,6 +242,30 @@ public class MemoryDocumentStore implements DocumentStore {
         return num;
     }
 
+    @NotNull
+    @Override
+    public <T extends Document> List<String> sampleKeys(Collection<T> collection, int n)
+            throws DocumentStoreException {
+        ConcurrentSkipListMap<String, T> map = getMap(collection);
+        int size = map.size();
+        if (n <= 0 || size == 0) {
+            return Collections.emptyList();
+        }
+        // pick every k-th key, which gives evenly sized ranges
+        int stride = Math.max(1, size / n);
+        List<String> keys = new ArrayList<>();
+        int i = 0;
+        for (String key : map.keySet()) {
+            if (i++ % stride == 0) {
+                keys.add(key);
+                if (keys.size() == n) {
+                    break;
+                }
+            }
+        }
+        return keys;
+    }
+
     @Nullable
     @Override
     public <T extends Document> T createOrUpdate(Collection<T> collection, UpdateOp update) {
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.mongo;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+
+import org.apache.jackrabbit.oak.plugins.document.Document;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.cache.NodeDocumentCache;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Consumes the MongoDB change stream of the {@code nodes} collection on a
+ * dedicated thread. Every change to a document invalidates the corresponding
+ * entry in the {@link NodeDocumentCache} unless the cached document already
+ * has the modCount reported by the change. A change of the {@code _lastRev}
+ * of the root document by another cluster node is reported to a listener,
+ * which can then pick up the external changes without waiting for the next
+ * regularly scheduled background read.
+ * <p>
+ * The invalidation done by this class is in addition to the journal based
+ * cache invalidation performed on background read. It does not replace it,
+ * because change events may be lost when the change stream cannot be
+ * resumed. It reduces the number of cached documents that need to be checked
+ * on background read. Change streams are only available when MongoDB runs as
+ * a replica set.
+ */
+class MongoChangeStreamListener implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MongoChangeStreamListener.class);
+
+    /**
+     * Maximum time in milliseconds the listener waits for new changes before
+     * it checks whether it was closed.
+     */
+    private static final long MAX_AWAIT_MILLIS = 1000;
+
+    /**
+     * Delay in milliseconds before the change stream is re-opened after a
+     * failure.
+     */
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    /**
+     * Number of consecutive failures to re-open the change stream with the
+     * last resume token, before the stream is opened without the token. The
+     * listener stops after the same number of consecutive failures without
+     * a resume token.
+     */
+    private static final int MAX_RETRIES = 5;
+
+    /**
+     * Prefix of the update description field for a {@code _lastRev} entry.
+     */
+    private static final String LAST_REV_PREFIX = "_lastRev.";
+
+    private static final String MOD_COUNT = Document.MOD_COUNT;
+
+    private static final String ROOT_ID = Utils.getIdFromPath(Path.ROOT);
+
+    private static final List<Bson> PIPELINE = ImmutableList.of(
+            Aggregates.match(Filters.in("operationType",
+                    ImmutableList.of("insert", "update", "replace", "delete"))),
+            Aggregates.project(Projections.include("operationType",
+                    "documentKey", "updateDescription", "fullDocument." + MOD_COUNT))
+    );
+
+    private final MongoCollection<BasicDBObject> nodes;
+
+    private final NodeDocumentCache nodesCache;
+
+    private final int clusterId;
+
+    private final Runnable externalChangeListener;
+
+    private final Thread thread;
+
+    private final AtomicLong numChanges = new AtomicLong();
+
+    private final AtomicLong numInvalidations = new AtomicLong();
+
+    private final AtomicLong numExternalChanges = new AtomicLong();
+
+    private volatile boolean closed;
+
+    private BsonDocument resumeToken;
+
+    /**
+     * Creates a new listener on the given collection.
+     *
+     * @param nodes the nodes collection.
+     * @param nodesCache the cache to invalidate.
+     * @param clusterId the clusterId of the local cluster node.
+     * @param externalChangeListener called when the root document is changed
+     *          by another cluster node.
+     */
+    MongoChangeStreamListener(@NotNull MongoCollection<BasicDBObject> nodes,
+                              @NotNull NodeDocumentCache nodesCache,
+                              int clusterId,
+                              @NotNull Runnable externalChangeListener) {
+        this.nodes = checkNotNull(nodes);
+        this.nodesCache = checkNotNull(nodesCache);
+        this.clusterId = clusterId;
+        this.externalChangeListener = checkNotNull(externalChangeListener);
+        this.thread = new Thread(this::run,
+                "MongoDocumentStore change stream listener (clusterId: " + clusterId + ")");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Utils.joinQuietly(thread);
+    }
+
+    /**
+     * @return the number of change events consumed so far.
+     */
+    long getNumChanges() {
+        return numChanges.get();
+    }
+
+    /**
+     * @return the number of cache entries invalidated because of a change
+     *          event.
+     */
+    long getNumInvalidations() {
+        return numInvalidations.get();
+    }
+
+    /**
+     * @return the number of times the external change listener was called.
+     */
+    long getNumExternalChanges() {
+        return numExternalChanges.get();
+    }
+
+    //------------------------------< internal >--------------------------------
+
+    private void run() {
+        boolean opened = false;
+        int failures = 0;
+        while (!closed) {
+            try (MongoCursor<ChangeStreamDocument<BasicDBObject>> cursor = openCursor()) {
+                if (!opened) {
+                    LOG.info("Listening for changes on {}", nodes.getNamespace());
+                    opened = true;
+                }
+                failures = 0;
+                while (!closed) {
+                    ChangeStreamDocument<BasicDBObject> change = cursor.tryNext();
+                    if (change != null) {
+                        processChange(change);
+                        resumeToken = change.getResumeToken();
+                    }
+                }
+            } catch (MongoException e) {
+                if (closed) {
+                    break;
+                }
+                if (!opened) {
+                    LOG.warn("Unable to open change stream on {}. Changes are " +
+                            "only detected by background read: {}",
+                            nodes.getNamespace(), e.toString());
+                    break;
+                }
+                if (++failures >= MAX_RETRIES) {
+                    if (resumeToken == null) {
+                        LOG.warn("Change stream on {} failed {} times in a row. Changes are " +
+                                "only detected by background read: {}",
+                                nodes.getNamespace(), failures, e.toString());
+                        break;
+                    }
+                    // e.g. the resume token is not in the oplog anymore. Missed
+                    // changes are still picked up by the journal based cache
+                    // invalidation on background read
+                    LOG.warn("Unable to resume change stream on {} after {} attempts, " +
+                            "opening it without resume token: {}",
+                            nodes.getNamespace(), failures, e.toString());
+                    resumeToken = null;
+                    failures = 0;
+                } else {
+                    LOG.warn("Change stream on {} failed, resuming in {} ms: {}",
+                            nodes.getNamespace(), RETRY_DELAY_MILLIS, e.toString());
+                }
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Change stream listener on {} stopped", nodes.getNamespace(), e);
+                break;
+            }
+        }
+        LOG.debug("Change stream listener stopped. Consumed {} changes, {} " +
+                "invalidations, {} external changes", numChanges.get(),
+                numInvalidations.get(), numExternalChanges.get());
+    }
+
+    @NotNull
+    private MongoCursor<ChangeStreamDocument<BasicDBObject>> openCursor() {
+        ChangeStreamIterable<BasicDBObject> changes = nodes.watch(PIPELINE)
+                .maxAwaitTime(MAX_AWAIT_MILLIS, TimeUnit.MILLISECONDS);
+        if (resumeToken != null) {
+            changes = changes.resumeAfter(resumeToken);
+        }
+        return changes.iterator();
+    }
+
+    private void processChange(@NotNull ChangeStreamDocument<BasicDBObject> change) {
+        numChanges.incrementAndGet();
+        String id = getId(change.getDocumentKey());
+        if (id == null) {
+            return;
+        }
+        NodeDocument cached = nodesCache.getIfPresent(id);
+        if (cached != null && isOutdated(cached, change)) {
+            nodesCache.invalidate(id);
+            numInvalidations.incrementAndGet();
+        }
+        if (ROOT_ID.equals(id) && isExternalLastRevChange(change)) {
+            numExternalChanges.incrementAndGet();
+            externalChangeListener.run();
+        }
+    }
+
+    private static boolean isOutdated(@NotNull NodeDocument cached,
+                                      @NotNull ChangeStreamDocument<BasicDBObject> change) {
+        if (change.getOperationType() == OperationType.DELETE) {
+            return true;
+        }
+        Long modCount = getModCount(change);
+        // without a modCount, always consider the cached document outdated
+        return modCount == null || !Objects.equal(modCount, cached.getModCount());
+    }
+
+    @Nullable
+    private static Long getModCount(@NotNull ChangeStreamDocument<BasicDBObject> change) {
+        if (change.getOperationType() == OperationType.UPDATE) {
+            if (change.getUpdateDescription() == null) {
+                return null;
+            }
+            BsonValue value = change.getUpdateDescription().getUpdatedFields().get(MOD_COUNT);
+            return value != null && value.isNumber() ? value.asNumber().longValue() : null;
+        }
+        BasicDBObject fullDocument = change.getFullDocument();
+        if (fullDocument == null) {
+            return null;
+        }
+        Object value = fullDocument.get(MOD_COUNT);
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+
+    private boolean isExternalLastRevChange(@NotNull ChangeStreamDocument<BasicDBObject> change) {
+        if (change.getOperationType() != OperationType.UPDATE
+                || change.getUpdateDescription() == null) {
+            return false;
+        }
+        for (String field : change.getUpdateDescription().getUpdatedFields().keySet()) {
+            if (field.startsWith(LAST_REV_PREFIX)) {
+                Revision r = Revision.fromString(field.substring(LAST_REV_PREFIX.length()));
+                if (r.getClusterId() != clusterId) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private static String getId(@Nullable BsonDocument documentKey) {
+        if (documentKey == null) {
+            return null;
+        }
+        BsonValue id = documentKey.get(Document.ID);
+        return id != null && id.isString() ? id.asString().getValue() : null;
+    }
+}
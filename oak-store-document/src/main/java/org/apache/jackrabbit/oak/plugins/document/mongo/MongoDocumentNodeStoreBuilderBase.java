@@ -51,6 +51,7 @@ public abstract class MongoDocumentNodeStoreBuilderBase<T extends MongoDocumentN
     private MongoStatus mongoStatus;
     private long maxReplicationLagMillis = TimeUnit.HOURS.toMillis(6);
     private boolean clientSessionDisabled = false;
+    private boolean changeStreamEnabled = false;
 
     /**
      * Uses the given information to connect to to MongoDB as backend
@@ -155,6 +156,40 @@ public abstract class MongoDocumentNodeStoreBuilderBase<T extends MongoDocumentN
         return clientSessionDisabled;
     }
 
+    /**
+     * Enables a listener on the MongoDB change stream of the nodes collection.
+     * The listener invalidates cached documents as soon as they are changed
+     * and triggers a background read when another cluster node publishes
+     * changes. This reduces the latency until external changes become visible
+     * and the number of documents checked on background read. Change streams
+     * require MongoDB to run as a replica set. The default is disabled.
+     *
+     * @param b whether to enable the change stream listener.
+     * @return this
+     */
+    public T setChangeStreamEnabled(boolean b) {
+        this.changeStreamEnabled = b;
+        return thisBuilder();
+    }
+
+    /**
+     * @return whether the change stream listener is enabled.
+     */
+    public boolean isChangeStreamEnabled() {
+        return changeStreamEnabled;
+    }
+
+    @Override
+    public DocumentNodeStore build() {
+        DocumentNodeStore ns = super.build();
+        DocumentStore store = getDocumentStore();
+        if (changeStreamEnabled && store instanceof MongoDocumentStore) {
+            ((MongoDocumentStore) store).startChangeStreamListener(
+                    ns.getClusterId(), ns::signalExternalChange);
+        }
+        return ns;
+    }
+
     public T setMaxReplicationLag(long duration, TimeUnit unit){
         maxReplicationLagMillis = unit.toMillis(duration);
         return thisBuilder();
@@ -58,6 +58,7 @@ import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreStatsCollector;
 import org.apache.jackrabbit.oak.plugins.document.JournalEntry;
 import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.PartialUpdateException;
 import org.apache.jackrabbit.oak.plugins.document.Revision;
 import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
@@ -93,9 +94,11 @@ import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
@@ -229,6 +232,34 @@ public class MongoDocumentStore implements DocumentStore {
     private final int acceptableLagMillis =
             Integer.getInteger("oak.mongo.acceptableLagMillis", 5000);
 
+    /**
+     * Feature flag for reads with bounded staleness. When enabled, the
+     * replication lag estimated from heartbeats (plus
+     * {@link #boundedStalenessMarginMillis}) is used instead of the
+     * configured maxReplicationLagMillis to decide whether a read of a node
+     * document can be routed to a secondary.
+     * <p>
+     * Default is false.
+     */
+    private final boolean boundedStaleness =
+            Boolean.getBoolean("oak.mongo.boundedStaleness");
+
+    /**
+     * Safety margin in milliseconds added to the replication lag estimate
+     * for reads with bounded staleness.
+     * <p>
+     * Default is 1000.
+     */
+    private final long boundedStalenessMarginMillis =
+            Long.getLong("oak.mongo.boundedStalenessMarginMillis", 1000);
+
+    /**
+     * The resolution of {@link NodeDocument#MODIFIED_IN_SECS} in milliseconds.
+     * A document may have been modified up to this duration after the time
+     * recorded in the field.
+     */
+    private static final long MODIFIED_RESOLUTION_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
     /**
      * Feature flag for use of MongoDB client sessions.
      */
@@ -246,6 +277,8 @@ public class MongoDocumentStore implements DocumentStore {
 
     private final boolean readOnly;
 
+    private MongoChangeStreamListener changeStreamListener;
+
     public MongoDocumentStore(MongoClient client, MongoDatabase db,
                               MongoDocumentNodeStoreBuilderBase<?> builder) {
         this.readOnly = builder.getReadOnlyMode();
@@ -355,6 +388,31 @@ public class MongoDocumentStore implements DocumentStore {
         return readOnly;
     }
 
+    /**
+     * Starts a listener on the change stream of the nodes collection. The
+     * listener invalidates cached documents as soon as they are modified and
+     * calls {@code externalChangeListener} when another cluster node updates
+     * the {@code _lastRev} of the root document. Calling this method more
+     * than once has no effect.
+     *
+     * @param clusterId the clusterId of the local cluster node.
+     * @param externalChangeListener called on external changes.
+     */
+    synchronized void startChangeStreamListener(int clusterId,
+                                                @NotNull Runnable externalChangeListener) {
+        if (changeStreamListener != null) {
+            return;
+        }
+        changeStreamListener = new MongoChangeStreamListener(
+                nodes, nodesCache, clusterId, externalChangeListener);
+        changeStreamListener.start();
+    }
+
+    @Nullable
+    MongoChangeStreamListener getChangeStreamListener() {
+        return changeStreamListener;
+    }
+
     @Override
     public void finalize() throws Throwable {
         super.finalize();
@@ -557,7 +615,12 @@ public class MongoDocumentStore implements DocumentStore {
         boolean isSlaveOk = false;
         boolean docFound = true;
         try {
-            ReadPreference readPreference = getMongoReadPreference(collection, null, docReadPref);
+            String parentId = null;
+            if (collection == Collection.NODES && getStalenessBoundMillis() >= 0) {
+                // an unchanged parent indicates unchanged children
+                parentId = Utils.getParentId(key);
+            }
+            ReadPreference readPreference = getMongoReadPreference(collection, parentId, docReadPref);
             MongoCollection<BasicDBObject> dbCollection = getDBCollection(collection, readPreference);
 
             if(readPreference.isSlaveOk()){
@@ -894,6 +957,113 @@ public class MongoDocumentStore implements DocumentStore {
         return num;
     }
 
+    @Override
+    public <T extends Document> int remove(Collection<T> collection,
+                                           String fromKey, String toKey)
+            throws DocumentStoreException {
+        if (collection == Collection.NODES) {
+            // remove documents by key to keep the cache consistent
+            return DocumentStore.super.remove(collection, fromKey, toKey);
+        }
+        log("remove", collection, fromKey, toKey);
+        int num = 0;
+        MongoCollection<BasicDBObject> dbCollection = getDBCollection(collection);
+        Stopwatch watch = startWatch();
+        try {
+            Bson query = Filters.and(
+                    Filters.gt(Document.ID, fromKey),
+                    Filters.lt(Document.ID, toKey)
+            );
+            try {
+                num = (int) Math.min(execute((DocumentStoreCallable<Long>) session -> {
+                    DeleteResult result;
+                    if (session != null) {
+                        result = dbCollection.deleteMany(session, query);
+                    } else {
+                        result = dbCollection.deleteMany(query);
+                    }
+                    return result.getDeletedCount();
+                }), Integer.MAX_VALUE);
+            } catch (Exception e) {
+                throw DocumentStoreException.convert(e, "Remove failed for " + collection + ": " +
+                    Document.ID + " in (" + fromKey + ", " + toKey + ")");
+            }
+        } finally {
+            stats.doneRemove(watch.elapsed(TimeUnit.NANOSECONDS), collection, num);
+        }
+        return num;
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> List<String> queryKeys(Collection<T> collection,
+                                                       String fromKey,
+                                                       String toKey,
+                                                       int limit)
+            throws DocumentStoreException {
+        log("queryKeys", collection, fromKey, toKey, limit);
+        MongoCollection<BasicDBObject> dbCollection = getDBCollection(collection);
+        Bson query = Filters.and(
+                Filters.gt(Document.ID, fromKey),
+                Filters.lt(Document.ID, toKey)
+        );
+        List<String> keys = new ArrayList<>();
+        try {
+            execute(session -> {
+                FindIterable<BasicDBObject> result;
+                if (session != null) {
+                    result = dbCollection.find(session, query);
+                } else {
+                    result = dbCollection.find(query);
+                }
+                result.projection(Projections.include(Document.ID)).sort(BY_ID_ASC).limit(limit);
+                if (maxQueryTimeMS > 0) {
+                    result.maxTime(maxQueryTimeMS, TimeUnit.MILLISECONDS);
+                }
+                for (BasicDBObject obj : result) {
+                    keys.add(obj.getString(Document.ID));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            throw DocumentStoreException.convert(e, "Querying keys failed for " + collection + ": " +
+                    Document.ID + " in (" + fromKey + ", " + toKey + ")");
+        }
+        return keys;
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> List<String> sampleKeys(Collection<T> collection, int n)
+            throws DocumentStoreException {
+        if (n <= 0) {
+            return Collections.emptyList();
+        }
+        log("sampleKeys", collection, n);
+        MongoCollection<BasicDBObject> dbCollection = getDBCollection(collection);
+        List<Bson> pipeline = Lists.newArrayList(
+                Aggregates.sample(n),
+                Aggregates.project(Projections.include(Document.ID))
+        );
+        List<String> keys = new ArrayList<>();
+        try {
+            execute(session -> {
+                if (session != null) {
+                    dbCollection.aggregate(session, pipeline).allowDiskUse(true)
+                            .forEach((Block<BasicDBObject>) obj -> keys.add(obj.getString(Document.ID)));
+                } else {
+                    dbCollection.aggregate(pipeline).allowDiskUse(true)
+                            .forEach((Block<BasicDBObject>) obj -> keys.add(obj.getString(Document.ID)));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            throw DocumentStoreException.convert(e, "Sampling keys failed for " + collection);
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
     @SuppressWarnings("unchecked")
     @Nullable
     private <T extends Document> T findAndModify(Collection<T> collection,
@@ -1283,6 +1453,104 @@ public class MongoDocumentStore implements DocumentStore {
         return doc;
     }
 
+    /**
+     * Performs the updates with unordered bulk writes when there are more
+     * than two updates on the {@link Collection#NODES} collection. The
+     * conditions of an update are added to the query of the corresponding
+     * bulk write request together with the modCount of the previous
+     * document. Updates failing in the bulk write (e.g. because a condition
+     * is not met, the document does not exist or the previous document was
+     * outdated) are then applied one after another with
+     * {@link #findAndUpdate(Collection, UpdateOp)}. The same is done for all
+     * updates when the list contains multiple updates on the same document
+     * or an update with {@link UpdateOp#isNew()}.
+     * <p>
+     * When the bulk write of a partition fails, a {@link PartialUpdateException}
+     * tells which updates of earlier partitions were applied. Updates of
+     * later partitions and updates that failed in an earlier bulk write were
+     * not applied. The outcome of the updates in the failed partition is
+     * unknown.
+     */
+    @SuppressWarnings("unchecked")
+    @NotNull
+    @Override
+    public <T extends Document> List<T> findAndUpdate(Collection<T> collection,
+                                                      List<UpdateOp> updateOps)
+            throws DocumentStoreException {
+        log("findAndUpdate", updateOps);
+
+        Map<String, UpdateOp> operationsToCover = new LinkedHashMap<String, UpdateOp>();
+        List<UpdateOp> clones = new ArrayList<UpdateOp>(updateOps.size());
+        boolean bulk = collection == Collection.NODES && updateOps.size() > 2;
+        for (UpdateOp updateOp : updateOps) {
+            UpdateOp clone = updateOp.copy();
+            clones.add(clone);
+            bulk &= !clone.isNew() && operationsToCover.put(clone.getId(), clone) == null;
+        }
+        if (!bulk) {
+            return DocumentStore.super.findAndUpdate(collection, updateOps);
+        }
+
+        Map<UpdateOp, T> results = new HashMap<UpdateOp, T>();
+        List<UpdateOp> inProgress = Collections.emptyList();
+        final Stopwatch watch = startWatch();
+        try {
+            Map<String, T> oldDocs = new HashMap<String, T>();
+            oldDocs.putAll((Map<String, T>) getCachedNodes(operationsToCover.keySet()));
+            for (List<UpdateOp> partition : Lists.partition(Lists.newArrayList(operationsToCover.values()), bulkSize)) {
+                inProgress = partition;
+                Map<UpdateOp, T> successfulUpdates = bulkUpdate(collection, partition, oldDocs);
+                results.putAll(successfulUpdates);
+                operationsToCover.values().removeAll(successfulUpdates.keySet());
+            }
+        } catch (MongoException e) {
+            DocumentStoreException dse = handleException(e, collection, operationsToCover.keySet());
+            List<UpdateOp> notApplied = new ArrayList<UpdateOp>(operationsToCover.values());
+            notApplied.removeAll(inProgress);
+            throw partialUpdate(dse, results, notApplied);
+        } finally {
+            if (!results.isEmpty()) {
+                long timeTakenNanos = watch.elapsed(TimeUnit.NANOSECONDS) / results.size();
+                for (UpdateOp op : results.keySet()) {
+                    stats.doneFindAndModify(timeTakenNanos, collection,
+                            op.getId(), false, true, 0);
+                }
+            }
+        }
+
+        // apply failed updates one after another
+        List<UpdateOp> remaining = new ArrayList<UpdateOp>(operationsToCover.values());
+        for (int i = 0; i < remaining.size(); i++) {
+            UpdateOp op = remaining.get(i);
+            try {
+                results.put(op, findAndUpdate(collection, op));
+            } catch (DocumentStoreException e) {
+                throw partialUpdate(e, results, remaining.subList(i + 1, remaining.size()));
+            }
+        }
+
+        List<T> resultList = new ArrayList<T>(clones.size());
+        for (UpdateOp op : clones) {
+            resultList.add(results.get(op));
+        }
+        log("findAndUpdate returns", resultList);
+        return resultList;
+    }
+
+    private static <T extends Document> PartialUpdateException partialUpdate(DocumentStoreException e,
+                                                                             Map<UpdateOp, T> results,
+                                                                             List<UpdateOp> notApplied) {
+        Map<String, T> completed = new HashMap<String, T>();
+        for (Entry<UpdateOp, T> entry : results.entrySet()) {
+            completed.put(entry.getKey().getId(), entry.getValue());
+        }
+        Set<String> notAppliedIds = new HashSet<String>();
+        for (UpdateOp op : notApplied) {
+            notAppliedIds.add(op.getId());
+        }
+        return new PartialUpdateException(e, completed, notAppliedIds);
+    }
+
     @Override
     public <T extends Document> boolean create(Collection<T> collection, List<UpdateOp> updateOps) {
         log("create", updateOps);
@@ -1401,8 +1669,12 @@ public class MongoDocumentStore implements DocumentStore {
     }
 
     DocumentReadPreference getReadPreference(int maxCacheAge) {
+        long stalenessBound = getStalenessBoundMillis();
         if (withClientSession()) {
             return DocumentReadPreference.PREFER_SECONDARY;
+        } else if (stalenessBound >= 0 && maxCacheAge >= stalenessBound) {
+            // a secondary is at most stalenessBound behind
+            return DocumentReadPreference.PREFER_SECONDARY;
         } else if(maxCacheAge >= 0 && maxCacheAge < maxReplicationLagMillis) {
             return DocumentReadPreference.PRIMARY;
         } else if(maxCacheAge == Integer.MAX_VALUE){
@@ -1431,7 +1703,9 @@ public class MongoDocumentStore implements DocumentStore {
             case PREFER_PRIMARY :
                 return ReadPreference.primaryPreferred();
             case PREFER_SECONDARY :
-                if (!withClientSession() || secondariesWithinAcceptableLag()) {
+                if (!withClientSession() && getStalenessBoundMillis() >= 0) {
+                    return getSecondaryReadPreference(collection);
+                } else if (!withClientSession() || secondariesWithinAcceptableLag()) {
                     return getConfiguredReadPreference(collection);
                 } else {
                     lagTooHigh();
@@ -1443,6 +1717,7 @@ public class MongoDocumentStore implements DocumentStore {
                 }
 
                 boolean secondarySafe;
+                long stalenessBound = getStalenessBoundMillis();
                 if (withClientSession() && secondariesWithinAcceptableLag()) {
                     secondarySafe = true;
                 } else {
@@ -1451,6 +1726,9 @@ public class MongoDocumentStore implements DocumentStore {
                     // will need to revise this for low maxReplicationLagMillis
                     // values
                     long replicationSafeLimit = getTime() - maxReplicationLagMillis;
+                    if (stalenessBound >= 0) {
+                        replicationSafeLimit = getTime() - stalenessBound - MODIFIED_RESOLUTION_MILLIS;
+                    }
 
                     if (parentId == null) {
                         secondarySafe = false;
@@ -1463,7 +1741,9 @@ public class MongoDocumentStore implements DocumentStore {
                 }
 
                 ReadPreference readPreference;
-                if (secondarySafe) {
+                if (secondarySafe && stalenessBound >= 0) {
+                    readPreference = getSecondaryReadPreference(collection);
+                } else if (secondarySafe) {
                     readPreference = getConfiguredReadPreference(collection);
                 } else {
                     readPreference = ReadPreference.primary();
@@ -1486,6 +1766,41 @@ public class MongoDocumentStore implements DocumentStore {
         return getDBCollection(collection).getReadPreference();
     }
 
+    /**
+     * Returns the read preference for reads with bounded staleness. This is
+     * the configured read preference, unless it is primary, in which case
+     * reads go to the nearest member of the replica set.
+     *
+     * @return the read preference for reads with bounded staleness.
+     */
+    private <T extends Document> ReadPreference getSecondaryReadPreference(Collection<T> collection) {
+        ReadPreference readPreference = getConfiguredReadPreference(collection);
+        if (!readPreference.isSlaveOk()) {
+            readPreference = ReadPreference.nearest();
+        }
+        return readPreference;
+    }
+
+    /**
+     * Returns the maximum staleness of a read from a secondary when reads
+     * with bounded staleness are enabled. The value is the current
+     * replication lag estimate plus a safety margin.
+     *
+     * @return the staleness bound in milliseconds or {@code -1} if reads
+     *      with bounded staleness are disabled or the replication lag is
+     *      currently unknown.
+     */
+    long getStalenessBoundMillis() {
+        if (!boundedStaleness) {
+            return -1;
+        }
+        long lag = status.getReplicaSetLagEstimate();
+        if (lag == ReplicaSetStatus.UNKNOWN_LAG) {
+            return -1;
+        }
+        return lag + boundedStalenessMarginMillis;
+    }
+
     @Nullable
     protected <T extends Document> T convertFromDBObject(@NotNull Collection<T> collection,
                                                          @Nullable DBObject n) {
@@ -1556,6 +1871,13 @@ public class MongoDocumentStore implements DocumentStore {
 
     @Override
     public void dispose() {
+        MongoChangeStreamListener listener;
+        synchronized (this) {
+            listener = changeStreamListener;
+        }
+        if (listener != null) {
+            listener.close();
+        }
         client.close();
         try {
             nodesCache.close();
@@ -44,12 +44,15 @@ public final class MongoDocumentStoreMetrics implements Runnable {
             Collection.NODES, Collection.JOURNAL, Collection.CLUSTER_NODES, Collection.SETTINGS, Collection.BLOBS
     );
 
+    private final MongoDocumentStore store;
+
     private final MongoDatabase db;
 
     private final StatisticsProvider statsProvider;
 
     public MongoDocumentStoreMetrics(MongoDocumentStore store,
                                      StatisticsProvider statsProvider) {
+        this.store = store;
         this.db = store.getDatabase();
         this.statsProvider = statsProvider;
     }
@@ -82,6 +85,10 @@ public final class MongoDocumentStoreMetrics implements Runnable {
             DatabaseStats dbStats = getDBStats();
             updateCounter(getDBCounter("fsUsedSize"), dbStats.fsUsedSize);
             updateCounter(getDBCounter("fsTotalSize"), dbStats.fsTotalSize);
+            long stalenessBound = store.getStalenessBoundMillis();
+            if (stalenessBound >= 0) {
+                updateCounter(getDBCounter("stalenessBoundMillis"), stalenessBound);
+            }
         } catch (MongoException e) {
             LOG.warn("Updating counters failed: {}", e.toString());
         }
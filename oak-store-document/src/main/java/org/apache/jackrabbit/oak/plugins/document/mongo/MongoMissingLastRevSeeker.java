@@ -30,6 +30,7 @@ import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 
 import org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo;
+import org.apache.jackrabbit.oak.plugins.document.Document;
 import org.apache.jackrabbit.oak.plugins.document.MissingLastRevSeeker;
 import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
 import org.apache.jackrabbit.oak.plugins.document.util.CloseableIterable;
@@ -65,6 +66,26 @@ public class MongoMissingLastRevSeeker extends MissingLastRevSeeker {
                 input -> store.convertFromDBObject(NODES, input)));
     }
 
+    @Override
+    @NotNull
+    public CloseableIterable<NodeDocument> getCandidates(final long startTime,
+                                                         @NotNull String fromId,
+                                                         @NotNull String toId) {
+        Bson query = Filters.and(
+                Filters.gt(Document.ID, fromId),
+                Filters.lt(Document.ID, toId),
+                Filters.gte(NodeDocument.MODIFIED_IN_SECS, NodeDocument.getModifiedInSecs(startTime)),
+                Filters.exists(NodeDocument.SD_TYPE, false));
+        // scan the id range with the _id index instead of sorting all
+        // documents modified since startTime by _modified
+        Bson hint = new BasicDBObject(Document.ID, 1);
+
+        FindIterable<BasicDBObject> cursor = getNodeCollection()
+                .find(query).hint(hint);
+        return CloseableIterable.wrap(transform(cursor,
+                input -> store.convertFromDBObject(NODES, input)));
+    }
+
     @Override
     public boolean isRecoveryNeeded() {
         Bson query = Filters.and(
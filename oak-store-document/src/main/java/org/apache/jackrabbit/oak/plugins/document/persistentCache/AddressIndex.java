@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * An open addressing hash table from a key hash to a record address, both
+ * primitive longs. An entry takes 16 bytes in two arrays of longs, without
+ * boxing or a node object per entry.
+ * <p>
+ * Only a single thread may modify the index at a time, while lookups do not
+ * acquire a lock. The key is published after the address, so a reader that
+ * finds a key also sees its address. A lookup may return an address that was
+ * replaced or removed concurrently; callers must validate the record at the
+ * address and compare its key. The address zero is reserved and means the
+ * entry was removed. Removed entries keep their key until the table is
+ * rebuilt.
+ */
+final class AddressIndex {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private static final double MAX_LOAD = 0.75;
+
+    private volatile Table table = new Table(MIN_CAPACITY);
+
+    private volatile int size;
+
+    /**
+     * @param hash the key hash.
+     * @return the address for the given hash or zero if there is none.
+     */
+    long get(long hash) {
+        Table t = table;
+        long key = key(hash);
+        int mask = t.keys.length() - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            long k = t.keys.get(i);
+            if (k == key) {
+                return t.addresses.get(i);
+            } else if (k == 0) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Sets the address for the given hash. Must not be called concurrently
+     * with another modification.
+     *
+     * @param hash the key hash.
+     * @param address the address, must not be zero.
+     * @return the previous address or zero if there was none.
+     */
+    long put(long hash, long address) {
+        if (address == 0) {
+            throw new IllegalArgumentException("address must not be zero");
+        }
+        Table t = table;
+        long key = key(hash);
+        int mask = t.keys.length() - 1;
+        int i = index(key, mask);
+        for (long k; (k = t.keys.get(i)) != 0; i = (i + 1) & mask) {
+            if (k == key) {
+                long old = t.addresses.get(i);
+                t.addresses.set(i, address);
+                if (old == 0) {
+                    size++;
+                }
+                return old;
+            }
+        }
+        if (t.used + 1 > t.keys.length() * MAX_LOAD) {
+            table = rebuild(t, Math.max(MIN_CAPACITY, Integer.highestOneBit(size * 4)));
+            return put(hash, address);
+        }
+        t.addresses.set(i, address);
+        t.keys.set(i, key);
+        t.used++;
+        size++;
+        return 0;
+    }
+
+    /**
+     * Removes the entry for the given hash. Must not be called concurrently
+     * with another modification.
+     *
+     * @param hash the key hash.
+     * @return the removed address or zero if there was none.
+     */
+    long remove(long hash) {
+        Table t = table;
+        long key = key(hash);
+        int mask = t.keys.length() - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            long k = t.keys.get(i);
+            if (k == key) {
+                long old = t.addresses.get(i);
+                if (old != 0) {
+                    t.addresses.set(i, 0);
+                    size--;
+                }
+                return old;
+            } else if (k == 0) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Calls the consumer with each address in the index. Must not be called
+     * concurrently with a modification.
+     */
+    void forEachAddress(LongConsumer consumer) {
+        Table t = table;
+        for (int i = 0; i < t.addresses.length(); i++) {
+            long address = t.addresses.get(i);
+            if (address != 0) {
+                consumer.accept(address);
+            }
+        }
+    }
+
+    /**
+     * Removes all entries. Must not be called concurrently with another
+     * modification.
+     */
+    void clear() {
+        table = new Table(MIN_CAPACITY);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the approximate number of bytes used by the index.
+     */
+    long getMemory() {
+        return 16L * table.keys.length();
+    }
+
+    private static Table rebuild(Table t, int capacity) {
+        Table n = new Table(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < t.keys.length(); j++) {
+            long address = t.addresses.get(j);
+            if (address == 0) {
+                continue;
+            }
+            long key = t.keys.get(j);
+            int i = index(key, mask);
+            while (n.keys.get(i) != 0) {
+                i = (i + 1) & mask;
+            }
+            n.addresses.set(i, address);
+            n.keys.set(i, key);
+            n.used++;
+        }
+        return n;
+    }
+
+    /**
+     * Zero marks an empty slot, the hash zero is therefore stored as one and
+     * shares the entry of the hash one. This is fine for the store, which
+     * compares the key of the record at the address anyway.
+     */
+    private static long key(long hash) {
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static int index(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static final class Table {
+
+        final AtomicLongArray keys;
+        final AtomicLongArray addresses;
+
+        /**
+         * Number of slots with a key, including removed entries.
+         */
+        int used;
+
+        Table(int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.addresses = new AtomicLongArray(capacity);
+        }
+    }
+}
@@ -0,0 +1,803 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.DataType;
+import org.h2.mvstore.type.ObjectDataType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A log structured key value store backed by a memory mapped file. This is
+ * an alternative backend for the {@link PersistentCache} to the H2 MVStore.
+ * <p>
+ * The file is divided into segments of equal size. Entries are appended to
+ * the current head segment by a single writer. An in-memory index per map
+ * maps the hash of the serialized key to the address of the most recent
+ * record for the key. The index is a primitive open addressing table with
+ * 16 bytes per entry. Reads do not acquire a lock. They look up the address
+ * in the index and read the record directly from the mapped segment. A
+ * record is marked deleted in place when it is superseded or removed, which
+ * means at most one live record exists per key and the index can be rebuilt
+ * when the file is opened again.
+ * <p>
+ * A background thread reclaims sealed segments where less than half of the
+ * data is still live. The live records of such a segment are copied to the
+ * head segment and the segment is then reused for new records. This keeps
+ * the size of the file close to the amount of live data without a separate
+ * compaction step.
+ */
+class MemoryMappedStore implements Closeable {
+
+    static final Logger LOG = LoggerFactory.getLogger(MemoryMappedStore.class);
+
+    /**
+     * The default size of a segment in bytes.
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The maximum number of segments in a file. The slot of a segment is
+     * encoded with 16 bits in a record address.
+     */
+    private static final int MAX_SEGMENTS = 1 << 16;
+
+    private static final int MAGIC = 0x4f414b4d;
+
+    /**
+     * Segment header: magic (int), reserved (int), sequence number (long).
+     */
+    private static final int SEGMENT_HEADER_LENGTH = 16;
+
+    /**
+     * Record header: length (int), type (byte), map id (int), key length
+     * (int). The header is followed by the key, the value and a checksum
+     * (int).
+     */
+    private static final int RECORD_HEADER_LENGTH = 13;
+
+    private static final int RECORD_OVERHEAD = RECORD_HEADER_LENGTH + 4;
+
+    private static final int TYPE_OFFSET = 4;
+
+    private static final int MAP_ID_OFFSET = 5;
+
+    private static final int KEY_LENGTH_OFFSET = 9;
+
+    private static final byte TYPE_PUT = 1;
+
+    private static final byte TYPE_DELETED = 2;
+
+    /**
+     * Sealed segments with less than this fraction of live data are
+     * reclaimed.
+     */
+    private static final double RECLAIM_THRESHOLD = 0.5;
+
+    private static final long RECLAIM_INTERVAL_MILLIS = 1000;
+
+    private final File file;
+
+    private final int segmentSize;
+
+    private final boolean readOnly;
+
+    private final FileChannel channel;
+
+    /**
+     * The segments in use by slot. Read without lock.
+     */
+    private final AtomicReferenceArray<Segment> segments =
+            new AtomicReferenceArray<Segment>(MAX_SEGMENTS);
+
+    /**
+     * The mapped buffers by slot. Guarded by {@link #writeLock}.
+     */
+    private final List<MappedByteBuffer> buffers = new ArrayList<MappedByteBuffer>();
+
+    /**
+     * Slots of reclaimed segments. Guarded by {@link #writeLock}.
+     */
+    private final Deque<Integer> freeSlots = new ArrayDeque<Integer>();
+
+    /**
+     * The index for each map id, from key hash to record address.
+     */
+    private final ConcurrentMap<Integer, AddressIndex> indexes =
+            new ConcurrentHashMap<Integer, AddressIndex>();
+
+    private final ConcurrentMap<Integer, String> mapNames =
+            new ConcurrentHashMap<Integer, String>();
+
+    private final Object writeLock = new Object();
+
+    private final Object reclaimMonitor = new Object();
+
+    private final ThreadLocal<WriteBuffer> writeBuffer = new ThreadLocal<WriteBuffer>();
+
+    private final AtomicLong reclaimedSegments = new AtomicLong();
+
+    private final Thread reclaimThread;
+
+    /**
+     * The segment new records are appended to. Guarded by
+     * {@link #writeLock}.
+     */
+    private Segment head;
+
+    /**
+     * The highest segment sequence number. Guarded by {@link #writeLock}.
+     */
+    private long maxSeq;
+
+    /**
+     * The number of bytes in use by segments, updated with the write lock
+     * held.
+     */
+    private volatile long usedBytes;
+
+    private volatile boolean closed;
+
+    MemoryMappedStore(@NotNull File file, int segmentSize, boolean readOnly)
+            throws IOException {
+        if (segmentSize < SEGMENT_HEADER_LENGTH + RECORD_OVERHEAD) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.file = file;
+        this.segmentSize = segmentSize;
+        this.readOnly = readOnly;
+        if (readOnly) {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        } else {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        }
+        try {
+            synchronized (writeLock) {
+                load();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (readOnly) {
+            this.reclaimThread = null;
+        } else {
+            this.reclaimThread = new Thread(this::runReclaim,
+                    "Oak PersistentCache reclaim " + file.getName());
+            this.reclaimThread.setDaemon(true);
+            this.reclaimThread.start();
+        }
+    }
+
+    /**
+     * Opens the map with the given name. The key and value of an entry are
+     * serialized with the given data types.
+     *
+     * @param name the name of the map.
+     * @param keyType the key type or {@code null} for the default type.
+     * @param valueType the value type or {@code null} for the default type.
+     * @return the map.
+     */
+    <K, V> Map<K, V> openMap(@NotNull String name,
+                             @Nullable DataType keyType,
+                             @Nullable DataType valueType) {
+        int mapId = name.hashCode();
+        String existing = mapNames.putIfAbsent(mapId, name);
+        if (existing != null && !existing.equals(name)) {
+            throw new IllegalArgumentException("Map " + name +
+                    " conflicts with existing map " + existing);
+        }
+        return new MemoryMappedMap<K, V>(mapId, getIndex(mapId),
+                keyType != null ? keyType : new ObjectDataType(),
+                valueType != null ? valueType : new ObjectDataType());
+    }
+
+    /**
+     * @return the number of bytes in use by this store. Reclaimed segments
+     *          are not included.
+     */
+    long getFileSize() {
+        return usedBytes;
+    }
+
+    /**
+     * @return the number of segments reclaimed since this store was opened.
+     */
+    long getReclaimedSegmentCount() {
+        return reclaimedSegments.get();
+    }
+
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (reclaimThread != null) {
+            synchronized (reclaimMonitor) {
+                reclaimMonitor.notifyAll();
+            }
+            try {
+                reclaimThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (writeLock) {
+            if (!readOnly) {
+                for (MappedByteBuffer b : buffers) {
+                    b.force();
+                }
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Reclaims sealed segments with less live data than the threshold.
+     *
+     * @return the number of reclaimed segments.
+     */
+    synchronized int reclaim() {
+        if (readOnly) {
+            return 0;
+        }
+        int numSlots;
+        synchronized (writeLock) {
+            numSlots = buffers.size();
+        }
+        List<Segment> candidates = new ArrayList<Segment>();
+        for (int i = 0; i < numSlots; i++) {
+            Segment s = segments.get(i);
+            if (s == null) {
+                continue;
+            }
+            int dataLength = s.writePos - SEGMENT_HEADER_LENGTH;
+            if (s.sealed && s.liveBytes.get() < dataLength * RECLAIM_THRESHOLD) {
+                candidates.add(s);
+            }
+        }
+        candidates.sort(Comparator.comparingInt(s -> s.liveBytes.get()));
+        int count = 0;
+        for (Segment s : candidates) {
+            if (closed || !reclaim(s)) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    //------------------------------< internal >--------------------------------
+
+    private AddressIndex getIndex(int mapId) {
+        AddressIndex index = indexes.get(mapId);
+        if (index == null) {
+            index = new AddressIndex();
+            AddressIndex existing = indexes.putIfAbsent(mapId, index);
+            if (existing != null) {
+                index = existing;
+            }
+        }
+        return index;
+    }
+
+    private void load() throws IOException {
+        int numSlots = (int) Math.min(channel.size() / segmentSize, MAX_SEGMENTS);
+        List<Segment> found = new ArrayList<Segment>();
+        for (int slot = 0; slot < numSlots; slot++) {
+            MappedByteBuffer b = map(slot);
+            buffers.add(b);
+            if (b.getInt(0) == MAGIC) {
+                found.add(new Segment(slot, b.getLong(8), b));
+            } else {
+                freeSlots.add(slot);
+            }
+        }
+        // replay in the order the segments were written
+        found.sort(Comparator.comparingLong(s -> s.seq));
+        for (Segment s : found) {
+            segments.set(s.slot, s);
+            replay(s);
+            s.sealed = true;
+            maxSeq = Math.max(maxSeq, s.seq);
+        }
+        if (!readOnly) {
+            Segment last = found.isEmpty() ? null : found.get(found.size() - 1);
+            if (last != null && last.writePos + RECORD_OVERHEAD < segmentSize) {
+                last.sealed = false;
+                head = last;
+            } else {
+                newHead();
+            }
+        }
+        updateUsedBytes();
+        LOG.debug("Opened {} with {} segments, {} free", file, found.size(), freeSlots.size());
+    }
+
+    private void replay(Segment s) {
+        ByteBuffer b = s.buffer.duplicate();
+        int pos = SEGMENT_HEADER_LENGTH;
+        while (pos + RECORD_OVERHEAD <= segmentSize) {
+            int length = b.getInt(pos);
+            if (length < RECORD_OVERHEAD || length > segmentSize - pos
+                    || b.getInt(pos + length - 4) != checksum(b, pos, length, s.seq)) {
+                // end of valid records
+                break;
+            }
+            if (b.get(pos + TYPE_OFFSET) == TYPE_PUT) {
+                AddressIndex index = getIndex(b.getInt(pos + MAP_ID_OFFSET));
+                int keyLength = b.getInt(pos + KEY_LENGTH_OFFSET);
+                long hash = hash(b, pos + RECORD_HEADER_LENGTH, keyLength);
+                s.liveBytes.addAndGet(length);
+                long old = index.put(hash, address(s, pos));
+                if (old != 0) {
+                    markDeleted(old);
+                }
+            }
+            pos += length;
+        }
+        s.writePos = pos;
+    }
+
+    private MappedByteBuffer map(int slot) throws IOException {
+        FileChannel.MapMode mode = readOnly
+                ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+        return channel.map(mode, (long) slot * segmentSize, segmentSize);
+    }
+
+    /**
+     * Seals the current head segment and starts a new one. Must be called
+     * with the write lock held.
+     *
+     * @return {@code false} if the maximum number of segments is reached.
+     */
+    private boolean newHead() throws IOException {
+        Integer slot = freeSlots.poll();
+        MappedByteBuffer b;
+        if (slot != null) {
+            b = buffers.get(slot);
+        } else if (buffers.size() < MAX_SEGMENTS) {
+            slot = buffers.size();
+            b = map(slot);
+            buffers.add(b);
+        } else {
+            return false;
+        }
+        if (head != null) {
+            head.sealed = true;
+        }
+        Segment s = new Segment(slot, ++maxSeq, b);
+        b.putInt(SEGMENT_HEADER_LENGTH, 0);
+        b.putLong(8, s.seq);
+        b.putInt(4, 0);
+        b.putInt(0, MAGIC);
+        segments.set(slot, s);
+        head = s;
+        updateUsedBytes();
+        return true;
+    }
+
+    private void updateUsedBytes() {
+        long used = (long) (buffers.size() - freeSlots.size()) * segmentSize;
+        if (head != null) {
+            // the head segment only counts with the bytes written so far
+            used -= segmentSize - head.writePos;
+        }
+        usedBytes = used;
+    }
+
+    /**
+     * Appends a record to the head segment and updates the index. Must be
+     * called with the write lock held.
+     *
+     * @return {@code false} if the record could not be appended.
+     */
+    private boolean append(AddressIndex index, long hash,
+                           ByteBuffer record, int length, int crc) throws IOException {
+        if (closed) {
+            return false;
+        }
+        if (head.writePos + length > segmentSize && !newHead()) {
+            return false;
+        }
+        Segment s = head;
+        int pos = s.writePos;
+        record.putInt(length - 4, crc ^ mix(s.seq));
+        ByteBuffer b = s.buffer.duplicate();
+        ((Buffer) b).position(pos);
+        b.put(record.array(), record.arrayOffset(), length);
+        s.writePos = pos + length;
+        s.liveBytes.addAndGet(length);
+        usedBytes += length;
+        long old = index.put(hash, address(s, pos));
+        if (old != 0) {
+            markDeleted(old);
+        }
+        return true;
+    }
+
+    /**
+     * Marks the record at the given address deleted. Must be called with the
+     * write lock held or while loading.
+     */
+    private void markDeleted(long address) {
+        Segment s = segments.get(getSlot(address));
+        if (s == null || s.version != getVersion(address)) {
+            return;
+        }
+        int pos = getOffset(address);
+        s.liveBytes.addAndGet(-s.buffer.getInt(pos));
+        if (!readOnly) {
+            s.buffer.put(pos + TYPE_OFFSET, TYPE_DELETED);
+        }
+    }
+
+    /**
+     * Copies the live records of a sealed segment to the head and makes the
+     * segment available for reuse.
+     *
+     * @return {@code false} if the segment could not be reclaimed.
+     */
+    private boolean reclaim(Segment s) {
+        ByteBuffer b = s.buffer.duplicate();
+        int pos = SEGMENT_HEADER_LENGTH;
+        try {
+            while (pos < s.writePos) {
+                int length = b.getInt(pos);
+                if (b.get(pos + TYPE_OFFSET) == TYPE_PUT) {
+                    ByteBuffer record = ByteBuffer.allocate(length);
+                    ByteBuffer src = b.duplicate();
+                    ((Buffer) src).position(pos);
+                    ((Buffer) src).limit(pos + length);
+                    record.put(src);
+                    int keyLength = record.getInt(KEY_LENGTH_OFFSET);
+                    long hash = hash(record, RECORD_HEADER_LENGTH, keyLength);
+                    int crc = record.getInt(length - 4) ^ mix(s.seq);
+                    synchronized (writeLock) {
+                        AddressIndex index = indexes.get(record.getInt(MAP_ID_OFFSET));
+                        long current = index != null ? index.get(hash) : 0;
+                        if (current == address(s, pos)
+                                && !append(index, hash, record, length, crc)) {
+                            return false;
+                        }
+                    }
+                }
+                pos += length;
+            }
+            synchronized (writeLock) {
+                if (closed) {
+                    return false;
+                }
+                s.released = true;
+                segments.set(s.slot, null);
+                s.buffer.putInt(0, 0);
+                freeSlots.add(s.slot);
+                updateUsedBytes();
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to reclaim segment {} in {}: {}", s.slot, file, e.toString());
+            return false;
+        }
+        reclaimedSegments.incrementAndGet();
+        return true;
+    }
+
+    private void runReclaim() {
+        while (!closed) {
+            synchronized (reclaimMonitor) {
+                try {
+                    reclaimMonitor.wait(RECLAIM_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            if (closed) {
+                break;
+            }
+            try {
+                int count = reclaim();
+                if (count > 0) {
+                    LOG.debug("Reclaimed {} segments in {}", count, file);
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Error reclaiming segments in " + file, e);
+            }
+        }
+    }
+
+    private WriteBuffer getWriteBuffer() {
+        WriteBuffer buff = writeBuffer.get();
+        if (buff == null) {
+            buff = new WriteBuffer();
+            writeBuffer.set(buff);
+        }
+        buff.clear();
+        return buff;
+    }
+
+    private static long address(Segment s, int offset) {
+        return ((long) s.slot << 48) | ((long) s.version << 32) | offset;
+    }
+
+    private static int getSlot(long address) {
+        return (int) (address >>> 48);
+    }
+
+    private static int getVersion(long address) {
+        return (int) (address >>> 32) & 0xffff;
+    }
+
+    private static int getOffset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * FNV-1a hash of the bytes in the given range.
+     */
+    private static long hash(ByteBuffer b, int offset, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= b.get(i) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Calculates the checksum of the record at the given position, without
+     * the type, which is changed in place when a record is deleted, and
+     * without the sequence number of the segment.
+     */
+    private static int checksum(ByteBuffer b, int pos, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer data = b.duplicate();
+        ((Buffer) data).position(pos + MAP_ID_OFFSET);
+        ((Buffer) data).limit(pos + length - 4);
+        crc.update(data);
+        return (int) crc.getValue() ^ length;
+    }
+
+    /**
+     * Calculates the checksum of a record in a segment with the given
+     * sequence number. Including the sequence number ensures records left
+     * over from a previous use of a reclaimed segment are not valid.
+     */
+    private static int checksum(ByteBuffer b, int pos, int length, long seq) {
+        return checksum(b, pos, length) ^ mix(seq);
+    }
+
+    private static int mix(long seq) {
+        return (int) ((seq * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private static final class Segment {
+
+        final int slot;
+        final long seq;
+        final int version;
+        final ByteBuffer buffer;
+        final AtomicInteger liveBytes = new AtomicInteger();
+        volatile int writePos = SEGMENT_HEADER_LENGTH;
+        volatile boolean sealed;
+        volatile boolean released;
+
+        Segment(int slot, long seq, ByteBuffer buffer) {
+            this.slot = slot;
+            this.seq = seq;
+            this.version = (int) seq & 0xffff;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * A map view on the entries of a given map id. Only the methods used by
+     * {@link CacheMap} are supported.
+     */
+    private final class MemoryMappedMap<K, V> extends AbstractMap<K, V> {
+
+        private final int mapId;
+        private final AddressIndex index;
+        private final DataType keyType;
+        private final DataType valueType;
+
+        MemoryMappedMap(int mapId, AddressIndex index,
+                        DataType keyType, DataType valueType) {
+            this.mapId = mapId;
+            this.index = index;
+            this.keyType = keyType;
+            this.valueType = valueType;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V get(Object key) {
+            return (V) read(key, true);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return read(key, false) != null;
+        }
+
+        /**
+         * Writes the entry. Unlike specified by {@link Map#put(Object, Object)},
+         * this method always returns {@code null}.
+         */
+        @Override
+        public V put(K key, V value) {
+            if (readOnly) {
+                throw new UnsupportedOperationException("read-only");
+            }
+            WriteBuffer buff = getWriteBuffer();
+            buff.putInt(0).put(TYPE_PUT).putInt(mapId).putInt(0);
+            keyType.write(buff, key);
+            int keyLength = buff.position() - RECORD_HEADER_LENGTH;
+            valueType.write(buff, value);
+            buff.putInt(0);
+            int length = buff.position();
+            if (length > segmentSize - SEGMENT_HEADER_LENGTH) {
+                LOG.debug("Entry too large: {} bytes", length);
+                return null;
+            }
+            ByteBuffer record = buff.getBuffer();
+            record.putInt(0, length);
+            record.putInt(KEY_LENGTH_OFFSET, keyLength);
+            long hash = hash(record, RECORD_HEADER_LENGTH, keyLength);
+            int crc = checksum(record, 0, length);
+            try {
+                synchronized (writeLock) {
+                    append(index, hash, record, length, crc);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        /**
+         * Removes the entry. Unlike specified by {@link Map#remove(Object)},
+         * this method always returns {@code null}.
+         */
+        @Override
+        public V remove(Object key) {
+            if (readOnly) {
+                throw new UnsupportedOperationException("read-only");
+            }
+            long hash = hashKey(key);
+            synchronized (writeLock) {
+                long address = index.remove(hash);
+                if (address != 0) {
+                    markDeleted(address);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void clear() {
+            if (readOnly) {
+                throw new UnsupportedOperationException("read-only");
+            }
+            synchronized (writeLock) {
+                index.forEachAddress(MemoryMappedStore.this::markDeleted);
+                index.clear();
+            }
+        }
+
+        @Override
+        public int size() {
+            return index.size();
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            throw new UnsupportedOperationException();
+        }
+
+        private long hashKey(Object key) {
+            WriteBuffer buff = getWriteBuffer();
+            keyType.write(buff, key);
+            return hash(buff.getBuffer(), 0, buff.position());
+        }
+
+        /**
+         * Reads the record for the given key without acquiring a lock.
+         *
+         * @return the value, {@link Boolean#TRUE} if {@code readValue} is
+         *          {@code false} and the key exists, or {@code null} if there
+         *          is no entry for the key.
+         */
+        @Nullable
+        private Object read(Object key, boolean readValue) {
+            WriteBuffer buff = getWriteBuffer();
+            keyType.write(buff, key);
+            ByteBuffer keyBuffer = buff.getBuffer();
+            int keyLength = buff.position();
+            long address = index.get(hash(keyBuffer, 0, keyLength));
+            if (address == 0) {
+                return null;
+            }
+            Segment s = segments.get(getSlot(address));
+            if (s == null || s.version != getVersion(address) || s.released) {
+                return null;
+            }
+            ByteBuffer b = s.buffer.duplicate();
+            int pos = getOffset(address);
+            int length = b.getInt(pos);
+            if (length < RECORD_OVERHEAD + keyLength || length > segmentSize - pos
+                    || b.get(pos + TYPE_OFFSET) != TYPE_PUT
+                    || b.getInt(pos + MAP_ID_OFFSET) != mapId
+                    || b.getInt(pos + KEY_LENGTH_OFFSET) != keyLength) {
+                return null;
+            }
+            int keyStart = pos + RECORD_HEADER_LENGTH;
+            for (int i = 0; i < keyLength; i++) {
+                if (b.get(keyStart + i) != keyBuffer.get(i)) {
+                    // hash collision
+                    return null;
+                }
+            }
+            if (!readValue) {
+                return s.released ? null : Boolean.TRUE;
+            }
+            // copy the record and check it is intact before decoding. The
+            // segment may have been reclaimed and reused concurrently, in
+            // which case the copy may contain arbitrary bytes
+            ByteBuffer record = ByteBuffer.allocate(length);
+            ByteBuffer src = b.duplicate();
+            ((Buffer) src).limit(pos + length);
+            ((Buffer) src).position(pos);
+            record.put(src);
+            if (s.released || record.getInt(length - 4) != checksum(record, 0, length, s.seq)) {
+                return null;
+            }
+            ((Buffer) record).limit(length - 4);
+            ((Buffer) record).position(RECORD_HEADER_LENGTH + keyLength);
+            return valueType.read(record.slice());
+        }
+    }
+}
@@ -100,7 +100,7 @@ class NodeCache<K extends CacheValue, V extends  CacheValue>
             this.memCacheMetadata.disable();
             LOG.info("The persistent cache {} writes will be synchronous", type);
         }
-        this.stats = new PersistentCacheStats(type, statisticsProvider);
+        this.stats = new PersistentCacheStats(type, statisticsProvider, cache.getBackend());
     }
     
     @Override
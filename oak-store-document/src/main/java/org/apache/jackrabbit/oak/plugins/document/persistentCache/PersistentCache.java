@@ -55,8 +55,19 @@ public class PersistentCache implements Broadcaster.Listener {
     
     static final Logger LOG = LoggerFactory.getLogger(PersistentCache.class);
 
+    /**
+     * The name of the backend based on the H2 MVStore (default).
+     */
+    static final String MVSTORE_BACKEND = "mvstore";
+
+    /**
+     * The name of the log structured, memory mapped backend.
+     */
+    static final String MEMORY_MAPPED_BACKEND = "mmap";
+
     private static final String FILE_PREFIX = "cache-";
     private static final String FILE_SUFFIX = ".data";
+    private static final String MEMORY_MAPPED_FILE_SUFFIX = ".mmap";
     private static final AtomicInteger COUNTER = new AtomicInteger();
     
     private boolean cacheNodes = true;
@@ -72,6 +83,8 @@ public class PersistentCache implements Broadcaster.Listener {
             new HashMap<CacheType, GenerationCache>();
     
     private final String directory;
+    private final String backend;
+    private final String fileSuffix;
     private MapFactory writeStore;
     private MapFactory readStore;
     private int maxSizeMB = 1024;
@@ -103,6 +116,7 @@ public class PersistentCache implements Broadcaster.Listener {
         String[] parts = url.split(",");
         String dir = parts[0];
         String broadcast = "disabled";
+        String backendName = MVSTORE_BACKEND;
         for (String p : parts) {
             if (p.equals("+docs")) {
                 logUnsupportedWarning("docs");
@@ -146,8 +160,23 @@ public class PersistentCache implements Broadcaster.Listener {
                 asyncCache = false;
             } else if (p.equals("+asyncDiff")) {
                 asyncDiffCache = true;
+            } else if (p.startsWith("backend=")) {
+                backendName = p.split("=")[1];
             }
         }
+        if (dir.length() == 0 && !MVSTORE_BACKEND.equals(backendName)) {
+            // only the MVStore backend supports an in-memory store
+            LOG.info("No directory configured, using {} backend", MVSTORE_BACKEND);
+            backendName = MVSTORE_BACKEND;
+        }
+        if (MVSTORE_BACKEND.equals(backendName)) {
+            this.fileSuffix = FILE_SUFFIX;
+        } else if (MEMORY_MAPPED_BACKEND.equals(backendName)) {
+            this.fileSuffix = MEMORY_MAPPED_FILE_SUFFIX;
+        } else {
+            throw new IllegalArgumentException("Unknown backend " + backendName);
+        }
+        this.backend = backendName;
         this.directory = dir;
         if (dir.length() == 0) {
             readGeneration = -1;
@@ -167,8 +196,8 @@ public class PersistentCache implements Broadcaster.Listener {
         if (list != null) {
             for (File f : list) {
                 String fn = f.getName();
-                if (fn.startsWith(FILE_PREFIX) && fn.endsWith(FILE_SUFFIX)) {
-                    String g = fn.substring(FILE_PREFIX.length(), fn.indexOf(FILE_SUFFIX));
+                if (fn.startsWith(FILE_PREFIX) && fn.endsWith(fileSuffix)) {
+                    String g = fn.substring(FILE_PREFIX.length(), fn.indexOf(fileSuffix));
                     try {
                         int gen = Integer.parseInt(g);
                         if (gen >= 0) {
@@ -245,10 +274,13 @@ public class PersistentCache implements Broadcaster.Listener {
         if (directory.length() == 0) {
             return null;
         }
-        return directory + "/" + FILE_PREFIX + generation + FILE_SUFFIX;
+        return directory + "/" + FILE_PREFIX + generation + fileSuffix;
     }
     
     private MapFactory createMapFactory(final int generation, final boolean readOnly) {
+        if (MEMORY_MAPPED_BACKEND.equals(backend)) {
+            return createMemoryMappedMapFactory(generation, readOnly);
+        }
         MapFactory f = new MapFactory() {
             
             final String fileName = getFileName(generation);
@@ -366,6 +398,76 @@ public class PersistentCache implements Broadcaster.Listener {
         f.openStore();
         return f;
     }
+
+    private MapFactory createMemoryMappedMapFactory(final int generation, final boolean readOnly) {
+        MapFactory f = new MapFactory() {
+
+            final String fileName = getFileName(generation);
+            MemoryMappedStore store;
+
+            @Override
+            void openStore() {
+                if (store != null) {
+                    return;
+                }
+                try {
+                    store = new MemoryMappedStore(new File(fileName),
+                            getSegmentSize(), readOnly);
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.warn("Could not open the store " + fileName, e);
+                }
+            }
+
+            @Override
+            synchronized void closeStore() {
+                if (store == null) {
+                    return;
+                }
+                try {
+                    // clear the interrupted flag, if set
+                    Thread.interrupted();
+                    store.close();
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.debug("Could not close the store", e);
+                    LOG.warn("Could not close the store: " + e);
+                }
+                store = null;
+            }
+
+            @Override
+            <K, V> Map<K, V> openMap(String name, Builder<K, V> builder) {
+                try {
+                    if (builder == null) {
+                        return store.openMap(name, null, null);
+                    }
+                    return store.openMap(name, builder.getKeyType(), builder.getValueType());
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.warn("Could not open the map", e);
+                    return null;
+                }
+            }
+
+            @Override
+            long getFileSize() {
+                MemoryMappedStore s = store;
+                return s == null ? 0 : s.getFileSize();
+            }
+        };
+        f.openStore();
+        return f;
+    }
+
+    /**
+     * The segment size of the memory mapped backend. A file holds at least
+     * 16 segments before the generation is switched.
+     */
+    private int getSegmentSize() {
+        long size = (long) maxSizeMB * 1024 * 1024 / 16;
+        return (int) Math.max(64 * 1024, Math.min(MemoryMappedStore.DEFAULT_SEGMENT_SIZE, size));
+    }
     
     public void close() {
         writeDispatcher.stop();
@@ -498,6 +600,13 @@ public class PersistentCache implements Broadcaster.Listener {
     public int getMaxSize() {
         return maxSizeMB;
     }
+
+    /**
+     * @return the name of the backend used by this persistent cache.
+     */
+    public String getBackend() {
+        return backend;
+    }
     
     public int getOpenCount() {
         return writeStore.getOpenCount();
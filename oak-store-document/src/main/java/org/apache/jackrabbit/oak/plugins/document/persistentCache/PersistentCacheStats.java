@@ -68,6 +68,7 @@ public class PersistentCacheStats extends AnnotatedStandardMBean implements Pers
 
     private final StatisticsProvider statisticsProvider;
     private final String cacheName;
+    private final String backend;
 
     private final MeterStats hitMeter;
     private final TimeSeries hitRateHistory;
@@ -116,6 +117,20 @@ public class PersistentCacheStats extends AnnotatedStandardMBean implements Pers
 
 
     public PersistentCacheStats(CacheType cacheType, StatisticsProvider provider) {
+        this(cacheType, provider, PersistentCache.MVSTORE_BACKEND);
+    }
+
+    /**
+     * Creates statistics for the given cache type and persistent cache
+     * backend. The statistics of the default MVStore backend keep the name
+     * without the backend, statistics of other backends include the name of
+     * the backend.
+     *
+     * @param cacheType the cache type.
+     * @param provider the statistics provider.
+     * @param backend the name of the persistent cache backend.
+     */
+    public PersistentCacheStats(CacheType cacheType, StatisticsProvider provider, String backend) {
         super(PersistentCacheStatsMBean.class);
 
         if (provider == null) {
@@ -125,7 +140,12 @@ public class PersistentCacheStats extends AnnotatedStandardMBean implements Pers
         }
 
         // Configure cache name
-        cacheName = "PersistentCache.NodeCache." + cacheType.name().toLowerCase();
+        this.backend = backend;
+        if (PersistentCache.MVSTORE_BACKEND.equals(backend)) {
+            cacheName = "PersistentCache.NodeCache." + cacheType.name().toLowerCase();
+        } else {
+            cacheName = "PersistentCache.NodeCache." + backend + "." + cacheType.name().toLowerCase();
+        }
 
         // Fetch stats and time series
         String statName;
@@ -320,6 +340,13 @@ public class PersistentCacheStats extends AnnotatedStandardMBean implements Pers
         return cacheName;
     }
 
+    /**
+     * @return the name of the persistent cache backend.
+     */
+    public String getBackend() {
+        return backend;
+    }
+
     @Override
     public long getRequestCount() {
         return requestMeter.getCount();
@@ -451,6 +478,7 @@ public class PersistentCacheStats extends AnnotatedStandardMBean implements Pers
     @Override
     public String cacheInfoAsString() {
         return Objects.toStringHelper("PersistentCacheStats")
+                .add("backend", backend)
                 .add("requestCount", getRequestCount())
                 .add("hitCount", getHitCount())
                 .add("hitRate", String.format("%1.2f", getHitRate()))
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.rdb;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.jackrabbit.oak.plugins.document.Document;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Compact binary serialization of documents, used as an alternative to the
+ * JSON serialization in the {@code BDATA} column.
+ * <p>
+ * The format starts with the magic bytes {@code "OAK"}, followed by a format
+ * version and a flags byte. Neither JSON nor GZIP data can start with these
+ * bytes, so rows written in the older formats remain readable. When the
+ * {@link #FLAG_DEFLATED} flag is set, the remaining bytes are compressed with
+ * {@link Deflater}. The (uncompressed) body consists of the number of
+ * properties followed by the name and the value of each property. Strings
+ * are stored in modified UTF-8, so that unpaired surrogates survive the round
+ * trip like with the JSON serialization. Values are
+ * tagged with their type; numbers are stored as variable length integers and
+ * revisions (used as keys in maps) are stored in binary form instead of their
+ * string representation.
+ * <p>
+ * The value representations are the same as the ones produced by
+ * {@link RDBJSONSupport} with revision maps enabled: {@code null},
+ * {@link Boolean}, {@link Long}, {@link Double}, {@link String} and sorted
+ * maps with {@link Revision}s as keys. Maps with other keys are stored with
+ * the string representation of their keys and read back as maps with
+ * {@link String} keys.
+ */
+public class RDBBinarySupport {
+
+    /**
+     * The current version of the binary format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Flag indicating that the body is compressed.
+     */
+    public static final int FLAG_DEFLATED = 1;
+
+    private static final byte[] MAGIC = { 'O', 'A', 'K' };
+
+    private static final int HEADER_LENGTH = MAGIC.length + 2;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_TRUE = 1;
+    private static final int TYPE_FALSE = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_DOUBLE = 4;
+    private static final int TYPE_STRING = 5;
+    private static final int TYPE_MAP = 6;
+    private static final int TYPE_STRING_MAP = 7;
+
+    private RDBBinarySupport() {
+    }
+
+    /**
+     * @return whether the given data is in the binary format.
+     */
+    public static boolean isBinary(byte[] data) {
+        if (data == null || data.length < HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Serializes all non-column properties of the {@link Document}.
+     *
+     * @param doc the document.
+     * @param columnProperties properties stored in dedicated columns.
+     * @param compress whether the body should be compressed.
+     * @return the serialized document.
+     */
+    @NotNull
+    public static byte[] asBytes(@NotNull Document doc, @NotNull Set<String> columnProperties, boolean compress) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+        bos.write(MAGIC, 0, MAGIC.length);
+        bos.write(VERSION);
+        bos.write(compress ? FLAG_DEFLATED : 0);
+        try {
+            OutputStream os = bos;
+            if (compress) {
+                os = new DeflaterOutputStream(bos, new Deflater(Deflater.BEST_SPEED), 8192);
+            }
+            try (DataOutputStream out = new DataOutputStream(os)) {
+                int count = 0;
+                for (String key : doc.keySet()) {
+                    if (!columnProperties.contains(key)) {
+                        count++;
+                    }
+                }
+                writeVarInt(out, count);
+                for (Map.Entry<String, Object> entry : doc.entrySet()) {
+                    if (!columnProperties.contains(entry.getKey())) {
+                        writeString(out, entry.getKey());
+                        writeValue(out, entry.getValue());
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new DocumentStoreException("Error while serializing " + doc.getId(), ex);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Reads the properties in the binary data into the given document.
+     *
+     * @param data data in the binary format.
+     * @param doc the target document.
+     */
+    public static void readInto(@NotNull byte[] data, @NotNull Document doc) {
+        if (!isBinary(data)) {
+            throw new DocumentStoreException("Not in binary format");
+        }
+        int version = data[MAGIC.length];
+        if (version != VERSION) {
+            throw new DocumentStoreException("Unsupported binary format version: " + version);
+        }
+        int flags = data[MAGIC.length + 1];
+        InputStream is = new ByteArrayInputStream(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+        if ((flags & FLAG_DEFLATED) != 0) {
+            is = new BufferedInputStream(new InflaterInputStream(is, new Inflater(), 8192), 8192);
+        }
+        try (DataInputStream in = new DataInputStream(is)) {
+            int count = readVarInt(in);
+            for (int i = 0; i < count; i++) {
+                String key = readString(in);
+                doc.put(key, readValue(in));
+            }
+        } catch (IOException ex) {
+            throw new DocumentStoreException("Error while reading binary data", ex);
+        }
+    }
+
+    //----------------------------< internal >----------------------------------
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.write(TYPE_NULL);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.write(TYPE_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            out.write(TYPE_LONG);
+            writeVarLong(out, ((Number) value).longValue());
+        } else if (value instanceof String) {
+            out.write(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) value;
+            if (hasRevisionKeys(map)) {
+                out.write(TYPE_MAP);
+                writeVarInt(out, map.size());
+                for (Map.Entry<Object, Object> e : map.entrySet()) {
+                    writeRevision(out, (Revision) e.getKey());
+                    writeValue(out, e.getValue());
+                }
+            } else {
+                out.write(TYPE_STRING_MAP);
+                writeVarInt(out, map.size());
+                for (Map.Entry<Object, Object> e : map.entrySet()) {
+                    writeString(out, e.getKey().toString());
+                    writeValue(out, e.getValue());
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("unexpected type: " + value.getClass());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int type = in.read();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_TRUE:
+                return Boolean.TRUE;
+            case TYPE_FALSE:
+                return Boolean.FALSE;
+            case TYPE_LONG:
+                return readVarLong(in);
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_MAP:
+                int size = readVarInt(in);
+                Map<Revision, Object> map = new TreeMap<Revision, Object>(StableRevisionComparator.REVERSE);
+                for (int i = 0; i < size; i++) {
+                    Revision r = readRevision(in);
+                    map.put(r, readValue(in));
+                }
+                return map;
+            case TYPE_STRING_MAP:
+                size = readVarInt(in);
+                Map<String, Object> stringMap = new HashMap<String, Object>();
+                for (int i = 0; i < size; i++) {
+                    String k = readString(in);
+                    stringMap.put(k, readValue(in));
+                }
+                return stringMap;
+            default:
+                throw new IOException("unexpected type: " + type);
+        }
+    }
+
+    private static boolean hasRevisionKeys(Map<Object, Object> map) {
+        for (Object k : map.keySet()) {
+            if (!(k instanceof Revision)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeRevision(DataOutputStream out, Revision r) throws IOException {
+        writeVarLong(out, r.getTimestamp());
+        writeVarInt(out, r.getCounter());
+        writeVarInt(out, r.getClusterId());
+        out.writeBoolean(r.isBranch());
+    }
+
+    private static Revision readRevision(DataInputStream in) throws IOException {
+        long timestamp = readVarLong(in);
+        int counter = readVarInt(in);
+        int clusterId = readVarInt(in);
+        boolean branch = in.readBoolean();
+        return new Revision(timestamp, counter, clusterId, branch);
+    }
+
+    // number of chars followed by the chars in modified UTF-8, which
+    // (unlike UTF-8) can represent unpaired surrogates
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        int len = s.length();
+        writeVarInt(out, len);
+        for (int i = 0; i < len; i++) {
+            int c = s.charAt(i);
+            if (c > 0 && c < 0x80) {
+                out.write(c);
+            } else if (c < 0x800) {
+                out.write(0xC0 | (c >> 6));
+                out.write(0x80 | (c & 0x3F));
+            } else {
+                out.write(0xE0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3F));
+                out.write(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = readVarInt(in);
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++) {
+            int x = in.readUnsignedByte();
+            if (x < 0x80) {
+                chars[i] = (char) x;
+            } else if (x >= 0xE0) {
+                chars[i] = (char) (((x & 0xF) << 12) + ((in.readUnsignedByte() & 0x3F) << 6)
+                        + (in.readUnsignedByte() & 0x3F));
+            } else {
+                chars[i] = (char) (((x & 0x1F) << 6) + (in.readUnsignedByte() & 0x3F));
+            }
+        }
+        return new String(chars);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int x) throws IOException {
+        writeVarLong(out, x);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    // zig-zag encoded variable length long
+    private static void writeVarLong(DataOutputStream out, long x) throws IOException {
+        long v = (x << 1) ^ (x >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("malformed variable length number");
+    }
+}
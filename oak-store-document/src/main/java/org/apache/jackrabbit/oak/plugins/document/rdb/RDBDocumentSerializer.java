@@ -96,6 +96,15 @@ public class RDBDocumentSerializer {
         return sb.toString();
     }
 
+    /**
+     * Serializes all non-column properties of the {@link Document} into the
+     * binary format described in {@link RDBBinarySupport}.
+     */
+    @NotNull
+    public byte[] asBytes(@NotNull Document doc, Set<String> columnProperties, boolean compress) {
+        return RDBBinarySupport.asBytes(doc, columnProperties, compress);
+    }
+
     /**
      * Serializes the changes in the {@link UpdateOp} into a JSON array; each
      * entry is another JSON array holding operation, key, revision, and value.
@@ -182,7 +191,10 @@ public class RDBDocumentSerializer {
         // case #1: BDATA (blob) contains base data, DATA (string) contains
         // update operations
         try {
-            if (bdata != null && bdata.length != 0) {
+            if (RDBBinarySupport.isBinary(bdata)) {
+                RDBBinarySupport.readInto(bdata, doc);
+                blobInUse = true;
+            } else if (bdata != null && bdata.length != 0) {
                 String s = fromBlobData(bdata);
                 json = new JsopTokenizer(s);
                 json.read('{');
@@ -216,6 +228,7 @@ public class RDBDocumentSerializer {
                 throw new DocumentStoreException("unexpected token " + next + " in " + row.getData());
             }
 
+            int appendedUpdates = 0;
             next = json.read();
             if (next == ',') {
                 do {
@@ -227,10 +240,11 @@ public class RDBDocumentSerializer {
                     for (List<Object> op : update) {
                         applyUpdate(doc, update, op);
                     }
-
+                    appendedUpdates++;
                 } while (json.matches(','));
             }
             json.read(JsopReader.END);
+            row.setAppendedUpdates(appendedUpdates);
 
             // OAK-7855: check and fix _sdType
             checkSdType(doc);
@@ -55,6 +55,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
@@ -194,7 +195,10 @@ import com.google.common.collect.Sets;
  * <th>BDATA</th>
  * <td>blob</td>
  * <td>The document's JSON serialization (usually GZIPped, only used for "large"
- * documents).</td>
+ * documents), or its binary serialization (see {@link RDBBinarySupport}, used
+ * for all documents when the system property
+ * {@code org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.BINARYFORMAT}
+ * is set to {@code true}).</td>
  * </tr>
  * </tbody>
  * </table>
@@ -342,7 +346,7 @@ public class RDBDocumentStore implements DocumentStore {
             List<QueryCondition> conditions = new ArrayList<QueryCondition>();
             conditions.add(new QueryCondition(indexedProperty, ">", startValue));
             conditions.add(new QueryCondition(indexedProperty, "<", endValue));
-            return deleteWithCondition(collection, conditions);
+            return deleteWithCondition(collection, null, null, conditions);
         } finally {
             if (collection == Collection.NODES) {
                 // this method is currently being used only for Journal
@@ -356,6 +360,33 @@ public class RDBDocumentStore implements DocumentStore {
         }
     }
 
+    @NotNull
+    @Override
+    public <T extends Document> List<String> queryKeys(Collection<T> collection, String fromKey, String toKey, int limit) {
+        RDBTableMetaData tmd = getTable(collection);
+        Connection connection = null;
+        try {
+            connection = this.ch.getROConnection();
+            List<String> keys = db.queryIds(connection, tmd, fromKey, toKey, limit);
+            connection.commit();
+            return keys;
+        } catch (Exception ex) {
+            throw asDocumentStoreException(ex, "exception while querying keys in (" + fromKey + ", " + toKey + ")");
+        } finally {
+            this.ch.closeConnection(connection);
+        }
+    }
+
+    @Override
+    public <T extends Document> int remove(Collection<T> collection, String fromKey, String toKey)
+            throws DocumentStoreException {
+        if (collection == Collection.NODES) {
+            // remove documents by key to keep the cache consistent
+            return DocumentStore.super.remove(collection, fromKey, toKey);
+        }
+        return deleteWithCondition(collection, fromKey, toKey, Collections.<QueryCondition>emptyList());
+    }
+
     @Override
     public <T extends Document> boolean create(Collection<T> collection, List<UpdateOp> updateOps) {
         return internalCreate(collection, updateOps);
@@ -967,6 +998,11 @@ public class RDBDocumentStore implements DocumentStore {
 
     private boolean readOnly;
 
+    // number of rows consolidated on read
+    private final AtomicLong consolidations = new AtomicLong();
+
+    private volatile int consolidationThreshold = CONSOLIDATIONTHRESHOLD;
+
     // VERSION column mapping in queries used by RDBVersionGCSupport
     public static String VERSIONPROP = "__version";
 
@@ -1965,7 +2001,15 @@ public class RDBDocumentStore implements DocumentStore {
                     cachedDoc.markUpToDate(System.currentTimeMillis());
                     return castAsT(cachedDoc);
                 } else {
-                    return convertFromDBObject(collection, row);
+                    T doc = convertFromDBObject(collection, row);
+                    if (!readOnly && consolidationThreshold > 0 && row.getAppendedUpdates() >= consolidationThreshold) {
+                        // release the read connection before a write
+                        // connection is acquired for the consolidation
+                        this.ch.closeConnection(connection);
+                        connection = null;
+                        consolidate(collection, doc, row.getAppendedUpdates());
+                    }
+                    return doc;
                 }
             }
         } catch (Exception ex) {
@@ -2045,18 +2089,19 @@ public class RDBDocumentStore implements DocumentStore {
         return numDeleted;
     }
 
-    private <T extends Document> int deleteWithCondition(Collection<T> collection, List<QueryCondition> conditions) {
+    private <T extends Document> int deleteWithCondition(Collection<T> collection, String minId, String maxId,
+            List<QueryCondition> conditions) {
         int numDeleted = 0;
         RDBTableMetaData tmd = getTable(collection);
         Stopwatch watch = startWatch();
         Connection connection = null;
         try {
             connection = this.ch.getRWConnection();
-            numDeleted = db.deleteWithCondition(connection, tmd, conditions);
+            numDeleted = db.deleteWithCondition(connection, tmd, minId, maxId, conditions);
             connection.commit();
         } catch (Exception ex) {
             this.ch.rollbackConnection(connection);
-            throw asDocumentStoreException(ex, "deleting " + collection + ": " + conditions);
+            throw asDocumentStoreException(ex, "deleting " + collection + ": (" + minId + ", " + maxId + ") " + conditions);
         } finally {
             this.ch.closeConnection(connection);
             stats.doneRemove(watch.elapsed(TimeUnit.NANOSECONDS), collection, numDeleted);
@@ -2068,7 +2113,6 @@ public class RDBDocumentStore implements DocumentStore {
             @NotNull UpdateOp update, Long oldmodcount) {
         Connection connection = null;
         RDBTableMetaData tmd = getTable(collection);
-        String data = null;
         try {
             connection = this.ch.getRWConnection();
             Number hasBinary = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
@@ -2078,8 +2122,8 @@ public class RDBDocumentStore implements DocumentStore {
             boolean success = false;
             boolean shouldRetry = true;
 
-            // every 16th update is a full rewrite
-            if (isAppendableUpdate(update) && modcount % 16 != 0) {
+            // every n-th update is a full rewrite
+            if (isAppendableUpdate(update) && modcount % REWRITEINTERVAL != 0) {
                 String appendData = ser.asString(update, tmd.getColumnOnlyProperties());
                 if (appendData.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
                     try {
@@ -2102,18 +2146,18 @@ public class RDBDocumentStore implements DocumentStore {
                 }
             }
             if (!success && shouldRetry) {
-                data = ser.asString(document, tmd.getColumnOnlyProperties());
                 Object m = document.get(MODIFIED);
                 long modified = (m instanceof Long) ? ((Long)m).longValue() : 0;
-                success = db.update(connection, tmd, document.getId(), modified, hasBinary, deletedOnce, modcount, cmodcount,
-                        oldmodcount, data);
+                success = db.update(connection, tmd, document, modified, hasBinary, deletedOnce, modcount, cmodcount,
+                        oldmodcount);
                 connection.commit();
             }
             return success;
         } catch (SQLException ex) {
             this.ch.rollbackConnection(connection);
             String addDiags = "";
-            if (data != null && RDBJDBCTools.matchesSQLState(ex, "22", "72")) {
+            if (RDBJDBCTools.matchesSQLState(ex, "22", "72")) {
+                String data = ser.asString(document, tmd.getColumnOnlyProperties());
                 byte[] bytes = asBytes(data);
                 addDiags = String.format(" (DATA size in Java characters: %d, in octets: %d, computed character limit: %d)",
                         data.length(), bytes.length, tmd.getDataLimitInOctets() / CHAR2OCTETRATIO);
@@ -2126,6 +2170,61 @@ public class RDBDocumentStore implements DocumentStore {
         }
     }
 
+    /**
+     * Replaces the serialization of a document consisting of a full
+     * serialization and a chain of appended updates with a full
+     * serialization of the document. This does not change the document,
+     * hence the row is rewritten with the same modcount and only if the
+     * modcount did not change in the meantime. An update appended
+     * concurrently increments the modcount, in which case the row is left
+     * as is. Failures are ignored, a later read or update will consolidate
+     * the row again. Must not be called while holding a connection.
+     */
+    private <T extends Document> void consolidate(@NotNull Collection<T> collection, @NotNull T document, int appendedUpdates) {
+        Long modcount = document.getModCount();
+        if (modcount == null) {
+            return;
+        }
+        Connection connection = null;
+        RDBTableMetaData tmd = getTable(collection);
+        try {
+            connection = this.ch.getRWConnection();
+            Number hasBinary = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
+            Boolean deletedOnce = (Boolean) document.get(NodeDocument.DELETED_ONCE);
+            Long cmodcount = (Long) document.get(COLLISIONSMODCOUNT);
+            Object m = document.get(MODIFIED);
+            long modified = (m instanceof Long) ? ((Long) m).longValue() : 0;
+            boolean success = db.update(connection, tmd, document, modified, hasBinary, deletedOnce, modcount, cmodcount,
+                    modcount);
+            connection.commit();
+            if (success) {
+                consolidations.incrementAndGet();
+                LOG.debug("Consolidated {} appended updates of {}", appendedUpdates, document.getId());
+            }
+        } catch (Exception ex) {
+            this.ch.rollbackConnection(connection);
+            LOG.debug("Consolidation of " + document.getId() + " failed", ex);
+        } finally {
+            this.ch.closeConnection(connection);
+        }
+    }
+
+    /**
+     * @return the number of rows consolidated into a full serialization of
+     *         the document when read.
+     */
+    long getConsolidationCount() {
+        return consolidations.get();
+    }
+
+    /**
+     * Sets the number of appended updates found when reading a document
+     * above which the row is consolidated (0: disabled).
+     */
+    void setConsolidationThreshold(int consolidationThreshold) {
+        this.consolidationThreshold = consolidationThreshold;
+    }
+
     private static void continueIfStringOverflow(SQLException ex) throws SQLException {
         String state = ex.getSQLState();
         if ("22001".equals(state) /* everybody */|| ("72000".equals(state) && 1489 == ex.getErrorCode()) /* Oracle */
@@ -2205,13 +2304,31 @@ public class RDBDocumentStore implements DocumentStore {
     // configuration
 
     // Whether to use GZIP compression
-    private static final boolean NOGZIP = SystemPropertySupplier
+    static final boolean NOGZIP = SystemPropertySupplier
             .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.NOGZIP", Boolean.FALSE).loggingTo(LOG).get();
 
     // Whether to use append operations (string concatenation) in the DATA column
     private static final boolean NOAPPEND = SystemPropertySupplier
             .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.NOAPPEND", Boolean.FALSE).loggingTo(LOG).get();
 
+    // Whether to write the full serialization of documents in the binary
+    // format (see RDBBinarySupport) instead of JSON
+    static final boolean BINARYFORMAT = SystemPropertySupplier
+            .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.BINARYFORMAT", Boolean.FALSE).loggingTo(LOG).get();
+
+    // Number of updates after which the document is fully rewritten instead
+    // of appending the update to the DATA column
+    private static final int REWRITEINTERVAL = SystemPropertySupplier
+            .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.REWRITEINTERVAL", 16).loggingTo(LOG)
+            .validateWith(value -> value > 0).get();
+
+    // Number of appended updates found when reading a document above which
+    // the row is consolidated into a full serialization (0: disabled). This
+    // turns a read into a write and is therefore disabled by default
+    private static final int CONSOLIDATIONTHRESHOLD = SystemPropertySupplier
+            .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.CONSOLIDATIONTHRESHOLD", 0).loggingTo(LOG)
+            .validateWith(value -> value >= 0).get();
+
     // Number of documents to insert at once for batch create
     private static final int CHUNKSIZE = SystemPropertySupplier
             .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.CHUNKSIZE", 64).loggingTo(LOG)
@@ -18,7 +18,9 @@ package org.apache.jackrabbit.oak.plugins.document.rdb;
 
 import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Sets.newHashSet;
+import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.BINARYFORMAT;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.CHAR2OCTETRATIO;
+import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.NOGZIP;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.asBytes;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJDBCTools.asDocumentStoreException;
 import static org.apache.jackrabbit.oak.plugins.document.rdb.RDBJDBCTools.closeResultSet;
@@ -187,10 +189,15 @@ public class RDBDocumentStoreJDBC {
 
     public int deleteWithCondition(Connection connection, RDBTableMetaData tmd, List<QueryCondition> conditions)
             throws SQLException, DocumentStoreException {
+        return deleteWithCondition(connection, tmd, null, null, conditions);
+    }
+
+    public int deleteWithCondition(Connection connection, RDBTableMetaData tmd, String minId, String maxId,
+            List<QueryCondition> conditions) throws SQLException, DocumentStoreException {
 
         StringBuilder query = new StringBuilder("delete from " + tmd.getName());
 
-        String whereClause = buildWhereClause(null, null, null, conditions);
+        String whereClause = buildWhereClause(minId, maxId, null, conditions);
         if (whereClause.length() != 0) {
             query.append(" where ").append(whereClause);
         }
@@ -198,6 +205,12 @@ public class RDBDocumentStoreJDBC {
         PreparedStatement stmt = connection.prepareStatement(query.toString());
         try {
             int si = 1;
+            if (minId != null) {
+                setIdInStatement(tmd, stmt, si++, minId);
+            }
+            if (maxId != null) {
+                setIdInStatement(tmd, stmt, si++, maxId);
+            }
             for (QueryCondition cond : conditions) {
                 if (cond.getOperands().size() != 1) {
                     throw new DocumentStoreException("unexpected condition: " + cond);
@@ -264,7 +277,7 @@ public class RDBDocumentStoreJDBC {
         int[] results;
         try {
             for (T document : sortedDocs) {
-                String data = this.ser.asString(document, tmd.getColumnOnlyProperties());
+                SerializedDocument data = serialize(tmd, document);
                 String id = document.getId();
                 Number hasBinary = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
                 Boolean deletedOnce = (Boolean) document.get(NodeDocument.DELETED_ONCE);
@@ -277,19 +290,12 @@ public class RDBDocumentStoreJDBC {
                 stmt.setObject(si++, deletedOnceAsNullOrInteger(deletedOnce), Types.SMALLINT);
                 stmt.setObject(si++, document.get(MODCOUNT), Types.BIGINT);
                 stmt.setObject(si++, cmodcount == null ? Long.valueOf(0) : cmodcount, Types.BIGINT);
-                stmt.setObject(si++, data.length(), Types.BIGINT);
+                stmt.setObject(si++, data.size, Types.BIGINT);
                 if (tmd.hasSplitDocs()) {
                     stmt.setObject(si++, document.get(NodeDocument.SD_TYPE));
                     stmt.setObject(si++, document.get(NodeDocument.SD_MAX_REV_TIME_IN_SECS));
                 }
-                if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
-                    setDataInStatement(tmd, stmt, si++, data);
-                    stmt.setBinaryStream(si++, null, 0);
-                } else {
-                    setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                    byte[] bytes = asBytes(data);
-                    stmt.setBytes(si++, bytes);
-                }
+                si = setSerializedDocumentInStatement(tmd, stmt, si, data);
                 stmt.addBatch();
             }
             results = stmt.executeBatch();
@@ -350,7 +356,7 @@ public class RDBDocumentStoreJDBC {
                     continue; // This is a new document. We'll deal with the inserts later.
                 }
 
-                String data = this.ser.asString(document, tmd.getColumnOnlyProperties());
+                SerializedDocument data = serialize(tmd, document);
                 Number hasBinary = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
                 Boolean deletedOnce = (Boolean) document.get(NodeDocument.DELETED_ONCE);
                 Long cmodcount = (Long) document.get(COLLISIONSMODCOUNT);
@@ -361,16 +367,8 @@ public class RDBDocumentStoreJDBC {
                 stmt.setObject(si++, deletedOnceAsNullOrInteger(deletedOnce), Types.SMALLINT);
                 stmt.setObject(si++, modcount, Types.BIGINT);
                 stmt.setObject(si++, cmodcount == null ? Long.valueOf(0) : cmodcount, Types.BIGINT);
-                stmt.setObject(si++, data.length(), Types.BIGINT);
-
-                if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
-                    setDataInStatement(tmd, stmt, si++, data);
-                    stmt.setBinaryStream(si++, null, 0);
-                } else {
-                    setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                    byte[] bytes = asBytes(data);
-                    stmt.setBytes(si++, bytes);
-                }
+                stmt.setObject(si++, data.size, Types.BIGINT);
+                si = setSerializedDocumentInStatement(tmd, stmt, si, data);
 
                 setIdInStatement(tmd, stmt, si++, document.getId());
                 stmt.setObject(si++, modcount - 1, Types.BIGINT);
@@ -526,6 +524,26 @@ public class RDBDocumentStoreJDBC {
         return result;
     }
 
+    @NotNull
+    public List<String> queryIds(Connection connection, RDBTableMetaData tmd, String minId, String maxId, int limit)
+            throws SQLException {
+        List<String> result = new ArrayList<String>();
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = prepareQuery(connection, tmd, "ID", minId, maxId, Collections.<String>emptyList(),
+                    Collections.<QueryCondition>emptyList(), limit, "ID");
+            rs = stmt.executeQuery();
+            while (rs.next() && result.size() < limit) {
+                result.add(getIdFromRS(tmd, rs, 1));
+            }
+        } finally {
+            closeStatement(stmt);
+            closeResultSet(rs);
+        }
+        return result;
+    }
+
     public long getLong(Connection connection, RDBTableMetaData tmd, String aggregate, String field, String minId, String maxId,
             List<String> excludeKeyPatterns, List<QueryCondition> conditions) throws SQLException {
         PreparedStatement stmt = null;
@@ -754,71 +772,88 @@ public class RDBDocumentStoreJDBC {
         return stmt;
     }
 
+    /**
+     * Reads the rows with the given keys. The keys are split into chunks of
+     * at most {@link RDBJDBCTools#MAX_IN_CLAUSE} keys, each read with a
+     * single "IN" query. The prepared statement is re-used for subsequent
+     * chunks of the same size, so that the statement is only prepared once
+     * (or twice, in case the last chunk is smaller) for a large number of
+     * keys.
+     */
     public List<RDBRow> read(Connection connection, RDBTableMetaData tmd, Collection<String> allKeys) throws SQLException {
 
         List<RDBRow> rows = new ArrayList<RDBRow>();
 
-        for (List<String> keys : Iterables.partition(allKeys, RDBJDBCTools.MAX_IN_CLAUSE)) {
-            long pstart = PERFLOG.start(PERFLOG.isDebugEnabled() ? ("reading: " + keys) : null);
-
-            PreparedStatementComponent inClause = RDBJDBCTools.createInStatement("ID", keys, tmd.isIdBinary());
-            StringBuilder query = new StringBuilder();
-            if (tmd.hasSplitDocs()) {
-                query.append("select ID, MODIFIED, MODCOUNT, CMODCOUNT, HASBINARY, DELETEDONCE, VERSION, SDTYPE, SDMAXREVTIME, DATA, BDATA from ");
-            } else if (tmd.hasVersion()) {
-                query.append("select ID, MODIFIED, MODCOUNT, CMODCOUNT, HASBINARY, DELETEDONCE, VERSION, DATA, BDATA from ");
-            } else {
-                query.append("select ID, MODIFIED, MODCOUNT, CMODCOUNT, HASBINARY, DELETEDONCE, DATA, BDATA from ");
-            }
-            query.append(tmd.getName());
-            query.append(" where ").append(inClause.getStatementComponent());
-
-            PreparedStatement stmt = connection.prepareStatement(query.toString());
-            ResultSet rs = null;
-            stmt.setPoolable(false);
-            try {
-                inClause.setParameters(stmt,  1);
-                rs = stmt.executeQuery();
+        PreparedStatement stmt = null;
+        int stmtKeys = -1;
+        try {
+            for (List<String> keys : Iterables.partition(allKeys, RDBJDBCTools.MAX_IN_CLAUSE)) {
+                long pstart = PERFLOG.start(PERFLOG.isDebugEnabled() ? ("reading: " + keys) : null);
+
+                PreparedStatementComponent inClause = RDBJDBCTools.createInStatement("ID", keys, tmd.isIdBinary());
+                if (stmt == null || stmtKeys != keys.size()) {
+                    stmt = closeStatement(stmt);
+                    StringBuilder query = new StringBuilder();
+                    if (tmd.hasSplitDocs()) {
+                        query.append("select ID, MODIFIED, MODCOUNT, CMODCOUNT, HASBINARY, DELETEDONCE, VERSION, SDTYPE, SDMAXREVTIME, DATA, BDATA from ");
+                    } else if (tmd.hasVersion()) {
+                        query.append("select ID, MODIFIED, MODCOUNT, CMODCOUNT, HASBINARY, DELETEDONCE, VERSION, DATA, BDATA from ");
+                    } else {
+                        query.append("select ID, MODIFIED, MODCOUNT, CMODCOUNT, HASBINARY, DELETEDONCE, DATA, BDATA from ");
+                    }
+                    query.append(tmd.getName());
+                    query.append(" where ").append(inClause.getStatementComponent());
 
-                while (rs.next()) {
-                    int field = 1;
-                    String id = getIdFromRS(tmd, rs, field++);
-                    long modified = readLongFromResultSet(rs, field++);
-                    long modcount = readLongFromResultSet(rs, field++);
-                    long cmodcount = readLongFromResultSet(rs, field++);
-                    Long hasBinary = readLongOrNullFromResultSet(rs, field++);
-                    Boolean deletedOnce = readBooleanOrNullFromResultSet(rs, field++);
-                    long schemaVersion = tmd.hasVersion() ? readLongFromResultSet(rs, field++) : 0;
-                    long sdType = tmd.hasSplitDocs() ? readLongFromResultSet(rs, field++) : RDBRow.LONG_UNSET;
-                    long sdMaxRevTime = tmd.hasSplitDocs() ? readLongFromResultSet(rs, field++) : RDBRow.LONG_UNSET;
-                    String data = rs.getString(field++);
-                    byte[] bdata = rs.getBytes(field++);
-                    RDBRow row = new RDBRow(id, hasBinary, deletedOnce, modified, modcount, cmodcount, schemaVersion, sdType,
-                            sdMaxRevTime, data, bdata);
-                    rows.add(row);
-                    PERFLOG.end(pstart, 10, "read: table={}, id={} -> modcount={}, modified={}, data={}, bdata={}", tmd.getName(), id,
-                            modcount, modified, (data == null ? 0 : data.length()), (bdata == null ? 0 : bdata.length));
+                    stmt = connection.prepareStatement(query.toString());
+                    stmt.setPoolable(false);
+                    stmtKeys = keys.size();
                 }
-            } catch (SQLException ex) {
-                LOG.debug("attempting to read " + keys, ex);
-                PERFLOG.end(pstart, 10, "read: table={} -> exception={}", tmd.getName(), ex.getMessage());
-
-                // DB2 throws an SQLException for invalid keys; handle this more
-                // gracefully
-                if ("22001".equals(ex.getSQLState())) {
-                    try {
-                        connection.rollback();
-                    } catch (SQLException ex2) {
-                        LOG.debug("failed to rollback", ex2);
+                ResultSet rs = null;
+                try {
+                    inClause.setParameters(stmt,  1);
+                    rs = stmt.executeQuery();
+
+                    while (rs.next()) {
+                        int field = 1;
+                        String id = getIdFromRS(tmd, rs, field++);
+                        long modified = readLongFromResultSet(rs, field++);
+                        long modcount = readLongFromResultSet(rs, field++);
+                        long cmodcount = readLongFromResultSet(rs, field++);
+                        Long hasBinary = readLongOrNullFromResultSet(rs, field++);
+                        Boolean deletedOnce = readBooleanOrNullFromResultSet(rs, field++);
+                        long schemaVersion = tmd.hasVersion() ? readLongFromResultSet(rs, field++) : 0;
+                        long sdType = tmd.hasSplitDocs() ? readLongFromResultSet(rs, field++) : RDBRow.LONG_UNSET;
+                        long sdMaxRevTime = tmd.hasSplitDocs() ? readLongFromResultSet(rs, field++) : RDBRow.LONG_UNSET;
+                        String data = rs.getString(field++);
+                        byte[] bdata = rs.getBytes(field++);
+                        RDBRow row = new RDBRow(id, hasBinary, deletedOnce, modified, modcount, cmodcount, schemaVersion, sdType,
+                                sdMaxRevTime, data, bdata);
+                        rows.add(row);
+                        PERFLOG.end(pstart, 10, "read: table={}, id={} -> modcount={}, modified={}, data={}, bdata={}", tmd.getName(), id,
+                                modcount, modified, (data == null ? 0 : data.length()), (bdata == null ? 0 : bdata.length));
                     }
-                    return null;
-                } else {
-                    throw (ex);
+                } catch (SQLException ex) {
+                    LOG.debug("attempting to read " + keys, ex);
+                    PERFLOG.end(pstart, 10, "read: table={} -> exception={}", tmd.getName(), ex.getMessage());
+
+                    // DB2 throws an SQLException for invalid keys; handle this more
+                    // gracefully
+                    if ("22001".equals(ex.getSQLState())) {
+                        try {
+                            connection.rollback();
+                        } catch (SQLException ex2) {
+                            LOG.debug("failed to rollback", ex2);
+                        }
+                        return null;
+                    } else {
+                        throw (ex);
+                    }
+                } finally {
+                    closeResultSet(rs);
                 }
-            } finally {
-                closeResultSet(rs);
-                closeStatement(stmt);
             }
+        } finally {
+            closeStatement(stmt);
         }
         return rows;
     }
@@ -911,8 +946,11 @@ public class RDBDocumentStoreJDBC {
         }
     }
 
-    public boolean update(Connection connection, RDBTableMetaData tmd, String id, Long modified, Number hasBinary,
-            Boolean deletedOnce, Long modcount, Long cmodcount, Long oldmodcount, String data) throws SQLException {
+    public boolean update(Connection connection, RDBTableMetaData tmd, Document document, Long modified, Number hasBinary,
+            Boolean deletedOnce, Long modcount, Long cmodcount, Long oldmodcount) throws SQLException {
+
+        String id = document.getId();
+        SerializedDocument data = serialize(tmd, document);
 
         StringBuilder t = new StringBuilder();
         t.append("update " + tmd.getName() + " set ");
@@ -930,16 +968,8 @@ public class RDBDocumentStoreJDBC {
             stmt.setObject(si++, deletedOnceAsNullOrInteger(deletedOnce), Types.SMALLINT);
             stmt.setObject(si++, modcount, Types.BIGINT);
             stmt.setObject(si++, cmodcount == null ? Long.valueOf(0) : cmodcount, Types.BIGINT);
-            stmt.setObject(si++, data.length(), Types.BIGINT);
-
-            if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
-                setDataInStatement(tmd, stmt, si++, data);
-                stmt.setBinaryStream(si++, null, 0);
-            } else {
-                setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                byte[] bytes = asBytes(data);
-                stmt.setBytes(si++, bytes);
-            }
+            stmt.setObject(si++, data.size, Types.BIGINT);
+            si = setSerializedDocumentInStatement(tmd, stmt, si, data);
 
             setIdInStatement(tmd, stmt, si++, id);
 
@@ -1079,6 +1109,48 @@ public class RDBDocumentStoreJDBC {
         }
     }
 
+    /**
+     * The serialization of a document as written to the DATA and BDATA
+     * columns.
+     */
+    private static final class SerializedDocument {
+
+        private final String data;
+        private final byte[] bdata;
+        private final long size;
+
+        SerializedDocument(String data, byte[] bdata, long size) {
+            this.data = data;
+            this.bdata = bdata;
+            this.size = size;
+        }
+    }
+
+    private SerializedDocument serialize(RDBTableMetaData tmd, Document document) {
+        if (BINARYFORMAT) {
+            // full serialization always goes to BDATA
+            byte[] bytes = this.ser.asBytes(document, tmd.getColumnOnlyProperties(), !NOGZIP);
+            return new SerializedDocument("\"blob\"", bytes, bytes.length);
+        }
+        String data = this.ser.asString(document, tmd.getColumnOnlyProperties());
+        if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
+            return new SerializedDocument(data, null, data.length());
+        } else {
+            return new SerializedDocument("\"blob\"", asBytes(data), data.length());
+        }
+    }
+
+    private static int setSerializedDocumentInStatement(RDBTableMetaData tmd, PreparedStatement stmt, int idx,
+            SerializedDocument data) throws SQLException {
+        setDataInStatement(tmd, stmt, idx++, data.data);
+        if (data.bdata == null) {
+            stmt.setBinaryStream(idx++, null, 0);
+        } else {
+            stmt.setBytes(idx++, data.bdata);
+        }
+        return idx;
+    }
+
     private static void setDataInStatement(RDBTableMetaData tmd, PreparedStatement stmt, int idx, String id) throws SQLException {
         if (tmd.isDataNChar()) {
             stmt.setNString(idx, id);
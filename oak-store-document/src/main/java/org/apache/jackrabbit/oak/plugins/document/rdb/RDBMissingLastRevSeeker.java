@@ -64,11 +64,26 @@ public class RDBMissingLastRevSeeker extends MissingLastRevSeeker {
         if (MODE == 1) {
             return super.getCandidates(startTime);
         } else {
-            List<QueryCondition> conditions = new ArrayList<>();
-            conditions.add(new QueryCondition(NodeDocument.MODIFIED_IN_SECS, ">=", NodeDocument.getModifiedInSecs(startTime)));
-            conditions.add(new QueryCondition(NodeDocument.SD_TYPE, "is null"));
-            return store.queryAsIterable(Collection.NODES, null, null, RDBDocumentStore.EMPTY_KEY_PATTERN, conditions,
-                    Integer.MAX_VALUE, null);
+            return queryCandidates(startTime, null, null);
         }
     }
+
+    @Override
+    @NotNull
+    public Iterable<NodeDocument> getCandidates(final long startTime, @NotNull String fromId, @NotNull String toId) {
+        LOG.debug("Running getCandidates() for range {}..{} in mode {}", fromId, toId, MODE);
+        if (MODE == 1) {
+            return super.getCandidates(startTime, fromId, toId);
+        } else {
+            return queryCandidates(startTime, fromId, toId);
+        }
+    }
+
+    private Iterable<NodeDocument> queryCandidates(long startTime, String fromId, String toId) {
+        List<QueryCondition> conditions = new ArrayList<>();
+        conditions.add(new QueryCondition(NodeDocument.MODIFIED_IN_SECS, ">=", NodeDocument.getModifiedInSecs(startTime)));
+        conditions.add(new QueryCondition(NodeDocument.SD_TYPE, "is null"));
+        return store.queryAsIterable(Collection.NODES, fromId, toId, RDBDocumentStore.EMPTY_KEY_PATTERN, conditions,
+                Integer.MAX_VALUE, null);
+    }
 }
@@ -37,6 +37,7 @@ public class RDBRow {
     private final long sdType, sdMaxRevTime;
     private final String data;
     private final byte[] bdata;
+    private int appendedUpdates = -1;
 
     public RDBRow(String id, Long hasBinaryProperties, Boolean deletedOnce, Long modified, Long modcount, Long cmodcount,
             Long schemaVersion, Long sdType, Long sdMaxRevTime, String data, byte[] bdata) {
@@ -119,4 +120,17 @@ public class RDBRow {
     public byte[] getBdata() {
         return bdata;
     }
+
+    /**
+     * @return the number of update operations appended to the full
+     *         serialization of the document, or -1 when the row was not
+     *         parsed yet
+     */
+    public int getAppendedUpdates() {
+        return appendedUpdates;
+    }
+
+    void setAppendedUpdates(int appendedUpdates) {
+        this.appendedUpdates = appendedUpdates;
+    }
 }
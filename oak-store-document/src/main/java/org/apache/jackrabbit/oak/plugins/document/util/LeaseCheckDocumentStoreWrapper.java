@@ -113,6 +113,34 @@ public final class LeaseCheckDocumentStoreWrapper implements DocumentStore {
         return delegate.remove(collection, indexedProperty, startValue, endValue);
     }
 
+    @Override
+    public <T extends Document> int remove(Collection<T> collection,
+                                           String fromKey, String toKey)
+            throws DocumentStoreException {
+        performLeaseCheck();
+        return delegate.remove(collection, fromKey, toKey);
+    }
+
+    @NotNull
+    @Override
+    public final <T extends Document> List<String> sampleKeys(Collection<T> collection,
+                                                              int n)
+            throws DocumentStoreException {
+        performLeaseCheck();
+        return delegate.sampleKeys(collection, n);
+    }
+
+    @NotNull
+    @Override
+    public final <T extends Document> List<String> queryKeys(Collection<T> collection,
+                                                             String fromKey,
+                                                             String toKey,
+                                                             int limit)
+            throws DocumentStoreException {
+        performLeaseCheck();
+        return delegate.queryKeys(collection, fromKey, toKey, limit);
+    }
+
     @Override
     public final <T extends Document> boolean create(Collection<T> collection,
             List<UpdateOp> updateOps) {
@@ -141,6 +169,13 @@ public final class LeaseCheckDocumentStoreWrapper implements DocumentStore {
         return delegate.findAndUpdate(collection, update);
     }
 
+    @Override
+    public final <T extends Document> List<T> findAndUpdate(Collection<T> collection,
+            List<UpdateOp> updateOps) {
+        performLeaseCheck();
+        return delegate.findAndUpdate(collection, updateOps);
+    }
+
     @Override
     public final CacheInvalidationStats invalidateCache() {
         performLeaseCheck();
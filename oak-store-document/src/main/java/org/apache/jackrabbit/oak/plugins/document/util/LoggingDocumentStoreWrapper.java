@@ -199,6 +199,64 @@ public class LoggingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @Override
+    public <T extends Document> int remove(final Collection<T> collection,
+                                           final String fromKey, final String toKey)
+            throws DocumentStoreException {
+        try {
+            logMethod("remove", collection, fromKey, toKey);
+            return logResult(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return store.remove(collection, fromKey, toKey);
+                }
+            });
+        } catch (Exception e) {
+            logException(e);
+            throw convert(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> List<String> sampleKeys(final Collection<T> collection,
+                                                        final int n)
+            throws DocumentStoreException {
+        try {
+            logMethod("sampleKeys", collection, n);
+            return logResult(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    return store.sampleKeys(collection, n);
+                }
+            });
+        } catch (Exception e) {
+            logException(e);
+            throw convert(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> List<String> queryKeys(final Collection<T> collection,
+                                                       final String fromKey,
+                                                       final String toKey,
+                                                       final int limit)
+            throws DocumentStoreException {
+        try {
+            logMethod("queryKeys", collection, fromKey, toKey, limit);
+            return logResult(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    return store.queryKeys(collection, fromKey, toKey, limit);
+                }
+            });
+        } catch (Exception e) {
+            logException(e);
+            throw convert(e);
+        }
+    }
+
     @Override
     public <T extends Document> boolean create(final Collection<T> collection,
                                                final List<UpdateOp> updateOps) {
@@ -267,6 +325,23 @@ public class LoggingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @Override
+    public <T extends Document> List<T> findAndUpdate(final Collection<T> collection,
+                                                      final List<UpdateOp> updateOps) {
+        try {
+            logMethod("findAndUpdate", collection, updateOps);
+            return logResult(new Callable<List<T>>() {
+                @Override
+                public List<T> call() throws Exception {
+                    return store.findAndUpdate(collection, updateOps);
+                }
+            });
+        } catch (Exception e) {
+            logException(e);
+            throw convert(e);
+        }
+    }
+
     @Override
     public CacheInvalidationStats invalidateCache() {
         try {
@@ -87,6 +87,28 @@ public class SynchronizingDocumentStoreWrapper implements DocumentStore {
         return store.remove(collection, indexedProperty, startValue, endValue);
     }
 
+    @Override
+    public synchronized <T extends Document> int remove(Collection<T> collection,
+                                                        String fromKey, String toKey)
+            throws DocumentStoreException {
+        return store.remove(collection, fromKey, toKey);
+    }
+
+    @NotNull
+    @Override
+    public synchronized <T extends Document> List<String> sampleKeys(Collection<T> collection, int n)
+            throws DocumentStoreException {
+        return store.sampleKeys(collection, n);
+    }
+
+    @NotNull
+    @Override
+    public synchronized <T extends Document> List<String> queryKeys(Collection<T> collection, String fromKey,
+                                                                    String toKey, int limit)
+            throws DocumentStoreException {
+        return store.queryKeys(collection, fromKey, toKey, limit);
+    }
+
     @Override
     public synchronized <T extends Document> boolean create(final Collection<T> collection, final List<UpdateOp> updateOps) {
         return store.create(collection, updateOps);
@@ -107,6 +129,11 @@ public class SynchronizingDocumentStoreWrapper implements DocumentStore {
         return store.findAndUpdate(collection, update);
     }
 
+    @Override
+    public synchronized <T extends Document> List<T> findAndUpdate(Collection<T> collection, List<UpdateOp> updateOps) {
+        return store.findAndUpdate(collection, updateOps);
+    }
+
     @Override
     public synchronized CacheInvalidationStats invalidateCache() {
         return store.invalidateCache();
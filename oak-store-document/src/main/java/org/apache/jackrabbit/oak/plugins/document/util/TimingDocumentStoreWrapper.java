@@ -247,6 +247,59 @@ public class TimingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @Override
+    public <T extends Document> int remove(Collection<T> collection,
+                                           String fromKey, String toKey)
+            throws DocumentStoreException {
+        try {
+            long start = now();
+            int result = base.remove(collection, fromKey, toKey);
+            updateAndLogTimes("remove", start, 0, 0);
+            if (logCommonCall()) {
+                logCommonCall(start, "remove " + collection +
+                    "; key range - (" + fromKey + ", " + toKey + ")");
+            }
+            return result;
+        } catch (Exception e) {
+            throw convert(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> List<String> sampleKeys(Collection<T> collection, int n)
+            throws DocumentStoreException {
+        try {
+            long start = now();
+            List<String> result = base.sampleKeys(collection, n);
+            updateAndLogTimes("sampleKeys", start, 0, result.size());
+            if (logCommonCall()) {
+                logCommonCall(start, "sampleKeys " + collection + " " + n);
+            }
+            return result;
+        } catch (Exception e) {
+            throw convert(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public <T extends Document> List<String> queryKeys(Collection<T> collection, String fromKey,
+                                                       String toKey, int limit)
+            throws DocumentStoreException {
+        try {
+            long start = now();
+            List<String> result = base.queryKeys(collection, fromKey, toKey, limit);
+            updateAndLogTimes("queryKeys", start, 0, result.size());
+            if (logCommonCall()) {
+                logCommonCall(start, "queryKeys " + collection + " " + fromKey + " " + toKey + " " + limit);
+            }
+            return result;
+        } catch (Exception e) {
+            throw convert(e);
+        }
+    }
+
 
     @Override
     public <T extends Document> boolean create(Collection<T> collection, List<UpdateOp> updateOps) {
@@ -314,6 +367,26 @@ public class TimingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @Override
+    @NotNull
+    public <T extends Document> List<T> findAndUpdate(Collection<T> collection, List<UpdateOp> updateOps) {
+        try {
+            long start = now();
+            List<T> result = base.findAndUpdate(collection, updateOps);
+            updateAndLogTimes("findAndUpdate", start, 0, size(result));
+            if (logCommonCall()) {
+                List<String> ids = new ArrayList<String>();
+                for (UpdateOp op : updateOps) {
+                    ids.add(op.getId());
+                }
+                logCommonCall(start, "findAndUpdate " + collection + " " + ids);
+            }
+            return result;
+        } catch (Exception e) {
+            throw convert(e);
+        }
+    }
+
     @Override
     public CacheInvalidationStats invalidateCache() {
         try {
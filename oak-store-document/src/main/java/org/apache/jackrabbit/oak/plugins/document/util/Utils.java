@@ -720,9 +720,39 @@ public class Utils {
         return internalGetSelectedDocuments(store, indexedProperty, startValue, DEFAULT_BATCH_SIZE);
     }
 
+    /**
+     * Like {@link #getSelectedDocuments(DocumentStore, String, long)}, but
+     * restricted to documents with an id greater than {@code fromId} and less
+     * than {@code toId}.
+     *
+     * @param store
+     *            a {@link DocumentStore}.
+     * @param indexedProperty the name of the indexed property.
+     * @param startValue the lower bound value for the indexed property
+     *                   (inclusive).
+     * @param fromId the lower bound of the id range (exclusive).
+     * @param toId the upper bound of the id range (exclusive).
+     * @return an {@link Iterable} over all documents in the id range matching
+     *         the condition
+     */
+    public static Iterable<NodeDocument> getSelectedDocuments(
+            DocumentStore store, String indexedProperty, long startValue,
+            String fromId, String toId) {
+        return internalGetSelectedDocuments(store, indexedProperty, startValue,
+                checkNotNull(fromId), checkNotNull(toId), DEFAULT_BATCH_SIZE);
+    }
+
     private static Iterable<NodeDocument> internalGetSelectedDocuments(
             final DocumentStore store, final String indexedProperty,
             final long startValue, final int batchSize) {
+        return internalGetSelectedDocuments(store, indexedProperty, startValue,
+                NodeDocument.MIN_ID_VALUE, NodeDocument.MAX_ID_VALUE, batchSize);
+    }
+
+    private static Iterable<NodeDocument> internalGetSelectedDocuments(
+            final DocumentStore store, final String indexedProperty,
+            final long startValue, final String fromId, final String toId,
+            final int batchSize) {
         if (batchSize < 2) {
             throw new IllegalArgumentException("batchSize must be > 1");
         }
@@ -731,7 +761,7 @@ public class Utils {
             public Iterator<NodeDocument> iterator() {
                 return new AbstractIterator<NodeDocument>() {
 
-                    private String startId = NodeDocument.MIN_ID_VALUE;
+                    private String startId = fromId;
 
                     private Iterator<NodeDocument> batch = nextBatch();
 
@@ -755,8 +785,8 @@ public class Utils {
 
                     private Iterator<NodeDocument> nextBatch() {
                         List<NodeDocument> result = indexedProperty == null ? store.query(Collection.NODES, startId,
-                                NodeDocument.MAX_ID_VALUE, batchSize) : store.query(Collection.NODES, startId,
-                                NodeDocument.MAX_ID_VALUE, indexedProperty, startValue, batchSize);
+                                toId, batchSize) : store.query(Collection.NODES, startId,
+                                toId, indexedProperty, startValue, batchSize);
                         return result.iterator();
                     }
                 };
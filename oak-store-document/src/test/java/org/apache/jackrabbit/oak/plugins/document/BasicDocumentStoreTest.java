@@ -28,6 +28,7 @@ import static org.junit.Assume.assumeTrue;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -459,6 +460,48 @@ public class BasicDocumentStoreTest extends AbstractDocumentStoreTest {
                 ds.remove(Collection.JOURNAL, "_modified", 28, 40));
     }
 
+    @Test
+    public void testKeyRangeRemove() {
+        String idPrefix = this.getClass().getName() + ".testKeyRangeRemove-";
+
+        for (int i = 10; i < 40; i++) {
+            String id = idPrefix + i;
+            // remove if present
+            Document d = super.ds.find(Collection.JOURNAL, id);
+            if (d != null) {
+                super.ds.remove(Collection.JOURNAL, id);
+            }
+
+            // add
+            UpdateOp up = new UpdateOp(id, true);
+            up.set("_modified", (long) i);
+            super.ds.create(Collection.JOURNAL, Collections.singletonList(up));
+            removeMeJournal.add(id);
+        }
+
+        assertEquals(Arrays.asList(idPrefix + 21, idPrefix + 22),
+                ds.queryKeys(Collection.JOURNAL, idPrefix + 20, idPrefix + 24, 2));
+
+        assertEquals("Number of entries removed didn't match", 3,
+                ds.remove(Collection.JOURNAL, idPrefix + 20, idPrefix + 24));
+
+        assertEquals("Number of entries removed didn't match", 0,
+                ds.remove(Collection.JOURNAL, idPrefix + 20, idPrefix + 24));
+
+        assertEquals("Number of entries removed didn't match", 10,
+                ds.remove(Collection.JOURNAL, idPrefix, idPrefix + 20));
+
+        // interesting cases
+        assertEquals("Number of entries removed didn't match", 0,
+                ds.remove(Collection.JOURNAL, idPrefix + 30, idPrefix + 29));
+
+        assertEquals("Number of entries removed didn't match", 2,
+                ds.remove(Collection.JOURNAL, idPrefix + 37, idPrefix + "9"));
+
+        assertNotNull(ds.find(Collection.JOURNAL, idPrefix + 37));
+        assertNull(ds.find(Collection.JOURNAL, idPrefix + 38));
+    }
+
     private int testMaxId(boolean ascii) {
         int min = 0;
         int max = 32768;
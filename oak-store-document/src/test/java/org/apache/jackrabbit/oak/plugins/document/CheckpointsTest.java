@@ -44,6 +44,8 @@ import static org.junit.Assert.assertTrue;
 
 public class CheckpointsTest {
 
+    private static final String CHECKPOINT_VIEW = "oak.documentMK.checkpointView";
+
     @Rule
     public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
     
@@ -418,4 +420,50 @@ public class CheckpointsTest {
         assertTrue(root.hasChildNode("foo"));
         assertFalse(root.hasChildNode("bar"));
     }
+
+    @Test
+    public void cachedView() throws Exception {
+        System.setProperty(CHECKPOINT_VIEW, "true");
+        try {
+            CountingDocumentStore counting = new CountingDocumentStore(new MemoryDocumentStore());
+            DocumentNodeStore ns1 = builderProvider.newBuilder().setClusterId(1)
+                    .setDocumentStore(counting).setAsyncDelay(0).getNodeStore();
+            DocumentNodeStore ns2 = builderProvider.newBuilder().setClusterId(2)
+                    .setDocumentStore(counting).setAsyncDelay(0).getNodeStore();
+
+            String cp1 = ns1.checkpoint(Long.MAX_VALUE);
+            Revision oldest = ns1.getCheckpoints().getOldestRevisionToKeep();
+            assertNotNull(oldest);
+
+            // repeated reads are served from the view
+            counting.resetCounters();
+            for (int i = 0; i < 10; i++) {
+                assertEquals(oldest, ns1.getCheckpoints().getOldestRevisionToKeep());
+                assertNotNull(ns1.retrieve(cp1));
+                assertTrue(ns1.checkpoints().iterator().hasNext());
+            }
+            assertEquals(0, counting.getNumFindCalls(Collection.SETTINGS));
+
+            // a checkpoint created by another cluster node is found on
+            // retrieve even before the next background read
+            String cp2 = ns2.checkpoint(Long.MAX_VALUE);
+            assertNotNull(ns1.retrieve(cp2));
+            assertEquals(2, ns1.getCheckpoints().getCachedCheckpoints().size());
+
+            // a release by another cluster node becomes visible with
+            // the next background read
+            ns2.release(cp1);
+            assertEquals(2, ns1.getCheckpoints().getCachedCheckpoints().size());
+            ns1.runBackgroundOperations();
+            assertNull(ns1.retrieve(cp1));
+            assertEquals(1, ns1.getCheckpoints().getCachedCheckpoints().size());
+
+            // local release is visible immediately
+            ns1.release(cp2);
+            assertNull(ns1.retrieve(cp2));
+            assertNull(ns1.getCheckpoints().getOldestRevisionToKeep());
+        } finally {
+            System.clearProperty(CHECKPOINT_VIEW);
+        }
+    }
 }
@@ -87,6 +87,19 @@ public class ClusterNodeInfoTest {
         assertFalse(handler.isLeaseFailure());
     }
 
+    @Test
+    public void renewLeaseForced() throws Exception {
+        ClusterNodeInfo info = newClusterNodeInfo(1);
+        long leaseEnd = info.getLeaseEndTime();
+        clock.waitUntil(clock.getTime() + 1000);
+        // within lease update interval
+        assertFalse(info.renewLease());
+        assertEquals(leaseEnd, info.getLeaseEndTime());
+        assertTrue(info.renewLease(true));
+        assertTrue(info.getLeaseEndTime() > leaseEnd);
+        assertFalse(handler.isLeaseFailure());
+    }
+
     @Test
     public void renewLeaseExceptionBefore() throws Exception {
         ClusterNodeInfo info = newClusterNodeInfo(1);
@@ -274,6 +287,7 @@ public class ClusterNodeInfoTest {
         assertEquals(0, info.getId());
         assertEquals(Long.MAX_VALUE, info.getLeaseEndTime());
         assertFalse(info.renewLease());
+        assertFalse(info.renewLease(true));
     }
 
     @Test
@@ -28,6 +28,7 @@ import com.codahale.metrics.Snapshot;
 import com.codahale.metrics.Timer;
 
 import org.apache.jackrabbit.oak.commons.concurrent.ExecutorCloser;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreStatsCollector.DiffCacheTier;
 import org.apache.jackrabbit.oak.plugins.metric.MetricStatisticsProvider;
 import org.junit.After;
 import org.junit.Test;
@@ -86,6 +87,20 @@ public class DocumentNodeStoreStatsTest {
         assertEquals(105, m.getCount());
     }
 
+    @Test
+    public void diffCacheHitRate() {
+        assertEquals(0.0, stats.getDiffCacheHitRate(DiffCacheTier.LOCAL), 0.0);
+        stats.doneDiffCacheLookup(DiffCacheTier.LOCAL);
+        stats.doneDiffCacheLookup(DiffCacheTier.MEMORY);
+        stats.doneDiffCacheLookup(DiffCacheTier.MEMORY);
+        stats.doneDiffCacheLookup(DiffCacheTier.JOURNAL);
+        assertEquals(4, getMeter(DocumentNodeStoreStats.DIFF_CACHE_LOOKUP).getCount());
+        assertEquals(0.25, stats.getDiffCacheHitRate(DiffCacheTier.LOCAL), 0.0);
+        assertEquals(0.5, stats.getDiffCacheHitRate(DiffCacheTier.MEMORY), 0.0);
+        assertEquals(0.25, stats.getDiffCacheHitRate(DiffCacheTier.JOURNAL), 0.0);
+        assertEquals(0.0, stats.getDiffCacheHitRate(DiffCacheTier.DOCUMENT), 0.0);
+    }
+
     private Meter getMeter(String name) {
         return statsProvider.getRegistry().getMeters().get(name);
     }
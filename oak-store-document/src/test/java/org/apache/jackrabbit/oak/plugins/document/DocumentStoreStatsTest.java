@@ -77,6 +77,8 @@ public class DocumentStoreStatsTest {
         stats.doneFindUncached(100, Collection.SETTINGS, "0:/", true, false);
         //Nothing change for other collection
         assertEquals(2, getMeter(DocumentStoreStats.NODES_FIND_PRIMARY).getCount());
+        assertEquals(2, stats.getNodesFindFromPrimaryCount());
+        assertEquals(1, stats.getNodesFindFromSecondaryCount());
     }
 
     @Test
@@ -92,6 +94,9 @@ public class DocumentStoreStatsTest {
         stats.doneQuery(100, Collection.NODES, "foo", "bar", false, 7, 1000, false);
         assertEquals(2, getMeter(DocumentStoreStats.NODES_QUERY_PRIMARY).getCount());
         assertEquals(1, getMeter(DocumentStoreStats.NODES_QUERY_LOCK).getCount());
+
+        assertEquals(2, stats.getNodesQueryFromPrimaryCount());
+        assertEquals(1, stats.getNodesQueryFromSecondaryCount());
     }
 
     @Test
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GroupCommitTest {
+
+    private static final int NUM_DOCS = 5;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private BlockingStore store;
+
+    private BatchCommitQueue queue;
+
+    @Before
+    public void before() {
+        store = new BlockingStore();
+        List<UpdateOp> ops = Lists.newArrayList();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            UpdateOp op = new UpdateOp(id(i), true);
+            op.set("p", 0L);
+            ops.add(op);
+        }
+        assertTrue(store.create(NODES, ops));
+        queue = new BatchCommitQueue(store, 1);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void groupUpdates() throws Exception {
+        // first update blocks in the store and keeps the group in progress
+        Future<NodeDocument> first = executor.submit(queue.updateDocument(update(0, 1L)));
+        assertTrue(store.blocked.await(10, TimeUnit.SECONDS));
+
+        List<Future<NodeDocument>> results = Lists.newArrayList();
+        for (int i = 1; i < NUM_DOCS; i++) {
+            results.add(executor.submit(queue.updateDocument(update(i, 1L))));
+        }
+        // second update on the same document
+        results.add(executor.submit(queue.updateDocument(update(1, 2L))));
+        store.release.countDown();
+
+        assertEquals(0L, first.get().get("p"));
+        for (int i = 0; i < NUM_DOCS - 1; i++) {
+            assertEquals(0L, results.get(i).get().get("p"));
+        }
+        assertEquals(1L, results.get(NUM_DOCS - 1).get().get("p"));
+        assertEquals(1, store.numGroupCalls.get());
+        assertEquals(2L, store.find(NODES, id(1)).get("p"));
+        for (int i = 2; i < NUM_DOCS; i++) {
+            assertEquals(1L, store.find(NODES, id(i)).get("p"));
+        }
+    }
+
+    @Test
+    public void individualRetry() throws Exception {
+        Future<NodeDocument> first = executor.submit(queue.updateDocument(update(0, 1L)));
+        assertTrue(store.blocked.await(10, TimeUnit.SECONDS));
+
+        // update with a condition that is not met
+        UpdateOp failing = update(1, 1L);
+        failing.equals("p", 5L);
+        Future<NodeDocument> f1 = executor.submit(queue.updateDocument(failing));
+        Future<NodeDocument> f2 = executor.submit(queue.updateDocument(update(2, 1L)));
+        // update on a document that does not exist
+        UpdateOp missing = new UpdateOp("1:/missing", false);
+        missing.set("p", 1L);
+        Future<NodeDocument> f3 = executor.submit(queue.updateDocument(missing));
+        store.release.countDown();
+
+        assertNotNull(first.get());
+        assertNull(f1.get());
+        assertEquals(0L, f2.get().get("p"));
+        assertNull(f3.get());
+        assertEquals(0L, store.find(NODES, id(1)).get("p"));
+        assertEquals(1L, store.find(NODES, id(2)).get("p"));
+        assertNull(store.find(NODES, "1:/missing"));
+    }
+
+    @Test
+    public void concurrentGroups() throws Exception {
+        queue = new BatchCommitQueue(store, 2);
+        Future<NodeDocument> first = executor.submit(queue.updateDocument(update(0, 1L)));
+        assertTrue(store.blocked.await(10, TimeUnit.SECONDS));
+
+        // does not wait for the first update
+        Future<NodeDocument> second = executor.submit(queue.updateDocument(update(1, 1L)));
+        assertEquals(0L, second.get(10, TimeUnit.SECONDS).get("p"));
+
+        store.release.countDown();
+        assertEquals(0L, first.get().get("p"));
+        assertEquals(0, store.numGroupCalls.get());
+    }
+
+    @Test
+    public void partialFailure() throws Exception {
+        Future<NodeDocument> first = executor.submit(queue.updateDocument(update(0, 1L)));
+        assertTrue(store.blocked.await(10, TimeUnit.SECONDS));
+
+        Future<NodeDocument> f1 = executor.submit(queue.updateDocument(increment(1)));
+        Future<NodeDocument> f2 = executor.submit(queue.updateDocument(increment(2)));
+        Future<NodeDocument> f3 = executor.submit(queue.updateDocument(increment(3)));
+        // the group applies the update on node-1 and then fails on node-2
+        store.failingId = id(2);
+        store.release.countDown();
+
+        assertNotNull(first.get());
+        assertEquals(0L, f1.get().get("p"));
+        try {
+            f2.get();
+            fail("must fail with DocumentStoreException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DocumentStoreException);
+        }
+        assertEquals(0L, f3.get().get("p"));
+        assertEquals(1, store.numGroupCalls.get());
+        // updates applied exactly once
+        assertEquals(1L, store.find(NODES, id(1)).get("p"));
+        assertEquals(0L, store.find(NODES, id(2)).get("p"));
+        assertEquals(1L, store.find(NODES, id(3)).get("p"));
+    }
+
+    private static String id(int i) {
+        return "1:/node-" + i;
+    }
+
+    private static UpdateOp update(int i, long value) {
+        UpdateOp op = new UpdateOp(id(i), false);
+        op.set("p", value);
+        return op;
+    }
+
+    private static UpdateOp increment(int i) {
+        UpdateOp op = new UpdateOp(id(i), false);
+        op.increment("p", 1);
+        return op;
+    }
+
+    private static final class BlockingStore extends MemoryDocumentStore {
+
+        final CountDownLatch blocked = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final AtomicInteger numGroupCalls = new AtomicInteger();
+
+        volatile String failingId;
+
+        private boolean first = true;
+
+        @Override
+        public <T extends Document> T findAndUpdate(Collection<T> collection,
+                                                    UpdateOp update) {
+            boolean block;
+            synchronized (this) {
+                block = first;
+                first = false;
+            }
+            if (block) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new DocumentStoreException(e);
+                }
+            }
+            if (update.getId().equals(failingId)) {
+                throw new DocumentStoreException("failure on " + failingId);
+            }
+            return super.findAndUpdate(collection, update);
+        }
+
+        @Override
+        public <T extends Document> List<T> findAndUpdate(Collection<T> collection,
+                                                          List<UpdateOp> updateOps) {
+            numGroupCalls.incrementAndGet();
+            return super.findAndUpdate(collection, updateOps);
+        }
+    }
+}
@@ -16,8 +16,11 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -25,8 +28,11 @@ import com.google.common.collect.Sets;
 
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.commons.concurrent.ExecutorCloser;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreStatsCollector.DiffCacheTier;
 import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.plugins.metric.MetricStatisticsProvider;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
 import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
 import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
@@ -343,6 +349,53 @@ public class JournalDiffLoaderTest {
         new JournalDiffLoader(before, after, ns).call();
     }
 
+    @Test
+    public void diffOnColdClusterNode() throws Exception {
+        DocumentStore store = new MemoryDocumentStore();
+        DocumentNodeStore ns1 = builderProvider.newBuilder().setClusterId(1)
+                .setDocumentStore(store).clock(clock).setAsyncDelay(0).getNodeStore();
+        String before = ns1.checkpoint(TimeUnit.HOURS.toMillis(1));
+        NodeBuilder builder = ns1.getRoot().builder();
+        builder.child("foo").child("bar");
+        builder.child("baz");
+        merge(ns1, builder);
+        String after = ns1.checkpoint(TimeUnit.HOURS.toMillis(1));
+        ns1.runBackgroundOperations();
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        MetricStatisticsProvider statsProvider =
+                new MetricStatisticsProvider(ManagementFactory.getPlatformMBeanServer(), executor);
+        try {
+            DocumentNodeStoreStats stats = new DocumentNodeStoreStats(statsProvider);
+            DocumentNodeStore ns2 = builderProvider.newBuilder().setClusterId(2)
+                    .setDocumentStore(store).clock(clock).setAsyncDelay(0)
+                    .setNodeStoreStatsCollector(stats).getNodeStore();
+            NodeState s1 = ns2.retrieve(before);
+            NodeState s2 = ns2.retrieve(after);
+            assertNotNull(s1);
+            assertNotNull(s2);
+
+            final Set<String> changes = newHashSet();
+            s2.compareAgainstBaseState(s1, new DefaultNodeStateDiff() {
+                @Override
+                public boolean childNodeAdded(String name, NodeState after) {
+                    changes.add(name);
+                    return true;
+                }
+            });
+            assertEquals(newHashSet("foo", "baz"), changes);
+            assertEquals(1.0, stats.getDiffCacheHitRate(DiffCacheTier.JOURNAL), 0.0);
+
+            // second diff is served from the memory tier
+            s2.compareAgainstBaseState(s1, new DefaultNodeStateDiff());
+            assertEquals(0.5, stats.getDiffCacheHitRate(DiffCacheTier.MEMORY), 0.0);
+            assertEquals(0.0, stats.getDiffCacheHitRate(DiffCacheTier.DOCUMENT), 0.0);
+        } finally {
+            statsProvider.close();
+            new ExecutorCloser(executor).close();
+        }
+    }
+
     private static CacheStats getMemoryDiffStats(DocumentNodeStore ns) {
         for (CacheStats cs : ns.getDiffCache().getStats()) {
             if (cs.getName().equals("Document-MemoryDiff")) {
@@ -18,10 +18,12 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.List;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
@@ -37,11 +39,13 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.apache.jackrabbit.oak.plugins.document.Collection.CLUSTER_NODES;
 import static org.apache.jackrabbit.oak.plugins.document.Collection.JOURNAL;
 import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
 import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -320,4 +324,111 @@ public class JournalGCTest {
         assertTrue(readingNs.getRoot().hasChildNode("foo"));
     }
 
+    @Test
+    public void incrementalGC() throws Exception {
+        Clock c = new Clock.Virtual();
+        c.waitUntil(System.currentTimeMillis());
+        // journal entry keys are derived from revisions
+        Revision.setClock(c);
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setJournalGCMaxAge(TimeUnit.SECONDS.toMillis(10))
+                .clock(c).setAsyncDelay(0).getNodeStore();
+        DocumentStore store = ns.getDocumentStore();
+
+        // create journal entries
+        int numEntries = 0;
+        for (int i = 0; i < 25; i++) {
+            NodeBuilder builder = ns.getRoot().builder();
+            builder.child("node-" + i);
+            merge(ns, builder);
+            ns.runBackgroundOperations();
+            numEntries++;
+        }
+        List<JournalEntry> entries = store.query(JOURNAL, "0", "z", Integer.MAX_VALUE);
+        assertTrue(entries.size() >= numEntries);
+
+        // wait 30 seconds and create another journal entry
+        c.waitUntil(c.getTime() + TimeUnit.SECONDS.toMillis(30));
+        NodeBuilder builder = ns.getRoot().builder();
+        builder.child("bar");
+        merge(ns, builder);
+        ns.runBackgroundOperations();
+        Revision head = ns.getHeadRevision().getRevision(ns.getClusterId());
+        assertNotNull(head);
+
+        JournalGarbageCollector jgc = ns.getJournalGarbageCollector();
+        long start = c.getTime();
+        int numDeleted = jgc.gcIncrementally(4, 5);
+        assertEquals(entries.size(), numDeleted);
+        // rate limited to five deletes per second
+        assertThat(c.getTime() - start, greaterThanOrEqualTo(numDeleted * 200L));
+        assertEquals(0, jgc.getBacklogMillis());
+        for (JournalEntry entry : entries) {
+            assertNull(store.find(JOURNAL, entry.getId()));
+        }
+        assertNotNull(store.find(JOURNAL, JournalEntry.asId(head)));
+
+        // resumes from the cursor and has nothing to do
+        assertEquals(0, jgc.gcIncrementally(4, 0));
+    }
+
+    @Test
+    public void incrementalGCBacklog() throws Exception {
+        Clock c = new Clock.Virtual();
+        c.waitUntil(System.currentTimeMillis());
+        // journal entry keys are derived from revisions
+        Revision.setClock(c);
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setJournalGCMaxAge(TimeUnit.HOURS.toMillis(1))
+                .clock(c).setAsyncDelay(0).getNodeStore();
+
+        NodeBuilder builder = ns.getRoot().builder();
+        builder.child("foo");
+        merge(ns, builder);
+        ns.runBackgroundOperations();
+
+        // wait three hours, garbage is two hours behind the cutoff
+        c.waitUntil(c.getTime() + TimeUnit.HOURS.toMillis(3));
+
+        final JournalGarbageCollector jgc = ns.getJournalGarbageCollector();
+        Thread.currentThread().interrupt();
+        try {
+            // stops after first batch when interrupted
+            jgc.gcIncrementally(1, 1);
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertThat(jgc.getBacklogMillis(), greaterThanOrEqualTo(TimeUnit.HOURS.toMillis(2) - TimeUnit.MINUTES.toMillis(1)));
+    }
+
+    @Test
+    public void incrementalGCWithoutClusterNode() throws Exception {
+        Clock c = new Clock.Virtual();
+        c.waitUntil(System.currentTimeMillis());
+        Revision.setClock(c);
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setJournalGCMaxAge(TimeUnit.SECONDS.toMillis(10))
+                .clock(c).setAsyncDelay(0).getNodeStore();
+        DocumentStore store = ns.getDocumentStore();
+
+        // journal entries of a cluster node not present in clusterNodes
+        int orphanedClusterId = 42;
+        assertNull(store.find(CLUSTER_NODES, String.valueOf(orphanedClusterId)));
+        List<UpdateOp> ops = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            Revision r = new Revision(c.getTime() + i, 0, orphanedClusterId, i % 2 == 0);
+            UpdateOp op = new UpdateOp(JournalEntry.asId(r), true);
+            op.set(JournalEntry.MODIFIED, c.getTime());
+            ops.add(op);
+        }
+        assertTrue(store.create(JOURNAL, ops));
+
+        c.waitUntil(c.getTime() + TimeUnit.SECONDS.toMillis(30));
+        JournalGarbageCollector jgc = ns.getJournalGarbageCollector();
+        assertThat(jgc.gcIncrementally(3, 0), greaterThanOrEqualTo(ops.size()));
+        for (UpdateOp op : ops) {
+            assertNull(store.find(JOURNAL, op.getId()));
+        }
+    }
+
 }
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JvmPauseDetectorTest {
+
+    @Test
+    public void detectPause() {
+        JvmPauseDetector detector = new JvmPauseDetector(1000, false);
+        List<Long> pauses = new CopyOnWriteArrayList<>();
+        JvmPauseDetector.Listener listener = pauses::add;
+        detector.addListener(listener);
+        try {
+            long now = 0;
+            assertEquals(0, detector.check(now));
+            now += millis(JvmPauseDetector.INTERVAL_MILLIS);
+            assertEquals(0, detector.check(now));
+            // delayed, but below threshold
+            now += millis(JvmPauseDetector.INTERVAL_MILLIS + 1000);
+            assertEquals(0, detector.check(now));
+            now += millis(JvmPauseDetector.INTERVAL_MILLIS + 5000);
+            assertEquals(5000, detector.check(now));
+            assertTrue(pauses.contains(5000L));
+            assertEquals(5000, detector.getMaxPauseMillis());
+        } finally {
+            detector.removeListener(listener);
+        }
+    }
+
+    @Test
+    public void failingListener() {
+        JvmPauseDetector detector = new JvmPauseDetector(1000, false);
+        List<Long> pauses = new CopyOnWriteArrayList<>();
+        JvmPauseDetector.Listener failing = pauseMillis -> {
+            throw new IllegalStateException();
+        };
+        JvmPauseDetector.Listener listener = pauses::add;
+        detector.addListener(failing);
+        detector.addListener(listener);
+        try {
+            detector.check(0);
+            detector.check(millis(10000));
+            assertTrue(pauses.contains(10000L - JvmPauseDetector.INTERVAL_MILLIS));
+        } finally {
+            detector.removeListener(failing);
+            detector.removeListener(listener);
+        }
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -19,6 +19,13 @@
 
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
 import com.google.common.collect.Iterables;
 
 import org.apache.jackrabbit.oak.api.CommitFailedException;
@@ -249,6 +256,102 @@ public class LastRevRecoveryAgentTest extends AbstractTwoNodeTest {
         assertNotEquals(zlastRev2, getDocument(ds1, "/").getLastRev().get(c2Id));
     }
 
+    @Test
+    public void recoveryWithWorkers() throws Exception {
+        NodeBuilder b1 = ds1.getRoot().builder();
+        for (int i = 0; i < 10; i++) {
+            b1.child("a" + i).child("b");
+        }
+        merge(ds1, b1);
+        ds1.runBackgroundOperations();
+        ds2.runBackgroundOperations();
+
+        // add many nodes under different top-level nodes in C2
+        NodeBuilder b2 = ds2.getRoot().builder();
+        for (int i = 0; i < 10; i++) {
+            NodeBuilder b = b2.child("a" + i).child("b");
+            for (int j = 0; j < 5; j++) {
+                b.child("c" + j).setProperty("p", j);
+            }
+        }
+        merge(ds2, b2);
+        Revision lastRev2 = ds2.getHeadRevision().getRevision(c2Id);
+
+        // simulate a crash of C2
+        long leaseTime = ds1.getClusterInfo().getLeaseTime();
+        clock.waitUntil(clock.getTime() + leaseTime + 10);
+        ds1.getClusterInfo().renewLease();
+
+        LastRevRecoveryAgent agent = ds1.getLastRevRecoveryAgent();
+        agent.setNumWorkers(4);
+        assertTrue(agent.recover(c2Id) > 0);
+        assertEquals("No recovery in progress", agent.getRecoveryStatus());
+
+        assertEquals(lastRev2, getDocument(ds1, "/").getLastRev().get(c2Id));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(lastRev2, getDocument(ds1, "/a" + i).getLastRev().get(c2Id));
+            assertEquals(lastRev2, getDocument(ds1, "/a" + i + "/b").getLastRev().get(c2Id));
+        }
+
+        // dispose ds2 quietly because it may now throw an exception
+        disposeQuietly(ds2);
+    }
+
+    @Test
+    public void recoveryWithWorkersSameParent() throws Exception {
+        int numParents = 8;
+        NodeBuilder b1 = ds1.getRoot().builder();
+        for (int i = 0; i < numParents; i++) {
+            b1.child("a" + i).child("b");
+        }
+        merge(ds1, b1);
+        ds1.runBackgroundOperations();
+        ds2.runBackgroundOperations();
+
+        // add children to the same parents in separate commits of C2 and
+        // in random order. each parent has more children than fit into a
+        // single batch of a worker and the root is the common parent of
+        // all candidates
+        List<Integer> commits = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < numParents; i++) {
+                commits.add(i);
+            }
+        }
+        Collections.shuffle(commits, new Random(42));
+        Map<Integer, Revision> lastRevs = new HashMap<>();
+        int round = 0;
+        for (int i : commits) {
+            NodeBuilder b2 = ds2.getRoot().builder();
+            NodeBuilder b = b2.child("a" + i).child("b");
+            for (int j = 0; j < 50; j++) {
+                b.child("c" + round + "-" + j).setProperty("p", j);
+            }
+            merge(ds2, b2);
+            lastRevs.put(i, ds2.getHeadRevision().getRevision(c2Id));
+            round++;
+        }
+        Revision lastRev2 = ds2.getHeadRevision().getRevision(c2Id);
+
+        // simulate a crash of C2
+        long leaseTime = ds1.getClusterInfo().getLeaseTime();
+        clock.waitUntil(clock.getTime() + leaseTime + 10);
+        ds1.getClusterInfo().renewLease();
+
+        LastRevRecoveryAgent agent = ds1.getLastRevRecoveryAgent();
+        agent.setNumWorkers(4);
+        assertTrue(agent.recover(c2Id) > 0);
+
+        assertEquals(lastRev2, getDocument(ds1, "/").getLastRev().get(c2Id));
+        for (int i = 0; i < numParents; i++) {
+            assertEquals(lastRevs.get(i), getDocument(ds1, "/a" + i).getLastRev().get(c2Id));
+            assertEquals(lastRevs.get(i), getDocument(ds1, "/a" + i + "/b").getLastRev().get(c2Id));
+        }
+
+        // dispose ds2 quietly because it may now throw an exception
+        disposeQuietly(ds2);
+    }
+
     private static NodeDocument getDocument(DocumentNodeStore nodeStore,
                                             String path) {
         return nodeStore.getDocumentStore().find(NODES, getIdFromPath(path));
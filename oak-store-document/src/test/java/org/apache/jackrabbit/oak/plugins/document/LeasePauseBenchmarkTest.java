@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.stats.Clock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.document.ClusterNodeInfo.DEFAULT_LEASE_FAILURE_MARGIN_MILLIS;
+
+/**
+ * Simulates stop-the-world pauses against a {@link ClusterNodeInfo} with a
+ * virtual clock and reports the distribution of the lease margin left at the
+ * end of each pause. This is the margin an application thread sees when it
+ * performs the lease check right after the pause. A negative margin means the
+ * lease check fails.
+ * <p>
+ * The simulation models the lease update thread, which runs every second
+ * when the JVM is not paused, and the {@link JvmPauseDetector} checking every
+ * second for a pause. Pauses come in bursts: most of the time pauses are rare
+ * and short, but once in a while the JVM is under memory pressure for a few
+ * minutes and pauses frequently for longer.
+ * <p>
+ * The regular lease update only renews every lease update interval, so a
+ * pause starts on average half an interval after the last renewal. With the
+ * {@link LeasePauseHandler} the lease is renewed on every run for a while
+ * after a detected pause, so subsequent pauses of a burst start with almost
+ * the full lease time.
+ */
+public class LeasePauseBenchmarkTest {
+
+    /**
+     * The number of lease update thread runs, at least 90 days.
+     */
+    private static final long STEPS = TimeUnit.DAYS.toSeconds(90);
+
+    private static final double PRESSURE_START_PROBABILITY = 1.0 / TimeUnit.HOURS.toSeconds(2);
+
+    private static final double PRESSURE_END_PROBABILITY = 1.0 / TimeUnit.MINUTES.toSeconds(10);
+
+    private static final double PAUSE_PROBABILITY = 1.0 / 2000;
+
+    private static final long MEAN_PAUSE_MILLIS = 5000;
+
+    private static final double PRESSURE_PAUSE_PROBABILITY = 1.0 / 20;
+
+    private static final long MEAN_PRESSURE_PAUSE_MILLIS = 20000;
+
+    private static final long LEASE_THREAD_INTERVAL_MILLIS = 1000;
+
+    private Clock clock;
+
+    @Before
+    public void before() throws Exception {
+        clock = new Clock.Virtual();
+        clock.waitUntil(System.currentTimeMillis());
+        ClusterNodeInfo.setClock(clock);
+    }
+
+    @After
+    public void after() {
+        ClusterNodeInfo.resetClockToDefault();
+    }
+
+    @Ignore("benchmark")
+    @Test
+    public void leaseMarginDistribution() throws Exception {
+        simulate(false);
+        simulate(true);
+    }
+
+    private void simulate(boolean pauseDetection) throws Exception {
+        ClusterNodeInfo info = ClusterNodeInfo.getInstance(new MemoryDocumentStore(),
+                RecoveryHandler.NOOP, null, null, 1);
+        // pauses must not fail the lease while simulating
+        info.setLeaseCheckMode(LeaseCheckMode.LENIENT);
+        JvmPauseDetector detector = new JvmPauseDetector(1000, false);
+        LeasePauseHandler handler = null;
+        if (pauseDetection) {
+            handler = new LeasePauseHandler(clock, LeasePauseHandler.PRESSURE_MILLIS, () -> {});
+            detector.addListener(handler);
+        }
+        // same pauses for both runs
+        Random r = new Random(42);
+        long[] margins = new long[(int) (STEPS / 10)];
+        int numPauses = 0;
+        long renewals = 0;
+        boolean pressure = false;
+        detector.check(nanos());
+        for (long i = 0; i < STEPS; i++) {
+            pressure = pressure ? r.nextDouble() >= PRESSURE_END_PROBABILITY
+                    : r.nextDouble() < PRESSURE_START_PROBABILITY;
+            long pause = 0;
+            if (r.nextDouble() < (pressure ? PRESSURE_PAUSE_PROBABILITY : PAUSE_PROBABILITY)) {
+                pause = (long) (-Math.log(1 - r.nextDouble()) *
+                        (pressure ? MEAN_PRESSURE_PAUSE_MILLIS : MEAN_PAUSE_MILLIS));
+            }
+            clock.waitUntil(clock.getTime() + Math.max(pause, LEASE_THREAD_INTERVAL_MILLIS));
+            if (pause > 0) {
+                // application threads check the lease right after the pause
+                margins[numPauses++] = info.getLeaseEndTime()
+                        - DEFAULT_LEASE_FAILURE_MARGIN_MILLIS - clock.getTime();
+            }
+            detector.check(nanos());
+            // lease update thread
+            if (info.renewLease(handler != null && handler.renewEagerly())) {
+                renewals++;
+            }
+        }
+        info.dispose();
+        report(pauseDetection ? "pause detection" : "regular renewal",
+                Arrays.copyOf(margins, numPauses), renewals);
+    }
+
+    private long nanos() {
+        return TimeUnit.MILLISECONDS.toNanos(clock.getTime());
+    }
+
+    private static void report(String name, long[] margins, long renewals) {
+        Arrays.sort(margins);
+        long failures = Arrays.stream(margins).filter(m -> m < 0).count();
+        System.out.printf("%-16s pauses: %d, lease failures: %d, lease updates: %d, " +
+                        "margin (s) min: %.1f, p0.1: %.1f, p1: %.1f, p10: %.1f, p50: %.1f%n",
+                name, margins.length, failures, renewals, margins[0] / 1000.0,
+                percentile(margins, 0.001), percentile(margins, 0.01),
+                percentile(margins, 0.1), percentile(margins, 0.5));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, sorted.length * p)] / 1000.0;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.stats.Clock;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LeasePauseHandlerTest {
+
+    @Test
+    public void renewEagerlyAfterPause() throws Exception {
+        Clock clock = new Clock.Virtual();
+        AtomicInteger wakeUps = new AtomicInteger();
+        LeasePauseHandler handler = new LeasePauseHandler(clock, 60000, wakeUps::incrementAndGet);
+        assertFalse(handler.renewEagerly());
+
+        handler.pauseDetected(5000);
+        assertEquals(1, wakeUps.get());
+        assertTrue(handler.renewEagerly());
+
+        // still under pressure
+        clock.waitUntil(clock.getTime() + 59000);
+        assertTrue(handler.renewEagerly());
+
+        clock.waitUntil(clock.getTime() + 1000);
+        assertFalse(handler.renewEagerly());
+    }
+
+    @Test
+    public void renewRightAfterPauseWithoutPressure() {
+        Clock clock = new Clock.Virtual();
+        LeasePauseHandler handler = new LeasePauseHandler(clock, 0, () -> {});
+        handler.pauseDetected(5000);
+        assertTrue(handler.renewEagerly());
+        assertFalse(handler.renewEagerly());
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NodeDocumentExporterTest {
+
+    private MemoryDocumentStore store;
+
+    private Set<String> ids;
+
+    @Before
+    public void before() {
+        store = new MemoryDocumentStore();
+        ids = new HashSet<>();
+        List<UpdateOp> ops = new ArrayList<>();
+        String parent = "/";
+        for (int depth = 0; depth < 15; depth++) {
+            if (depth > 0) {
+                parent = PathUtils.concat(parent, "p" + depth);
+            }
+            for (int i = 0; i < 50; i++) {
+                String id = Utils.getIdFromPath(PathUtils.concat(parent, "n" + i));
+                ids.add(id);
+                ops.add(new UpdateOp(id, true));
+            }
+        }
+        assertTrue(store.create(Collection.NODES, ops));
+    }
+
+    @Test
+    public void exportAll() {
+        Set<String> exported = new HashSet<>();
+        long count = new NodeDocumentExporter(store, 4).withBatchSize(7)
+                .export(doc -> assertTrue(exported.add(doc.getId())));
+        assertEquals(ids.size(), count);
+        assertEquals(ids, exported);
+    }
+
+    @Test
+    public void rangesAreDisjoint() {
+        List<SweepPartitions.IdRange> ranges = new NodeDocumentExporter(store, 4)
+                .withSampleSize(100).getRanges();
+        assertTrue(ranges.size() > SweepPartitions.ID_RANGES.size());
+        for (String id : ids) {
+            int matches = 0;
+            for (SweepPartitions.IdRange r : ranges) {
+                if (r.fromId.compareTo(id) < 0 && id.compareTo(r.toId) < 0) {
+                    matches++;
+                }
+            }
+            assertEquals("id " + id + " must be in exactly one range", 1, matches);
+        }
+    }
+
+    @Test
+    public void depthRangesWithoutSampling() {
+        List<SweepPartitions.IdRange> ranges = new NodeDocumentExporter(store, 2)
+                .withSampleSize(0).getRanges();
+        assertEquals(SweepPartitions.ID_RANGES.size(), ranges.size());
+        Set<String> exported = new HashSet<>();
+        new NodeDocumentExporter(store, 2).withSampleSize(0)
+                .export(doc -> assertTrue(exported.add(doc.getId())));
+        assertEquals(ids, exported);
+    }
+
+    @Test
+    public void slowConsumer() {
+        AtomicInteger read = new AtomicInteger();
+        DocumentStore counting = new MemoryDocumentStore() {
+            @NotNull
+            @Override
+            public <T extends Document> List<T> query(Collection<T> collection,
+                                                      String fromKey,
+                                                      String toKey,
+                                                      int limit) {
+                List<T> docs = store.query(collection, fromKey, toKey, limit);
+                read.addAndGet(docs.size());
+                return docs;
+            }
+        };
+        int[] maxAhead = new int[1];
+        int[] consumed = new int[1];
+        new NodeDocumentExporter(counting, 4).withBatchSize(10).withQueueSize(2)
+                .withSampleSize(0).export(doc -> {
+                    consumed[0]++;
+                    maxAhead[0] = Math.max(maxAhead[0], read.get() - consumed[0]);
+                    if (consumed[0] % 10 == 0) {
+                        sleep();
+                    }
+                });
+        assertEquals(ids.size(), consumed[0]);
+        // at most queue size plus one batch per worker and one
+        // batch in the consumer
+        assertTrue("read ahead too far: " + maxAhead[0], maxAhead[0] <= (2 + 4 + 1) * 10);
+    }
+
+    @Test
+    public void failingStore() {
+        DocumentStore failing = new MemoryDocumentStore() {
+            @NotNull
+            @Override
+            public <T extends Document> List<T> query(Collection<T> collection,
+                                                      String fromKey,
+                                                      String toKey,
+                                                      int limit) {
+                if (fromKey.startsWith("3")) {
+                    throw new DocumentStoreException("query failed");
+                }
+                return store.query(collection, fromKey, toKey, limit);
+            }
+        };
+        try {
+            new NodeDocumentExporter(failing, 4).export(doc -> {});
+            fail("DocumentStoreException expected");
+        } catch (DocumentStoreException e) {
+            assertEquals("query failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void failingConsumer() {
+        try {
+            new NodeDocumentExporter(store, 4).withBatchSize(5).withQueueSize(1)
+                    .export(doc -> {
+                        throw new IllegalStateException("consumer failed");
+                    });
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertEquals("consumer failed", e.getMessage());
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
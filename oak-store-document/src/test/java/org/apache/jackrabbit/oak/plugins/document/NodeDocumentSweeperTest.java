@@ -16,8 +16,11 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.Lists;
 
@@ -40,6 +43,7 @@ import static org.apache.jackrabbit.oak.plugins.document.UpdateOp.Operation.Type
 import static org.apache.jackrabbit.oak.plugins.document.util.Utils.getIdFromPath;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class NodeDocumentSweeperTest {
 
@@ -191,6 +195,55 @@ public class NodeDocumentSweeperTest {
         assertEquals(SET_MAP_ENTRY, changes.get(k).type);
     }
 
+    @Test
+    public void sweepPartitionsConcurrently() throws Exception {
+        Revision uncommitted = ns.newRevision();
+        List<String> paths = Lists.newArrayList();
+        NodeBuilder b = ns.getRoot().builder();
+        NodeBuilder n = b;
+        String path = "";
+        for (int i = 0; i < 12; i++) {
+            n = n.child("n" + i);
+            path += "/n" + i;
+            paths.add(path);
+        }
+        merge(ns, b);
+        ns.runBackgroundUpdateOperations();
+
+        for (String p : paths) {
+            UpdateOp op = new UpdateOp(getIdFromPath(p), false);
+            op.setMapEntry("foo", uncommitted, "value");
+            setCommitRoot(op, uncommitted, 0);
+            setModified(op, uncommitted);
+            assertNotNull(store.findAndUpdate(NODES, op));
+        }
+
+        NodeDocumentSweeper sweeper = new NodeDocumentSweeper(ns, false);
+        Revision startRev = ns.getSweepRevisions().getRevision(ns.getClusterId());
+        assertNotNull(startRev);
+        List<Iterable<NodeDocument>> partitions = Lists.newArrayList();
+        for (SweepPartitions.IdRange range : SweepPartitions.ID_RANGES) {
+            partitions.add(seeker.getCandidates(startRev.getTimestamp(), range.fromId, range.toId));
+        }
+        final Set<String> ids = Collections.synchronizedSet(new HashSet<>());
+        Revision nextSweepStart = sweeper.sweep(partitions, new NodeDocumentSweepListener() {
+            @Override
+            public void sweepUpdate(Map<Path, UpdateOp> updates)
+                    throws DocumentStoreException {
+                for (UpdateOp op : updates.values()) {
+                    assertTrue(ids.add(op.getId()));
+                }
+            }
+        }, 4);
+
+        assertEquals(ns.getHeadRevision().getRevision(ns.getClusterId()), nextSweepStart);
+        Set<String> expected = new HashSet<>();
+        for (String p : paths) {
+            expected.add(getIdFromPath(p));
+        }
+        assertEquals(expected, ids);
+    }
+
     private Revision sweep(final List<UpdateOp> ops) throws Exception {
         NodeDocumentSweeper sweeper = new NodeDocumentSweeper(ns, false);
         Revision startRev = ns.getSweepRevisions().getRevision(ns.getClusterId());
@@ -760,6 +760,43 @@ public class NodeDocumentTest {
         ns.dispose();
     }
 
+    @Test
+    public void readsOnGetValueMapWithManyPreviousDocuments() throws Exception {
+        final int numChanges = 1000;
+        final List<String> prevDocCalls = Lists.newArrayList();
+        MemoryDocumentStore store = new MemoryDocumentStore() {
+            @Override
+            public <T extends Document> T find(Collection<T> collection,
+                                               String key) {
+                if (Utils.getPathFromId(key).startsWith("p")) {
+                    prevDocCalls.add(key);
+                }
+                return super.find(collection, key);
+            }
+        };
+        DocumentNodeStore ns = createTestStore(store, 0, numChanges);
+        NodeDocument doc = getRootDocument(store);
+        List<Revision> revisions = Lists.newArrayList(doc.getValueMap("p").keySet());
+        assertEquals(numChanges, revisions.size());
+        int maxHeight = 0;
+        for (Range r : doc.getPreviousRanges().values()) {
+            maxHeight = Math.max(maxHeight, r.getHeight());
+        }
+        assertTrue(maxHeight > 0);
+
+        for (int i = 0; i < revisions.size(); i += 50) {
+            Revision r = revisions.get(i);
+            prevDocCalls.clear();
+            String value = doc.getValueMap("p").get(r);
+            assertEquals(String.valueOf(numChanges - 1 - i), value);
+            // must read each document on the path from the root of the
+            // tree of previous documents to the leaf only once
+            assertTrue("too many calls for previous documents: " + prevDocCalls,
+                    prevDocCalls.size() <= maxHeight + 1);
+        }
+        ns.dispose();
+    }
+
     // OAK-5207
     @Test
     public void tooManyReadsOnGetVisibleChanges() throws Exception {
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PropertyStateSharingTest {
+
+    private static final String SHARING_CACHE_SIZE = "oak.documentMK.propertySharingCacheSizeMB";
+
+    private static final int NUM_PROPERTIES = 20;
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    @After
+    public void resetSysProps() {
+        System.clearProperty(SHARING_CACHE_SIZE);
+    }
+
+    @Test
+    public void disabledByDefault() {
+        DocumentNodeStore ns = newNodeStore();
+        assertNull(ns.getPropertyStateSharing());
+        assertNull(ns.getPropertySharingCacheStats());
+    }
+
+    @Test
+    public void shareUnchangedProperties() throws Exception {
+        DocumentNodeState withoutSharing = changeWithoutSharing();
+        System.setProperty(SHARING_CACHE_SIZE, "16");
+        DocumentNodeStore ns = newNodeStore();
+        assertNotNull(ns.getPropertyStateSharing());
+        createTestNode(ns, "test");
+
+        DocumentNodeState before = (DocumentNodeState) ns.getRoot().getChildNode("test");
+        NodeBuilder builder = ns.getRoot().builder();
+        builder.child("test").setProperty("p0", "changed");
+        merge(ns, builder);
+        DocumentNodeState after = (DocumentNodeState) ns.getRoot().getChildNode("test");
+
+        assertNotSame(before.getProperty("p0"), after.getProperty("p0"));
+        assertEquals("changed", after.getString("p0"));
+        for (int i = 1; i < NUM_PROPERTIES; i++) {
+            assertSame(before.getProperty("p" + i), after.getProperty("p" + i));
+        }
+        assertTrue(ns.getPropertyStateSharing().getSharedCount() >= NUM_PROPERTIES - 1);
+        // shared property states are accounted once by the sharing cache
+        assertTrue(after.getMemory() < withoutSharing.getMemory() / 4);
+    }
+
+    @Test
+    public void shareAllProperties() throws Exception {
+        System.setProperty(SHARING_CACHE_SIZE, "16");
+        DocumentNodeStore ns = newNodeStore();
+        createTestNode(ns, "test");
+
+        DocumentNodeState before = (DocumentNodeState) ns.getRoot().getChildNode("test");
+        NodeBuilder builder = ns.getRoot().builder();
+        // only add a child, which changes the lastRevision of the node
+        builder.child("test").child("child");
+        merge(ns, builder);
+        DocumentNodeState after = (DocumentNodeState) ns.getRoot().getChildNode("test");
+
+        assertNotSame(before.getLastRevision(), after.getLastRevision());
+        assertSame(before.getAllProperties(), after.getAllProperties());
+    }
+
+    @Test
+    public void lowerCacheWeight() throws Exception {
+        DocumentNodeStore ns = newNodeStore();
+        double withoutSharing = weightPerNodeState(ns);
+        assertNull(ns.getPropertySharingCacheStats());
+
+        System.setProperty(SHARING_CACHE_SIZE, "16");
+        ns = newNodeStore();
+        double withSharing = weightPerNodeState(ns);
+        CacheStats sharingStats = ns.getPropertySharingCacheStats();
+        assertNotNull(sharingStats);
+        assertTrue(sharingStats.getElementCount() > 0);
+        // weight of node cache and sharing cache per node state
+        assertTrue("without sharing: " + withoutSharing + ", with sharing: " + withSharing,
+                withSharing < withoutSharing / 4);
+    }
+
+    @Test
+    public void evictedBaseInvalidatesNodeStates() throws Exception {
+        // each node below has about 18kB of properties, which means the
+        // sharing cache of 1MB can only keep some of the bases
+        System.setProperty(SHARING_CACHE_SIZE, "1");
+        DocumentNodeStore ns = newNodeStore();
+        int numNodes = 200;
+        NodeBuilder builder = ns.getRoot().builder();
+        for (int i = 0; i < numNodes; i++) {
+            setTestProperties(builder.child("test-" + i));
+        }
+        merge(ns, builder);
+
+        NodeState root = ns.getRoot();
+        List<DocumentNodeState> states = new ArrayList<>();
+        for (int i = 0; i < numNodes; i++) {
+            states.add((DocumentNodeState) root.getChildNode("test-" + i));
+        }
+        assertTrue(ns.getPropertySharingCacheStats().getElementCount() < numNodes);
+        int evicted = 0;
+        for (DocumentNodeState state : states) {
+            PathRev key = new PathRev(state.getPath(), state.getRootRevision());
+            if (state.hasEvictedSharedBase()) {
+                evicted++;
+                assertNull(ns.getNodeCache().getIfPresent(key));
+            } else {
+                assertNotNull(ns.getNodeCache().getIfPresent(key));
+            }
+        }
+        assertTrue(evicted > 0);
+        // node states read again after the eviction share a new base
+        for (DocumentNodeState state : states) {
+            DocumentNodeState n = (DocumentNodeState) ns.getRoot()
+                    .getChildNode(state.getPath().getName());
+            assertEquals(state.getAllProperties(), n.getAllProperties());
+        }
+    }
+
+    private DocumentNodeState changeWithoutSharing() throws Exception {
+        DocumentNodeStore ns = newNodeStore();
+        assertNull(ns.getPropertyStateSharing());
+        createTestNode(ns, "test");
+        NodeBuilder builder = ns.getRoot().builder();
+        builder.child("test").setProperty("p0", "changed");
+        merge(ns, builder);
+        return (DocumentNodeState) ns.getRoot().getChildNode("test");
+    }
+
+    private double weightPerNodeState(DocumentNodeStore ns) throws Exception {
+        createTestNode(ns, "test");
+        ns.getNodeCache().invalidateAll();
+        for (int i = 0; i < 50; i++) {
+            NodeBuilder builder = ns.getRoot().builder();
+            builder.child("test").setProperty("p0", "value-" + i);
+            merge(ns, builder);
+            ns.getRoot().getChildNode("test").getProperty("p0");
+        }
+        // only count the node states of /test
+        long weight = 0;
+        long count = 0;
+        for (Map.Entry<PathRev, DocumentNodeState> entry : ns.getNodeCache().asMap().entrySet()) {
+            if (entry.getKey().getPath().getName().equals("test")) {
+                weight += entry.getValue().getMemory();
+                count++;
+            }
+        }
+        CacheStats sharingStats = ns.getPropertySharingCacheStats();
+        if (sharingStats != null) {
+            weight += sharingStats.estimateCurrentWeight();
+        }
+        return (double) weight / count;
+    }
+
+    private static void createTestNode(DocumentNodeStore ns, String name)
+            throws Exception {
+        NodeBuilder builder = ns.getRoot().builder();
+        setTestProperties(builder.child(name));
+        merge(ns, builder);
+    }
+
+    private static void setTestProperties(NodeBuilder builder) {
+        for (int i = 0; i < NUM_PROPERTIES; i++) {
+            StringBuilder value = new StringBuilder();
+            while (value.length() < 200) {
+                value.append("value of p").append(i).append(' ');
+            }
+            builder.setProperty("p" + i, value.toString());
+        }
+    }
+
+    private DocumentNodeStore newNodeStore() {
+        return builderProvider.newBuilder().setAsyncDelay(0)
+                .setDocumentStore(new MemoryDocumentStore()).getNodeStore();
+    }
+}
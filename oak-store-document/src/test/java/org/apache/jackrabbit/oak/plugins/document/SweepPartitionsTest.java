@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ImmutableList;
+
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SweepPartitionsTest {
+
+    @Test
+    public void idRangesCoverAllIds() {
+        String path = "/";
+        for (int depth = 0; depth < 120; depth++) {
+            if (depth > 0) {
+                path = PathUtils.concat(path, "n" + depth);
+            }
+            String id = Utils.getIdFromPath(path);
+            int matches = 0;
+            for (SweepPartitions.IdRange range : SweepPartitions.ID_RANGES) {
+                if (range.fromId.compareTo(id) < 0 && id.compareTo(range.toId) < 0) {
+                    matches++;
+                }
+            }
+            assertEquals("id " + id + " must be in exactly one range", 1, matches);
+        }
+    }
+
+    @Test
+    public void runAllPartitions() {
+        List<Integer> partitions = ImmutableList.of(1, 2, 3, 4, 5, 6, 7, 8);
+        Set<Integer> swept = ConcurrentHashMap.newKeySet();
+        SweepPartitions.run("test", partitions, 3, swept::add);
+        assertEquals(partitions.size(), swept.size());
+    }
+
+    @Test
+    public void failedPartition() {
+        List<Integer> partitions = ImmutableList.of(1, 2, 3, 4);
+        try {
+            SweepPartitions.run("test", partitions, 2, p -> {
+                if (p == 3) {
+                    throw new DocumentStoreException("failed " + p);
+                }
+            });
+            fail("DocumentStoreException expected");
+        } catch (DocumentStoreException e) {
+            assertEquals("failed 3", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.document.bundlor;
+
+import java.util.Map;
+import java.util.SortedSet;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.plugins.document.Collection;
+import org.apache.jackrabbit.oak.plugins.document.DocumentMKBuilderProvider;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler.BUNDLOR;
+import static org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler.DOCUMENT_NODE_STORE;
+import static org.apache.jackrabbit.oak.plugins.document.bundlor.DocumentBundlingTest.newNode;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BundlingPatternAnalyzerTest {
+
+    private static final String SAMPLE_PERCENT = "oak.documentMK.bundlingAnalyzer.samplePercent";
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    @After
+    public void resetSysProps() {
+        System.clearProperty(SAMPLE_PERCENT);
+    }
+
+    @Test
+    public void recommendPatterns() {
+        BundlingPatternAnalyzer analyzer = new BundlingPatternAnalyzer(1, 2, 1000);
+        NodeState page = newNode("app:Page").getNodeState();
+        NodeState unstructured = newNode("nt:unstructured").getNodeState();
+        for (int i = 0; i < 10; i++) {
+            Path p = Path.fromString("/content/page-" + i);
+            analyzer.nodeRead(p, page);
+            analyzer.nodeRead(new Path(p, "jcr:content"), unstructured);
+            analyzer.nodeRead(Path.fromString(p + "/jcr:content/metadata"), unstructured);
+            if (i % 2 == 0) {
+                analyzer.nodeRead(new Path(p, "comments"), unstructured);
+            }
+        }
+
+        Map<String, SortedSet<String>> patterns =
+                analyzer.getRecommendedPatterns(BundledTypesRegistry.NOOP, 10, 0.8);
+        assertEquals(ImmutableSet.of("app:Page"), patterns.keySet());
+        assertEquals(ImmutableSet.of("jcr:content/metadata"), patterns.get("app:Page"));
+
+        // lower ratio also recommends comments
+        patterns = analyzer.getRecommendedPatterns(BundledTypesRegistry.NOOP, 10, 0.5);
+        assertEquals(ImmutableSet.of("comments", "jcr:content/metadata"), patterns.get("app:Page"));
+
+        // not enough samples
+        assertTrue(analyzer.getRecommendedPatterns(BundledTypesRegistry.NOOP, 11, 0.5).isEmpty());
+
+        // already configured types are skipped
+        BundledTypesRegistry registry = BundledTypesRegistry.builder()
+                .forType("app:Page", "jcr:content").buildRegistry();
+        assertFalse(analyzer.getRecommendedPatterns(registry, 10, 0.5).containsKey("app:Page"));
+
+        analyzer.reset();
+        assertTrue(analyzer.getRecommendedPatterns(BundledTypesRegistry.NOOP, 0, 0.5).isEmpty());
+    }
+
+    @Test
+    public void descendantWithoutParent() {
+        BundlingPatternAnalyzer analyzer = new BundlingPatternAnalyzer(1, 2, 1000);
+        NodeState page = newNode("app:Page").getNodeState();
+        NodeState unstructured = newNode("nt:unstructured").getNodeState();
+        for (int i = 0; i < 10; i++) {
+            Path p = Path.fromString("/content/page-" + i);
+            analyzer.nodeRead(p, page);
+            // parent of metadata read from the cache only
+            analyzer.nodeRead(Path.fromString(p + "/jcr:content/metadata"), unstructured);
+        }
+        assertTrue(analyzer.getRecommendedPatterns(BundledTypesRegistry.NOOP, 10, 0.8).isEmpty());
+    }
+
+    @Test
+    public void applyPatterns() throws Exception {
+        NodeBuilder builder = newNode("rep:root");
+        new InitialContent().initialize(builder);
+        BundlingConfigInitializer.INSTANCE.initialize(builder);
+
+        assertEquals(1, BundlingPatternAnalyzer.apply(builder, ImmutableMap.of(
+                "app:Page", ImmutableSet.of("jcr:content"),
+                "nt:file", ImmutableSet.of("foo"))));
+
+        NodeState config = builder.getNodeState().getChildNode("jcr:system")
+                .getChildNode(DOCUMENT_NODE_STORE).getChildNode(BUNDLOR);
+        BundledTypesRegistry registry = BundledTypesRegistry.from(config);
+        assertTrue(registry.getBundlor(newNode("app:Page").getNodeState()).isBundled("jcr:content"));
+        // existing configuration is not changed
+        assertFalse(registry.getBundlor(newNode("nt:file").getNodeState()).isBundled("foo"));
+    }
+
+    @Test
+    public void sampleNodeStoreReads() throws Exception {
+        System.setProperty(SAMPLE_PERCENT, "100");
+        MemoryDocumentStore ds = new MemoryDocumentStore();
+        DocumentNodeStore store = builderProvider.newBuilder()
+                .setDocumentStore(ds).setAsyncDelay(0)
+                .memoryCacheSize(0).getNodeStore();
+        BundlingPatternAnalyzer analyzer = store.getBundlingPatternAnalyzer();
+        assertNotNull(analyzer);
+
+        NodeBuilder builder = store.getRoot().builder();
+        new InitialContent().initialize(builder);
+        BundlingConfigInitializer.INSTANCE.initialize(builder);
+        NodeBuilder content = builder.child("content");
+        for (int i = 0; i < 20; i++) {
+            NodeBuilder page = content.setChildNode("page-" + i, newNode("app:Page").getNodeState());
+            page.setChildNode("jcr:content", newNode("nt:unstructured").getNodeState())
+                    .setProperty("title", "page " + i);
+        }
+        merge(store, builder);
+
+        analyzer.reset();
+        NodeState root = store.getRoot();
+        for (int i = 0; i < 20; i++) {
+            root.getChildNode("content").getChildNode("page-" + i)
+                    .getChildNode("jcr:content").getProperty("title");
+        }
+
+        Map<String, SortedSet<String>> patterns = analyzer.getRecommendedPatterns(
+                store.getBundlingConfigHandler().getRegistry(), 20, 0.8);
+        assertEquals(ImmutableSet.of("jcr:content"), patterns.get("app:Page"));
+
+        builder = store.getRoot().builder();
+        assertEquals(1, BundlingPatternAnalyzer.apply(builder, patterns));
+        merge(store, builder);
+        store.runBackgroundOperations();
+
+        // new pages are bundled with their content
+        builder = store.getRoot().builder();
+        builder.child("content").setChildNode("new-page", newNode("app:Page").getNodeState())
+                .child("jcr:content");
+        merge(store, builder);
+        assertNotNull(ds.find(Collection.NODES, Utils.getIdFromPath("/content/new-page")));
+        assertNull(ds.find(Collection.NODES, Utils.getIdFromPath("/content/new-page/jcr:content")));
+        // existing pages are not changed
+        assertNotNull(ds.find(Collection.NODES, Utils.getIdFromPath("/content/page-0/jcr:content")));
+    }
+
+    private static void merge(DocumentNodeStore store, NodeBuilder builder)
+            throws CommitFailedException {
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.mongo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.plugins.document.DocumentMKBuilderProvider;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.LeaseCheckMode;
+import org.apache.jackrabbit.oak.plugins.document.MongoUtils;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+
+public class MongoChangeStreamIT {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    @Rule
+    public MongodProcessFactory mongodProcessFactory = new MongodProcessFactory();
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    private Map<Integer, MongodProcess> executables = new HashMap<>();
+
+    @Before
+    public void before() {
+        try {
+            // a single node replica set is sufficient for change streams
+            executables.putAll(mongodProcessFactory.startReplicaSet("rs", 1));
+        } catch (Exception e) {
+            assumeNoException(e);
+        }
+    }
+
+    @Test
+    public void externalChangeVisibleBeforeBackgroundRead() throws Exception {
+        String uri = "mongodb://" + MongodProcessFactory.localhost(executables.keySet());
+        DocumentNodeStore ns1 = builderProvider.newBuilder()
+                .setLeaseCheckMode(LeaseCheckMode.DISABLED)
+                .setClusterId(1).setAsyncDelay(0)
+                .setMongoDB(uri, MongoUtils.DB, 0).build();
+        MongoDocumentStore mds1 = (MongoDocumentStore) ns1.getDocumentStore();
+        // change streams require MongoDB 3.6 or newer
+        assumeTrue(new MongoStatus(mds1.getClient(), MongoUtils.DB).isVersion(3, 6));
+        // regular background read on ns2 only once per minute
+        DocumentNodeStore ns2 = builderProvider.newBuilder()
+                .setLeaseCheckMode(LeaseCheckMode.DISABLED)
+                .setClusterId(2).setAsyncDelay((int) TimeUnit.MINUTES.toMillis(1))
+                .setChangeStreamEnabled(true)
+                .setMongoDB(uri, MongoUtils.DB, 0).build();
+        DocumentStore store = ns2.getDocumentStore();
+        assertTrue(store instanceof MongoDocumentStore);
+        MongoChangeStreamListener listener = ((MongoDocumentStore) store).getChangeStreamListener();
+        assertNotNull(listener);
+
+        // wait until the listener receives changes
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (listener.getNumChanges() == 0 && System.currentTimeMillis() < end) {
+            addNode(ns1, "warmup");
+            Thread.sleep(100);
+        }
+        assertTrue(listener.getNumChanges() > 0);
+
+        addNode(ns1, "foo");
+        end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!ns2.getRoot().hasChildNode("foo") && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertTrue(ns2.getRoot().hasChildNode("foo"));
+        assertTrue(listener.getNumExternalChanges() > 0);
+    }
+
+    private static void addNode(DocumentNodeStore ns, String name)
+            throws CommitFailedException {
+        NodeBuilder builder = ns.getRoot().builder();
+        builder.child(name).setProperty("p", System.nanoTime());
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns.runBackgroundOperations();
+    }
+}
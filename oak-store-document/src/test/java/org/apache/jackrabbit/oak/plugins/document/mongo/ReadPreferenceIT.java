@@ -19,6 +19,8 @@
 
 package org.apache.jackrabbit.oak.plugins.document.mongo;
 
+import java.util.concurrent.TimeUnit;
+
 import com.mongodb.ReadPreference;
 
 import org.apache.jackrabbit.oak.plugins.document.AbstractMongoConnectionTest;
@@ -137,6 +139,47 @@ public class ReadPreferenceIT extends AbstractMongoConnectionTest {
         assertEquals(ReadPreference.primary(), readPref);
     }
 
+    @Test
+    public void boundedStaleness() throws Exception {
+        MongoDocumentStore store = new MongoDocumentStore(mongoConnection.getMongoClient(),
+                mongoConnection.getDatabase(), new DocumentMK.Builder().setClientSessionDisabled(true)) {
+            @Override
+            long getStalenessBoundMillis() {
+                return 1000;
+            }
+        };
+        store.setClock(clock);
+        try {
+            store.setReadWriteMode(rwMode(ReadPreference.primary()));
+
+            // reads that accept a cached document older than the bound
+            // go to the nearest member
+            assertEquals(DocumentReadPreference.PRIMARY, store.getReadPreference(0));
+            assertEquals(DocumentReadPreference.PREFER_SECONDARY, store.getReadPreference(1000));
+            assertEquals(ReadPreference.nearest(), store.getMongoReadPreference(NODES, null,
+                    DocumentReadPreference.PREFER_SECONDARY));
+
+            // children of a recently modified parent are read from the primary
+            String parentId = getIdFromPath("/");
+            store.find(NODES, parentId);
+            assertEquals(ReadPreference.primary(), store.getMongoReadPreference(NODES, parentId,
+                    DocumentReadPreference.PREFER_SECONDARY_IF_OLD_ENOUGH));
+
+            // parent unchanged for longer than the bound
+            clock.waitUntil(clock.getTime() + TimeUnit.SECONDS.toMillis(10));
+            assertEquals(ReadPreference.nearest(), store.getMongoReadPreference(NODES, parentId,
+                    DocumentReadPreference.PREFER_SECONDARY_IF_OLD_ENOUGH));
+
+            // an explicitly configured read preference is kept
+            store.setReadWriteMode(rwMode(ReadPreference.secondaryPreferred()));
+            assertEquals(ReadPreference.secondaryPreferred(), store.getMongoReadPreference(NODES, parentId,
+                    DocumentReadPreference.PREFER_SECONDARY_IF_OLD_ENOUGH));
+        } finally {
+            // the client is shared with the fixture and closed there
+            store.setReadWriteMode("");
+        }
+    }
+
     private static String rwMode(ReadPreference preference) {
         return "readpreference=" + preference.getName();
     }
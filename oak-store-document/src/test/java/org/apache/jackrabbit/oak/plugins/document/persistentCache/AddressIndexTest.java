@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AddressIndexTest {
+
+    @Test
+    public void compareWithHashMap() {
+        AddressIndex index = new AddressIndex();
+        Map<Long, Long> expected = new HashMap<>();
+        Random r = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            // small key range to get updates and removals of existing keys
+            long hash = r.nextInt(20000) + 1;
+            if (r.nextInt(4) == 0) {
+                Long old = expected.remove(hash);
+                assertEquals(old == null ? 0 : old, index.remove(hash));
+            } else {
+                long address = r.nextInt(Integer.MAX_VALUE) + 1L;
+                Long old = expected.put(hash, address);
+                assertEquals(old == null ? 0 : old, index.put(hash, address));
+            }
+            assertEquals(expected.size(), index.size());
+        }
+        for (long hash = 1; hash <= 20000; hash++) {
+            Long address = expected.get(hash);
+            assertEquals(address == null ? 0 : address, index.get(hash));
+        }
+        Set<Long> addresses = new HashSet<>();
+        index.forEachAddress(addresses::add);
+        assertEquals(new HashSet<>(expected.values()), addresses);
+        // removed entries do not keep the table large
+        assertTrue(index.getMemory() <= 16L * 4 * Integer.highestOneBit(expected.size() * 4));
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(0, index.get(1));
+    }
+
+    @Test
+    public void zeroHash() {
+        AddressIndex index = new AddressIndex();
+        assertEquals(0, index.put(0, 5));
+        assertEquals(5, index.get(0));
+        assertEquals(5, index.remove(0));
+        assertEquals(0, index.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroAddress() {
+        new AddressIndex().put(1, 0);
+    }
+}
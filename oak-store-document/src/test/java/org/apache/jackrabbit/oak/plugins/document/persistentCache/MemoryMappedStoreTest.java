@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryMappedStoreTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder(new File("target"));
+
+    @Test
+    public void putGetRemove() throws Exception {
+        File f = tempFolder.newFile();
+        try (MemoryMappedStore store = new MemoryMappedStore(f, SEGMENT_SIZE, false)) {
+            Map<String, String> m1 = store.openMap("m1", null, null);
+            Map<String, String> m2 = store.openMap("m2", null, null);
+            m1.put("a", "1");
+            m2.put("a", "2");
+            assertEquals("1", m1.get("a"));
+            assertEquals("2", m2.get("a"));
+            assertTrue(m1.containsKey("a"));
+            assertFalse(m1.containsKey("b"));
+
+            m1.put("a", "3");
+            assertEquals("3", m1.get("a"));
+            m1.remove("a");
+            assertNull(m1.get("a"));
+            assertEquals("2", m2.get("a"));
+
+            m2.clear();
+            assertNull(m2.get("a"));
+        }
+    }
+
+    @Test
+    public void corruptRecord() throws Exception {
+        File f = tempFolder.newFile();
+        try (MemoryMappedStore store = new MemoryMappedStore(f, SEGMENT_SIZE, false)) {
+            Map<String, String> m = store.openMap("m", null, null);
+            m.put("a", "value");
+            assertEquals("value", m.get("a"));
+            // flip a bit in the value of the first record
+            try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                int length = readInt(raf, 16);
+                long pos = 16 + length - 5;
+                raf.seek(pos);
+                int b = raf.read();
+                raf.seek(pos);
+                raf.write(b ^ 1);
+            }
+            assertNull(m.get("a"));
+            assertTrue(m.containsKey("a"));
+        }
+    }
+
+    @Test
+    public void reopen() throws Exception {
+        File f = tempFolder.newFile();
+        try (MemoryMappedStore store = new MemoryMappedStore(f, SEGMENT_SIZE, false)) {
+            Map<String, String> m = store.openMap("m", null, null);
+            for (int i = 0; i < 10000; i++) {
+                m.put("k" + i, "v" + i);
+            }
+            for (int i = 0; i < 10000; i += 2) {
+                m.put("k" + i, "u" + i);
+            }
+            for (int i = 0; i < 10000; i += 3) {
+                m.remove("k" + i);
+            }
+        }
+        try (MemoryMappedStore store = new MemoryMappedStore(f, SEGMENT_SIZE, true)) {
+            Map<String, String> m = store.openMap("m", null, null);
+            for (int i = 0; i < 10000; i++) {
+                String v = m.get("k" + i);
+                if (i % 3 == 0) {
+                    assertNull(v);
+                } else if (i % 2 == 0) {
+                    assertEquals("u" + i, v);
+                } else {
+                    assertEquals("v" + i, v);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void reclaim() throws Exception {
+        File f = tempFolder.newFile();
+        String value = new String(new char[1000]);
+        try (MemoryMappedStore store = new MemoryMappedStore(f, SEGMENT_SIZE, false)) {
+            Map<String, String> m = store.openMap("m", null, null);
+            // overwrite the same keys many times
+            for (int j = 0; j < 20; j++) {
+                for (int i = 0; i < 100; i++) {
+                    m.put("k" + i, value + j);
+                }
+            }
+            long size = store.getFileSize();
+            store.reclaim();
+            assertTrue(store.getReclaimedSegmentCount() > 0);
+            assertTrue(store.getFileSize() < size);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(value + 19, m.get("k" + i));
+            }
+            // reclaimed segments are reused
+            long length = f.length();
+            for (int i = 0; i < 100; i++) {
+                m.put("k" + i, value + 20);
+            }
+            assertEquals(length, f.length());
+        }
+        try (MemoryMappedStore store = new MemoryMappedStore(f, SEGMENT_SIZE, true)) {
+            Map<String, String> m = store.openMap("m", null, null);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(value + 20, m.get("k" + i));
+            }
+        }
+    }
+
+    @Test
+    public void concurrentReadWhileReclaim() throws Exception {
+        File f = tempFolder.newFile();
+        String value = new String(new char[500]);
+        try (MemoryMappedStore store = new MemoryMappedStore(f, SEGMENT_SIZE, false)) {
+            Map<String, String> m = store.openMap("m", null, null);
+            for (int i = 0; i < 100; i++) {
+                m.put("k" + i, value + i);
+            }
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            List<Thread> readers = new ArrayList<>();
+            long end = System.currentTimeMillis() + 1000;
+            for (int t = 0; t < 4; t++) {
+                Thread r = new Thread(() -> {
+                    try {
+                        while (System.currentTimeMillis() < end) {
+                            for (int i = 0; i < 100; i++) {
+                                String v = m.get("k" + i);
+                                if (v != null && !v.startsWith(value)) {
+                                    throw new AssertionError("unexpected value: " + v);
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                });
+                r.start();
+                readers.add(r);
+            }
+            int round = 0;
+            while (System.currentTimeMillis() < end) {
+                for (int i = 0; i < 100; i++) {
+                    m.put("k" + i, value + round);
+                }
+                store.reclaim();
+                round++;
+            }
+            for (Thread r : readers) {
+                r.join();
+            }
+            if (error.get() != null) {
+                throw new AssertionError(error.get());
+            }
+        }
+    }
+
+    private static int readInt(RandomAccessFile raf, long pos) throws IOException {
+        raf.seek(pos);
+        return raf.readInt();
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compares timings and file sizes of the persistent cache backends. Usage:
+ * <pre>
+ * PersistentCacheBenchmark [count]
+ * </pre>
+ */
+public class PersistentCacheBenchmark {
+
+    private static final String[] BACKENDS = {
+            PersistentCache.MVSTORE_BACKEND,
+            PersistentCache.MEMORY_MAPPED_BACKEND
+    };
+
+    public static void main(String... args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        File base = new File("target/persistentCacheBenchmark");
+        FileUtils.deleteDirectory(base);
+        for (String backend : BACKENDS) {
+            File dir = new File(base, backend);
+            dir.mkdirs();
+            System.out.println(new PersistentCacheWorkload(backend, count).run(dir));
+        }
+        FileUtils.deleteDirectory(base);
+    }
+}
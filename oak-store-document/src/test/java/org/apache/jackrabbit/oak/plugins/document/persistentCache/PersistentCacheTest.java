@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.common.cache.Cache;
+
+import org.apache.jackrabbit.oak.plugins.document.MemoryDiffCache;
+import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import static org.apache.jackrabbit.oak.plugins.document.persistentCache.PersistentCacheWorkload.key;
+import static org.apache.jackrabbit.oak.plugins.document.persistentCache.PersistentCacheWorkload.singletonKey;
+import static org.apache.jackrabbit.oak.plugins.document.persistentCache.PersistentCacheWorkload.wrap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Runs the same tests against the MVStore and the memory mapped backend of
+ * the persistent cache.
+ */
+@RunWith(Parameterized.class)
+public class PersistentCacheTest {
+
+    private static final int NUM_ENTRIES = 1000;
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder(new File("target"));
+
+    private final String backend;
+
+    public PersistentCacheTest(String backend) {
+        this.backend = backend;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> backends() {
+        List<Object[]> backends = new ArrayList<>();
+        backends.add(new Object[]{PersistentCache.MVSTORE_BACKEND});
+        backends.add(new Object[]{PersistentCache.MEMORY_MAPPED_BACKEND});
+        return backends;
+    }
+
+    @Test
+    public void readAfterReopen() throws Exception {
+        String url = newCacheUrl();
+        PersistentCache pCache = new PersistentCache(url);
+        try {
+            Cache<MemoryDiffCache.Key, StringValue> cache = wrap(pCache);
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                cache.put(key(i), new StringValue("value-" + i));
+            }
+        } finally {
+            pCache.close();
+        }
+
+        pCache = new PersistentCache(url);
+        try {
+            Cache<MemoryDiffCache.Key, StringValue> cache = wrap(pCache);
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                StringValue v = cache.getIfPresent(key(i));
+                assertEquals(new StringValue("value-" + i), v);
+            }
+            PersistentCacheStats stats = PersistentCache.getPersistentCacheStats(cache);
+            assertEquals(backend, stats.getBackend());
+            assertEquals(0, pCache.getExceptionCount());
+        } finally {
+            pCache.close();
+        }
+    }
+
+    @Test
+    public void invalidateAfterReopen() throws Exception {
+        String url = newCacheUrl();
+        PersistentCache pCache = new PersistentCache(url);
+        try {
+            Cache<MemoryDiffCache.Key, StringValue> cache = wrap(pCache);
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                cache.put(key(i), new StringValue("value-" + i));
+            }
+            // overwrite and invalidate some entries
+            for (int i = 0; i < NUM_ENTRIES; i += 2) {
+                cache.put(key(i), new StringValue("updated-" + i));
+            }
+            for (int i = 0; i < NUM_ENTRIES; i += 3) {
+                cache.invalidate(key(i));
+            }
+        } finally {
+            pCache.close();
+        }
+
+        pCache = new PersistentCache(url);
+        try {
+            Cache<MemoryDiffCache.Key, StringValue> cache = wrap(pCache);
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                StringValue v = cache.getIfPresent(key(i));
+                if (i % 3 == 0) {
+                    assertNull(v);
+                } else if (i % 2 == 0) {
+                    assertEquals(new StringValue("updated-" + i), v);
+                } else {
+                    assertEquals(new StringValue("value-" + i), v);
+                }
+            }
+        } finally {
+            pCache.close();
+        }
+    }
+
+    @Test
+    public void switchGeneration() throws Exception {
+        PersistentCache pCache = new PersistentCache(newCacheUrl() + ",size=1");
+        try {
+            Cache<MemoryDiffCache.Key, StringValue> cache = wrap(pCache);
+            String value = new String(new char[1024]);
+            for (int i = 0; i < 4 * 1024; i++) {
+                cache.put(key(i), new StringValue(value + i));
+            }
+            assertTrue(pCache.getOpenCount() > 0);
+            // the most recent entries must still be available
+            for (int i = 4 * 1024 - 10; i < 4 * 1024; i++) {
+                cache.invalidateAll(singletonKey(i));
+                assertEquals(new StringValue(value + i), cache.getIfPresent(key(i)));
+            }
+            assertEquals(0, pCache.getExceptionCount());
+        } finally {
+            pCache.close();
+        }
+    }
+
+    /**
+     * Runs the same workload against the MVStore backend and the backend
+     * under test and checks both return the same entries. See
+     * {@link PersistentCacheBenchmark} for a comparison of timings and file
+     * sizes.
+     */
+    @Test
+    public void compareWithMVStore() throws Exception {
+        assumeFalse(PersistentCache.MVSTORE_BACKEND.equals(backend));
+        PersistentCacheWorkload mvStore = new PersistentCacheWorkload(
+                PersistentCache.MVSTORE_BACKEND, NUM_ENTRIES).run(tempFolder.newFolder());
+        PersistentCacheWorkload other = new PersistentCacheWorkload(
+                backend, NUM_ENTRIES).run(tempFolder.newFolder());
+        assertEquals(mvStore.getValues(), other.getValues());
+    }
+
+    private String newCacheUrl() throws Exception {
+        return tempFolder.newFolder().getPath() + ",-async,backend=" + backend;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.cache.Cache;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.cache.CacheLIRS;
+import org.apache.jackrabbit.oak.plugins.document.MemoryDiffCache;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.RevisionVector;
+import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A workload of writes, overwrites, invalidations and concurrent reads
+ * against a persistent cache backend. It records the values read and the
+ * timings and file size of the run.
+ */
+final class PersistentCacheWorkload {
+
+    private static final int READ_THREADS = 4;
+
+    private final String backend;
+    private final int count;
+    private final List<StringValue> values = new ArrayList<>();
+    private long writeMillis;
+    private long readMillis;
+    private long concurrentReadMillis;
+    private long fileSize;
+
+    PersistentCacheWorkload(String backend, int count) {
+        this.backend = backend;
+        this.count = count;
+    }
+
+    PersistentCacheWorkload run(File dir) throws Exception {
+        PersistentCache pCache = new PersistentCache(dir.getPath() + ",-async,backend=" + backend);
+        try {
+            Cache<MemoryDiffCache.Key, StringValue> cache = wrap(pCache);
+            String value = new String(new char[256]);
+            Random r = new Random(42);
+            long time = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                cache.put(key(i), new StringValue(value + i));
+            }
+            // overwrite and invalidate random entries
+            for (int i = 0; i < count; i++) {
+                int k = r.nextInt(count);
+                if (r.nextInt(4) == 0) {
+                    cache.invalidate(key(k));
+                } else {
+                    cache.put(key(k), new StringValue(value + "updated-" + i));
+                }
+            }
+            writeMillis = (System.nanoTime() - time) / 1000000;
+
+            time = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                cache.invalidateAll(singletonKey(i));
+                values.add(cache.getIfPresent(key(i)));
+            }
+            readMillis = (System.nanoTime() - time) / 1000000;
+
+            time = System.nanoTime();
+            List<Thread> readers = new ArrayList<>();
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            for (int t = 0; t < READ_THREADS; t++) {
+                Cache<MemoryDiffCache.Key, StringValue> c = wrap(pCache);
+                Thread reader = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < count; i++) {
+                            c.invalidateAll(singletonKey(i));
+                            assertEquals(values.get(i), c.getIfPresent(key(i)));
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                });
+                reader.start();
+                readers.add(reader);
+            }
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            concurrentReadMillis = (System.nanoTime() - time) / 1000000;
+            if (error.get() != null) {
+                throw new AssertionError(error.get());
+            }
+            assertEquals(0, pCache.getExceptionCount());
+        } finally {
+            pCache.close();
+        }
+        fileSize = FileUtils.sizeOfDirectory(dir);
+        return this;
+    }
+
+    List<StringValue> getValues() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d writes in %d ms, %d reads in %d ms, " +
+                "%d reads with %d threads in %d ms, file size %d KB",
+                backend, 2 * count, writeMillis, count, readMillis,
+                READ_THREADS * count, READ_THREADS, concurrentReadMillis, fileSize / 1024);
+    }
+
+    static Cache<MemoryDiffCache.Key, StringValue> wrap(PersistentCache pCache) {
+        // memory cache with a single entry, reads go to the persistent cache
+        CacheLIRS<MemoryDiffCache.Key, StringValue> mem =
+                new CacheLIRS.Builder<MemoryDiffCache.Key, StringValue>().maximumSize(1).build();
+        return pCache.wrap(null, null, mem, CacheType.DIFF);
+    }
+
+    static MemoryDiffCache.Key key(int i) {
+        return new MemoryDiffCache.Key(Path.fromString("/node-" + i),
+                new RevisionVector(new Revision(i, 0, 1)),
+                new RevisionVector(new Revision(i + 1, 0, 1)));
+    }
+
+    static List<MemoryDiffCache.Key> singletonKey(int i) {
+        List<MemoryDiffCache.Key> keys = new ArrayList<>();
+        keys.add(key(i));
+        return keys;
+    }
+}
@@ -26,8 +26,11 @@ import static org.junit.Assert.fail;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.zip.GZIPOutputStream;
 
 import org.apache.jackrabbit.oak.plugins.document.Collection;
@@ -35,6 +38,8 @@ import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreFixture;
 import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -231,4 +236,89 @@ public class RDBDocumentSerializerTest {
         } catch (DocumentStoreException expected) {
         }
     }
+
+    @Test
+    public void testBinaryRoundTrip() {
+        Revision r1 = new Revision(1000, 0, 1);
+        Revision r2 = new Revision(2000, 5, 2, true);
+        NodeDocument in = Collection.NODES.newDocument(store);
+        in.put(NodeDocument.ID, "_foo");
+        in.put("s", "string \u00e4\u00f6\u00fc");
+        in.put("l", -42L);
+        in.put("d", 3.5d);
+        in.put("t", true);
+        in.put("f", false);
+        in.put("n", null);
+        in.put("u", "broken \ud800 surrogate");
+        Map<Revision, Object> m = new TreeMap<Revision, Object>(StableRevisionComparator.REVERSE);
+        m.put(r1, "c");
+        m.put(r2, "\"x\"");
+        in.put("_revisions", m);
+
+        for (boolean compress : new boolean[] { false, true }) {
+            byte[] bytes = this.ser.asBytes(in, Collections.singleton(NodeDocument.ID), compress);
+            assertTrue(RDBBinarySupport.isBinary(bytes));
+            RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L, "\"blob\"", bytes);
+            NodeDocument doc = this.ser.fromRow(Collection.NODES, row);
+            assertEquals("_foo", doc.getId());
+            assertEquals("string \u00e4\u00f6\u00fc", doc.get("s"));
+            assertEquals(-42L, doc.get("l"));
+            assertEquals(3.5d, doc.get("d"));
+            assertEquals(Boolean.TRUE, doc.get("t"));
+            assertEquals(Boolean.FALSE, doc.get("f"));
+            assertTrue(doc.keySet().contains("n"));
+            assertNull(doc.get("n"));
+            assertEquals("broken \ud800 surrogate", doc.get("u"));
+            assertEquals(m, doc.get("_revisions"));
+            assertEquals(0, row.getAppendedUpdates());
+        }
+    }
+
+    @Test
+    public void testBinaryRoundTripStringKeys() {
+        Map<String, Object> inner = new HashMap<String, Object>();
+        inner.put("r1-0-1", 1L);
+        inner.put("x", null);
+        Map<String, Object> m = new HashMap<String, Object>();
+        m.put("a", "b");
+        m.put("nested", inner);
+        Map<Revision, Object> empty = new TreeMap<Revision, Object>(StableRevisionComparator.REVERSE);
+        NodeDocument in = Collection.NODES.newDocument(store);
+        in.put(NodeDocument.ID, "_foo");
+        in.put("m", m);
+        in.put("e", empty);
+
+        for (boolean compress : new boolean[] { false, true }) {
+            byte[] bytes = this.ser.asBytes(in, Collections.singleton(NodeDocument.ID), compress);
+            RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L, "\"blob\"", bytes);
+            NodeDocument doc = this.ser.fromRow(Collection.NODES, row);
+            assertEquals(m, doc.get("m"));
+            assertEquals(empty, doc.get("e"));
+            assertTrue(doc.get("e") instanceof TreeMap);
+        }
+    }
+
+    @Test
+    public void testBinaryWithAppendedUpdates() {
+        NodeDocument in = Collection.NODES.newDocument(store);
+        in.put("foo", "bar");
+        byte[] bytes = this.ser.asBytes(in, Collections.<String>emptySet(), true);
+        RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L,
+                "\"blob\",[[\"=\",\"foo\",\"qux\"]],[[\"+\",\"c\",2]]", bytes);
+        NodeDocument doc = this.ser.fromRow(Collection.NODES, row);
+        assertEquals("qux", doc.get("foo"));
+        assertEquals(2L, doc.get("c"));
+        assertEquals(2, row.getAppendedUpdates());
+    }
+
+    @Test
+    public void testInvalidBinaryVersion() {
+        try {
+            byte[] bytes = { 'O', 'A', 'K', 99, 0 };
+            RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L, "\"blob\"", bytes);
+            this.ser.fromRow(Collection.NODES, row);
+            fail("should fail");
+        } catch (DocumentStoreException expected) {
+        }
+    }
 }
@@ -26,11 +26,19 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.apache.jackrabbit.oak.plugins.document.AbstractDocumentStoreTest;
+import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreFixture;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,6 +87,38 @@ public class RDBDocumentStorePerformanceTest extends AbstractDocumentStoreTest {
         internalTestPerfUpdateLimit("testPerfUpdateGrowingDoc", "raw row update (string + blob)", 4);
     }
 
+    @Test
+    public void testPerfReadJsonVsBinary() {
+        // document with a large revision map, read back from the database
+        // with the JSON and with the binary serialization
+        RDBDocumentSerializer ser = new RDBDocumentSerializer(super.ds);
+        NodeDocument doc = Collection.NODES.newDocument(super.ds);
+        doc.put(NodeDocument.ID, "0:/");
+        Map<Revision, Object> revisions = new TreeMap<Revision, Object>(StableRevisionComparator.REVERSE);
+        for (int i = 0; i < 1000; i++) {
+            revisions.put(new Revision(1000000L + i, 0, 1), "c");
+        }
+        doc.put("_revisions", revisions);
+        Set<String> columnProperties = Collections.singleton(NodeDocument.ID);
+
+        String json = ser.asString(doc, columnProperties);
+        RDBRow jsonRow = new RDBRow("0:/", 0L, false, 1L, 1L, 0L, 2L, null, null, "\"blob\"", RDBDocumentStore.asBytes(json));
+        RDBRow binaryRow = new RDBRow("0:/", 0L, false, 1L, 1L, 0L, 2L, null, null, "\"blob\"",
+                ser.asBytes(doc, columnProperties, true));
+
+        for (RDBRow row : new RDBRow[] { jsonRow, binaryRow }) {
+            long duration = 1000;
+            long end = System.currentTimeMillis() + duration;
+            long cnt = 0;
+            while (System.currentTimeMillis() < end) {
+                assertEquals(1000, ((Map<?, ?>) ser.fromRow(Collection.NODES, row).get("_revisions")).size());
+                cnt += 1;
+            }
+            String desc = "document read (" + (row == jsonRow ? "JSON" : "binary") + ", " + row.getBdata().length + " bytes)";
+            LOG.info(desc + " for " + super.dsname + " was " + cnt + " in " + duration + "ms (" + (cnt / (duration / 1000f)) + "/s)");
+        }
+    }
+
     private void internalTestPerfUpdateLimit(String name, String desc, int mode) throws SQLException, UnsupportedEncodingException {
         String key = name;
         Connection connection = null;
@@ -251,4 +251,46 @@ public class RDBDocumentStoreTest extends AbstractDocumentStoreTest {
             }
         }
     }
+
+    @Test
+    public void testConsolidationOnRead() {
+        if (ds instanceof RDBDocumentStore) {
+            RDBDocumentStore rds = (RDBDocumentStore) ds;
+            String id = this.getClass().getName() + ".testConsolidationOnRead";
+            UpdateOp up = new UpdateOp(id, true);
+            assertTrue(ds.create(Collection.NODES, Collections.singletonList(up)));
+            removeMe.add(id);
+            // appended updates (fewer than the rewrite interval)
+            for (int i = 0; i < 10; i++) {
+                UpdateOp op = new UpdateOp(id, false);
+                op.set("p-" + i, "v-" + i);
+                assertNotNull(ds.findAndUpdate(NODES, op));
+            }
+            // disabled by default
+            long consolidations = rds.getConsolidationCount();
+            ds.invalidateCache();
+            assertNotNull(ds.find(NODES, id));
+            assertEquals(consolidations, rds.getConsolidationCount());
+
+            rds.setConsolidationThreshold(8);
+            try {
+                ds.invalidateCache();
+                NodeDocument doc = ds.find(NODES, id);
+                assertNotNull(doc);
+                assertEquals(consolidations + 1, rds.getConsolidationCount());
+                assertEquals(11L, doc.getModCount().longValue());
+
+                // read again, the row is now consolidated
+                ds.invalidateCache();
+                doc = ds.find(NODES, id);
+                assertEquals(consolidations + 1, rds.getConsolidationCount());
+                assertEquals(11L, doc.getModCount().longValue());
+                for (int i = 0; i < 10; i++) {
+                    assertEquals("v-" + i, doc.get("p-" + i));
+                }
+            } finally {
+                rds.setConsolidationThreshold(0);
+            }
+        }
+    }
 }
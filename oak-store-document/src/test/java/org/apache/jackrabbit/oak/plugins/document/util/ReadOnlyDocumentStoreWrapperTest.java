@@ -138,7 +138,16 @@ public class ReadOnlyDocumentStoreWrapperTest {
             uoeThrown = false;
 
             try {
-                readOnlyStore.findAndUpdate(collection, null);
+                readOnlyStore.findAndUpdate(collection, (UpdateOp) null);
+            } catch (UnsupportedOperationException uoe) {
+                //catch uoe thrown by read only wrapper
+                uoeThrown = true;
+            }
+            assertTrue("findAndUpdate must throw UnsupportedOperationException", uoeThrown);
+            uoeThrown = false;
+
+            try {
+                readOnlyStore.findAndUpdate(collection, Lists.<UpdateOp>newArrayList());
             } catch (UnsupportedOperationException uoe) {
                 //catch uoe thrown by read only wrapper
                 uoeThrown = true;